@@ -0,0 +1,233 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the per-frame cost of copying a 4:2:0 frame into Image-like
+ * planes for every input and output layout, with PlaneCopier and with the
+ * previous per-sample copy. It is in its own source directory, outside of
+ * the gradle source sets, so it is neither part of the apk nor run as a
+ * unit test, and runs on the JVM:
+ *
+ *   javac -d /tmp/pc app/src/main/java/com/facebook/encapp/utils/PlaneCopier.java \
+ *       app/src/benchmark/java/com/facebook/encapp/utils/PlaneCopierBenchmark.java
+ *   java -cp /tmp/pc com.facebook.encapp.utils.PlaneCopierBenchmark 1920x1080 200
+ *
+ * Every copy is checked against the planar reference before it is timed.
+ * The 10 bit conversions between yuv420p10le and P010 are timed last, and
+ * checked by a round trip.
+ */
+public class PlaneCopierBenchmark {
+    private static final int ALIGNMENT = 64;
+
+    /**
+     * Output planes laid out like the Image of one codec.
+     */
+    private static class Output {
+        final String name;
+        final ByteBuffer[] planes = new ByteBuffer[3];
+        final int[] pixelStride = new int[3];
+        final int[] rowStride = new int[3];
+
+        Output(String name, int width, int height, boolean padded, boolean semiPlanar) {
+            this.name = name;
+            int lumaStride = padded ? align(width) : width;
+            int chromaWidth = semiPlanar ? width : width / 2;
+            int chromaStride = padded ? align(chromaWidth) : chromaWidth;
+            planes[0] = ByteBuffer.allocateDirect(lumaStride * height);
+            pixelStride[0] = 1;
+            rowStride[0] = lumaStride;
+            if (semiPlanar) {
+                // u and v share the memory, v starts one byte later
+                ByteBuffer chroma = ByteBuffer.allocateDirect(chromaStride * height / 2);
+                planes[1] = chroma.duplicate();
+                chroma.position(1);
+                planes[2] = chroma.slice();
+                pixelStride[1] = pixelStride[2] = 2;
+            } else {
+                planes[1] = ByteBuffer.allocateDirect(chromaStride * height / 2);
+                planes[2] = ByteBuffer.allocateDirect(chromaStride * height / 2);
+                pixelStride[1] = pixelStride[2] = 1;
+            }
+            rowStride[1] = rowStride[2] = chromaStride;
+        }
+
+        int get(int plane, int x, int y) {
+            return planes[plane].get(y * rowStride[plane] + x * pixelStride[plane]) & 0xff;
+        }
+    }
+
+    private static int align(int value) {
+        return (value + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private interface Copy {
+        void run(byte[] src, int[] offset, int[] pixelStride, Output out, int width, int height);
+    }
+
+    private static void copyPlaneCopier(byte[] src, int[] offset, int[] pixelStride, Output out, int width, int height) {
+        for (int plane = 0; plane < 3; plane++) {
+            int w = (plane == 0) ? width : width / 2;
+            int h = (plane == 0) ? height : height / 2;
+            PlaneCopier.copyPlane(src, offset[plane], pixelStride[plane], w * pixelStride[plane],
+                    out.planes[plane], out.pixelStride[plane], out.rowStride[plane], w, h, 1);
+        }
+    }
+
+    // the previous FileReader.fillImage copy: bulk only when both sides are packed
+    private static void copyPerSample(byte[] src, int[] offset, int[] pixelStride, Output out, int width, int height) {
+        for (int plane = 0; plane < 3; plane++) {
+            int w = (plane == 0) ? width : width / 2;
+            int h = (plane == 0) ? height : height / 2;
+            ByteBuffer buf = out.planes[plane];
+            if (pixelStride[plane] == 1 && out.pixelStride[plane] == 1) {
+                for (int row = 0; row < h; row++) {
+                    buf.position(row * out.rowStride[plane]);
+                    buf.put(src, offset[plane] + row * w, w);
+                }
+            } else {
+                for (int row = 0; row < h; row++) {
+                    for (int x = 0; x < w; x++) {
+                        buf.position(row * out.rowStride[plane] + x * out.pixelStride[plane]);
+                        buf.put(src, offset[plane] + (row * w + x) * pixelStride[plane], 1);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean verify(byte[] reference, Output out, int width, int height) {
+        int lumaLength = width * height;
+        int chromaLength = lumaLength / 4;
+        for (int plane = 0; plane < 3; plane++) {
+            int w = (plane == 0) ? width : width / 2;
+            int h = (plane == 0) ? height : height / 2;
+            int base = (plane == 0) ? 0 : lumaLength + (plane - 1) * chromaLength;
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    if (out.get(plane, x, y) != (reference[base + y * w + x] & 0xff)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static double timeMs(Copy copy, byte[] src, int[] offset, int[] pixelStride, Output out,
+                                 int width, int height, int iterations) {
+        // warm up the jit
+        for (int i = 0; i < Math.max(5, iterations / 10); i++) {
+            copy.run(src, offset, pixelStride, out, width, height);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            copy.run(src, offset, pixelStride, out, width, height);
+        }
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    private interface Convert {
+        void run(byte[] src, ByteBuffer dst, int width, int height);
+    }
+
+    private static double timeMs(Convert convert, byte[] src, ByteBuffer dst, int width, int height, int iterations) {
+        for (int i = 0; i < Math.max(5, iterations / 10); i++) {
+            dst.clear();
+            convert.run(src, dst, width, height);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            dst.clear();
+            convert.run(src, dst, width, height);
+        }
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    private static void benchmark10Bit(int width, int height, int iterations) {
+        // random 10 bit samples, little endian
+        Random random = new Random(0);
+        byte[] planar = new byte[width * height * 3];
+        for (int i = 0; i < planar.length; i += 2) {
+            int value = random.nextInt(1024);
+            planar[i] = (byte) value;
+            planar[i + 1] = (byte) (value >> 8);
+        }
+        ByteBuffer p010 = ByteBuffer.allocateDirect(planar.length);
+        PlaneCopier.planar10ToP010(planar, 0, p010, width, height);
+        byte[] p010Bytes = new byte[planar.length];
+        p010.position(0);
+        p010.get(p010Bytes);
+        ByteBuffer back = ByteBuffer.allocate(planar.length);
+        PlaneCopier.p010ToPlanar10(p010Bytes, 0, back, width, height);
+        if (!Arrays.equals(planar, back.array())) {
+            System.out.println("yuv420p10le -> p010 -> yuv420p10le: round trip mismatch");
+            System.exit(1);
+        }
+        System.out.println(String.format(Locale.US, "%-27s %12.3f",
+                "yuv420p10le -> p010", timeMs((src, dst, w, h) -> PlaneCopier.planar10ToP010(src, 0, dst, w, h),
+                        planar, p010, width, height, iterations)));
+        System.out.println(String.format(Locale.US, "%-27s %12.3f",
+                "p010 -> yuv420p10le", timeMs((src, dst, w, h) -> PlaneCopier.p010ToPlanar10(src, 0, dst, w, h),
+                        p010Bytes, back, width, height, iterations)));
+    }
+
+    public static void main(String[] args) {
+        int width = 1920;
+        int height = 1080;
+        int iterations = 100;
+        if (args.length > 0) {
+            String[] size = args[0].split("x");
+            width = Integer.parseInt(size[0]);
+            height = Integer.parseInt(size[1]);
+        }
+        if (args.length > 1) {
+            iterations = Integer.parseInt(args[1]);
+        }
+        int lumaLength = width * height;
+        int chromaLength = lumaLength / 4;
+        // planar reference (yuv420p) and the same frame semi-planar (nv12)
+        byte[] planar = new byte[lumaLength + 2 * chromaLength];
+        new Random(0).nextBytes(planar);
+        byte[] semiPlanar = new byte[planar.length];
+        System.arraycopy(planar, 0, semiPlanar, 0, lumaLength);
+        for (int i = 0; i < chromaLength; i++) {
+            semiPlanar[lumaLength + 2 * i] = planar[lumaLength + i];
+            semiPlanar[lumaLength + 2 * i + 1] = planar[lumaLength + chromaLength + i];
+        }
+        String[] inputNames = {"yuv420p", "nv12"};
+        byte[][] inputs = {planar, semiPlanar};
+        int[][] offsets = {{0, lumaLength, lumaLength + chromaLength}, {0, lumaLength, lumaLength + 1}};
+        int[][] strides = {{1, 1, 1}, {1, 2, 2}};
+        Output[] outputs = {
+                new Output("planar", width, height, false, false),
+                new Output("planar_padded", width, height, true, false),
+                new Output("semiplanar", width, height, false, true),
+                new Output("semiplanar_padded", width, height, true, true),
+        };
+
+        System.out.println(String.format(Locale.US, "%dx%d, %d iterations, %d threads, ms per frame",
+                width, height, iterations, Runtime.getRuntime().availableProcessors()));
+        System.out.println(String.format(Locale.US, "%-8s %-18s %12s %12s %8s",
+                "input", "output", "per_sample", "planecopier", "speedup"));
+        for (int in = 0; in < inputs.length; in++) {
+            for (Output out : outputs) {
+                copyPlaneCopier(inputs[in], offsets[in], strides[in], out, width, height);
+                if (!verify(planar, out, width, height)) {
+                    System.out.println(inputNames[in] + " -> " + out.name + ": PlaneCopier output mismatch");
+                    System.exit(1);
+                }
+                double perSample = timeMs(PlaneCopierBenchmark::copyPerSample,
+                        inputs[in], offsets[in], strides[in], out, width, height, iterations);
+                double copier = timeMs(PlaneCopierBenchmark::copyPlaneCopier,
+                        inputs[in], offsets[in], strides[in], out, width, height, iterations);
+                System.out.println(String.format(Locale.US, "%-8s %-18s %12.3f %12.3f %7.1fx",
+                        inputNames[in], out.name, perSample, copier, perSample / copier));
+            }
+        }
+        benchmark10Bit(width, height, iterations);
+    }
+}
@@ -1,7 +1,6 @@
 package com.facebook.encapp;
 
-import static com.facebook.encapp.utils.MediaCodecInfoHelper.mediaFormatComparison;
-
+import android.media.Image;
 import android.media.MediaCodec;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
@@ -14,6 +13,8 @@ import android.util.Size;
 import androidx.annotation.NonNull;
 
 import com.facebook.encapp.proto.Test;
+import com.facebook.encapp.utils.CodecLifecycle.Phase;
+import com.facebook.encapp.utils.FrameHasher;
 import com.facebook.encapp.utils.FrameInfo;
 import com.facebook.encapp.utils.OutputMultiplier;
 import com.facebook.encapp.utils.SizeUtils;
@@ -25,7 +26,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Dictionary;
 import java.util.Locale;
 
 class BufferDecoder extends Encoder {
@@ -88,6 +88,7 @@ class BufferDecoder extends Encoder {
             }
 
             Log.d(TAG, "Create decoder)");
+            mStats.getDecoderLifecycle().begin(Phase.create);
             if (mTest.getDecoderConfigure().hasCodec()) {
                 Log.d(TAG, "Create decoder by name: " + mTest.getDecoderConfigure().getCodec());
                 mDecoder = MediaCodec.createByCodecName(mTest.getDecoderConfigure().getCodec());
@@ -95,6 +96,7 @@ class BufferDecoder extends Encoder {
                 Log.d(TAG, "Create decoder by mime: " + inputFormat.getString(MediaFormat.KEY_MIME));
                 mDecoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
             }
+            mStats.getDecoderLifecycle().end(Phase.create);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
                 mStats.setDecoderIsHardwareAccelerated(mDecoder.getCodecInfo().isHardwareAccelerated());
             }
@@ -103,7 +105,9 @@ class BufferDecoder extends Encoder {
 
             TestDefinitionHelper.setDecoderConfigureParams(mTest, inputFormat);
             Log.d(TAG, "Configure: " + mDecoder.getName());
+            mStats.getDecoderLifecycle().begin(Phase.configure);
             mDecoder.configure(inputFormat, null, null, 0);
+            mStats.getDecoderLifecycle().end(Phase.configure);
             Log.d(TAG, "MediaFormat (post-test)");
             logMediaFormat(mDecoder.getInputFormat());
             mStats.setDecoderMediaFormat(mDecoder.getInputFormat());
@@ -123,7 +127,9 @@ class BufferDecoder extends Encoder {
 
         try {
             Log.d(TAG, "Start decoder");
+            mStats.getDecoderLifecycle().begin(Phase.start);
             mDecoder.start();
+            mStats.getDecoderLifecycle().end(Phase.start);
         } catch (Exception ex) {
             Log.e(TAG, "Start failed: " + ex.getMessage());
             return "Start decoding failed";
@@ -142,17 +148,12 @@ class BufferDecoder extends Encoder {
         }
         mKeepInterval = mReferenceFrameRate / mFrameRate;
 
-        //mInitDone = true;
-        synchronized (this) {
-            Log.d(TAG, "Wait for synchronized start");
-            try {
-                mInitDone = true;
-                wait(WAIT_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        waitForStart();
         mFrameTimeUsec = calculateFrameTimingUsec(mFrameRate);
+        if (mTest.hasFrameHashes() && mTest.getFrameHashes().getDecoded()) {
+            mHasher = new FrameHasher(mTest.getFrameHashes().getThreads());
+            mStats.setDecodedHasher(mHasher);
+        }
         mStats.start();
         try {
             // start decoding frames
@@ -161,6 +162,7 @@ class BufferDecoder extends Encoder {
             e.printStackTrace();
         }
         mStats.stop();
+        finishHasher();
 
         try {
             if (mCodec != null) {
@@ -170,8 +172,12 @@ class BufferDecoder extends Encoder {
             }
             if (mDecoder != null) {
                 mDecoder.flush();
+                mStats.getDecoderLifecycle().begin(Phase.stop);
                 mDecoder.stop();
+                mStats.getDecoderLifecycle().end(Phase.stop);
+                mStats.getDecoderLifecycle().begin(Phase.release);
                 mDecoder.release();
+                mStats.getDecoderLifecycle().end(Phase.release);
             }
         } catch (IllegalStateException iex) {
             Log.e(TAG, "Failed to shut down:" + iex.getLocalizedMessage());
@@ -208,8 +214,7 @@ class BufferDecoder extends Encoder {
         boolean outputDone = false;
         boolean inputDone = false;
         int currentLoop = 1;
-        MediaFormat currentOutputFormat = mDecoder.getOutputFormat();
-        Dictionary<String, Object> latestFrameChanges = null;
+        mDecoderFormatTracker.setFormat(mDecoder.getOutputFormat());
         mLastTime = SystemClock.elapsedRealtimeNanos() / 1000;
         while (!outputDone) {
             int index;
@@ -285,11 +290,7 @@ class BufferDecoder extends Encoder {
                 if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
                     // no output available yet
                 } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                    if (Build.VERSION.SDK_INT >= 29) {
-                        MediaFormat oformat = mDecoder.getOutputFormat();
-                        latestFrameChanges = mediaFormatComparison(currentOutputFormat, oformat);
-                        currentOutputFormat = oformat;
-                    }
+                    mDecoderFormatTracker.onFormatChanged(mDecoder.getOutputFormat());
                 } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
                     MediaFormat newFormat = mDecoder.getOutputFormat();
                 } else if(index >= 0) {
@@ -303,8 +304,7 @@ class BufferDecoder extends Encoder {
                         int limit = outputBuf.limit();
                         if(limit != 0) {
                             FrameInfo frameInfo = mStats.stopDecodingFrame(info.presentationTimeUs);
-                            frameInfo.addInfo(latestFrameChanges);
-                            latestFrameChanges = null;
+                            frameInfo.addInfo(mDecoderFormatTracker.takeChanges());
 
                             outputBuf.position(info.offset);
                             outputBuf.limit(info.offset + info.size);
@@ -314,6 +314,7 @@ class BufferDecoder extends Encoder {
                                     fo.write(outData);
                                 }
                             }
+                            hashDecoded(index, info);
                         }
                     }
                     try {
@@ -330,6 +331,28 @@ class BufferDecoder extends Encoder {
         Log.d(TAG, "Decoding done, leaving decoded: " + mStats.getDecodedFrameCount());
     }
 
+    /**
+     * Hash the visible samples of a decoded frame, or the whole buffer if
+     * there is no image for it.
+     */
+    private void hashDecoded(int index, MediaCodec.BufferInfo info) {
+        if (mHasher == null || info.size <= 0) {
+            return;
+        }
+        Image image = null;
+        try {
+            image = mDecoder.getOutputImage(index);
+        } catch (IllegalStateException ex) {
+            Log.e(TAG, "No output image: " + ex.getMessage());
+        }
+        if (image != null) {
+            mHasher.hashImage(info.presentationTimeUs, image);
+            image.close();
+        } else {
+            mHasher.hash(info.presentationTimeUs, mDecoder.getOutputBuffer(index), info.offset, info.size);
+        }
+    }
+
     public void stopAllActivity(){}
 
     public void release() {
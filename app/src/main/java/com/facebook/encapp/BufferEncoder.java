@@ -1,7 +1,6 @@
 package com.facebook.encapp;
 
 import static com.facebook.encapp.utils.MediaCodecInfoHelper.getMediaFormatValueFromKey;
-import static com.facebook.encapp.utils.MediaCodecInfoHelper.mediaFormatComparison;
 
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
@@ -13,6 +12,8 @@ import android.util.Size;
 import androidx.annotation.NonNull;
 
 import com.facebook.encapp.proto.Test;
+import com.facebook.encapp.utils.ChannelEmulator;
+import com.facebook.encapp.utils.CodecLifecycle.Phase;
 import com.facebook.encapp.utils.FileReader;
 import com.facebook.encapp.utils.FrameInfo;
 import com.facebook.encapp.utils.SizeUtils;
@@ -21,7 +22,6 @@ import com.facebook.encapp.utils.TestDefinitionHelper;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.Locale;
 import java.util.Set;
@@ -58,14 +58,25 @@ class BufferEncoder extends Encoder {
         mSkipped = 0;
         mFramesAdded = 0;
         Size sourceResolution = SizeUtils.parseXString(mTest.getInput().getResolution());
-        // TODO(chema): this assumes 4:2:0 subsampling, and therefore YUV
-        mRefFramesizeInBytes = (int) (sourceResolution.getWidth() *
-                sourceResolution.getHeight() * 1.5);
-        mYuvReader = new FileReader();
+        // raw frames are scaled to the configured resolution
+        Size encodeResolution = SizeUtils.parseXString(mTest.getConfigure().getResolution());
+        if (encodeResolution == null) {
+            encodeResolution = sourceResolution;
+        }
+        mRefFramesizeInBytes = FileReader.getFrameSize(mTest.getInput().getPixFmt(),
+                encodeResolution.getWidth(), encodeResolution.getHeight());
+        mYuvReader = createReader(sourceResolution.getWidth(), sourceResolution.getHeight(),
+                encodeResolution.getWidth(), encodeResolution.getHeight());
 
         if (!mYuvReader.openFile(checkFilePath(mTest.getInput().getFilepath()), mTest.getInput().getPixFmt())) {
             return "Could not open file";
         }
+        preloadInput();
+
+        if (!createChannel()) {
+            return "Could not read channel trace";
+        }
+        createController();
 
         MediaFormat mediaFormat;
         boolean useImage = false;
@@ -80,7 +91,9 @@ class BufferEncoder extends Encoder {
                 Log.d(TAG, "codec: " + mTest.getConfigure().getCodec() + " mime: " + mTest.getConfigure().getMime());
             }
             Log.d(TAG, "Create codec by name: " + mTest.getConfigure().getCodec());
-            mCodec = MediaCodec.createByCodecName(mTest.getConfigure().getCodec());
+            mStats.getEncoderLifecycle().begin(Phase.create);
+            mCodec = acquireCodec();
+            mStats.getEncoderLifecycle().end(Phase.create);
 
             mediaFormat = TestDefinitionHelper.buildMediaFormat(mTest);
             Log.d(TAG, "MediaFormat (mTest)");
@@ -93,11 +106,13 @@ class BufferEncoder extends Encoder {
             }
             Log.d(TAG, "useImage: " + useImage);
             Log.d(TAG, "Configure: " + mCodec.getName());
+            mStats.getEncoderLifecycle().begin(Phase.configure);
             mCodec.configure(
                     mediaFormat,
                     null /* surface */,
                     null /* crypto */,
                     MediaCodec.CONFIGURE_FLAG_ENCODE);
+            mStats.getEncoderLifecycle().end(Phase.configure);
             Log.d(TAG, "MediaFormat (post-mTest)");
             logMediaFormat(mCodec.getInputFormat());
             mStats.setEncoderMediaFormat(mCodec.getInputFormat());
@@ -116,11 +131,16 @@ class BufferEncoder extends Encoder {
 
         try {
             Log.d(TAG, "Start encoder");
+            mStats.getEncoderLifecycle().begin(Phase.start);
             mCodec.start();
+            mStats.getEncoderLifecycle().end(Phase.start);
         } catch (Exception ex) {
             Log.e(TAG, "Start failed: " + ex.getMessage());
             return "Start encoding failed";
         }
+        createLoopback(encodeResolution.getWidth(), encodeResolution.getHeight());
+        createAnalyzer();
+        createHasher();
 
         float mReferenceFrameRate = mTest.getInput().getFramerate();
         mKeepInterval = mReferenceFrameRate / mFrameRate;
@@ -140,19 +160,10 @@ class BufferEncoder extends Encoder {
         int current_loop = 1;
         boolean input_done = false;
         boolean output_done = false;
-        synchronized (this) {
-            Log.d(TAG, "Wait for synchronized start");
-            try {
-                mInitDone = true;
-                wait(WAIT_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        waitForStart();
         mStats.start();
         int failures = 0;
-        MediaFormat currentOutputFormat = mCodec.getOutputFormat();
-        Dictionary<String, Object> latestFrameChanges = null;
+        mOutputFormatTracker.setFormat(mCodec.getOutputFormat());
         while (!input_done || !output_done) {
             int index;
             if (mFramesAdded % 100 == 0) {
@@ -254,11 +265,7 @@ class BufferEncoder extends Encoder {
                         }
                         // otherwise ignore
                     } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                        if (Build.VERSION.SDK_INT >= 29) {
-                            MediaFormat oformat = mCodec.getOutputFormat();
-                            latestFrameChanges = mediaFormatComparison(currentOutputFormat, oformat);
-                            currentOutputFormat = oformat;
-                        }
+                        mOutputFormatTracker.onFormatChanged(mCodec.getOutputFormat());
                     } else if (index >= 0) {
                         if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
                             MediaFormat oformat = mCodec.getOutputFormat();
@@ -267,6 +274,8 @@ class BufferEncoder extends Encoder {
                                 mVideoTrack = mMuxer.addTrack(oformat);
                                 mMuxer.start();
                             }
+                            analyze(index, info, null);
+                            loopback(index, info, null, null);
                             mCodec.releaseOutputBuffer(index, false /* render */);
                         } else if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
                             output_done = true;
@@ -274,12 +283,17 @@ class BufferEncoder extends Encoder {
                             FrameInfo frameInfo = mStats.stopEncodingFrame(info.presentationTimeUs, info.size,
                                     (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0);
                             ++mOutFramesCount;
-                            frameInfo.addInfo(latestFrameChanges);
-                            latestFrameChanges = null;
-                            if (mMuxer != null && mVideoTrack != -1) {
+                            frameInfo.addInfo(mOutputFormatTracker.takeChanges());
+                            analyze(index, info, frameInfo);
+                            hashEncoded(index, info);
+                            // frames lost in the channel are neither written nor decoded
+                            ChannelEmulator.Frame sent = sendToChannel(info, frameInfo);
+                            if ((sent == null || !sent.isDropped()) && mMuxer != null && mVideoTrack != -1) {
                                 ByteBuffer data = mCodec.getOutputBuffer(index);
                                 mMuxer.writeSampleData(mVideoTrack, data, info);
                             }
+                            loopback(index, info, frameInfo, sent);
+                            controlBitrate(info, frameInfo, sent);
                             mCodec.releaseOutputBuffer(index, false /* render */);
                             mCurrentTimeSec = info.presentationTimeUs / 1000000.0;
                         }
@@ -296,11 +310,17 @@ class BufferEncoder extends Encoder {
             }
         }
         mStats.stop();
+        finishLoopback();
+        finishHasher();
 
         Log.d(TAG, "Close muxer and streams");
         if (mCodec != null) {
+            mStats.getEncoderLifecycle().begin(Phase.stop);
             mCodec.stop();
-            mCodec.release();
+            mStats.getEncoderLifecycle().end(Phase.stop);
+            mStats.getEncoderLifecycle().begin(Phase.release);
+            recycleCodec();
+            mStats.getEncoderLifecycle().end(Phase.release);
         }
         if (mMuxer != null) {
             try {
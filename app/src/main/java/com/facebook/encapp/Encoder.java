@@ -1,13 +1,10 @@
 package com.facebook.encapp;
 
 import static com.facebook.encapp.utils.MediaCodecInfoHelper.getMediaFormatValueFromKey;
-import static com.facebook.encapp.utils.MediaCodecInfoHelper.mediaFormatComparison;
 
 import android.graphics.ImageFormat;
 import android.media.Image;
 import android.media.MediaCodec;
-import android.media.MediaCodecInfo;
-import android.media.MediaCodecList;
 import android.media.MediaFormat;
 import android.media.MediaMuxer;
 import android.os.Build;
@@ -17,30 +14,54 @@ import android.util.Log;
 import android.os.SystemClock;
 import androidx.annotation.NonNull;
 
+import com.facebook.encapp.proto.BitrateControl;
+import com.facebook.encapp.proto.Channel;
 import com.facebook.encapp.proto.Configure;
 import com.facebook.encapp.proto.DataValueType;
+import com.facebook.encapp.proto.PixFmt;
 import com.facebook.encapp.proto.Runtime;
+import com.facebook.encapp.proto.Scaler;
 import com.facebook.encapp.proto.Test;
 import com.facebook.encapp.utils.Assert;
+import com.facebook.encapp.utils.BitrateController;
+import com.facebook.encapp.utils.BitstreamAnalyzer;
+import com.facebook.encapp.utils.BufferBasedController;
+import com.facebook.encapp.utils.ChannelEmulator;
 import com.facebook.encapp.utils.CliSettings;
+import com.facebook.encapp.utils.CodecIndex;
+import com.facebook.encapp.utils.CodecPool;
+import com.facebook.encapp.utils.DelayBasedController;
 import com.facebook.encapp.utils.FileReader;
+import com.facebook.encapp.utils.FormatChangeTracker;
 import com.facebook.encapp.utils.FpsMeasure;
 import com.facebook.encapp.utils.FrameBuffer;
+import com.facebook.encapp.utils.FrameHasher;
 import com.facebook.encapp.utils.FrameInfo;
+import com.facebook.encapp.utils.FrameScaler;
+import com.facebook.encapp.utils.LoopbackDecoder;
 import com.facebook.encapp.utils.MediaCodecInfoHelper;
+import com.facebook.encapp.utils.PrefetchReader;
+import com.facebook.encapp.utils.ScalingReader;
+import com.facebook.encapp.utils.SharedFrameReader;
 import com.facebook.encapp.utils.Statistics;
+import com.facebook.encapp.utils.SyntheticReader;
 import com.facebook.encapp.utils.TestDefinitionHelper;
+import com.facebook.encapp.utils.Y4mReader;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.ByteBuffer;
-import java.util.Dictionary;
+import java.nio.charset.StandardCharsets;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.Vector;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public abstract class Encoder {
     protected static final String TAG = "encapp.encoder";
@@ -75,10 +96,32 @@ public abstract class Encoder {
 
     int mOutFramesCount = 0;
     int mInFramesCount = 0;
-    boolean mInitDone = false;
+    volatile boolean mInitDone = false;
+    // released when the codec is configured and ready to run
+    final CountDownLatch mInitLatch = new CountDownLatch(1);
+    // released when all tests in a parallel group are ready
+    final CountDownLatch mStartLatch = new CountDownLatch(1);
+    // released when the input has been read, i.e. the codec is draining
+    final CountDownLatch mInputDoneLatch = new CountDownLatch(1);
+    // set up while the previous test is running, see setPipelined()
+    boolean mPipelined = false;
+    static final int PRELOAD_MAX_BYTES = 32 * 1024 * 1024;
     DataWriter mDataWriter;
     FpsMeasure mFpsMeasure;
+    // output format changes, updated from the codec format change events
+    final FormatChangeTracker mOutputFormatTracker = new FormatChangeTracker(false);
+    final FormatChangeTracker mDecoderFormatTracker = new FormatChangeTracker(true);
     boolean mStable = true;
+    // decodes the encoded frames in process, see createLoopback()
+    LoopbackDecoder mLoopback;
+    // emulated network link for the encoded frames, see createChannel()
+    ChannelEmulator mChannel;
+    // adapts the encoder to the feedback of every frame, see createController()
+    BitrateController mController;
+    // parses the encoded frames, see createAnalyzer()
+    BitstreamAnalyzer mAnalyzer;
+    // hashes the encoded frames, see createHasher()
+    FrameHasher mHasher;
 
     public Encoder(Test test) {
         mTest = test;
@@ -101,8 +144,12 @@ public abstract class Encoder {
         return mStable;
     }
 
-    public String checkFilePath(String path) {
+    public static String checkFilePath(String path) {
         Log.d(TAG, "checkFilePath(\"" + path + "\")");
+        if (SyntheticReader.isSynthetic(path)) {
+            // generated, not a file
+            return path;
+        }
         // check for absolute paths
         File file = new File(path);
         if (file.isAbsolute()) {
@@ -163,6 +210,395 @@ public abstract class Encoder {
         return mInitDone;
     }
 
+    /**
+     * Signal that init is done (or has failed), releases awaitInit().
+     */
+    public void setInitDone() {
+        mInitDone = true;
+        mInitLatch.countDown();
+    }
+
+    public boolean awaitInit(long timeoutMs) throws InterruptedException {
+        return mInitLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A pipelined coder is set up while the previous test is still running.
+     * It waits for startProcessing() and pre-reads the beginning of the
+     * input while waiting.
+     */
+    public void setPipelined(boolean pipelined) {
+        mPipelined = pipelined;
+    }
+
+    public void setInputDone() {
+        mInputDoneLatch.countDown();
+    }
+
+    public void awaitInputDone() throws InterruptedException {
+        mInputDoneLatch.await();
+    }
+
+    /**
+     * @return the reader of the raw input, frames are generated for synthetic input,
+     * shared with other tests reading the same input at the same time and read
+     * ahead if input.prefetch_frames is set
+     */
+    protected FileReader createReader(int width, int height) {
+        return createReader(width, height, width, height);
+    }
+
+    /**
+     * @return the reader of the raw input scaled to scaledWidth x scaledHeight
+     * with input.scaler, mRefFramesizeInBytes is the size of the scaled frames
+     */
+    protected FileReader createReader(int width, int height, int scaledWidth, int scaledHeight) {
+        if (SyntheticReader.isSynthetic(mTest.getInput().getFilepath())) {
+            // generated at the size asked for
+            return new SyntheticReader(scaledWidth, scaledHeight);
+        }
+        SharedFrameReader.ReaderFactory factory;
+        if (Y4mReader.isY4m(mTest.getInput().getFilepath())) {
+            int startFrame = mTest.getInput().getStartFrame();
+            factory = () -> {
+                Y4mReader y4mReader = new Y4mReader();
+                y4mReader.setStartFrame(startFrame);
+                return y4mReader;
+            };
+        } else {
+            factory = () -> {
+                FileReader fileReader = new FileReader();
+                fileReader.setResolution(width, height);
+                return fileReader;
+            };
+        }
+        boolean scaled = scaledWidth != width || scaledHeight != height;
+        // frames are shared before scaling, so all resolutions read the input once
+        int inputFramesize = scaled ?
+                FileReader.getFrameSize(mTest.getInput().getPixFmt(), width, height) : mRefFramesizeInBytes;
+        SharedFrameReader shared = new SharedFrameReader(factory, inputFramesize,
+                width + "x" + height + ":" + mTest.getInput().getStartFrame());
+        mStats.setSharedInput(shared);
+        FileReader reader = shared;
+        if (scaled) {
+            FrameScaler.Filter filter = (mTest.getInput().getScaler() == Scaler.bilinear) ?
+                    FrameScaler.Filter.BILINEAR : FrameScaler.Filter.AREA;
+            ScalingReader scaler = new ScalingReader(shared, width, height, scaledWidth, scaledHeight, filter);
+            mStats.setInputScaler(scaler);
+            reader = scaler;
+        }
+        if (mTest.getInput().getPrefetchFrames() > 0) {
+            PrefetchReader prefetch = new PrefetchReader(reader, mTest.getInput().getPrefetchFrames(),
+                    mRefFramesizeInBytes);
+            mStats.setInputPrefetch(prefetch);
+            return prefetch;
+        }
+        return reader;
+    }
+
+    /**
+     * Pre-read about one second of raw input when pipelined. The reader
+     * releases the memory once these frames have been encoded.
+     */
+    protected void preloadInput() {
+        if (!mPipelined || mYuvReader == null) {
+            return;
+        }
+        long frames = Math.max((long) mTest.getInput().getFramerate(), 1);
+        int bytes = (int) Math.min(frames * mRefFramesizeInBytes, PRELOAD_MAX_BYTES);
+        int read = mYuvReader.preload(bytes);
+        Log.d(TAG, mTest.getCommon().getId() + " - Preloaded " + read + " bytes of input");
+    }
+
+    /**
+     * Decode the encoded frames in process if the test has a loopback.
+     * Call when the encoder is started.
+     */
+    protected void createLoopback(int width, int height) {
+        if (!mTest.hasLoopback()) {
+            return;
+        }
+        mLoopback = new LoopbackDecoder(mTest, mStats, width, height, mFrameRate);
+        mStats.setLoopback(mLoopback);
+    }
+
+    /**
+     * Queue an encoder output buffer into the loopback decoder, if any.
+     *
+     * @param frameInfo the encoded frame, its start is the source time when
+     *                  the source frame was not seen (e.g. surface input)
+     * @param sent      the frame sent through the channel, null if none,
+     *                  frames lost in the channel are not decoded
+     */
+    protected void loopback(int index, MediaCodec.BufferInfo info, FrameInfo frameInfo,
+                            ChannelEmulator.Frame sent) {
+        if (mLoopback == null) {
+            return;
+        }
+        if (sent != null && sent.isDropped()) {
+            mLoopback.dropFrame(info.presentationTimeUs);
+            return;
+        }
+        long sourceTimeNs = (frameInfo != null) ? frameInfo.getStartTime() : 0;
+        long deliveryNs = (sent != null) ? sent.getDeliveryNs() : 0;
+        mLoopback.queue(mCodec.getOutputFormat(), mCodec.getOutputBuffer(index), info,
+                sourceTimeNs, deliveryNs);
+    }
+
+    /**
+     * Set up the bitstream analyzer if the test has bitstream analysis.
+     * Call after the codec is created, when the mime is known.
+     */
+    protected void createAnalyzer() {
+        if (!mTest.hasBitstreamAnalysis()) {
+            return;
+        }
+        mAnalyzer = BitstreamAnalyzer.forMime(mTest.getConfigure().getMime());
+        if (mAnalyzer == null) {
+            Log.w(TAG, "No bitstream analysis for " + mTest.getConfigure().getMime());
+            return;
+        }
+        mStats.setBitstreamAnalyzer(mAnalyzer);
+    }
+
+    /**
+     * Parse an encoder output buffer, if there is an analyzer, and add what
+     * was found to the frame info. The buffer is read in place.
+     */
+    protected void analyze(int index, MediaCodec.BufferInfo info, FrameInfo frameInfo) {
+        if (mAnalyzer == null) {
+            return;
+        }
+        boolean config = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+        mAnalyzer.parse(mCodec.getOutputBuffer(index), info.offset, info.size,
+                info.presentationTimeUs, config);
+        if (config || frameInfo == null || !mTest.getBitstreamAnalysis().getFrameInfo()) {
+            return;
+        }
+        frameInfo.putInfo("frame_type", mAnalyzer.getFrameType());
+        frameInfo.putInfo("temporal_id", mAnalyzer.getTemporalId());
+        frameInfo.putInfo("qp", mAnalyzer.getQp());
+        frameInfo.putInfo("reference", mAnalyzer.isReference() ? 1 : 0);
+        frameInfo.putInfo("ltr_mark", mAnalyzer.isLtrMark() ? 1 : 0);
+        frameInfo.putInfo("ltr_use", mAnalyzer.isLtrUse() ? 1 : 0);
+        frameInfo.putInfo("header_bytes", mAnalyzer.getHeaderBytes());
+        frameInfo.putInfo("payload_bytes", mAnalyzer.getPayloadBytes());
+    }
+
+    /**
+     * Hash the encoded frames if the test has frame hashes.
+     */
+    protected void createHasher() {
+        if (!mTest.hasFrameHashes() || !mTest.getFrameHashes().getEncoded()) {
+            return;
+        }
+        mHasher = new FrameHasher(mTest.getFrameHashes().getThreads());
+        mStats.setEncodedHasher(mHasher);
+    }
+
+    /**
+     * Hash an encoder output buffer, if there is a hasher. The buffer is
+     * copied, it can be released when this returns.
+     */
+    protected void hashEncoded(int index, MediaCodec.BufferInfo info) {
+        if (mHasher == null) {
+            return;
+        }
+        mHasher.hash(info.presentationTimeUs, mCodec.getOutputBuffer(index), info.offset, info.size);
+    }
+
+    private static Reader openTrace(String path) throws IOException {
+        return new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Set up the emulated network link if the test has a channel.
+     *
+     * @return false if a trace could not be read
+     */
+    protected boolean createChannel() {
+        if (!mTest.hasChannel()) {
+            return true;
+        }
+        Channel channel = mTest.getChannel();
+        ChannelEmulator.LossUnit unit = (channel.getLossUnit() == Channel.LossUnit.frame) ?
+                ChannelEmulator.LossUnit.FRAME : ChannelEmulator.LossUnit.PACKET;
+        mChannel = new ChannelEmulator(channel.getSeed())
+                .setBurst(channel.getBurstBytes())
+                .setDelay(channel.getDelayMs() * 1000000L, channel.getJitterMs() * 1000000L)
+                .setMaxQueueDelay(channel.getMaxQueueMs() * 1000000L)
+                .setMtu(channel.getMtu())
+                .setLoss(channel.getLoss(), unit);
+        if (channel.hasBandwidth()) {
+            mChannel.setBandwidth(TestDefinitionHelper.magnitudeToInt(channel.getBandwidth()));
+        }
+        try {
+            if (channel.hasBandwidthTrace()) {
+                try (Reader trace = openTrace(checkFilePath(channel.getBandwidthTrace()))) {
+                    mChannel.setBandwidthTrace(trace);
+                }
+            }
+            if (channel.hasLossTrace()) {
+                try (Reader trace = openTrace(checkFilePath(channel.getLossTrace()))) {
+                    mChannel.setLossTrace(trace, unit);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read channel trace: " + e.getMessage());
+            return false;
+        }
+        mStats.setChannel(mChannel);
+        return true;
+    }
+
+    /**
+     * Send an encoded frame through the channel, if any, and add what
+     * happened to it to the frame info.
+     *
+     * @return the sent frame, null when there is no channel
+     */
+    protected ChannelEmulator.Frame sendToChannel(MediaCodec.BufferInfo info, FrameInfo frameInfo) {
+        if (mChannel == null) {
+            return null;
+        }
+        ChannelEmulator.Frame sent = mChannel.send(info.presentationTimeUs, info.size,
+                SystemClock.elapsedRealtimeNanos());
+        if (frameInfo != null) {
+            frameInfo.putInfo("channel_queue_delay", sent.getQueueDelayNs());
+            frameInfo.putInfo("channel_delay", sent.getDelayNs());
+            frameInfo.putInfo("channel_lost_packets", sent.getLostPackets());
+            frameInfo.putInfo("channel_dropped", sent.isDropped() ? 1 : 0);
+        }
+        return sent;
+    }
+
+    /**
+     * Set up the bitrate controller if the test has bitrate control. Call
+     * after the frame rate is known.
+     */
+    protected void createController() {
+        if (!mTest.hasBitrateControl()) {
+            return;
+        }
+        BitrateControl control = mTest.getBitrateControl();
+        int start = TestDefinitionHelper.magnitudeToInt(mTest.getConfigure().getBitrate());
+        int min = TestDefinitionHelper.magnitudeToInt(control.getMinBitrate());
+        int max = control.hasMaxBitrate() ?
+                TestDefinitionHelper.magnitudeToInt(control.getMaxBitrate()) : start;
+        long syncIntervalNs = control.getSyncIntervalMs() * 1000000L;
+        switch (control.getAlgorithm()) {
+            case buffer_based:
+                mController = new BufferBasedController(start, min, max,
+                        control.getLowDelayMs() * 1000000L, control.getHighDelayMs() * 1000000L,
+                        mFrameRate, syncIntervalNs);
+                break;
+            default:
+                mController = new DelayBasedController(start, min, max, syncIntervalNs);
+        }
+        Log.d(TAG, "Bitrate control: " + mController.getName() + ", " + min + " - " + max + " bps");
+        mStats.setBitrateController(mController.getName());
+    }
+
+    /**
+     * Give the controller the feedback of an encoded frame and apply its
+     * decision, which is added to the frame info.
+     *
+     * @param sent the frame in the channel, null without a channel
+     */
+    protected void controlBitrate(MediaCodec.BufferInfo info, FrameInfo frameInfo,
+                                  ChannelEmulator.Frame sent) {
+        if (mController == null || frameInfo == null ||
+                (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+            return;
+        }
+        BitrateController.Feedback feedback = new BitrateController.Feedback();
+        feedback.mPts = info.presentationTimeUs;
+        feedback.mSize = info.size;
+        feedback.mKeyFrame = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        feedback.mLatencyNs = frameInfo.getProcessingTime();
+        feedback.mQueueDepth = Math.max(mFramesAdded - mOutFramesCount, 0);
+        if (sent != null) {
+            feedback.mQueueDelayNs = sent.getQueueDelayNs();
+            feedback.mSendTimeNs = sent.getArrivalNs();
+            feedback.mArrivalTimeNs = sent.getDeliveryNs();
+            feedback.mLost = sent.isDropped();
+        } else {
+            // the encoder is the link
+            feedback.mSendTimeNs = frameInfo.getStartTime();
+            feedback.mArrivalTimeNs = frameInfo.getStopTime();
+        }
+        // the feedback is immediate, the channel delay is not added
+        feedback.mTimeNs = SystemClock.elapsedRealtimeNanos();
+        BitrateController.Decision decision = mController.onFrame(feedback);
+        if (decision != null) {
+            applyDecision(decision, frameInfo);
+        }
+    }
+
+    private void applyDecision(BitrateController.Decision decision, FrameInfo frameInfo) {
+        Bundle bundle = new Bundle();
+        if (decision.getBitrate() > 0) {
+            bundle.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, decision.getBitrate());
+            mStats.setTargetBitrate(decision.getBitrate());
+            frameInfo.putInfo("controller_bitrate", decision.getBitrate());
+        }
+        if (decision.isRequestSync()) {
+            bundle.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+            frameInfo.putInfo("controller_sync", 1);
+        }
+        if (decision.getFramerate() > 0) {
+            setDynamicFramerate(decision.getFramerate());
+            frameInfo.putInfo("controller_framerate", decision.getFramerate());
+        }
+        frameInfo.putInfo("controller_state", decision.getReason());
+        mStats.addBitrateDecision(decision);
+        if (bundle.keySet().size() > 0 && mCodec != null) {
+            try {
+                mCodec.setParameters(bundle);
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Failed to apply bitrate decision: " + e.getMessage());
+            }
+        }
+    }
+
+    protected void finishLoopback() {
+        if (mLoopback != null) {
+            mLoopback.finish();
+        }
+    }
+
+    protected void finishHasher() {
+        if (mHasher != null) {
+            mHasher.finish();
+        }
+    }
+
+    /**
+     * Release the coder to start processing, see waitForStart().
+     */
+    public void startProcessing() {
+        mStartLatch.countDown();
+    }
+
+    /**
+     * Called by the coder when it is configured. Blocks until startProcessing()
+     * is called, or at most WAIT_TIME_MS. A pipelined coder is released when
+     * the previous test has drained, which does not take longer than that.
+     */
+    protected void waitForStart() {
+        mStats.stopSetup();
+        setInitDone();
+        Log.d(TAG, "Wait for synchronized start");
+        try {
+            if (!mStartLatch.await(WAIT_TIME_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, mTest.getCommon().getId() + " - No start signal within " + WAIT_TIME_MS +
+                        " ms" + (mPipelined ? ", the previous test did not finish" : "") + ", start anyway");
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
     protected MediaMuxer createMuxer(MediaCodec encoder, MediaFormat format, boolean useStatId) {
         if (!useStatId) {
             Log.d(TAG, "Bitrate mode: " + (format.containsKey(MediaFormat.KEY_BITRATE_MODE) ? format.getInteger(MediaFormat.KEY_BITRATE_MODE) : 0));
@@ -213,27 +649,51 @@ public abstract class Encoder {
         return mFilename;
     }
 
-    @NonNull
-    protected Vector<MediaCodecInfo> getMediaCodecInfos(MediaCodecInfo[] codecInfos, String id) {
-        Vector<MediaCodecInfo> matching = new Vector<>();
-        for (MediaCodecInfo info : codecInfos) {
-            //Handle special case of codecs with naming schemes consisting of substring of another
+    /**
+     * @return true if the encoder is driven by a callback rather than by
+     * the synchronous dequeue calls
+     */
+    protected boolean usesCallback() {
+        return false;
+    }
 
-            if (info.isEncoder()) {
-                if (info.getSupportedTypes().length > 0 &&
-                        info.getSupportedTypes()[0].toLowerCase(Locale.US).contains("video")) {
-                    if (info.getName().toLowerCase(Locale.US).equals(id.toLowerCase(Locale.US))) {
-                        //Break on exact match
-                        matching.clear();
-                        matching.add(info);
-                        break;
-                    } else if (info.getName().toLowerCase(Locale.US).contains(id.toLowerCase(Locale.US))) {
-                        matching.add(info);
-                    }
-                }
+    /**
+     * Create the encoder, or take a stopped one from the pool if the test
+     * allows codec reuse.
+     */
+    protected MediaCodec acquireCodec() throws IOException {
+        Configure config = mTest.getConfigure();
+        MediaCodec codec = null;
+        if (config.getReuseCodec()) {
+            codec = CodecPool.take(config.getCodec(), config.getMime(), usesCallback());
+        }
+        mStats.setCodecReused(codec != null);
+        if (codec == null) {
+            codec = MediaCodec.createByCodecName(config.getCodec());
+        }
+        return codec;
+    }
+
+    /**
+     * Release the stopped encoder or keep it for the next test.
+     */
+    protected void recycleCodec() {
+        if (mCodec == null) {
+            return;
+        }
+        boolean reuse = mTest.getConfigure().getReuseCodec();
+        if (reuse) {
+            // the writer must not touch the codec once the next test owns it
+            mDataWriter.stopWriter();
+            try {
+                mDataWriter.join(WAIT_TIME_SHORT_MS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
             }
+            reuse = !mDataWriter.isAlive();
         }
-        return matching;
+        Configure config = mTest.getConfigure();
+        CodecPool.recycle(mCodec, config.getCodec(), config.getMime(), usesCallback(), reuse);
     }
 
     public Statistics getStatistics() {
@@ -243,20 +703,17 @@ public abstract class Encoder {
         return mStats;
     }
 
-    protected Test setCodecNameAndIdentifier(Test test) throws Exception {
+    protected static Test setCodecNameAndIdentifier(Test test) throws Exception {
         String partialName = test.getConfigure().getCodec();
-        MediaCodecList codecList = new MediaCodecList(MediaCodecList.ALL_CODECS);
-
-        MediaCodecInfo[] codecInfos = codecList.getCodecInfos();
-        Log.d(TAG, "Searching for partialName: \"" + partialName + "\" in codecList");
-        Vector<MediaCodecInfo> matching = getMediaCodecInfos(codecInfos, partialName);
+        Log.d(TAG, "Searching for partialName: \"" + partialName + "\" in codec index");
+        List<CodecIndex.Entry> matching = CodecIndex.get().findVideoEncoders(partialName);
 
         if (matching.size() > 1) {
             StringBuilder sb = new StringBuilder();
             sb.append("\nMultiple matching codecs for partialName: \"" + partialName + "\" codecs_matching: " + matching.size() + " ");
             sb.append("{");
-            for (MediaCodecInfo info : matching) {
-                sb.append(info.getName() + " ");
+            for (CodecIndex.Entry entry : matching) {
+                sb.append(entry.name + " ");
             }
             sb.append("}");
             Log.e(TAG, sb.toString());
@@ -270,14 +727,14 @@ public abstract class Encoder {
             Configure configure = Configure.
                     newBuilder(test.
                             getConfigure())
-                    .setCodec(matching.get(0).getName())
-                    .setMime(matching.get(0).getSupportedTypes()[0]).build();
+                    .setCodec(matching.get(0).name)
+                    .setMime(matching.get(0).getFirstMime()).build();
             builder.setConfigure(configure);
             return builder.build();
         }
     }
 
-    protected void setConfigureParams(Test test, MediaFormat format) {
+    protected static void setConfigureParams(Test test, MediaFormat format) {
         List<Configure.Parameter> params = test.getConfigure().getParameterList();
         for (Configure.Parameter param : params) {
             switch (param.getType().getNumber()) {
@@ -298,7 +755,20 @@ public abstract class Encoder {
     }
 
     boolean doneReading(Test test, FileReader fileReader, int frame, double time, boolean loop) {
-        if (loop && !test.getInput().hasStoptimeSec() && !test.getInput().hasPlayoutFrames()) {
+        if (isDoneReading(test, fileReader, frame, time, loop)) {
+            setInputDone();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isDoneReading(Test test, FileReader fileReader, int frame, double time, boolean loop) {
+        if (mStats.isSteadyFramesReached()) {
+            // 0. stop the reader when enough steady state frames are collected
+            return true;
+        }
+        if (loop && !test.getInput().hasStoptimeSec() && !test.getInput().hasPlayoutFrames() &&
+                !test.getInput().hasSteadyFrames()) {
             // 1. stop the reading when reaching end of input file
             return true;
         }
@@ -332,8 +802,9 @@ public abstract class Encoder {
         Bundle bundle = new Bundle();
         for (Runtime.VideoBitrateParameter bitrate : mRuntimeParams.getVideoBitrateList()) {
             if (bitrate.getFramenum() == frame) {
-                bundle.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE,
-                        TestDefinitionHelper.magnitudeToInt(bitrate.getBitrate()));
+                int bps = TestDefinitionHelper.magnitudeToInt(bitrate.getBitrate());
+                bundle.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bps);
+                mStats.setTargetBitrate(bps);
                 break;
             }
         }
@@ -390,13 +861,20 @@ public abstract class Encoder {
         if (mRuntimeParams == null) return;
         for (Runtime.DynamicFramerateParameter rate : mRuntimeParams.getDynamicFramerateList()) {
             if (rate.getFramenum() == frame) {
-                mKeepInterval = mFrameRate / rate.getFramerate();
-                mFrameTimeUsec = calculateFrameTimingUsec(rate.getFramerate());
+                setDynamicFramerate(rate.getFramerate());
                 return;
             }
         }
     }
 
+    /**
+     * Encode at a lower rate than the input by dropping input frames.
+     */
+    void setDynamicFramerate(float rate) {
+        mKeepInterval = mFrameRate / rate;
+        mFrameTimeUsec = calculateFrameTimingUsec(rate);
+    }
+
 
     public boolean dropFromDynamicFramerate(int frame) {
         int currentFrameNbr = (int) ((float) (frame) / mKeepInterval);
@@ -413,6 +891,7 @@ public abstract class Encoder {
     protected int queueInputBufferEncoder(
             FileReader fileReader, MediaCodec codec, ByteBuffer byteBuffer, int index, int frameCount, int flags, int size, boolean useImage) {
         int read = 0;
+        long sourceTimeNs = SystemClock.elapsedRealtimeNanos();
         if (useImage) {
             // copy a frame to the Image
             Image image = mCodec.getInputImage(index);
@@ -442,6 +921,15 @@ public abstract class Encoder {
             mFramesAdded++;
             if (mRealtime) {
                 sleepUntilNextFrame();
+                // paced like a camera, the frame is captured now
+                sourceTimeNs = SystemClock.elapsedRealtimeNanos();
+            }
+            if (mLoopback != null) {
+                // only 8 bit 4:2:0 frames in the ByteBuffer can be compared
+                PixFmt pixFmt = fileReader.getBufferPixFmt();
+                boolean comparable = !useImage && pixFmt.getNumber() != PixFmt.rgba_VALUE &&
+                        !FileReader.is10Bit(pixFmt);
+                mLoopback.sourceFrame(ptsUsec, sourceTimeNs, comparable ? byteBuffer : null);
             }
             mStats.startEncodingFrame(ptsUsec, frameCount);
             codec.queueInputBuffer(index, 0 /* offset */, read, ptsUsec /* timeUs */, flags);
@@ -471,8 +959,6 @@ public abstract class Encoder {
 
         @Override
         public void run() {
-            MediaFormat currentOutputFormat = null;
-            Dictionary<String, Object> latestFrameChanges;
             while (!mDone) {
                 while (mEncodeBuffers.size() > 0) {
                     FrameBuffer frameBuffer = mEncodeBuffers.poll();
@@ -480,6 +966,7 @@ public abstract class Encoder {
                         Log.e(TAG, "Buffer empty");
                         continue;
                     }
+                    mStats.getLiveMetrics().dequeued();
 
                     if ((frameBuffer.mInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
                         MediaFormat oformat = mCodec.getOutputFormat();
@@ -490,10 +977,9 @@ public abstract class Encoder {
                             Log.d(TAG, "Start muxer, track = " + mVideoTrack);
                             mMuxer.start();
                         }
+                        analyze(frameBuffer.mBufferId, frameBuffer.mInfo, null);
+                        loopback(frameBuffer.mBufferId, frameBuffer.mInfo, null, null);
                         mCodec.releaseOutputBuffer(frameBuffer.mBufferId, false /* render */);
-                        if (currentOutputFormat == null) {
-                           currentOutputFormat =  mCodec.getOutputFormat();
-                        }
                     } else {
                         if ((frameBuffer.mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
                             Log.d(TAG, "End of stream: ");
@@ -509,16 +995,19 @@ public abstract class Encoder {
                                 FrameInfo info =  mStats.stopEncodingFrame(timestampUsec, frameBuffer.mInfo.size,
                                         (frameBuffer.mInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0);
                                 ++mOutFramesCount;
-                                if (Build.VERSION.SDK_INT >= 29) {
-                                    MediaFormat oformat = mCodec.getOutputFormat();
-                                    latestFrameChanges = mediaFormatComparison(currentOutputFormat, oformat);
-                                    currentOutputFormat = oformat;
-                                    info.addInfo(latestFrameChanges);
+                                if (frameBuffer.mFormatChanges != null && info != null) {
+                                    info.addInfo(frameBuffer.mFormatChanges);
                                 }
-                                if (mMuxer != null && mVideoTrack != -1) {
+                                analyze(frameBuffer.mBufferId, frameBuffer.mInfo, info);
+                                hashEncoded(frameBuffer.mBufferId, frameBuffer.mInfo);
+                                // frames lost in the channel are neither written nor decoded
+                                ChannelEmulator.Frame sent = sendToChannel(frameBuffer.mInfo, info);
+                                if ((sent == null || !sent.isDropped()) && mMuxer != null && mVideoTrack != -1) {
                                     ByteBuffer data = mCodec.getOutputBuffer(frameBuffer.mBufferId);
                                     mMuxer.writeSampleData(mVideoTrack, data, frameBuffer.mInfo);
                                 }
+                                loopback(frameBuffer.mBufferId, frameBuffer.mInfo, info, sent);
+                                controlBitrate(frameBuffer.mInfo, info, sent);
 
                                 mCodec.releaseOutputBuffer(frameBuffer.mBufferId, false /* render */);
                             } catch (Exception ise) {
@@ -545,7 +1034,14 @@ public abstract class Encoder {
         }
 
         public void addBuffer(MediaCodec codec, int id, MediaCodec.BufferInfo info) {
-            mEncodeBuffers.add(new FrameBuffer(codec, id, info));
+            FrameBuffer frameBuffer = new FrameBuffer(codec, id, info);
+            if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                // attach pending format changes to the first frame after the change
+                frameBuffer.mFormatChanges = mOutputFormatTracker.takeChanges();
+            }
+            // counted before the writer can take it, the depth never goes below 0
+            mStats.getLiveMetrics().queued();
+            mEncodeBuffers.add(frameBuffer);
             synchronized (mEncodeBuffers) {
                 mEncodeBuffers.notifyAll();
             }
@@ -571,6 +1067,7 @@ public abstract class Encoder {
 
         @Override
         public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            mOutputFormatTracker.onFormatChanged(format);
         }
     }
 
@@ -594,6 +1091,7 @@ public abstract class Encoder {
 
         @Override
         public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            mDecoderFormatTracker.onFormatChanged(format);
         }
     }
 }
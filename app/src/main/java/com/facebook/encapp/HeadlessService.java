@@ -0,0 +1,269 @@
+package com.facebook.encapp;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Process;
+import android.util.Log;
+
+import com.facebook.encapp.proto.Test;
+import com.facebook.encapp.proto.TestSuite;
+import com.facebook.encapp.utils.CliSettings;
+import com.facebook.encapp.utils.CodecPool;
+import com.facebook.encapp.utils.MemoryLoad;
+import com.facebook.encapp.utils.MetricsServer;
+import com.facebook.encapp.utils.OutputMultiplier;
+import com.facebook.encapp.utils.ResultCache;
+import com.facebook.encapp.utils.VsyncHandler;
+import com.facebook.encapp.utils.grafika.Texture2dProgram;
+import com.google.protobuf.TextFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a test suite without any views, started with the same extras as
+ * MainActivity (see CliSettings):
+ *
+ *   adb shell am start-foreground-service -e workdir /sdcard -e test /sdcard/test.pbtxt \
+ *       com.facebook.encapp/.HeadlessService
+ *
+ * The service requires android.permission.DUMP, so only the shell (adb)
+ * can start it, not other apps on the device.
+ *
+ * Buffer tests and surface tests rendering offscreen are run. Tests that
+ * need the activity (camera input, show, pursuit, capacity search, serial,
+ * sweep and ladder) are reported as errors. Like the activity the process exits
+ * when all tests are done.
+ */
+public class HeadlessService extends Service implements TestRunner.Host {
+    private final static String TAG = "encapp.headless";
+    private final static String CHANNEL_ID = "encapp";
+    private final static int NOTIFICATION_ID = 1;
+
+    private Bundle mExtraData;
+    private boolean mStarted = false;
+    MemoryLoad mMemLoad;
+    MetricsServer mMetricsServer;
+    VsyncHandler mVsyncHandler;
+    private final TestRunner mRunner = new TestRunner(this);
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // must be called soon after start-foreground-service
+        startForeground(NOTIFICATION_ID, createNotification());
+        if (mStarted) {
+            Log.e(TAG, "Tests are already running, ignore start");
+            return START_NOT_STICKY;
+        }
+        mStarted = true;
+        mExtraData = (intent != null) ? intent.getExtras() : null;
+        CliSettings.setWorkDir(this, mExtraData);
+        if (mExtraData == null || !mExtraData.containsKey(CliSettings.TEST_CONFIG)) {
+            TestRunner.report_result("unknown", "unknown", "error", "No test given, use -e " + CliSettings.TEST_CONFIG);
+            exit();
+            return START_NOT_STICKY;
+        }
+        mVsyncHandler = new VsyncHandler();
+        mVsyncHandler.start();
+        (new Thread(() -> {
+            performAllTests();
+            Log.d(TAG, "***** All tests are done, over and out *****");
+            exit();
+        }, "HeadlessRunner")).start();
+        return START_NOT_STICKY;
+    }
+
+    private Notification createNotification() {
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Encapp tests",
+                NotificationManager.IMPORTANCE_LOW));
+        return new Notification.Builder(this, CHANNEL_ID)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText("Running tests")
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .build();
+    }
+
+    private String getCurrentAppVersion() {
+        try {
+            return getPackageManager().getPackageInfo(getPackageName(), 0).versionName;
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+        }
+        return "";
+    }
+
+    public void exit() {
+        Log.d(TAG, "Stop and exit");
+        if (mMemLoad != null) {
+            mMemLoad.stop();
+        }
+        if (mMetricsServer != null) {
+            mMetricsServer.stopServer();
+        }
+        stopForeground(true);
+        stopSelf();
+        Process.killProcess(Process.myPid());
+    }
+
+    /**
+     * @return why the test cannot be run without the activity, null if it can
+     */
+    private static String getUnsupportedReason(Test test) {
+        if (test.getInput().getFilepath().equalsIgnoreCase("camera")) {
+            return "Camera input needs the activity";
+        }
+        if (test.getInput().getShow()) {
+            return "Show needs the activity";
+        }
+        if (test.getInput().getPursuit() != 0) {
+            return "Pursuit needs the activity";
+        }
+        if (test.hasCapacitySearch() || test.hasSerial() || test.hasSweep() || test.hasLadder()) {
+            return "Capacity search, serial, sweep and ladder need the activity";
+        }
+        for (Test parallel : test.getParallel().getTestList()) {
+            String reason = getUnsupportedReason(parallel);
+            if (reason != null) {
+                return reason;
+            }
+        }
+        return null;
+    }
+
+    private void performAllTests() {
+        mMemLoad = new MemoryLoad(this);
+        mMemLoad.start();
+        mRunner.setAppVersion(getCurrentAppVersion());
+        if (mExtraData.containsKey(CliSettings.METRICS_PORT)) {
+            int port = Integer.parseInt(mExtraData.getString(CliSettings.METRICS_PORT, "0"));
+            if (port > 0) {
+                mMetricsServer = new MetricsServer(port);
+                mMetricsServer.start();
+            }
+        }
+        if (mExtraData.containsKey(CliSettings.RESULT_CACHE)) {
+            String value = mExtraData.getString(CliSettings.RESULT_CACHE, "false");
+            if (value.equalsIgnoreCase("true") || value.equals("1")) {
+                mRunner.setResultCache(new ResultCache(CliSettings.getWorkDir(), getCurrentAppVersion()));
+            }
+        }
+
+        TestSuite testSuite;
+        try {
+            String testPath = mExtraData.getString(CliSettings.TEST_CONFIG);
+            Log.d(TAG, "test_path: " + testPath);
+            String contents = new String(Files.readAllBytes(new File(testPath).toPath()), StandardCharsets.UTF_8);
+            TestSuite.Builder builder = TestSuite.newBuilder();
+            TextFormat.getParser().merge(contents, builder);
+            testSuite = builder.build();
+        } catch (IOException iox) {
+            TestRunner.report_result("unknown", "unknown", "error", iox.getMessage());
+            return;
+        }
+        if (testSuite.getTestCount() == 0) {
+            Log.e(TAG, "Failed to read test");
+            return;
+        }
+
+        // there are no views to wait for, the coders may run at once
+        MainActivity.setStable(true);
+        Log.d(TAG, "** Starting tests, " + testSuite.getTestCount() + " tests (parallels not counted) **");
+        for (Test test : testSuite.getTestList()) {
+            if (!test.getConfigure().getReuseCodec()) {
+                CodecPool.releaseAll();
+            }
+            String reason = getUnsupportedReason(test);
+            if (reason != null) {
+                TestRunner.report_result(test.getCommon().getId(), "headless", "error", reason);
+                continue;
+            }
+            if (test.hasStartupBenchmark()) {
+                mRunner.runStartupBenchmark(test);
+                continue;
+            }
+            ResultCache resultCache = mRunner.getResultCache();
+            if (resultCache != null && !test.hasParallel()) {
+                String cachedId = resultCache.restore(test, Encoder.checkFilePath(test.getInput().getFilepath()));
+                if (cachedId != null) {
+                    TestRunner.report_result(test.getCommon().getId(), cachedId, "ok", "");
+                    continue;
+                }
+            }
+            runTest(test);
+        }
+
+        if (CodecPool.getHits() + CodecPool.getMisses() > 0) {
+            Log.d(TAG, "Codec reuse: " + CodecPool.getHits() + " of " +
+                    (CodecPool.getHits() + CodecPool.getMisses()) + " codecs from the pool");
+        }
+        CodecPool.releaseAll();
+        ResultCache resultCache = mRunner.getResultCache();
+        if (resultCache != null) {
+            Log.d(TAG, "Result cache: " + resultCache.getHits() + " hits, " +
+                    resultCache.getMisses() + " misses");
+        }
+        mRunner.shutdown();
+    }
+
+    /**
+     * Run a test and its parallels and wait for all of them.
+     */
+    private void runTest(Test test) {
+        List<Encoder> coders = mRunner.getCoders();
+        int first = coders.size();
+        List<Future<String>> parallels = new ArrayList<>();
+        Future<String> t = mRunner.startTest(test, parallels);
+        for (Encoder coder : new ArrayList<>(coders.subList(first, coders.size()))) {
+            coder.startProcessing();
+        }
+        mRunner.joinTests(t, parallels);
+    }
+
+    @Override
+    public Encoder createCoder(Test test) {
+        String filePath = test.getInput().getFilepath().toLowerCase(Locale.US);
+        if (MainActivity.VIDEO_ENCODED_EXTENSIONS.contains(MainActivity.getFilenameExtension(filePath))) {
+            if (!test.getConfigure().getEncode() && !test.getConfigure().getSurface()) {
+                Log.d(TAG, "[" + test.getCommon().getId() + "] BufferDecode test");
+                return new BufferDecoder(test);
+            }
+            Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceTranscoder test");
+            return new SurfaceTranscoder(test, new OutputMultiplier(mVsyncHandler), mVsyncHandler);
+        }
+        if (test.getConfigure().getSurface()) {
+            // offscreen, nothing is added to the multiplier but the encoder surface
+            OutputMultiplier mult = new OutputMultiplier(Texture2dProgram.ProgramType.TEXTURE_2D, mVsyncHandler);
+            if (test.getConfigure().hasEncode() && !test.getConfigure().getEncode()) {
+                Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceNoEncoder test");
+                return new SurfaceNoEncoder(test, mult);
+            }
+            Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceEncoder test");
+            return new SurfaceEncoder(test, this, mult);
+        }
+        Log.d(TAG, "[" + test.getCommon().getId() + "] BufferEncoder test");
+        return new BufferEncoder(test);
+    }
+
+    @Override
+    public void onTestDone(Test test, String status) {
+        // the result is already reported, there is no view to update
+    }
+}
@@ -7,13 +7,12 @@ import android.content.pm.PackageManager;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
-import android.media.MediaCodecInfo;
-import android.media.MediaCodecList;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Process;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 import android.util.Size;
@@ -28,15 +27,27 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
+import com.facebook.encapp.proto.Configure;
+import com.facebook.encapp.proto.Ladder;
+import com.facebook.encapp.proto.Parallel;
 import com.facebook.encapp.proto.Test;
 import com.facebook.encapp.proto.TestSuite;
 import com.facebook.encapp.utils.CameraSource;
+import com.facebook.encapp.utils.CapacitySearch;
 import com.facebook.encapp.utils.CliSettings;
-import com.facebook.encapp.utils.MediaCodecInfoHelper;
+import com.facebook.encapp.utils.CodecIndex;
+import com.facebook.encapp.utils.CodecPool;
+import com.facebook.encapp.utils.InputCache;
+import com.facebook.encapp.utils.LadderReport;
 import com.facebook.encapp.utils.MemoryLoad;
+import com.facebook.encapp.utils.MetricsServer;
 import com.facebook.encapp.utils.OutputMultiplier;
+import com.facebook.encapp.utils.ResultCache;
 import com.facebook.encapp.utils.SizeUtils;
 import com.facebook.encapp.utils.Statistics;
+import com.facebook.encapp.utils.SweepIterator;
+import com.facebook.encapp.utils.SyntheticReader;
+import com.facebook.encapp.utils.TestDefinitionHelper;
 import com.facebook.encapp.utils.VsyncHandler;
 import com.facebook.encapp.utils.grafika.Texture2dProgram;
 import com.google.protobuf.TextFormat;
@@ -51,18 +62,21 @@ import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import android.media.MediaCodec;
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements TestRunner.Host {
     private final static String TAG = "encapp.main";
     private static boolean mStable = false;
-    private final Object mTestLockObject = new Object();
     int mUIHoldtimeSec = 0;
     boolean mPursuitOver = false;
     MemoryLoad mMemLoad;
-    Stack<Encoder> mEncoderList = new Stack<>();
+    MetricsServer mMetricsServer;
+    final TestRunner mRunner = new TestRunner(this);
+    final List<Encoder> mEncoderList = mRunner.getCoders();
     CameraSource mCameraSource = null;
     OutputMultiplier mCameraSourceMultiplier;
     Vector<OutputAndTexture> mViewsToDraw = new Vector<>();
@@ -73,15 +87,20 @@ public class MainActivity extends AppCompatActivity {
     TextView mLogText = null;
     int mCameraCount = 0;
     private Bundle mExtraData;
-    private int mInstancesRunning = 0;
     VsyncHandler mVsyncHandler;
-    final static int WAIT_TIME_MS = 5000;  // 5 secs
-    private static List<String> VIDEO_ENCODED_EXTENSIONS = Arrays.asList("mp4", "webm", "mkv");
+    static final List<String> VIDEO_ENCODED_EXTENSIONS = Arrays.asList("mp4", "webm", "mkv");
 
     public static boolean isStable() {
         return mStable;
     }
 
+    /**
+     * For runners without views (see HeadlessService) that have nothing to wait for.
+     */
+    static void setStable(boolean stable) {
+        mStable = stable;
+    }
+
     public static String getFilenameExtension(String filename) {
         int last_dot_location = filename.lastIndexOf('.');
         String extension = (last_dot_location == -1) ? "" : filename.substring(last_dot_location+1);
@@ -193,16 +212,13 @@ public class MainActivity extends AppCompatActivity {
 
     protected void listCodecs() {
         Log.d(TAG, "List codecs");
-        MediaCodecList codecList = new MediaCodecList(MediaCodecList.ALL_CODECS);
-        MediaCodecInfo[] codecInfos = codecList.getCodecInfos();
-
         StringBuffer encoders = new StringBuffer("encoders {\n");
         StringBuffer decoders = new StringBuffer("decoders {\n");
 
-        for (MediaCodecInfo info : codecInfos) {
-            String str = MediaCodecInfoHelper.toText(info, 1);
+        for (CodecIndex.Entry info : CodecIndex.get().getEntries()) {
+            String str = info.text;
             if (str.toLowerCase(Locale.US).contains("video")) {
-                if (info.isEncoder()) {
+                if (info.isEncoder) {
                     encoders.append(str);
                 } else {
                     decoders.append(str);
@@ -235,6 +251,9 @@ public class MainActivity extends AppCompatActivity {
     public void exit() {
         Log.d(TAG, "Finish and remove");
         mMemLoad.stop();
+        if (mMetricsServer != null) {
+            mMetricsServer.stopServer();
+        }
         finishAndRemoveTask();
         Process.killProcess(Process.myPid());
         Log.d(TAG, "EXIT");
@@ -256,18 +275,6 @@ public class MainActivity extends AppCompatActivity {
         return false;
     }
 
-    public void increaseTestsInflight() {
-        synchronized (mTestLockObject) {
-            mInstancesRunning++;
-        }
-    }
-
-    public void decreaseTestsInflight() {
-        synchronized (mTestLockObject) {
-            mInstancesRunning--;
-        }
-    }
-
 
     /**
      * Run everything found in the bundle data
@@ -276,9 +283,23 @@ public class MainActivity extends AppCompatActivity {
     private void performAllTests() {
         mMemLoad = new MemoryLoad(this);
         mMemLoad.start();
+        mRunner.setAppVersion(getCurrentAppVersion());
         if (mExtraData.containsKey(CliSettings.TEST_UI_HOLD_TIME_SEC)) {
             mUIHoldtimeSec = Integer.parseInt(mExtraData.getString(CliSettings.TEST_UI_HOLD_TIME_SEC, "0"));
         }
+        if (mExtraData.containsKey(CliSettings.METRICS_PORT)) {
+            int port = Integer.parseInt(mExtraData.getString(CliSettings.METRICS_PORT, "0"));
+            if (port > 0) {
+                mMetricsServer = new MetricsServer(port);
+                mMetricsServer.start();
+            }
+        }
+        if (mExtraData.containsKey(CliSettings.RESULT_CACHE)) {
+            String value = mExtraData.getString(CliSettings.RESULT_CACHE, "false");
+            if (value.equalsIgnoreCase("true") || value.equals("1")) {
+                mRunner.setResultCache(new ResultCache(CliSettings.getWorkDir(), getCurrentAppVersion()));
+            }
+        }
 
         if (mExtraData.containsKey(CliSettings.LIST_CODECS)) {
             listCodecs();
@@ -361,6 +382,35 @@ public class MainActivity extends AppCompatActivity {
                             " number of combinations (parallels not counted) **");
                     for (Test test : test_suite.getTestList()) {
                         mCameraCount = 0; // All used should have been closed already
+                        if (!test.getConfigure().getReuseCodec()) {
+                            // idle codecs are only kept for tests that can reuse them
+                            CodecPool.releaseAll();
+                        }
+                        if (test.hasCapacitySearch()) {
+                            runCapacitySearch(test);
+                            mPursuitOver = true;
+                            continue;
+                        }
+                        if (test.hasSerial()) {
+                            runSerial(test);
+                            mPursuitOver = true;
+                            continue;
+                        }
+                        if (test.hasStartupBenchmark()) {
+                            runStartupBenchmark(test);
+                            mPursuitOver = true;
+                            continue;
+                        }
+                        if (test.hasSweep()) {
+                            runSweep(test);
+                            mPursuitOver = true;
+                            continue;
+                        }
+                        if (test.hasLadder()) {
+                            runLadder(test);
+                            mPursuitOver = true;
+                            continue;
+                        }
                         if (pursuit > 0) pursuit -= 1;
                         pursuit = test.getInput().getPursuit();
                         mPursuitOver = false;
@@ -372,8 +422,18 @@ public class MainActivity extends AppCompatActivity {
                                 mPursuitOver = true;
                             }
 
-                            Stack<Thread> threads = new Stack<>();
-                            Thread t = startTest(test, threads);
+                            if (mRunner.getResultCache() != null && pursuit == 0 && !test.hasParallel() &&
+                                    !test.getInput().getFilepath().equalsIgnoreCase("camera")) {
+                                String cachedId = mRunner.getResultCache().restore(test, Encoder.checkFilePath(test.getInput().getFilepath()));
+                                if (cachedId != null) {
+                                    log("\nCached result: " + test.getCommon().getId());
+                                    TestRunner.report_result(test.getCommon().getId(), cachedId, "ok", "");
+                                    continue;
+                                }
+                            }
+
+                            List<Future<String>> parallels = new ArrayList<>();
+                            Future<String> t = mRunner.startTest(test, parallels);
 
                             Log.d(TAG, "Started the test, check camera: " + mCameraCount);
                             if (mCameraCount > 0 && !cameraStarted) {
@@ -398,10 +458,8 @@ public class MainActivity extends AppCompatActivity {
                             }
                             // Start them all
                             for (Encoder enc : mEncoderList) {
-                                synchronized (enc) {
-                                    Log.d(TAG, "Start codec: " + enc);
-                                    enc.notifyAll();
-                                }
+                                Log.d(TAG, "Start codec: " + enc);
+                                enc.startProcessing();
                             }
                             Log.d(TAG, "Start codecs");
                             // Start them all
@@ -431,73 +489,35 @@ public class MainActivity extends AppCompatActivity {
                             Log.d(TAG, "\n\n*** All inputs stable - go on!   ***\n\n");
                             Log.d(TAG, "pursuit = " + pursuit);
                             if (pursuit != 0) {
-                                Log.d(TAG, "pursuit sleep, instances: " + mInstancesRunning);
+                                Log.d(TAG, "pursuit sleep, instances: " + mRunner.getInstancesRunning());
                                 try {
                                     Thread.sleep(100);
                                 } catch (InterruptedException e) {
                                     e.printStackTrace();
                                 }
                             } else {
-                                try {
-                                    // Run next test serially so wait for this test
-                                    // and all parallels to be finished first
-                                    Log.d(TAG, "Join " + t.getName() + ", state = " + t.getState());
-                                    t.join();
-
-                                    while (!threads.empty()) {
-                                        try {
-                                            for (Thread t_: threads) {
-                                                Log.d(TAG, "Thread: " + t_.getName() + " - state: " + t_.getState());
-                                            }
-                                            Thread p = threads.pop();
-                                            Log.d(TAG, "Join " + p.getName() + ", state = " + p.getState() + ", threads: " + threads.size());
-                                            // Most of the time all parallel tests are run the same time length, assuming this we can catch
-                                            // some errors here
-                                            p.join(WAIT_TIME_MS);
-                                            if (p.getState() == Thread.State.WAITING ||
-                                                p.getState() == Thread.State.TIMED_WAITING ||
-                                                p.getState() == Thread.State.BLOCKED) {
-                                                Log.d(TAG, p.getName() + " is still waiting (" + p.getState() + ").\nThis is probably not correct.\nTry to release");
-                                                for (Encoder coder: mEncoderList) {
-                                                    Log.d(TAG, "Force release");
-                                                    coder.stopAllActivity();
-                                                    coder.release();
-                                                }
-                                                if (p.getState() == Thread.State.WAITING ||
-                                                        p.getState() == Thread.State.TIMED_WAITING ||
-                                                        p.getState() == Thread.State.BLOCKED) {
-                                                    Log.d(TAG, p.getName() + " is still stuck");
-                                                    p.interrupt();
-                                                }
-
-                                                decreaseTestsInflight(); //????
-                                            }
-                                        } catch (InterruptedException e) {
-                                            e.printStackTrace();
-                                        }
-                                    }
-                                } catch (InterruptedException e) {
-                                    e.printStackTrace();
-                                }
+                                // Run next test serially so wait for this test
+                                // and all parallels to be finished first
+                                mRunner.joinTests(t, parallels);
                             }
 
                         }
                     }
                 }
                 Log.d(TAG, "All tests queued up, wait for finish");
-                do {
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    Log.d(TAG, "number of instances running:" + mInstancesRunning);
-
-                } while (mInstancesRunning > 0);
-                Log.d(TAG, "Done with tests, instances: " + mInstancesRunning);
-                for (Encoder coder: mEncoderList) {
-                    coder.release();
+                mRunner.joinPendingTests();
+                Log.d(TAG, "Done with tests, instances: " + mRunner.getInstancesRunning());
+                if (CodecPool.getHits() + CodecPool.getMisses() > 0) {
+                    log("\nCodec reuse: " + CodecPool.getHits() + " of " +
+                            (CodecPool.getHits() + CodecPool.getMisses()) + " codecs from the pool");
                 }
+                CodecPool.releaseAll();
+                ResultCache resultCache = mRunner.getResultCache();
+                if (resultCache != null) {
+                    log("\nResult cache: " + resultCache.getHits() + " hits, " +
+                            resultCache.getMisses() + " misses");
+                }
+                mRunner.shutdown();
                 if (mCameraSource != null) {
                     mCameraSource.closeCamera();
                 }
@@ -511,50 +531,305 @@ public class MainActivity extends AppCompatActivity {
             }
 
         } catch (IOException iox) {
-            report_result("unknown", "unknown", "error", iox.getMessage());
+            TestRunner.report_result("unknown", "unknown", "error", iox.getMessage());
         }
     }
 
 
     /**
-     * Traverse list of test cases below this and starts them keeping
-     * track of all threads.
-     *
-     * @param test
-     * @param threads a lit of started test case, each has its own thread
-     * @return the thread that belong to the Test test
+     * Run identical instances of a test in parallel, increasing the number of
+     * instances until one of them cannot keep the target frame rate.
+     * The result is written to a separate json file in the workdir.
      */
-    public Thread startTest(Test test, Stack<Thread> threads) {
-        Log.d(TAG, "Start test: " + test.getCommon().getDescription());
+    private void runCapacitySearch(Test test) {
+        if (test.getInput().getFilepath().equalsIgnoreCase("camera")) {
+            TestRunner.report_result(test.getCommon().getId(), "capacity", "error", "Capacity search does not support camera input");
+            return;
+        }
+        // a y4m input has its frame rate in the header
+        Test input = TestDefinitionHelper.updateY4mInputSettings(test);
+        float targetFps = test.getConfigure().hasFramerate() ?
+                test.getConfigure().getFramerate() : input.getInput().getFramerate();
+        if (targetFps <= 0) {
+            // without a target every step would pass
+            TestRunner.report_result(test.getCommon().getId(), "capacity", "error",
+                    "Capacity search needs a framerate in configure or input");
+            return;
+        }
+        CapacitySearch search = new CapacitySearch(test.getCapacitySearch(), test.getCommon().getId(), targetFps);
+        Test base = test.toBuilder().clearCapacitySearch().clearParallel().build();
+        int instances;
+        while ((instances = search.nextInstances()) > 0) {
+            log("\n\nCapacity search: " + instances + " instances");
+            Test.Builder step = base.toBuilder();
+            step.setCommon(base.getCommon().toBuilder().setId(base.getCommon().getId() + "_cap" + instances + "_0"));
+            Parallel.Builder parallel = Parallel.newBuilder();
+            for (int i = 1; i < instances; i++) {
+                parallel.addTest(base.toBuilder().setCommon(base.getCommon().toBuilder()
+                        .setId(base.getCommon().getId() + "_cap" + instances + "_" + i)));
+            }
+            if (instances > 1) {
+                step.setParallel(parallel);
+            }
 
-        increaseTestsInflight();
-        Thread t = PerformTest(test);
+            int first = mEncoderList.size();
+            List<Future<String>> tests = new ArrayList<>();
+            Future<String> t = mRunner.startTest(step.build(), tests);
+            for (Encoder enc : mEncoderList) {
+                enc.startProcessing();
+            }
+            mRunner.joinTests(t, tests);
+            tests.add(0, t);
 
-        if (test.hasParallel()) {
-            for (Test parallell : test.getParallel().getTestList()) {
-                Log.d(TAG, "Sleep before other parallel");
+            int errors = 0;
+            for (Future<String> result : tests) {
                 try {
-                    Thread.sleep(200);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    if (result.isCancelled() || result.get().length() > 0) {
+                        errors++;
+                    }
+                } catch (InterruptedException | ExecutionException | CancellationException e) {
+                    errors++;
                 }
-                Log.d(TAG, "Start parallel");
-                threads.push(startTest(parallell, threads));
             }
+            List<Statistics> stats = new ArrayList<>();
+            for (int i = first; i < mEncoderList.size(); i++) {
+                stats.add(mEncoderList.get(i).getStatistics());
+            }
+            if (stats.size() > 0 && stats.get(0).getCodec() != null) {
+                String codec = stats.get(0).getCodec();
+                search.setCodec(codec, getMaxSupportedInstances(codec));
+            }
+            search.addStep(instances, stats, errors);
+            // an error in one step is a result, not the end of the search
+            mPursuitOver = false;
         }
+        log("\nCapacity search done: " + search.getMaxSustainableInstances() + " instances");
+        search.setAppVersion(getCurrentAppVersion());
+        String fullFilename = CliSettings.getWorkDir() + "/" + search.getId() + ".json";
+        try (FileWriter fw = new FileWriter(fullFilename, false)) {
+            search.writeJSON(fw);
+        } catch (IOException e) {
+            Log.e(TAG, test.getCommon().getId() + " - Error when writing capacity search result");
+        }
+        TestRunner.report_result(test.getCommon().getId(), search.getId(), "ok", "");
+    }
 
-        if (test.getInput().getFilepath().equalsIgnoreCase("camera")) {
-            mCameraCount += 1;
+    /**
+     * Run every variant of a sweep, one after the other. The start of the
+     * input is read once and shared by all variants and the codec is
+     * looked up once.
+     */
+    private void runSweep(Test test) {
+        String filePath = test.getInput().getFilepath();
+        if (filePath.equalsIgnoreCase("camera")) {
+            TestRunner.report_result(test.getCommon().getId(), "sweep", "error", "Sweep does not support camera input");
+            return;
         }
-        return t;
+        // the raw resolution check below needs the y4m header values
+        Test base = TestDefinitionHelper.updateY4mInputSettings(test);
+        if (base.getConfigure().getMime().length() == 0 && base.getConfigure().hasCodec()) {
+            List<CodecIndex.Entry> matching = CodecIndex.get().findVideoEncoders(base.getConfigure().getCodec());
+            if (matching.size() == 1) {
+                base = base.toBuilder().setConfigure(base.getConfigure().toBuilder()
+                        .setCodec(matching.get(0).name)
+                        .setMime(matching.get(0).getFirstMime())).build();
+            }
+        }
+        boolean encodedInput = VIDEO_ENCODED_EXTENSIONS.contains(getFilenameExtension(filePath));
+        String inputPath = Encoder.checkFilePath(filePath);
+        // encoded input is read by the extractor, only raw input is shared
+        boolean cached = !encodedInput && !SyntheticReader.isSynthetic(filePath) &&
+                InputCache.retain(inputPath, Encoder.PRELOAD_MAX_BYTES);
+
+        SweepIterator variants = new SweepIterator(base);
+        log("\n\nSweep: " + variants.getCount() + " variants");
+        int count = 0;
+        try {
+            while (variants.hasNext()) {
+                Test variant = variants.next();
+                count++;
+                log("\nSweep variant " + count + "/" + variants.getCount() + ": " + variant.getCommon().getId());
+                List<Future<String>> parallels = new ArrayList<>();
+                Future<String> t = mRunner.startTest(variant, parallels);
+                for (Encoder enc : mEncoderList) {
+                    enc.startProcessing();
+                }
+                mRunner.joinTests(t, parallels);
+                // an error in one variant does not stop the sweep
+                mPursuitOver = false;
+            }
+        } finally {
+            if (cached) {
+                InputCache.release(inputPath);
+            }
+        }
+        log("\nSweep done: " + count + " variants");
     }
 
-    public void report_result(String test_name, String run_id, String result, String error_code) {
-        if (result == "ok") {
-            Log.d(TAG, "Test finished id: \"" + test_name + "\" run_id: " + run_id + " result: \"ok\"");
-        } else {
-            Log.e(TAG, "Test finished id: \"" + test_name + "\" run_id: " + run_id + " result: \"" + result + "\" error: \"" + error_code + "\"");
+    /**
+     * Encode all renditions of a ladder in parallel, one buffer encoder per
+     * rendition. The renditions share the input frames (see
+     * SharedFrameReader) and scale them to their resolution on the cpu.
+     * A summary of the read and scale cost is written to a separate json
+     * file in the workdir.
+     */
+    private void runLadder(Test test) {
+        String filePath = test.getInput().getFilepath();
+        if (filePath.equalsIgnoreCase("camera") || test.getConfigure().getSurface() ||
+                VIDEO_ENCODED_EXTENSIONS.contains(getFilenameExtension(filePath))) {
+            TestRunner.report_result(test.getCommon().getId(), "ladder", "error", "Ladder needs raw input and buffer encoding");
+            return;
+        }
+        if (test.getLadder().getRenditionCount() == 0) {
+            TestRunner.report_result(test.getCommon().getId(), "ladder", "error", "Ladder without renditions");
+            return;
+        }
+        // the input resolution is needed before the encoders are set up
+        Test base = TestDefinitionHelper.updateY4mInputSettings(test).toBuilder()
+                .clearLadder().clearParallel().build();
+        String id = base.getCommon().getId();
+        log("\n\nLadder: " + test.getLadder().getRenditionCount() + " renditions");
+
+        Test.Builder main = null;
+        Parallel.Builder parallel = Parallel.newBuilder();
+        for (Ladder.Rendition rendition : test.getLadder().getRenditionList()) {
+            Configure.Builder configure = base.getConfigure().toBuilder();
+            if (rendition.hasResolution()) {
+                configure.setResolution(rendition.getResolution());
+            } else {
+                configure.setResolution(base.getInput().getResolution());
+            }
+            if (rendition.hasBitrate()) {
+                configure.setBitrate(rendition.getBitrate());
+            }
+            if (rendition.hasCodec()) {
+                configure.setCodec(rendition.getCodec());
+                configure.clearMime();
+            }
+            // renditions may share a resolution
+            String stepId = id + "_" + (main == null ? 0 : parallel.getTestCount() + 1) + "_" + configure.getResolution();
+            Test.Builder step = base.toBuilder()
+                    .setCommon(base.getCommon().toBuilder().setId(stepId))
+                    .setConfigure(configure);
+            if (main == null) {
+                main = step;
+            } else {
+                parallel.addTest(step);
+            }
+        }
+        if (parallel.getTestCount() > 0) {
+            main.setParallel(parallel);
+        }
+
+        int first = mEncoderList.size();
+        List<Future<String>> tests = new ArrayList<>();
+        Future<String> t = mRunner.startTest(main.build(), tests);
+        // all renditions have opened the input, the frames are shared from the first one
+        for (Encoder enc : mEncoderList) {
+            enc.startProcessing();
+        }
+        mRunner.joinTests(t, tests);
+        tests.add(0, t);
+
+        int errors = 0;
+        for (Future<String> result : tests) {
+            try {
+                if (result.isCancelled() || result.get().length() > 0) {
+                    errors++;
+                }
+            } catch (InterruptedException | ExecutionException | CancellationException e) {
+                errors++;
+            }
+        }
+        LadderReport report = new LadderReport(id, base.getInput().getResolution());
+        for (int i = first; i < mEncoderList.size(); i++) {
+            report.addRendition(mEncoderList.get(i).getStatistics());
+        }
+        report.setErrors(errors);
+        report.setAppVersion(getCurrentAppVersion());
+        String fullFilename = CliSettings.getWorkDir() + "/" + report.getId() + ".json";
+        try (FileWriter fw = new FileWriter(fullFilename, false)) {
+            report.writeJSON(fw);
+        } catch (IOException e) {
+            Log.e(TAG, id + " - Error when writing ladder result");
+        }
+        TestRunner.report_result(id, report.getId(), (errors == 0) ? "ok" : "error",
+                (errors == 0) ? "" : errors + " renditions failed");
+        log("\nLadder done: " + id);
+    }
+
+    private void runStartupBenchmark(Test test) {
+        log("\n\nStartup benchmark: " + test.getCommon().getDescription());
+        mRunner.runStartupBenchmark(test);
+        log("\nStartup benchmark done: " + test.getCommon().getId());
+    }
+
+    /**
+     * Run a test followed by the tests in its serial container.
+     * When a test has read all its input the next test is created, configured
+     * and its input and muxer prepared while the current test is draining.
+     * The next test is started as soon as the current one (and its parallels)
+     * is done.
+     */
+    private void runSerial(Test container) {
+        List<Test> chain = new ArrayList<>();
+        if (container.getInput().hasFilepath()) {
+            chain.add(container.toBuilder().clearSerial().build());
+        }
+        chain.addAll(container.getSerial().getTestList());
+
+        Future<String> current = null;
+        List<Future<String>> currentParallels = null;
+        List<Encoder> currentCoders = new ArrayList<>();
+        long hiddenSetupTime = 0;
+        for (Test test : chain) {
+            if (test.getInput().getFilepath().equalsIgnoreCase("camera")) {
+                TestRunner.report_result(test.getCommon().getId(), "serial", "error", "Serial tests do not support camera input");
+                continue;
+            }
+            try {
+                for (Encoder coder : currentCoders) {
+                    coder.awaitInputDone();
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+
+            int first = mEncoderList.size();
+            List<Future<String>> parallels = new ArrayList<>();
+            // returns when the new coders are set up
+            Future<String> t = mRunner.startTest(test, parallels, current != null);
+            List<Encoder> coders = new ArrayList<>(mEncoderList.subList(first, mEncoderList.size()));
+            if (current != null) {
+                mRunner.joinTests(current, currentParallels);
+                long stopTime = SystemClock.elapsedRealtimeNanos();
+                for (Encoder coder : coders) {
+                    coder.getStatistics().setPreviousTestStopTime(stopTime);
+                }
+            }
+            for (Encoder coder : coders) {
+                coder.startProcessing();
+            }
+            if (coders.size() > 0) {
+                hiddenSetupTime += coders.get(0).getStatistics().getHiddenSetupTime();
+            }
+            current = t;
+            currentParallels = parallels;
+            currentCoders = coders;
+        }
+        if (current != null) {
+            mRunner.joinTests(current, currentParallels);
         }
+        Log.d(TAG, container.getCommon().getId() + " - Serial tests done, hidden setup time: " +
+                (hiddenSetupTime / 1000000) + " ms");
+        log("\nSerial tests done, setup time saved: " + (hiddenSetupTime / 1000000) + " ms");
+    }
+
+    /**
+     * @return max_supported_instances for the codec, -1 if unknown
+     */
+    private int getMaxSupportedInstances(String codecName) {
+        return CodecIndex.get().getMaxSupportedInstances(codecName);
     }
 
     /**
@@ -563,13 +838,13 @@ public class MainActivity extends AppCompatActivity {
      * and if needed a surface/surfacetexture is attached
      *
      * @param test
-     * @return the thread belonging to Test test
+     * @return the coder of the test, TestRunner runs it
      */
-    private Thread PerformTest(Test test) {
+    @Override
+    public Encoder createCoder(Test test) {
         String filePath = test.getInput().getFilepath();
         Log.d(TAG, "Run test case, source : " + filePath);
         Log.d(TAG, "test" + test.toString());
-        Thread t;
 
         final String description = test.getCommon().getDescription();
 
@@ -577,158 +852,104 @@ public class MainActivity extends AppCompatActivity {
             log("\n\nPrepare Test: " + description);
         } else {
             log("\n\nPrepare Test of decoder: " + description +
-                    "(" + mInstancesRunning + ")");
+                    "(" + mRunner.getInstancesRunning() + ")");
         }
 
 
         Encoder coder;
-        synchronized (mEncoderList) {
-            Log.d(TAG, "[" + test.getCommon().getId() + "] input.filepath: " + filePath.toLowerCase(Locale.US));
-            OutputAndTexture ot = null;
-            Log.d(TAG, "[" + test.getCommon().getId() + "] configure.surface: " + test.getConfigure().getSurface());
-            if (test.getConfigure().getSurface()) {
-                if (mViewsToDraw.size() > 0 &&
-                        test.getInput().hasShow() &&
-                        test.getInput().getShow()) {
-                    Log.d(TAG, "[" + test.getCommon().getId() + "] getting texture");
-                    ot = getFirstFreeTextureView();
-                }
+        Log.d(TAG, "[" + test.getCommon().getId() + "] input.filepath: " + filePath.toLowerCase(Locale.US));
+        OutputAndTexture ot = null;
+        Log.d(TAG, "[" + test.getCommon().getId() + "] configure.surface: " + test.getConfigure().getSurface());
+        if (test.getConfigure().getSurface()) {
+            if (mViewsToDraw.size() > 0 &&
+                    test.getInput().hasShow() &&
+                    test.getInput().getShow()) {
+                Log.d(TAG, "[" + test.getCommon().getId() + "] getting texture");
+                ot = getFirstFreeTextureView();
             }
-            if (filePath.toLowerCase(Locale.US).equals("camera")) {
-                setupCamera(ot);
-            }
-
-            String extension = getFilenameExtension(filePath);
-            if (VIDEO_ENCODED_EXTENSIONS.contains(extension)) {
-                Log.d(TAG, "[" + test.getCommon().getId() + "] decoding input");
-                // A decoder is needed
-                if (ot != null) {
-                    ot.mMult = new OutputMultiplier(mVsyncHandler);
-                    Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceTranscoder test");
-                    coder = new SurfaceTranscoder(test, ot.mMult, mVsyncHandler);
-                    ot.mEncoder = coder;
-                    if (!test.getConfigure().getEncode() &&
-                            ot.mMult != null &&
-                            ot.mView != null) {
-                        Log.d(TAG, "Decode only, use view size");
-                        ot.mMult.confirmSize(ot.mView.getWidth(), ot.mView.getHeight());
-                    }
-                } else if(!test.getConfigure().getEncode() && !test.getConfigure().getSurface()) {
-                    Log.d(TAG, "[" + test.getCommon().getId() + "] BufferDecode test");
-                    coder = new BufferDecoder(test);
-                } else {
-                    Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceTranscoder test (alt)");
-                    coder = new SurfaceTranscoder(test, new OutputMultiplier(mVsyncHandler), mVsyncHandler);
-                }
-            } else if (test.getConfigure().getSurface()) {
-                OutputMultiplier mult = null;
-                if (filePath.toLowerCase(Locale.US).contains(".raw") ||
-                        filePath.toLowerCase(Locale.US).contains(".yuv") ||
-                        filePath.toLowerCase(Locale.US).contains(".rgba")) {
-                    mult = new OutputMultiplier(Texture2dProgram.ProgramType.TEXTURE_2D, mVsyncHandler);
-                } else if (filePath.toLowerCase(Locale.US).contains("camera")) {
-                    if (test.getConfigure().hasEncode() && test.getConfigure().getEncode() == false) {
-                        // TODO: create a separate viewfinder camera instance in this case
-                        // most android devices support two surfaces from the camera
-                        mult = mCameraSourceMultiplier;
-                    } else {
-                        mult = mCameraSourceMultiplier;
-                    }
-                }
-                if (ot != null) {
-                    ot.mMult = mult;
+        }
+        if (filePath.toLowerCase(Locale.US).equals("camera")) {
+            setupCamera(ot);
+        }
+
+        String extension = getFilenameExtension(filePath);
+        if (VIDEO_ENCODED_EXTENSIONS.contains(extension)) {
+            Log.d(TAG, "[" + test.getCommon().getId() + "] decoding input");
+            // A decoder is needed
+            if (ot != null) {
+                ot.mMult = new OutputMultiplier(mVsyncHandler);
+                Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceTranscoder test");
+                coder = new SurfaceTranscoder(test, ot.mMult, mVsyncHandler);
+                ot.mEncoder = coder;
+                if (!test.getConfigure().getEncode() &&
+                        ot.mMult != null &&
+                        ot.mView != null) {
+                    Log.d(TAG, "Decode only, use view size");
+                    ot.mMult.confirmSize(ot.mView.getWidth(), ot.mView.getHeight());
                 }
+            } else if(!test.getConfigure().getEncode() && !test.getConfigure().getSurface()) {
+                Log.d(TAG, "[" + test.getCommon().getId() + "] BufferDecode test");
+                coder = new BufferDecoder(test);
+            } else {
+                Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceTranscoder test (alt)");
+                coder = new SurfaceTranscoder(test, new OutputMultiplier(mVsyncHandler), mVsyncHandler);
+            }
+        } else if (test.getConfigure().getSurface()) {
+            OutputMultiplier mult = null;
+            if (filePath.toLowerCase(Locale.US).contains(".raw") ||
+                    filePath.toLowerCase(Locale.US).contains(".yuv") ||
+                    filePath.toLowerCase(Locale.US).contains(".rgba") ||
+                    filePath.toLowerCase(Locale.US).contains(".y4m") ||
+                    SyntheticReader.isSynthetic(filePath)) {
+                mult = new OutputMultiplier(Texture2dProgram.ProgramType.TEXTURE_2D, mVsyncHandler);
+            } else if (filePath.toLowerCase(Locale.US).contains("camera")) {
                 if (test.getConfigure().hasEncode() && test.getConfigure().getEncode() == false) {
-                    Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceNoEncoder test");
-                    coder = new SurfaceNoEncoder(test, mult);
+                    // TODO: create a separate viewfinder camera instance in this case
+                    // most android devices support two surfaces from the camera
+                    mult = mCameraSourceMultiplier;
                 } else {
-                    Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceEncoder test");
-                    coder = new SurfaceEncoder(test, this, mult);
+                    mult = mCameraSourceMultiplier;
                 }
-
-            } else {
-                Log.d(TAG, "[" + test.getCommon().getId() + "] BufferEncoder test");
-                coder = new BufferEncoder(test);
             }
-
-
             if (ot != null) {
-                ot.mEncoder = coder;
-                Log.d(TAG, "Add surface texture for " + test.getCommon().getId() + " st: "+ot.mView.getSurfaceTexture());
-                ot.mMult.addSurfaceTexture(ot.mView.getSurfaceTexture());
+                ot.mMult = mult;
             }
-            Log.d(TAG, "Add codec to list");
-            mEncoderList.add(coder);
-        }
-
-
-        t = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    Log.d(TAG, "Start test id: \"" + test.getCommon().getId() + "\"");
-                    final String status = coder.start();
-                    if (status.length() == 0) {
-                        // test was ok
-                        report_result(coder.mTest.getCommon().getId(), coder.getStatistics().getId(), "ok", "");
-                    } else if (status.length() > 0) {
-                        report_result(coder.mTest.getCommon().getId(), coder.getStatistics().getId(), "error", status);
-                        //    if (test.getPursuit() == 0) { TODO: pursuit
-                        Log.d(TAG, "Pursuit over");
-                        mPursuitOver = true;
-                        //  } else {
-                        //      Assert.assertTrue(false, status);
-                        //   }
-                    }
-                    Log.d(TAG, "Instances running: " + mInstancesRunning);
-                } finally {
-                    // dump statistics
-                    final Statistics stats = coder.getStatistics();
-                    stats.setAppVersion(getCurrentAppVersion());
-                    try {
-                        String fullFilename = CliSettings.getWorkDir() + "/" + stats.getId() + ".json";
-                        Log.d(TAG, "Write stats for " + stats.getId() + " to " + fullFilename);
-                        FileWriter fw = new FileWriter(fullFilename, false);
-                        stats.writeJSON(fw);
-                        fw.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, test.getCommon().getId() + " - Error when writing stats");
-                        e.printStackTrace();
-                    }
-                    decreaseTestsInflight();
-                    log("\nDone test: " + test.getCommon().getId());
-                    if (stats != null) {
-                        Log.d(TAG, "Done test: " + test.getCommon().getId() + " with stats: " + stats.getId() + ", to go: " + mInstancesRunning);
-
-                    } else {
-                        Log.d(TAG, "Done test, stats failed, to go: " + mInstancesRunning);
-                    }
-                }
+            if (test.getConfigure().hasEncode() && test.getConfigure().getEncode() == false) {
+                Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceNoEncoder test");
+                coder = new SurfaceNoEncoder(test, mult);
+            } else {
+                Log.d(TAG, "[" + test.getCommon().getId() + "] SurfaceEncoder test");
+                coder = new SurfaceEncoder(test, this, mult);
             }
-        }, "TestRunner_" + coder.mTest.getCommon().getId());
-        t.start();
 
-        int waitTime = 10000; //ms
-        int waitForPrevious = 50; //todo: make configurable
-        while (!coder.initDone() && t.isAlive()) {
-            try {
-                // If we do not wait for the init to de done before starting next
-                // transcoder there may be issue in the surface handling on lower levels
-                // on certain hw (not thread safe)
-                Log.d(TAG, "Sleep while waiting for init to be done");
-                Thread.sleep(waitForPrevious);
-                waitTime -= waitForPrevious;
-                if (waitTime < 0) {
-                    Log.e(TAG, "Init not ready within " + waitTime + " ms, probably failure");
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        } else {
+            Log.d(TAG, "[" + test.getCommon().getId() + "] BufferEncoder test");
+            coder = new BufferEncoder(test);
         }
 
-        return t;
+        if (ot != null) {
+            ot.mEncoder = coder;
+            Log.d(TAG, "Add surface texture for " + test.getCommon().getId() + " st: "+ot.mView.getSurfaceTexture());
+            ot.mMult.addSurfaceTexture(ot.mView.getSurfaceTexture());
+        }
+        if (filePath.equalsIgnoreCase("camera")) {
+            mCameraCount += 1;
+        }
+        return coder;
     }
 
+    @Override
+    public void onTestDone(Test test, String status) {
+        if (status.length() > 0) {
+            //    if (test.getPursuit() == 0) { TODO: pursuit
+            Log.d(TAG, "Pursuit over");
+            mPursuitOver = true;
+            //  } else {
+            //      Assert.assertTrue(false, status);
+            //   }
+        }
+        log("\nDone test: " + test.getCommon().getId());
+    }
 
     public void createTable(int nbrViews, TableLayout layout) {
         //int count = nbrViews;/mViewsToDraw.size();
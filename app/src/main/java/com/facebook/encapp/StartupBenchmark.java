@@ -0,0 +1,255 @@
+package com.facebook.encapp;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.encapp.proto.Test;
+import com.facebook.encapp.utils.CodecLifecycle;
+import com.facebook.encapp.utils.CodecLifecycle.Phase;
+import com.facebook.encapp.utils.TestDefinitionHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Measures the encoder startup, i.e. create, configure, start, first output,
+ * stop and release, a number of times in a row.
+ *
+ * The input is a flat gray frame so that storage and file parsing are not
+ * part of the measurement. It is not a coder, the codec is created and
+ * released directly and the result is written to its own json file.
+ */
+class StartupBenchmark {
+    private static final String TAG = "encapp.startup";
+
+    private Test mTest;
+    private final String mId;
+    private final List<CodecLifecycle> mIterations = new ArrayList<>();
+    private int mErrors = 0;
+    private String mCodecName = "";
+    private String mAppVersion = "";
+    private byte[] mFrame;
+    private double mFrameTimeUsec;
+
+    public StartupBenchmark(Test test) {
+        mTest = test;
+        mId = "encapp_startup_" + UUID.randomUUID().toString();
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public void setAppVersion(String appVersion) {
+        mAppVersion = appVersion;
+    }
+
+    public String start() {
+        Log.d(TAG, "** Startup benchmark - " + mTest.getCommon().getDescription() + " **");
+        try {
+            if (TestDefinitionHelper.checkBasicSettings(mTest)) {
+                mTest = TestDefinitionHelper.updateBasicSettings(mTest);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error: " + e.getMessage());
+        }
+        if (mTest.getConfigure().getMime().length() == 0) {
+            try {
+                mTest = Encoder.setCodecNameAndIdentifier(mTest);
+            } catch (Exception e) {
+                return e.getMessage();
+            }
+        }
+        mCodecName = mTest.getConfigure().getCodec();
+        MediaFormat format = TestDefinitionHelper.buildMediaFormat(mTest);
+        Encoder.setConfigureParams(mTest, format);
+        int width = format.getInteger(MediaFormat.KEY_WIDTH);
+        int height = format.getInteger(MediaFormat.KEY_HEIGHT);
+        mFrame = new byte[width * height * 3 / 2];
+        Arrays.fill(mFrame, (byte) 0x80);
+        mFrameTimeUsec = 1000000.0 / mTest.getInput().getFramerate();
+
+        int iterations = Math.max(mTest.getStartupBenchmark().getIterations(), 1);
+        long timeoutMs = mTest.getStartupBenchmark().getFirstFrameTimeoutMs();
+        String error = "";
+        for (int i = 0; i < iterations; i++) {
+            CodecLifecycle lifecycle = new CodecLifecycle();
+            String status = runIteration(format, lifecycle, timeoutMs);
+            if (status.length() > 0) {
+                Log.e(TAG, mTest.getCommon().getId() + " - iteration " + i + ": " + status);
+                error = status;
+                mErrors++;
+            } else {
+                Log.d(TAG, mTest.getCommon().getId() + " - iteration " + i + ", first output after " +
+                        (lifecycle.getTimeToFirstOutput() / 1000000.0) + " ms");
+            }
+            mIterations.add(lifecycle);
+        }
+        if (mErrors == iterations) {
+            return error;
+        }
+        return "";
+    }
+
+    private String runIteration(MediaFormat format, CodecLifecycle lifecycle, long timeoutMs) {
+        MediaCodec codec = null;
+        String status = "";
+        try {
+            lifecycle.begin(Phase.create);
+            codec = MediaCodec.createByCodecName(mCodecName);
+            lifecycle.end(Phase.create);
+            lifecycle.begin(Phase.configure);
+            codec.configure(
+                    format,
+                    null /* surface */,
+                    null /* crypto */,
+                    MediaCodec.CONFIGURE_FLAG_ENCODE);
+            lifecycle.end(Phase.configure);
+            lifecycle.begin(Phase.start);
+            codec.start();
+            lifecycle.end(Phase.start);
+
+            if (!waitForFirstOutput(codec, lifecycle, timeoutMs)) {
+                status = "No output within " + timeoutMs + " ms";
+            }
+
+            lifecycle.begin(Phase.stop);
+            codec.stop();
+            lifecycle.end(Phase.stop);
+        } catch (IOException iox) {
+            Log.e(TAG, "Failed to create codec: " + iox.getMessage());
+            status = "Failed to create codec";
+        } catch (MediaCodec.CodecException cex) {
+            Log.e(TAG, "Codec failed: " + cex.getMessage());
+            status = "Codec failed: " + cex.getMessage();
+        } catch (IllegalStateException ise) {
+            Log.e(TAG, "Illegal state: " + ise.getMessage());
+            status = "Illegal state: " + ise.getMessage();
+        } finally {
+            if (codec != null) {
+                lifecycle.begin(Phase.release);
+                codec.release();
+                lifecycle.end(Phase.release);
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Queue gray frames until the first keyframe has been output.
+     *
+     * @return true if any frame was output before the timeout
+     */
+    private boolean waitForFirstOutput(MediaCodec codec, CodecLifecycle lifecycle, long timeoutMs) {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        boolean output = false;
+        int frame = 0;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            int index = codec.dequeueInputBuffer(Encoder.VIDEO_CODEC_WAIT_TIME_US);
+            if (index >= 0) {
+                ByteBuffer buffer = codec.getInputBuffer(index);
+                buffer.clear();
+                int size = Math.min(mFrame.length, buffer.capacity());
+                buffer.put(mFrame, 0, size);
+                lifecycle.input(SystemClock.elapsedRealtimeNanos());
+                codec.queueInputBuffer(index, 0, size, (long) (frame * mFrameTimeUsec), 0);
+                frame++;
+            }
+            index = codec.dequeueOutputBuffer(info, Encoder.VIDEO_CODEC_WAIT_TIME_US);
+            if (index >= 0) {
+                boolean config = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                boolean keyframe = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+                if (!config && info.size > 0) {
+                    lifecycle.output(SystemClock.elapsedRealtimeNanos(), keyframe);
+                    output = true;
+                }
+                codec.releaseOutputBuffer(index, false /* render */);
+                if (output && lifecycle.getTimeToFirstKeyframe() >= 0) {
+                    return true;
+                }
+            }
+        }
+        return output;
+    }
+
+    private interface Measurement {
+        long get(CodecLifecycle lifecycle);
+    }
+
+    private JSONObject getDistribution(Measurement measurement) throws JSONException {
+        long[] values = new long[mIterations.size()];
+        int count = 0;
+        for (CodecLifecycle lifecycle : mIterations) {
+            long value = measurement.get(lifecycle);
+            if (value >= 0) {
+                values[count++] = value;
+            }
+        }
+        values = Arrays.copyOf(values, count);
+        Arrays.sort(values);
+        JSONObject json = new JSONObject();
+        json.put("count", count);
+        if (count == 0) {
+            return json;
+        }
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        double mean = (double) sum / count;
+        double variance = 0;
+        for (long value : values) {
+            variance += (value - mean) * (value - mean);
+        }
+        json.put("min", values[0]);
+        json.put("max", values[count - 1]);
+        json.put("mean", Math.round(mean));
+        json.put("stddev", Math.round(Math.sqrt(variance / count)));
+        json.put("p50", values[(count - 1) / 2]);
+        json.put("p90", values[(int) Math.ceil(0.9 * count) - 1]);
+        return json;
+    }
+
+    public void writeJSON(Writer writer) throws IOException {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("id", mId);
+            json.put("test_id", mTest.getCommon().getId());
+            json.put("description", mTest.getCommon().getDescription());
+            json.put("encapp_version", mAppVersion);
+            json.put("codec", mCodecName);
+            json.put("iterations", mIterations.size());
+            json.put("errors", mErrors);
+
+            JSONObject distribution = new JSONObject();
+            for (Phase phase : Phase.values()) {
+                distribution.put(phase.name() + "_ns", getDistribution(lifecycle -> lifecycle.getDuration(phase)));
+            }
+            distribution.put("time_to_first_output_ns", getDistribution(CodecLifecycle::getTimeToFirstOutput));
+            distribution.put("time_to_first_keyframe_ns", getDistribution(CodecLifecycle::getTimeToFirstKeyframe));
+            distribution.put("first_output_after_start_ns", getDistribution(CodecLifecycle::getFirstOutputAfterStart));
+            json.put("distribution", distribution);
+
+            JSONArray runs = new JSONArray();
+            for (CodecLifecycle lifecycle : mIterations) {
+                runs.put(lifecycle.toJSON());
+            }
+            json.put("runs", runs);
+            writer.write(json.toString(2));
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create startup json: " + e.getMessage());
+        }
+    }
+}
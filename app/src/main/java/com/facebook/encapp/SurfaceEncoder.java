@@ -21,6 +21,7 @@ import androidx.annotation.NonNull;
 
 import com.facebook.encapp.proto.PixFmt;
 import com.facebook.encapp.proto.Test;
+import com.facebook.encapp.utils.CodecLifecycle.Phase;
 import com.facebook.encapp.utils.FileReader;
 import com.facebook.encapp.utils.FpsMeasure;
 import com.facebook.encapp.utils.FrameswapControl;
@@ -72,6 +73,12 @@ class SurfaceEncoder extends Encoder {
     public SurfaceEncoder(Test test){
         super(test);
     }
+
+    @Override
+    protected boolean usesCallback() {
+        return true;
+    }
+
     public String start() {
         return encode(null);
     }
@@ -96,8 +103,7 @@ class SurfaceEncoder extends Encoder {
         Size res = SizeUtils.parseXString(mTest.getInput().getResolution());
         int width = res.getWidth();
         int height = res.getHeight();
-        // TODO(chema): this assumes 4:2:0 subsampling, and therefore YUV
-        mRefFramesizeInBytes = (int) (width * height * 1.5);
+        mRefFramesizeInBytes = FileReader.getFrameSize(mTest.getInput().getPixFmt(), width, height);
         mRefFrameTime = calculateFrameTimingUsec(mReferenceFrameRate);
 
         if (mTest.getInput().getFilepath().endsWith("rgba")) {
@@ -123,6 +129,9 @@ class SurfaceEncoder extends Encoder {
             // if we are getting a YUV source, we need to convert it to RGBA
             // This conversion routine assumes nv21. Let's make sure that
             // is the input pix_fmt.
+            if (FileReader.is10Bit(mTest.getInput().getPixFmt())) {
+                return "Error: surface encoder does not support 10 bit input (got " + mTest.getInput().getPixFmt() + "), use buffer input";
+            }
             if (mTest.getInput().getPixFmt().getNumber() != PixFmt.nv21_VALUE) {
                 return "Error: yuv->rgba conversion on surface encoder only supports nv21 (got " + mTest.getInput().getPixFmt() + ")";
             }
@@ -143,14 +152,20 @@ class SurfaceEncoder extends Encoder {
         if (!mIsCameraSource) {
             mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
 
-            mYuvReader = new FileReader();
+            mYuvReader = createReader(width, height);
             if (!mYuvReader.openFile(mTest.getInput().getFilepath(), mTest.getInput().getPixFmt())) {
                 return "Could not open file";
             }
+            preloadInput();
 
         }
 
 
+        if (!createChannel()) {
+            return "Could not read channel trace";
+        }
+        createController();
+
         MediaFormat format;
 
         try {
@@ -165,7 +180,9 @@ class SurfaceEncoder extends Encoder {
                 Log.d(TAG, "codec: " + mTest.getConfigure().getCodec() + " mime: " + mTest.getConfigure().getMime());
             }
             Log.d(TAG, "Create codec by name: " + mTest.getConfigure().getCodec());
-            mCodec = MediaCodec.createByCodecName(mTest.getConfigure().getCodec());
+            mStats.getEncoderLifecycle().begin(Phase.create);
+            mCodec = acquireCodec();
+            mStats.getEncoderLifecycle().end(Phase.create);
 
             format = TestDefinitionHelper.buildMediaFormat(mTest);
             format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
@@ -176,11 +193,13 @@ class SurfaceEncoder extends Encoder {
             logMediaFormat(format);
 
             mCodec.setCallback(new EncoderCallbackHandler());
+            mStats.getEncoderLifecycle().begin(Phase.configure);
             mCodec.configure(
                     format,
                     null /* surface */,
                     null /* crypto */,
                     MediaCodec.CONFIGURE_FLAG_ENCODE);
+            mStats.getEncoderLifecycle().end(Phase.configure);
             logMediaFormat(mCodec.getInputFormat());
             mFrameSwapSurface = mOutputMult.addSurface(mCodec.createInputSurface());
             setupOutputMult(width, height);
@@ -202,11 +221,16 @@ class SurfaceEncoder extends Encoder {
 
         try {
             Log.d(TAG, "Start encoder");
+            mStats.getEncoderLifecycle().begin(Phase.start);
             mCodec.start();
+            mStats.getEncoderLifecycle().end(Phase.start);
         } catch (Exception ex) {
             Log.e(TAG, "Start failed: " + ex.getMessage());
             return "Start encoding failed";
         }
+        createLoopback(width, height);
+        createAnalyzer();
+        createHasher();
 
         Log.d(TAG, "Create muxer");
         mMuxer = createMuxer(mCodec, mCodec.getOutputFormat(), true);
@@ -223,19 +247,12 @@ class SurfaceEncoder extends Encoder {
         Log.d(TAG, "Create fps measure: " + this);
         mFpsMeasure = new FpsMeasure(mFrameRate, this.toString());
         mFpsMeasure.start();
+        mStats.getLiveMetrics().setFpsMeasure(mFpsMeasure);
         mFrameTimeUsec = calculateFrameTimingUsec(mFrameRate);
         int current_loop = 1;
         ByteBuffer byteBuffer = ByteBuffer.allocate(mRefFramesizeInBytes);
         boolean done = false;
-        synchronized (this) {
-            Log.d(TAG, "Wait for synchronized start");
-            try {
-                mInitDone = true;
-                wait(WAIT_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        waitForStart();
         mStats.start();
         int errorCounter = 0;
         while (!done) {
@@ -366,6 +383,8 @@ class SurfaceEncoder extends Encoder {
 
         Log.d(TAG, "Close muxer and streams, " + mTest.getCommon().getDescription());
         mStats.stop();
+        finishLoopback();
+        finishHasher();
         try {
             mCodec.flush();
         } catch (MediaCodec.CodecException ex) {
@@ -402,13 +421,23 @@ class SurfaceEncoder extends Encoder {
                     e.printStackTrace();
                 }
             }
+            boolean stopped = false;
             try {
+                mStats.getEncoderLifecycle().begin(Phase.stop);
                 mCodec.stop();
+                mStats.getEncoderLifecycle().end(Phase.stop);
+                stopped = true;
             } catch (IllegalStateException ex) {
                 Log.e(TAG, "stop: IllegalStateException error");
                 ex.printStackTrace();
             }
-            mCodec.release();
+            mStats.getEncoderLifecycle().begin(Phase.release);
+            if (stopped) {
+                recycleCodec();
+            } else {
+                mCodec.release();
+            }
+            mStats.getEncoderLifecycle().end(Phase.release);
         }
 
         if (mFrameSwapSurface != null) {
@@ -54,6 +54,7 @@ public class SurfaceNoEncoder extends SurfaceEncoder implements VsyncListener {
     public SurfaceNoEncoder(Test test, OutputMultiplier multiplier ) {
         super(test);
         mOutputMult = multiplier;
+        mStats = new Statistics("surface no encoder", mTest);
     }
 
 
@@ -85,8 +86,6 @@ public class SurfaceNoEncoder extends SurfaceEncoder implements VsyncListener {
             Log.e(TAG, "Error: " + e.getMessage());
         }
 
-        mStats = new Statistics("surface no encoder", mTest);
-
         Size res = SizeUtils.parseXString(mTest.getInput().getResolution());
         int width = res.getWidth();
         int height = res.getHeight();
@@ -113,15 +112,7 @@ public class SurfaceNoEncoder extends SurfaceEncoder implements VsyncListener {
 
         mFrameTimeUsec = calculateFrameTimingUsec(mFrameRate);
         MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
-        synchronized (this) {
-            Log.d(TAG, "Wait for synchronized start");
-            try {
-                mInitDone = true;
-                wait(WAIT_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        waitForStart();
         mStats.start();
         boolean done = false;
 
@@ -1,7 +1,5 @@
 package com.facebook.encapp;
 
-import static com.facebook.encapp.utils.MediaCodecInfoHelper.mediaFormatComparison;
-
 import android.graphics.SurfaceTexture;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
@@ -18,6 +16,7 @@ import androidx.annotation.NonNull;
 import com.facebook.encapp.proto.DataValueType;
 import com.facebook.encapp.proto.DecoderRuntime;
 import com.facebook.encapp.proto.Test;
+import com.facebook.encapp.utils.CodecLifecycle.Phase;
 import com.facebook.encapp.utils.FileReader;
 import com.facebook.encapp.utils.FrameInfo;
 import com.facebook.encapp.utils.FrameswapControl;
@@ -125,6 +124,7 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
             Log.d(TAG, "Check parsed input format:");
             logMediaFormat(inputFormat);
             // Allow explicit decoder only for non encoding tests (!?)
+            mStats.getDecoderLifecycle().begin(Phase.create);
             if (mTest.getDecoderConfigure().hasCodec()) {
                 //TODO: throw error on failed lookup
                 //mTest = setCodecNameAndIdentifier(mTest);
@@ -135,6 +135,7 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
                 mDecoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
                 Log.d(TAG, "Will create " + mDecoder.getCodecInfo().getName());
             }
+            mStats.getDecoderLifecycle().end(Phase.create);
         } catch (IOException e) {
             mExtractor.release();
             e.printStackTrace();
@@ -186,7 +187,9 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
                     Log.d(TAG, "codec: " + mTest.getConfigure().getCodec() + " mime: " + mTest.getConfigure().getMime());
                 }
                 Log.d(TAG, "Create encoder by name: " + mTest.getConfigure().getCodec());
+                mStats.getEncoderLifecycle().begin(Phase.create);
                 mCodec = MediaCodec.createByCodecName(mTest.getConfigure().getCodec());
+                mStats.getEncoderLifecycle().end(Phase.create);
             } else {
                 mStats.setCodec(Statistics.NA);
             }
@@ -208,11 +211,13 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
 
                 setConfigureParams(mTest, format);
                 mCodec.setCallback(new EncoderCallbackHandler());
+                mStats.getEncoderLifecycle().begin(Phase.configure);
                 mCodec.configure(
                         format,
                         null /* surface */,
                         null /* crypto */,
                         MediaCodec.CONFIGURE_FLAG_ENCODE);
+                mStats.getEncoderLifecycle().end(Phase.configure);
                 Log.d(TAG, "Check input format after encoder is configured");
                 logMediaFormat(mCodec.getInputFormat());
                 mFrameSwapSurface = mOutputMult.addSurface(mCodec.createInputSurface());
@@ -226,10 +231,14 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
                 mSurfaceTexture = new SurfaceTexture(false);
                 mSurface = new Surface(mSurfaceTexture);
             }
+            mStats.getDecoderLifecycle().begin(Phase.configure);
             mDecoder.configure(inputFormat, mSurface, null, 0);
+            mStats.getDecoderLifecycle().end(Phase.configure);
 
             Log.d(TAG, "Start decoder");
+            mStats.getDecoderLifecycle().begin(Phase.start);
             mDecoder.start();
+            mStats.getDecoderLifecycle().end(Phase.start);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
                 mStats.setDecoder(mDecoder.getCodecInfo().getCanonicalName());
             } else {
@@ -262,7 +271,9 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
             if (!mNoEncoding) {
                 try {
                     Log.d(TAG, "Start encoder");
+                    mStats.getEncoderLifecycle().begin(Phase.start);
                     mCodec.start();
+                    mStats.getEncoderLifecycle().end(Phase.start);
                 } catch (Exception ex) {
                     Log.e(TAG, "Start failed: " + ex.getMessage());
                     return "Start encoding failed";
@@ -278,15 +289,7 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
         }
         mFrameTimeUsec = calculateFrameTimingUsec(mFrameRate);
         MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
-        synchronized (this) {
-            Log.d(TAG, "Wait for synchronized start");
-            try {
-                mInitDone = true;
-                wait(WAIT_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        waitForStart();
         Log.d(TAG, mTest.getCommon().getId() + " - Start source reader");
         mSourceReader.start();
         mStats.start();
@@ -352,7 +355,6 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
 
     long mFirstFrameSystemTimeNsec = 0;
     long mDropcount = 0;
-    MediaFormat currentMediaFormat;
     public void readFromBuffer(@NonNull MediaCodec codec, int index, boolean encoder, MediaCodec.BufferInfo info) {
         if (encoder) {
             codec.releaseOutputBuffer(index, true);
@@ -365,13 +367,11 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
                     mFirstFrameSystemTimeNsec = SystemClock.elapsedRealtimeNanos();
                 }
                 // Buffer will be released when drawn
-                MediaFormat newFormat = codec.getOutputFormat();
-                Dictionary<String, Object> mediaFormatInfo = mediaFormatComparison(currentMediaFormat, newFormat);
                 FrameInfo frameInfo = mStats.stopDecodingFrame(timestamp);
-                if (frameInfo != null) {
+                Dictionary<String, Object> mediaFormatInfo = mDecoderFormatTracker.takeChanges();
+                if (frameInfo != null && mediaFormatInfo != null) {
                     frameInfo.addInfo(mediaFormatInfo);
                 }
-                currentMediaFormat = newFormat;
                 mInFramesCount++;
                 long diffUsec = (SystemClock.elapsedRealtimeNanos() - mFirstFrameSystemTimeNsec)/1000;
                 if (!mNoEncoding) {
@@ -615,8 +615,12 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
                             e.printStackTrace();
                         }
                     }
+                    mStats.getEncoderLifecycle().begin(Phase.stop);
                     mCodec.stop();
+                    mStats.getEncoderLifecycle().end(Phase.stop);
+                    mStats.getEncoderLifecycle().begin(Phase.release);
                     mCodec.release();
+                    mStats.getEncoderLifecycle().end(Phase.release);
                     mCodec = null;
                 }
                 if (mDecoder != null) {
@@ -630,8 +634,12 @@ public class SurfaceTranscoder extends SurfaceEncoder implements VsyncListener {
                             e.printStackTrace();
                         }
                     }
+                    mStats.getDecoderLifecycle().begin(Phase.stop);
                     mDecoder.stop();
+                    mStats.getDecoderLifecycle().end(Phase.stop);
+                    mStats.getDecoderLifecycle().begin(Phase.release);
                     mDecoder.release();
+                    mStats.getDecoderLifecycle().end(Phase.release);
                     mDecoder = null;
                 }
             } catch (IllegalStateException iex) {
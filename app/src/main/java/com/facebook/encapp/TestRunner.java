@@ -0,0 +1,298 @@
+package com.facebook.encapp;
+
+import android.util.Log;
+
+import com.facebook.encapp.proto.Test;
+import com.facebook.encapp.utils.CliSettings;
+import com.facebook.encapp.utils.ResultCache;
+import com.facebook.encapp.utils.Statistics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts a test and its parallels, waits for them and writes the
+ * statistics of every coder. Used by both MainActivity and HeadlessService,
+ * which only differ in how the coder of a test is created.
+ */
+public class TestRunner {
+    private final static String TAG = "encapp.runner";
+    final static int WAIT_TIME_MS = 5000;  // 5 secs
+    private final static int INIT_WAIT_TIME_MS = 10000;
+
+    public interface Host {
+        /**
+         * Create the coder of a test, with views or cameras attached if the
+         * host has any.
+         */
+        Encoder createCoder(Test test);
+
+        /**
+         * Called from the test thread when the test and its statistics are done.
+         *
+         * @param status empty if the test passed, the error otherwise
+         */
+        void onTestDone(Test test, String status);
+    }
+
+    private final Host mHost;
+    private final ExecutorService mTestExecutor = Executors.newCachedThreadPool();
+    // all coders ever started, in start order
+    private final Stack<Encoder> mEncoderList = new Stack<>();
+    // all tests not yet joined, pursuit tests are only joined at the end
+    private final List<Future<String>> mPendingTests = new ArrayList<>();
+    private final AtomicInteger mInstancesRunning = new AtomicInteger(0);
+    private String mAppVersion = "";
+    private ResultCache mResultCache = null;
+
+    public TestRunner(Host host) {
+        mHost = host;
+    }
+
+    public void setAppVersion(String appVersion) {
+        mAppVersion = appVersion;
+    }
+
+    public void setResultCache(ResultCache resultCache) {
+        mResultCache = resultCache;
+    }
+
+    public ResultCache getResultCache() {
+        return mResultCache;
+    }
+
+    public List<Encoder> getCoders() {
+        return mEncoderList;
+    }
+
+    public int getInstancesRunning() {
+        return mInstancesRunning.get();
+    }
+
+    public static void report_result(String test_name, String run_id, String result, String error_code) {
+        if (result.equals("ok")) {
+            Log.d(TAG, "Test finished id: \"" + test_name + "\" run_id: " + run_id + " result: \"ok\"");
+        } else {
+            Log.e(TAG, "Test finished id: \"" + test_name + "\" run_id: " + run_id + " result: \"" + result + "\" error: \"" + error_code + "\"");
+        }
+    }
+
+    /**
+     * Traverse list of test cases below this and starts them keeping
+     * track of all tasks.
+     *
+     * @param parallels a list of started parallel test cases
+     * @return the future that belong to the Test test
+     */
+    public Future<String> startTest(Test test, List<Future<String>> parallels) {
+        return startTest(test, parallels, false);
+    }
+
+    /**
+     * @param pipelined the test is set up while another test is running,
+     *                  see Encoder.setPipelined()
+     */
+    public Future<String> startTest(Test test, List<Future<String>> parallels, boolean pipelined) {
+        Log.d(TAG, "Start test: " + test.getCommon().getDescription());
+
+        mInstancesRunning.incrementAndGet();
+        // performTest returns when the coder is initialized, this is enough
+        // to start the next parallel
+        Future<String> t = performTest(test, pipelined);
+
+        for (Test parallel : test.getParallel().getTestList()) {
+            Log.d(TAG, "Start parallel");
+            parallels.add(startTest(parallel, parallels, pipelined));
+        }
+        return t;
+    }
+
+    /**
+     * Create the coder of the test and run it on the executor.
+     *
+     * @return the future belonging to Test test, the result is the error status
+     */
+    private Future<String> performTest(Test test, boolean pipelined) {
+        Encoder coder;
+        synchronized (mEncoderList) {
+            coder = mHost.createCoder(test);
+            coder.setPipelined(pipelined);
+            mEncoderList.add(coder);
+        }
+
+        Future<String> t = mTestExecutor.submit(() -> {
+            Thread.currentThread().setName("TestRunner_" + test.getCommon().getId());
+            String status = "";
+            boolean passed = false;
+            try {
+                Log.d(TAG, "Start test id: \"" + test.getCommon().getId() + "\"");
+                coder.getStatistics().startSetup();
+                status = coder.start();
+                passed = (status.length() == 0);
+                report_result(test.getCommon().getId(), coder.getStatistics().getId(),
+                        passed ? "ok" : "error", status);
+            } finally {
+                // release performTest also if start() failed before init
+                coder.setInitDone();
+                coder.setInputDone();
+                writeStatistics(test, coder.getStatistics(), passed);
+                mInstancesRunning.decrementAndGet();
+                Log.d(TAG, "Done test: " + test.getCommon().getId() + ", to go: " + mInstancesRunning.get());
+                mHost.onTestDone(test, status);
+            }
+            return status;
+        });
+        synchronized (mPendingTests) {
+            mPendingTests.add(t);
+        }
+
+        // If we do not wait for the init to de done before starting next
+        // transcoder there may be issue in the surface handling on lower levels
+        // on certain hw (not thread safe)
+        try {
+            if (!coder.awaitInit(INIT_WAIT_TIME_MS)) {
+                Log.e(TAG, "Init not ready within " + INIT_WAIT_TIME_MS + " ms, probably failure");
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return t;
+    }
+
+    private void writeStatistics(Test test, Statistics stats, boolean passed) {
+        stats.setAppVersion(mAppVersion);
+        String fullFilename = CliSettings.getWorkDir() + "/" + stats.getId() + ".json";
+        Log.d(TAG, "Write stats for " + stats.getId() + " to " + fullFilename);
+        try (FileWriter fw = new FileWriter(fullFilename, false)) {
+            stats.writeJSON(fw);
+        } catch (IOException e) {
+            Log.e(TAG, test.getCommon().getId() + " - Error when writing stats");
+            e.printStackTrace();
+            passed = false;
+        }
+        if (mResultCache != null) {
+            if (passed) {
+                mResultCache.store(test, new File(fullFilename), stats.getEncodedfile());
+            }
+            // no-op after store(), drops the key of a failed test
+            mResultCache.discard(test);
+        }
+    }
+
+    /**
+     * Wait for a test to finish.
+     *
+     * @param timeoutMs 0 waits until the test is done
+     * @return false if the test did not finish in time
+     */
+    public boolean waitForTest(Future<String> test, long timeoutMs) {
+        try {
+            if (timeoutMs > 0) {
+                test.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } else {
+                test.get();
+            }
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException | CancellationException e) {
+            Log.e(TAG, "Wait for test interrupted: " + e.getMessage());
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Test failed: " + e.getCause());
+        }
+        return true;
+    }
+
+    /**
+     * Wait for a test and the tests running in parallel with it.
+     * Most of the time all parallel tests are run the same time length so
+     * the parallels get WAIT_TIME_MS after the main test before they are
+     * considered stuck and released.
+     */
+    public void joinTests(Future<String> test, List<Future<String>> parallels) {
+        waitForTest(test, 0);
+        CountDownLatch done = new CountDownLatch(parallels.size());
+        for (Future<String> parallel : parallels) {
+            mTestExecutor.execute(() -> {
+                waitForTest(parallel, 0);
+                done.countDown();
+            });
+        }
+        try {
+            if (!done.await(WAIT_TIME_MS, TimeUnit.MILLISECONDS)) {
+                Log.d(TAG, done.getCount() + " parallel tests are still running.\nThis is probably not correct.\nTry to release");
+                for (Encoder coder: mEncoderList) {
+                    Log.d(TAG, "Force release");
+                    coder.stopAllActivity();
+                    coder.release();
+                }
+                if (!done.await(WAIT_TIME_MS, TimeUnit.MILLISECONDS)) {
+                    Log.d(TAG, "Parallel tests are still stuck");
+                    for (Future<String> parallel : parallels) {
+                        parallel.cancel(true);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        synchronized (mPendingTests) {
+            mPendingTests.remove(test);
+            mPendingTests.removeAll(parallels);
+        }
+    }
+
+    /**
+     * Wait for the tests that were never joined, e.g. pursuit tests.
+     */
+    public void joinPendingTests() {
+        synchronized (mPendingTests) {
+            for (Future<String> pending : mPendingTests) {
+                waitForTest(pending, 0);
+            }
+            mPendingTests.clear();
+        }
+    }
+
+    /**
+     * Repeat the encoder startup (create to release) of a test and write
+     * the distribution of the phase times to a separate json file.
+     *
+     * @return the error status, empty if the benchmark passed
+     */
+    public String runStartupBenchmark(Test test) {
+        StartupBenchmark benchmark = new StartupBenchmark(test);
+        String status = benchmark.start();
+        benchmark.setAppVersion(mAppVersion);
+        String fullFilename = CliSettings.getWorkDir() + "/" + benchmark.getId() + ".json";
+        try (FileWriter fw = new FileWriter(fullFilename, false)) {
+            benchmark.writeJSON(fw);
+        } catch (IOException e) {
+            Log.e(TAG, test.getCommon().getId() + " - Error when writing startup benchmark result");
+        }
+        report_result(test.getCommon().getId(), benchmark.getId(), (status.length() == 0) ? "ok" : "error", status);
+        return status;
+    }
+
+    /**
+     * Stop the executor and release all coders.
+     */
+    public void shutdown() {
+        mTestExecutor.shutdown();
+        for (Encoder coder : mEncoderList) {
+            coder.release();
+        }
+    }
+}
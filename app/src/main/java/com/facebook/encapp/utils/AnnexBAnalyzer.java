@@ -0,0 +1,65 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits an Annex B byte stream (H.264, H.265) into nal units.
+ */
+public abstract class AnnexBAnalyzer extends BitstreamAnalyzer {
+    /**
+     * Parse one nal unit, without the start code.
+     *
+     * @return bytes of the nal unit that are headers, the rest is payload
+     */
+    protected abstract int parseNal(ByteBuffer buffer, int start, int end);
+
+    /**
+     * @return index of the first byte of the next 00 00 01 at or after from,
+     * end if there is none
+     */
+    static int findStartCode(ByteBuffer buffer, int from, int end) {
+        int i = from + 2;
+        while (i < end) {
+            int b = buffer.get(i) & 0xff;
+            if (b > 1) {
+                // the 01 is at least 3 bytes further
+                i += 3;
+            } else if (b == 0) {
+                i++;
+            } else if (buffer.get(i - 1) == 0 && buffer.get(i - 2) == 0) {
+                return i - 2;
+            } else {
+                i += 3;
+            }
+        }
+        return end;
+    }
+
+    @Override
+    protected void parseFrame(ByteBuffer buffer, int start, int end) {
+        int code = findStartCode(buffer, start, end);
+        if (code == end) {
+            throw new IllegalStateException("No start code");
+        }
+        // leading zeros and the start code
+        mHeaderBytes += code + 3 - start;
+        int nalStart = code + 3;
+        while (nalStart < end) {
+            int next = findStartCode(buffer, nalStart, end);
+            int nalEnd = next;
+            // trailing zeros belong to the next start code
+            while (nalEnd > nalStart && buffer.get(nalEnd - 1) == 0) {
+                nalEnd--;
+            }
+            int headerBytes = Math.min(parseNal(buffer, nalStart, nalEnd), nalEnd - nalStart);
+            mHeaderBytes += headerBytes;
+            mPayloadBytes += nalEnd - nalStart - headerBytes;
+            if (next == end) {
+                mHeaderBytes += end - nalEnd;
+                break;
+            }
+            mHeaderBytes += next + 3 - nalEnd;
+            nalStart = next + 3;
+        }
+    }
+}
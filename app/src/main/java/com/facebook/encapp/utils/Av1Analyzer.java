@@ -0,0 +1,482 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AV1 obu and uncompressed frame header parser (AV1 bitstream
+ * specification 5.3 - 5.9), low overhead bitstream format as written by
+ * MediaCodec. The codec config may be an av1C record, its config obus are
+ * parsed.
+ *
+ * A temporal unit may hold several frames, the values are those of the
+ * shown frame. The quantizer is base_q_idx (0 - 255). The frame header is
+ * only read up to the quantizer, the rest of it is counted as payload. AV1
+ * has no long term reference marking.
+ */
+public class Av1Analyzer extends BitstreamAnalyzer {
+    private static final int OBU_SEQUENCE_HEADER = 1;
+    private static final int OBU_FRAME_HEADER = 3;
+    private static final int OBU_TILE_GROUP = 4;
+    private static final int OBU_FRAME = 6;
+    private static final int OBU_REDUNDANT_FRAME_HEADER = 7;
+    private static final int OBU_TILE_LIST = 8;
+    private static final int KEY_FRAME = 0;
+    private static final int INTRA_ONLY_FRAME = 2;
+    private static final int SWITCH_FRAME = 3;
+    private static final String[] FRAME_TYPES = {"key", "inter", "intra_only", "switch"};
+    private static final int NUM_REF_FRAMES = 8;
+    private static final int REFS_PER_FRAME = 7;
+    private static final int SELECT = 2;
+
+    // sequence header
+    private boolean mSequenceHeader = false;
+    private boolean mReducedStillPictureHeader;
+    private boolean mDecoderModelInfoPresent;
+    private boolean mEqualPictureInterval;
+    private int mBufferRemovalTimeLength;
+    private int mFramePresentationTimeLength;
+    private int mOperatingPoints;
+    private final int[] mOperatingPointIdc = new int[32];
+    private final boolean[] mDecoderModelPresent = new boolean[32];
+    private int mFrameWidthBits;
+    private int mFrameHeightBits;
+    private int mMaxFrameWidth;
+    private int mMaxFrameHeight;
+    private boolean mFrameIdNumbersPresent;
+    private int mDeltaFrameIdLength;
+    private int mFrameIdLength;
+    private boolean mUse128x128Superblock;
+    private boolean mEnableOrderHint;
+    private boolean mEnableRefFrameMvs;
+    private int mSeqForceScreenContentTools;
+    private int mSeqForceIntegerMv;
+    private int mOrderHintBits;
+    private boolean mEnableSuperres;
+
+    // reference frames
+    private final int[] mRefFrameType = new int[NUM_REF_FRAMES];
+    private final int[] mRefUpscaledWidth = new int[NUM_REF_FRAMES];
+    private final int[] mRefFrameHeight = new int[NUM_REF_FRAMES];
+
+    // current frame
+    private int mTemporalIdObu;
+    private int mSpatialIdObu;
+    private int mFrameWidth;
+    private int mUpscaledWidth;
+    private int mFrameHeight;
+    private boolean mShown;
+
+    @Override
+    public String getCodec() {
+        return "av1";
+    }
+
+    @Override
+    protected void parseFrame(ByteBuffer buffer, int start, int end) {
+        mShown = false;
+        int pos = start;
+        if (end > start && (buffer.get(start) & 0x80) != 0) {
+            // av1C, the marker bit is set where an obu has its forbidden bit
+            mHeaderBytes += Math.min(4, end - start);
+            pos += 4;
+        }
+        while (pos < end) {
+            BitReader reader = mReader.reset(buffer, pos, end, false);
+            reader.readBit();
+            int type = reader.readInt(4);
+            boolean extension = reader.readFlag();
+            boolean hasSize = reader.readFlag();
+            reader.readBit();
+            int temporalId = 0;
+            int spatialId = 0;
+            if (extension) {
+                temporalId = reader.readInt(3);
+                spatialId = reader.readInt(2);
+                reader.readInt(3);
+            }
+            long size = hasSize ? reader.readLeb128() : end - pos - reader.getBytesRead();
+            int headerSize = reader.getBytesRead();
+            int obuStart = pos + headerSize;
+            if (size < 0 || size > end - obuStart) {
+                throw new IllegalStateException("Invalid obu size");
+            }
+            int obuEnd = obuStart + (int) size;
+            mHeaderBytes += headerSize;
+            int obuHeaderBytes = (int) size;
+            switch (type) {
+                case OBU_SEQUENCE_HEADER:
+                    parseSequenceHeader(mReader.reset(buffer, obuStart, obuEnd, false));
+                    break;
+                case OBU_FRAME_HEADER:
+                case OBU_REDUNDANT_FRAME_HEADER:
+                case OBU_FRAME:
+                    mTemporalIdObu = temporalId;
+                    mSpatialIdObu = spatialId;
+                    int frameHeaderBytes = parseFrameHeader(mReader.reset(buffer, obuStart, obuEnd, false));
+                    if (type == OBU_FRAME) {
+                        obuHeaderBytes = frameHeaderBytes;
+                    }
+                    break;
+                case OBU_TILE_GROUP:
+                case OBU_TILE_LIST:
+                    obuHeaderBytes = 0;
+                    break;
+                default:
+                    // temporal delimiter, metadata, padding
+            }
+            obuHeaderBytes = Math.min(obuHeaderBytes, (int) size);
+            mHeaderBytes += obuHeaderBytes;
+            mPayloadBytes += (int) size - obuHeaderBytes;
+            pos = obuEnd;
+        }
+    }
+
+    private void parseSequenceHeader(BitReader reader) {
+        reader.readInt(3);
+        reader.readBit();
+        mReducedStillPictureHeader = reader.readFlag();
+        mDecoderModelInfoPresent = false;
+        mEqualPictureInterval = false;
+        int bufferDelayLength = 0;
+        if (mReducedStillPictureHeader) {
+            mOperatingPoints = 1;
+            mOperatingPointIdc[0] = 0;
+            mDecoderModelPresent[0] = false;
+            reader.readInt(5);
+        } else {
+            if (reader.readFlag()) {
+                // timing_info()
+                reader.skipBits(64);
+                mEqualPictureInterval = reader.readFlag();
+                if (mEqualPictureInterval) {
+                    reader.readUvlc();
+                }
+                mDecoderModelInfoPresent = reader.readFlag();
+                if (mDecoderModelInfoPresent) {
+                    bufferDelayLength = reader.readInt(5) + 1;
+                    reader.skipBits(32);
+                    mBufferRemovalTimeLength = reader.readInt(5) + 1;
+                    mFramePresentationTimeLength = reader.readInt(5) + 1;
+                }
+            }
+            boolean initialDisplayDelayPresent = reader.readFlag();
+            mOperatingPoints = reader.readInt(5) + 1;
+            for (int i = 0; i < mOperatingPoints; i++) {
+                mOperatingPointIdc[i] = reader.readInt(12);
+                if (reader.readInt(5) > 7) {
+                    reader.readBit();
+                }
+                mDecoderModelPresent[i] = false;
+                if (mDecoderModelInfoPresent) {
+                    mDecoderModelPresent[i] = reader.readFlag();
+                    if (mDecoderModelPresent[i]) {
+                        reader.skipBits(2L * bufferDelayLength + 1);
+                    }
+                }
+                if (initialDisplayDelayPresent && reader.readFlag()) {
+                    reader.readInt(4);
+                }
+            }
+        }
+        mFrameWidthBits = reader.readInt(4) + 1;
+        mFrameHeightBits = reader.readInt(4) + 1;
+        mMaxFrameWidth = reader.readInt(mFrameWidthBits) + 1;
+        mMaxFrameHeight = reader.readInt(mFrameHeightBits) + 1;
+        mFrameIdNumbersPresent = !mReducedStillPictureHeader && reader.readFlag();
+        if (mFrameIdNumbersPresent) {
+            mDeltaFrameIdLength = reader.readInt(4) + 2;
+            mFrameIdLength = reader.readInt(3) + 1 + mDeltaFrameIdLength;
+        }
+        mUse128x128Superblock = reader.readFlag();
+        reader.readBit();
+        reader.readBit();
+        mEnableOrderHint = false;
+        mEnableRefFrameMvs = false;
+        mSeqForceScreenContentTools = SELECT;
+        mSeqForceIntegerMv = SELECT;
+        mOrderHintBits = 0;
+        if (!mReducedStillPictureHeader) {
+            reader.skipBits(4);
+            mEnableOrderHint = reader.readFlag();
+            if (mEnableOrderHint) {
+                reader.readBit();
+                mEnableRefFrameMvs = reader.readFlag();
+            }
+            if (!reader.readFlag()) {
+                mSeqForceScreenContentTools = reader.readBit();
+            }
+            if (mSeqForceScreenContentTools > 0) {
+                if (!reader.readFlag()) {
+                    mSeqForceIntegerMv = reader.readBit();
+                }
+            }
+            if (mEnableOrderHint) {
+                mOrderHintBits = reader.readInt(3) + 1;
+            }
+        }
+        mEnableSuperres = reader.readFlag();
+        mSequenceHeader = true;
+    }
+
+    private void superresParams(BitReader reader) {
+        int denominator = 8;
+        if (mEnableSuperres && reader.readFlag()) {
+            denominator = reader.readInt(3) + 9;
+        }
+        mUpscaledWidth = mFrameWidth;
+        mFrameWidth = (mUpscaledWidth * 8 + denominator / 2) / denominator;
+    }
+
+    private void frameSize(BitReader reader, boolean frameSizeOverride) {
+        if (frameSizeOverride) {
+            mFrameWidth = reader.readInt(mFrameWidthBits) + 1;
+            mFrameHeight = reader.readInt(mFrameHeightBits) + 1;
+        } else {
+            mFrameWidth = mMaxFrameWidth;
+            mFrameHeight = mMaxFrameHeight;
+        }
+        superresParams(reader);
+    }
+
+    private static void renderSize(BitReader reader) {
+        if (reader.readFlag()) {
+            reader.skipBits(32);
+        }
+    }
+
+    private static int tileLog2(int blockSize, int target) {
+        int k = 0;
+        while ((blockSize << k) < target) {
+            k++;
+        }
+        return k;
+    }
+
+    private void tileInfo(BitReader reader) {
+        int miCols = 2 * ((mFrameWidth + 7) >> 3);
+        int miRows = 2 * ((mFrameHeight + 7) >> 3);
+        int sbCols = mUse128x128Superblock ? (miCols + 31) >> 5 : (miCols + 15) >> 4;
+        int sbRows = mUse128x128Superblock ? (miRows + 31) >> 5 : (miRows + 15) >> 4;
+        int sbShift = mUse128x128Superblock ? 5 : 4;
+        int sbSize = sbShift + 2;
+        int maxTileWidthSb = 4096 >> sbSize;
+        int maxTileAreaSb = (4096 * 2304) >> (2 * sbSize);
+        int minLog2TileCols = tileLog2(maxTileWidthSb, sbCols);
+        int maxLog2TileCols = tileLog2(1, Math.min(sbCols, 64));
+        int maxLog2TileRows = tileLog2(1, Math.min(sbRows, 64));
+        int minLog2Tiles = Math.max(minLog2TileCols, tileLog2(maxTileAreaSb, sbRows * sbCols));
+        int tileColsLog2;
+        int tileRowsLog2;
+        if (reader.readFlag()) {
+            tileColsLog2 = minLog2TileCols;
+            while (tileColsLog2 < maxLog2TileCols && reader.readFlag()) {
+                tileColsLog2++;
+            }
+            tileRowsLog2 = Math.max(minLog2Tiles - tileColsLog2, 0);
+            while (tileRowsLog2 < maxLog2TileRows && reader.readFlag()) {
+                tileRowsLog2++;
+            }
+        } else {
+            int widestTileSb = 0;
+            int tileCols = 0;
+            for (int startSb = 0; startSb < sbCols; tileCols++) {
+                int sizeSb = reader.readNs(Math.min(sbCols - startSb, maxTileWidthSb)) + 1;
+                widestTileSb = Math.max(sizeSb, widestTileSb);
+                startSb += sizeSb;
+            }
+            tileColsLog2 = tileLog2(1, tileCols);
+            int areaSb = (minLog2Tiles > 0) ? (sbRows * sbCols) >> (minLog2Tiles + 1) : sbRows * sbCols;
+            int maxTileHeightSb = Math.max(areaSb / widestTileSb, 1);
+            int tileRows = 0;
+            for (int startSb = 0; startSb < sbRows; tileRows++) {
+                startSb += reader.readNs(Math.min(sbRows - startSb, maxTileHeightSb)) + 1;
+            }
+            tileRowsLog2 = tileLog2(1, tileRows);
+        }
+        if (tileColsLog2 > 0 || tileRowsLog2 > 0) {
+            reader.skipBits(tileRowsLog2 + tileColsLog2 + 2);
+        }
+    }
+
+    /**
+     * @return bytes of the frame header that were read
+     */
+    private int parseFrameHeader(BitReader reader) {
+        if (!mSequenceHeader) {
+            throw new IllegalStateException("No sequence header");
+        }
+        int allFrames = (1 << NUM_REF_FRAMES) - 1;
+        int frameType;
+        boolean showFrame;
+        boolean errorResilient;
+        if (mReducedStillPictureHeader) {
+            frameType = KEY_FRAME;
+            showFrame = true;
+            errorResilient = true;
+        } else {
+            if (reader.readFlag()) {
+                // show_existing_frame
+                int index = reader.readInt(3);
+                if (mDecoderModelInfoPresent && !mEqualPictureInterval) {
+                    reader.skipBits(mFramePresentationTimeLength);
+                }
+                if (mFrameIdNumbersPresent) {
+                    reader.skipBits(mFrameIdLength);
+                }
+                if (!mShown) {
+                    mShown = true;
+                    setFrame(mRefFrameType[index], -1);
+                }
+                if (mRefFrameType[index] == KEY_FRAME) {
+                    // the key frame is loaded into all references
+                    for (int i = 0; i < NUM_REF_FRAMES; i++) {
+                        mRefFrameType[i] = KEY_FRAME;
+                        mRefUpscaledWidth[i] = mRefUpscaledWidth[index];
+                        mRefFrameHeight[i] = mRefFrameHeight[index];
+                    }
+                    mReference = true;
+                }
+                return reader.getBytesRead();
+            }
+            frameType = reader.readInt(2);
+            showFrame = reader.readFlag();
+            if (showFrame && mDecoderModelInfoPresent && !mEqualPictureInterval) {
+                reader.skipBits(mFramePresentationTimeLength);
+            }
+            if (!showFrame) {
+                // showable_frame
+                reader.readBit();
+            }
+            errorResilient = (frameType == SWITCH_FRAME || (frameType == KEY_FRAME && showFrame)) ||
+                    reader.readFlag();
+        }
+        boolean intra = frameType == KEY_FRAME || frameType == INTRA_ONLY_FRAME;
+        // the shown frame of the temporal unit, or the first one
+        boolean current = !mShown && (showFrame || mFrameType.equals("unknown"));
+        if (current) {
+            mShown = showFrame;
+            setFrame(frameType, -1);
+        }
+        boolean disableCdfUpdate = reader.readFlag();
+        int allowScreenContentTools = mSeqForceScreenContentTools;
+        if (allowScreenContentTools == SELECT) {
+            allowScreenContentTools = reader.readBit();
+        }
+        int forceIntegerMv = 0;
+        if (allowScreenContentTools > 0) {
+            forceIntegerMv = (mSeqForceIntegerMv == SELECT) ? reader.readBit() : mSeqForceIntegerMv;
+        }
+        if (mFrameIdNumbersPresent) {
+            reader.skipBits(mFrameIdLength);
+        }
+        boolean frameSizeOverride = frameType == SWITCH_FRAME ||
+                (!mReducedStillPictureHeader && reader.readFlag());
+        reader.skipBits(mOrderHintBits);
+        if (!intra && !errorResilient) {
+            // primary_ref_frame
+            reader.readInt(3);
+        }
+        if (mDecoderModelInfoPresent && reader.readFlag()) {
+            // buffer_removal_time
+            for (int i = 0; i < mOperatingPoints; i++) {
+                if (mDecoderModelPresent[i]) {
+                    int idc = mOperatingPointIdc[i];
+                    boolean inTemporalLayer = ((idc >> mTemporalIdObu) & 1) != 0;
+                    boolean inSpatialLayer = ((idc >> (mSpatialIdObu + 8)) & 1) != 0;
+                    if (idc == 0 || (inTemporalLayer && inSpatialLayer)) {
+                        reader.skipBits(mBufferRemovalTimeLength);
+                    }
+                }
+            }
+        }
+        int refreshFrameFlags = allFrames;
+        if (!(frameType == SWITCH_FRAME || (frameType == KEY_FRAME && showFrame))) {
+            refreshFrameFlags = reader.readInt(8);
+        }
+        if (refreshFrameFlags != 0) {
+            mReference = true;
+        }
+        if ((!intra || refreshFrameFlags != allFrames) && errorResilient && mEnableOrderHint) {
+            reader.skipBits((long) NUM_REF_FRAMES * mOrderHintBits);
+        }
+        if (intra) {
+            frameSize(reader, frameSizeOverride);
+            renderSize(reader);
+            if (allowScreenContentTools > 0 && mUpscaledWidth == mFrameWidth) {
+                reader.readBit();
+            }
+        } else {
+            boolean shortSignaling = mEnableOrderHint && reader.readFlag();
+            if (shortSignaling) {
+                reader.skipBits(6);
+            }
+            int[] refFrameIdx = new int[REFS_PER_FRAME];
+            for (int i = 0; i < REFS_PER_FRAME; i++) {
+                if (!shortSignaling) {
+                    refFrameIdx[i] = reader.readInt(3);
+                }
+                if (mFrameIdNumbersPresent) {
+                    reader.skipBits(mDeltaFrameIdLength);
+                }
+            }
+            if (frameSizeOverride && !errorResilient) {
+                // frame_size_with_refs()
+                boolean found = false;
+                for (int i = 0; i < REFS_PER_FRAME && !found; i++) {
+                    found = reader.readFlag();
+                    if (found) {
+                        if (shortSignaling) {
+                            // the references are derived, not worth it
+                            throw new IllegalStateException("Size from derived reference");
+                        }
+                        mUpscaledWidth = mRefUpscaledWidth[refFrameIdx[i]];
+                        mFrameWidth = mUpscaledWidth;
+                        mFrameHeight = mRefFrameHeight[refFrameIdx[i]];
+                    }
+                }
+                if (!found) {
+                    frameSize(reader, true);
+                    renderSize(reader);
+                } else {
+                    superresParams(reader);
+                }
+            } else {
+                frameSize(reader, frameSizeOverride);
+                renderSize(reader);
+            }
+            if (forceIntegerMv == 0) {
+                // allow_high_precision_mv
+                reader.readBit();
+            }
+            if (!reader.readFlag()) {
+                reader.readInt(2);
+            }
+            reader.readBit();
+            if (!errorResilient && mEnableRefFrameMvs) {
+                reader.readBit();
+            }
+        }
+        for (int i = 0; i < NUM_REF_FRAMES; i++) {
+            if ((refreshFrameFlags & (1 << i)) != 0) {
+                mRefFrameType[i] = frameType;
+                mRefUpscaledWidth[i] = mUpscaledWidth;
+                mRefFrameHeight[i] = mFrameHeight;
+            }
+        }
+        if (!mReducedStillPictureHeader && !disableCdfUpdate) {
+            reader.readBit();
+        }
+        tileInfo(reader);
+        int baseQIdx = reader.readInt(8);
+        if (current) {
+            mQp = baseQIdx;
+        }
+        return reader.getBytesRead();
+    }
+
+    private void setFrame(int frameType, int qp) {
+        mFrameType = FRAME_TYPES[frameType];
+        mTemporalId = mTemporalIdObu;
+        mQp = qp;
+    }
+}
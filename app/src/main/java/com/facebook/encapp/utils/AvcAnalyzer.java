@@ -0,0 +1,333 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * H.264 slice header parser (ITU-T H.264 7.3).
+ *
+ * The temporal layer is only known when the encoder writes svc prefix nal
+ * units (type 14), otherwise all frames are in layer 0. Streams with slice
+ * groups (FMO) are not parsed beyond the nal header.
+ */
+public class AvcAnalyzer extends AnnexBAnalyzer {
+    private static final int NAL_SLICE = 1;
+    private static final int NAL_IDR = 5;
+    private static final int NAL_SPS = 7;
+    private static final int NAL_PPS = 8;
+    private static final int NAL_PREFIX = 14;
+    private static final int NAL_SLICE_EXT = 20;
+    private static final String[] SLICE_TYPES = {"P", "B", "I", "SP", "SI"};
+
+    private static class Sps {
+        int mChromaArrayType = 1;
+        boolean mSeparateColourPlane;
+        int mLog2MaxFrameNum;
+        int mPocType;
+        int mLog2MaxPocLsb;
+        boolean mDeltaPicOrderAlwaysZero;
+        boolean mFrameMbsOnly;
+    }
+
+    private static class Pps {
+        int mSpsId;
+        boolean mCabac;
+        boolean mBottomFieldPicOrderPresent;
+        boolean mSliceGroups;
+        int mNumRefIdxL0;
+        int mNumRefIdxL1;
+        boolean mWeightedPred;
+        int mWeightedBipredIdc;
+        int mPicInitQp;
+        boolean mDeblockingFilterControl;
+        boolean mRedundantPicCnt;
+    }
+
+    private final Sps[] mSps = new Sps[32];
+    private final Pps[] mPps = new Pps[256];
+    private boolean mFirstSlice;
+
+    @Override
+    public String getCodec() {
+        return "avc";
+    }
+
+    @Override
+    protected void parseFrame(ByteBuffer buffer, int start, int end) {
+        mFirstSlice = true;
+        super.parseFrame(buffer, start, end);
+    }
+
+    @Override
+    protected int parseNal(ByteBuffer buffer, int start, int end) {
+        if (end - start < 1) {
+            return end - start;
+        }
+        int header = buffer.get(start) & 0xff;
+        int nalRefIdc = (header >> 5) & 3;
+        int type = header & 0x1f;
+        switch (type) {
+            case NAL_SLICE:
+            case NAL_IDR:
+                if (nalRefIdc != 0) {
+                    mReference = true;
+                }
+                return 1 + parseSlice(buffer, start + 1, end, type, nalRefIdc);
+            case NAL_SPS:
+                parseSps(mReader.reset(buffer, start + 1, end, true));
+                break;
+            case NAL_PPS:
+                parsePps(mReader.reset(buffer, start + 1, end, true));
+                break;
+            case NAL_PREFIX:
+            case NAL_SLICE_EXT:
+                // nal_unit_header_svc_extension()
+                if (end - start >= 4 && (buffer.get(start + 1) & 0x80) != 0) {
+                    mTemporalId = (buffer.get(start + 3) >> 5) & 7;
+                }
+                if (type == NAL_SLICE_EXT) {
+                    return Math.min(4, end - start);
+                }
+                break;
+            default:
+        }
+        // everything else is a header
+        return end - start;
+    }
+
+    private static void skipScalingList(BitReader reader, int size) {
+        int last = 8;
+        int next = 8;
+        for (int j = 0; j < size; j++) {
+            if (next != 0) {
+                next = (last + reader.readSe() + 256) % 256;
+            }
+            last = (next == 0) ? last : next;
+        }
+    }
+
+    private void parseSps(BitReader reader) {
+        Sps sps = new Sps();
+        int profile = reader.readInt(8);
+        reader.skipBits(16);
+        int id = reader.readUe();
+        if (profile == 100 || profile == 110 || profile == 122 || profile == 244 ||
+                profile == 44 || profile == 83 || profile == 86 || profile == 118 ||
+                profile == 128 || profile == 138 || profile == 139 || profile == 134 ||
+                profile == 135) {
+            int chromaFormat = reader.readUe();
+            sps.mChromaArrayType = chromaFormat;
+            if (chromaFormat == 3 && reader.readFlag()) {
+                sps.mSeparateColourPlane = true;
+                sps.mChromaArrayType = 0;
+            }
+            reader.readUe();
+            reader.readUe();
+            reader.readBit();
+            if (reader.readFlag()) {
+                for (int i = 0; i < ((chromaFormat != 3) ? 8 : 12); i++) {
+                    if (reader.readFlag()) {
+                        skipScalingList(reader, (i < 6) ? 16 : 64);
+                    }
+                }
+            }
+        }
+        sps.mLog2MaxFrameNum = reader.readUe() + 4;
+        sps.mPocType = reader.readUe();
+        if (sps.mPocType == 0) {
+            sps.mLog2MaxPocLsb = reader.readUe() + 4;
+        } else if (sps.mPocType == 1) {
+            sps.mDeltaPicOrderAlwaysZero = reader.readFlag();
+            reader.readSe();
+            reader.readSe();
+            int cycle = reader.readUe();
+            for (int i = 0; i < cycle; i++) {
+                reader.readSe();
+            }
+        }
+        reader.readUe();
+        reader.readBit();
+        reader.readUe();
+        reader.readUe();
+        sps.mFrameMbsOnly = reader.readFlag();
+        mSps[id & 31] = sps;
+    }
+
+    private void parsePps(BitReader reader) {
+        Pps pps = new Pps();
+        int id = reader.readUe();
+        pps.mSpsId = reader.readUe();
+        pps.mCabac = reader.readFlag();
+        pps.mBottomFieldPicOrderPresent = reader.readFlag();
+        if (reader.readUe() > 0) {
+            pps.mSliceGroups = true;
+            mPps[id & 255] = pps;
+            return;
+        }
+        pps.mNumRefIdxL0 = reader.readUe() + 1;
+        pps.mNumRefIdxL1 = reader.readUe() + 1;
+        pps.mWeightedPred = reader.readFlag();
+        pps.mWeightedBipredIdc = reader.readInt(2);
+        pps.mPicInitQp = 26 + reader.readSe();
+        reader.readSe();
+        reader.readSe();
+        pps.mDeblockingFilterControl = reader.readFlag();
+        reader.readBit();
+        pps.mRedundantPicCnt = reader.readFlag();
+        mPps[id & 255] = pps;
+    }
+
+    private void skipRefPicListModification(BitReader reader) {
+        if (!reader.readFlag()) {
+            return;
+        }
+        int idc;
+        do {
+            idc = reader.readUe();
+            if (idc == 0 || idc == 1) {
+                reader.readUe();
+            } else if (idc == 2) {
+                // long_term_pic_num
+                reader.readUe();
+                mLtrUse = true;
+            }
+        } while (idc != 3);
+    }
+
+    private static void skipWeights(BitReader reader, int refs, int chromaArrayType) {
+        for (int i = 0; i < refs; i++) {
+            if (reader.readFlag()) {
+                reader.readSe();
+                reader.readSe();
+            }
+            if (chromaArrayType != 0 && reader.readFlag()) {
+                for (int j = 0; j < 4; j++) {
+                    reader.readSe();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bytes of the slice header
+     */
+    private int parseSlice(ByteBuffer buffer, int start, int end, int nalType, int nalRefIdc) {
+        BitReader reader = mReader.reset(buffer, start, end, true);
+        reader.readUe();
+        int sliceType = reader.readUe() % 5;
+        Pps pps = mPps[reader.readUe() & 255];
+        Sps sps = (pps != null) ? mSps[pps.mSpsId & 31] : null;
+        boolean first = mFirstSlice;
+        mFirstSlice = false;
+        if (first) {
+            mFrameType = SLICE_TYPES[sliceType];
+        }
+        if (sps == null || pps.mSliceGroups) {
+            // unknown parameter sets, only the slice type is known
+            return reader.getBytesRead();
+        }
+        boolean p = sliceType == 0 || sliceType == 3;
+        boolean b = sliceType == 1;
+        if (sps.mSeparateColourPlane) {
+            reader.readInt(2);
+        }
+        reader.skipBits(sps.mLog2MaxFrameNum);
+        boolean field = false;
+        if (!sps.mFrameMbsOnly) {
+            field = reader.readFlag();
+            if (field) {
+                reader.readBit();
+            }
+        }
+        if (nalType == NAL_IDR) {
+            reader.readUe();
+        }
+        if (sps.mPocType == 0) {
+            reader.skipBits(sps.mLog2MaxPocLsb);
+            if (pps.mBottomFieldPicOrderPresent && !field) {
+                reader.readSe();
+            }
+        } else if (sps.mPocType == 1 && !sps.mDeltaPicOrderAlwaysZero) {
+            reader.readSe();
+            if (pps.mBottomFieldPicOrderPresent && !field) {
+                reader.readSe();
+            }
+        }
+        if (pps.mRedundantPicCnt) {
+            reader.readUe();
+        }
+        if (b) {
+            reader.readBit();
+        }
+        int refsL0 = pps.mNumRefIdxL0;
+        int refsL1 = pps.mNumRefIdxL1;
+        if (p || b) {
+            if (reader.readFlag()) {
+                refsL0 = reader.readUe() + 1;
+                if (b) {
+                    refsL1 = reader.readUe() + 1;
+                }
+            }
+            skipRefPicListModification(reader);
+            if (b) {
+                skipRefPicListModification(reader);
+            }
+        }
+        if ((pps.mWeightedPred && p) || (pps.mWeightedBipredIdc == 1 && b)) {
+            reader.readUe();
+            if (sps.mChromaArrayType != 0) {
+                reader.readUe();
+            }
+            skipWeights(reader, refsL0, sps.mChromaArrayType);
+            if (b) {
+                skipWeights(reader, refsL1, sps.mChromaArrayType);
+            }
+        }
+        if (nalRefIdc != 0) {
+            // dec_ref_pic_marking()
+            if (nalType == NAL_IDR) {
+                reader.readBit();
+                if (reader.readFlag()) {
+                    mLtrMark = true;
+                }
+            } else if (reader.readFlag()) {
+                int mmco;
+                do {
+                    mmco = reader.readUe();
+                    if (mmco == 1 || mmco == 3) {
+                        reader.readUe();
+                    }
+                    if (mmco == 2) {
+                        reader.readUe();
+                    }
+                    if (mmco == 3 || mmco == 6) {
+                        reader.readUe();
+                        mLtrMark = true;
+                    }
+                    if (mmco == 4) {
+                        reader.readUe();
+                    }
+                } while (mmco != 0);
+            }
+        }
+        if (pps.mCabac && sliceType != 2 && sliceType != 4) {
+            reader.readUe();
+        }
+        int qp = pps.mPicInitQp + reader.readSe();
+        if (first) {
+            mQp = qp;
+        }
+        if (sliceType == 3 || sliceType == 4) {
+            if (sliceType == 3) {
+                reader.readBit();
+            }
+            reader.readSe();
+        }
+        if (pps.mDeblockingFilterControl) {
+            if (reader.readUe() != 1) {
+                reader.readSe();
+                reader.readSe();
+            }
+        }
+        return reader.getBytesRead();
+    }
+}
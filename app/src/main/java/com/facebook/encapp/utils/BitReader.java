@@ -0,0 +1,175 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the bits of a part of a ByteBuffer, msb first, without copying it
+ * and without changing its position. For H.264 and H.265 the emulation
+ * prevention bytes (00 00 03) are skipped.
+ *
+ * Reading past the end throws an IllegalStateException.
+ */
+public class BitReader {
+    private ByteBuffer mBuffer;
+    private int mStart;
+    private int mPos;
+    private int mEnd;
+    private boolean mEmulationPrevention;
+    private int mZeros;
+    private int mCurrent;
+    private int mBitsLeft;
+
+    public BitReader reset(ByteBuffer buffer, int start, int end, boolean emulationPrevention) {
+        mBuffer = buffer;
+        mStart = start;
+        mPos = start;
+        mEnd = end;
+        mEmulationPrevention = emulationPrevention;
+        mZeros = 0;
+        mBitsLeft = 0;
+        return this;
+    }
+
+    private int nextByte() {
+        if (mPos >= mEnd) {
+            throw new IllegalStateException("End of data");
+        }
+        int b = mBuffer.get(mPos++) & 0xff;
+        if (mEmulationPrevention) {
+            if (mZeros >= 2 && b == 3) {
+                mZeros = 0;
+                if (mPos >= mEnd) {
+                    throw new IllegalStateException("End of data");
+                }
+                b = mBuffer.get(mPos++) & 0xff;
+            }
+            mZeros = (b == 0) ? mZeros + 1 : 0;
+        }
+        return b;
+    }
+
+    public int readBit() {
+        if (mBitsLeft == 0) {
+            mCurrent = nextByte();
+            mBitsLeft = 8;
+        }
+        mBitsLeft--;
+        return (mCurrent >> mBitsLeft) & 1;
+    }
+
+    public boolean readFlag() {
+        return readBit() == 1;
+    }
+
+    /**
+     * @param bits at most 32
+     */
+    public long readBits(int bits) {
+        long value = 0;
+        while (bits > 0) {
+            if (mBitsLeft == 0) {
+                mCurrent = nextByte();
+                mBitsLeft = 8;
+            }
+            int take = Math.min(bits, mBitsLeft);
+            mBitsLeft -= take;
+            value = (value << take) | ((mCurrent >> mBitsLeft) & ((1 << take) - 1));
+            bits -= take;
+        }
+        return value;
+    }
+
+    public int readInt(int bits) {
+        return (int) readBits(bits);
+    }
+
+    public void skipBits(long bits) {
+        while (bits > 0) {
+            int skip = (int) Math.min(bits, 32);
+            readBits(skip);
+            bits -= skip;
+        }
+    }
+
+    /**
+     * Exp-Golomb ue(v)
+     */
+    public int readUe() {
+        int zeros = 0;
+        while (readBit() == 0) {
+            zeros++;
+            if (zeros > 31) {
+                throw new IllegalStateException("Invalid exp-golomb code");
+            }
+        }
+        return (int) ((1L << zeros) - 1 + readBits(zeros));
+    }
+
+    /**
+     * Exp-Golomb se(v)
+     */
+    public int readSe() {
+        int value = readUe();
+        return ((value & 1) != 0) ? (value + 1) / 2 : -(value / 2);
+    }
+
+    /**
+     * AV1 leb128()
+     */
+    public long readLeb128() {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = readInt(8);
+            value |= (long) (b & 0x7f) << (i * 7);
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * AV1 uvlc()
+     */
+    public long readUvlc() {
+        int zeros = 0;
+        while (readBit() == 0) {
+            zeros++;
+        }
+        if (zeros >= 32) {
+            return (1L << 32) - 1;
+        }
+        return readBits(zeros) + (1L << zeros) - 1;
+    }
+
+    /**
+     * AV1 ns(n), a value below n
+     */
+    public int readNs(int n) {
+        int w = 0;
+        for (int x = n; x != 0; x >>= 1) {
+            w++;
+        }
+        int m = (1 << w) - n;
+        int v = readInt(w - 1);
+        if (v < m) {
+            return v;
+        }
+        return (v << 1) - m + readBit();
+    }
+
+    public void byteAlign() {
+        mBitsLeft = 0;
+    }
+
+    /**
+     * @return bytes of the buffer read so far, including emulation prevention
+     */
+    public int getBytesRead() {
+        return mPos - mStart;
+    }
+
+    public int getPosition() {
+        return mPos;
+    }
+}
@@ -0,0 +1,78 @@
+package com.facebook.encapp.utils;
+
+/**
+ * Closed loop rate control: a controller sees every encoded frame as it
+ * completes and decides the bitrate, framerate and sync frames of the
+ * encoder, which the encoder applies at runtime.
+ *
+ * Implementations have no Android dependencies so they can be run on the
+ * JVM with recorded feedback. See DelayBasedController and
+ * BufferBasedController.
+ */
+public interface BitrateController {
+    /**
+     * What is known about one encoded frame. Times are elapsedRealtimeNanos.
+     * Without a channel the frame is sent when it is queued into the encoder
+     * and arrives when it is encoded, i.e. the encoder is the link.
+     */
+    class Feedback {
+        public long mPts;
+        public int mSize;
+        public boolean mKeyFrame;
+        // time spent in the encoder
+        public long mLatencyNs;
+        // frames queued into the encoder and not encoded yet
+        public int mQueueDepth;
+        // time the frame waited for the channel, 0 without a channel
+        public long mQueueDelayNs;
+        public long mSendTimeNs;
+        public long mArrivalTimeNs;
+        // lost or dropped in the channel
+        public boolean mLost;
+        // time the feedback is given
+        public long mTimeNs;
+    }
+
+    /**
+     * A change to apply to the encoder, 0 (false) for what does not change.
+     */
+    class Decision {
+        private final int mBitrate;
+        private final float mFramerate;
+        private final boolean mRequestSync;
+        private final String mReason;
+
+        public Decision(int bitrate, float framerate, boolean requestSync, String reason) {
+            mBitrate = bitrate;
+            mFramerate = framerate;
+            mRequestSync = requestSync;
+            mReason = reason;
+        }
+
+        public int getBitrate() {
+            return mBitrate;
+        }
+
+        public float getFramerate() {
+            return mFramerate;
+        }
+
+        public boolean isRequestSync() {
+            return mRequestSync;
+        }
+
+        /**
+         * @return state of the controller that led to the decision
+         */
+        public String getReason() {
+            return mReason;
+        }
+    }
+
+    String getName();
+
+    /**
+     * @return the changes to apply, null if none
+     */
+    Decision onFrame(Feedback feedback);
+}
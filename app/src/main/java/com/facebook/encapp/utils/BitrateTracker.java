@@ -0,0 +1,287 @@
+package com.facebook.encapp.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Online bitrate bookkeeping for encoded frames.
+ *
+ * Every frame is added once, in output order, and all windows are updated
+ * in O(1) amortized time. Besides the running totals used for the mean
+ * bitrate it keeps
+ * - the bitrate over a number of sliding windows (e.g. 1 sec and the gop length)
+ *   together with the peak and the deviation from the target bitrate
+ * - a leaky bucket buffer model (VBV/HRD style) draining at the target bitrate,
+ *   counting the frames that would overflow it.
+ *
+ * Frames may arrive slightly out of pts order (b-frames), the window end is
+ * the highest pts seen so far.
+ */
+public class BitrateTracker {
+    private static final int MAX_OVERFLOW_EVENTS = 1000;
+
+    private final Window[] mWindows;
+    private final double mBufferSec;
+    private long mTargetBitrate;
+
+    private long mFrameCount = 0;
+    private long mTotalBytes = 0;
+    private long mFirstPtsUsec = Long.MAX_VALUE;
+    private long mLastPtsUsec = Long.MIN_VALUE;
+    private long mLastFrameBytes = 0;
+
+    // buffer model
+    private double mBufferBits = 0;
+    private double mMaxBufferBits = 0;
+    private long mBufferPtsUsec = -1;
+    private int mOverflowCount = 0;
+    private final List<OverflowEvent> mOverflowEvents = new ArrayList<>();
+
+    public static class OverflowEvent {
+        public final long frame;
+        public final long ptsUsec;
+        public final long excessBits;
+
+        OverflowEvent(long frame, long ptsUsec, long excessBits) {
+            this.frame = frame;
+            this.ptsUsec = ptsUsec;
+            this.excessBits = excessBits;
+        }
+    }
+
+    /**
+     * Bitrate over a sliding window of fixed duration.
+     */
+    public static class Window {
+        private final long mLengthUsec;
+        // ring buffer of (pts, bytes), grows when needed
+        private long[] mPts = new long[64];
+        private long[] mBytes = new long[64];
+        private int mHead = 0;
+        private int mSize = 0;
+        private long mWindowBytes = 0;
+        private boolean mFull = false;
+
+        private double mCurrentBitrate = 0;
+        private double mPeakBitrate = 0;
+        private long mPeakPtsUsec = -1;
+        private double mMinBitrate = Double.MAX_VALUE;
+        private int mSamples = 0;
+        private double mDeviationSum = 0;
+        private double mMaxDeviation = 0;
+
+        Window(long lengthUsec) {
+            mLengthUsec = lengthUsec;
+        }
+
+        void add(long ptsUsec, long bytes, long nowUsec, long firstPtsUsec, long targetBitrate) {
+            if (mSize == mPts.length) {
+                grow();
+            }
+            int tail = (mHead + mSize) % mPts.length;
+            mPts[tail] = ptsUsec;
+            mBytes[tail] = bytes;
+            mSize++;
+            mWindowBytes += bytes;
+
+            // drop everything that has fallen out of (now - length, now]
+            long start = nowUsec - mLengthUsec;
+            while (mSize > 0 && mPts[mHead] <= start) {
+                mWindowBytes -= mBytes[mHead];
+                mHead = (mHead + 1) % mPts.length;
+                mSize--;
+            }
+            // only report once a complete window has been seen
+            if (!mFull && nowUsec - firstPtsUsec >= mLengthUsec) {
+                mFull = true;
+            }
+            if (!mFull) {
+                return;
+            }
+            mCurrentBitrate = mWindowBytes * 8.0 * 1000000.0 / mLengthUsec;
+            if (mCurrentBitrate > mPeakBitrate) {
+                mPeakBitrate = mCurrentBitrate;
+                mPeakPtsUsec = nowUsec;
+            }
+            mMinBitrate = Math.min(mMinBitrate, mCurrentBitrate);
+            mSamples++;
+            if (targetBitrate > 0) {
+                double deviation = (mCurrentBitrate - targetBitrate) / targetBitrate;
+                mDeviationSum += Math.abs(deviation);
+                if (Math.abs(deviation) > Math.abs(mMaxDeviation)) {
+                    mMaxDeviation = deviation;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] pts = new long[mPts.length * 2];
+            long[] bytes = new long[mPts.length * 2];
+            for (int i = 0; i < mSize; i++) {
+                pts[i] = mPts[(mHead + i) % mPts.length];
+                bytes[i] = mBytes[(mHead + i) % mPts.length];
+            }
+            mPts = pts;
+            mBytes = bytes;
+            mHead = 0;
+        }
+
+        public double getLengthSec() {
+            return mLengthUsec / 1000000.0;
+        }
+
+        public boolean hasSamples() {
+            return mSamples > 0;
+        }
+
+        public double getCurrentBitrate() {
+            return mCurrentBitrate;
+        }
+
+        public double getPeakBitrate() {
+            return mPeakBitrate;
+        }
+
+        public long getPeakPtsUsec() {
+            return mPeakPtsUsec;
+        }
+
+        public double getMinBitrate() {
+            return (mSamples > 0) ? mMinBitrate : 0;
+        }
+
+        /**
+         * Mean absolute deviation from the target bitrate, relative to the target.
+         */
+        public double getMeanAbsDeviation() {
+            return (mSamples > 0) ? mDeviationSum / mSamples : 0;
+        }
+
+        /**
+         * Largest (signed) deviation from the target bitrate, relative to the target.
+         */
+        public double getMaxDeviation() {
+            return mMaxDeviation;
+        }
+    }
+
+    /**
+     * @param targetBitrate configured bitrate in bps, 0 if unknown
+     * @param windowsSec sliding window lengths in seconds
+     * @param bufferSec buffer model size in seconds of target bitrate, 0 disables it
+     */
+    public BitrateTracker(long targetBitrate, float[] windowsSec, double bufferSec) {
+        mTargetBitrate = targetBitrate;
+        mBufferSec = bufferSec;
+        float[] sorted = Arrays.copyOf(windowsSec, windowsSec.length);
+        Arrays.sort(sorted);
+        ArrayList<Window> windows = new ArrayList<>();
+        long previous = -1;
+        for (float sec : sorted) {
+            long usec = Math.round(sec * 1000000.0);
+            if (usec > 0 && usec != previous) {
+                windows.add(new Window(usec));
+                previous = usec;
+            }
+        }
+        mWindows = windows.toArray(new Window[0]);
+    }
+
+    /**
+     * Target changes (e.g. runtime bitrate updates) apply to frames added after the call.
+     */
+    public synchronized void setTargetBitrate(long targetBitrate) {
+        mTargetBitrate = targetBitrate;
+        mBufferBits = Math.min(mBufferBits, getBufferSizeBits());
+    }
+
+    public long getTargetBitrate() {
+        return mTargetBitrate;
+    }
+
+    public synchronized void addFrame(long ptsUsec, long bytes) {
+        mFrameCount++;
+        mTotalBytes += bytes;
+        mFirstPtsUsec = Math.min(mFirstPtsUsec, ptsUsec);
+        if (ptsUsec >= mLastPtsUsec) {
+            mLastPtsUsec = ptsUsec;
+            mLastFrameBytes = bytes;
+        }
+        for (Window window : mWindows) {
+            window.add(ptsUsec, bytes, mLastPtsUsec, mFirstPtsUsec, mTargetBitrate);
+        }
+        updateBuffer(ptsUsec, bytes);
+    }
+
+    private double getBufferSizeBits() {
+        return mTargetBitrate * mBufferSec;
+    }
+
+    private void updateBuffer(long ptsUsec, long bytes) {
+        double size = getBufferSizeBits();
+        if (size <= 0) {
+            return;
+        }
+        if (mBufferPtsUsec >= 0 && ptsUsec > mBufferPtsUsec) {
+            mBufferBits -= mTargetBitrate * (ptsUsec - mBufferPtsUsec) / 1000000.0;
+            mBufferBits = Math.max(mBufferBits, 0);
+        }
+        mBufferPtsUsec = Math.max(mBufferPtsUsec, ptsUsec);
+        mBufferBits += bytes * 8;
+        if (mBufferBits > size) {
+            mOverflowCount++;
+            if (mOverflowEvents.size() < MAX_OVERFLOW_EVENTS) {
+                mOverflowEvents.add(new OverflowEvent(mFrameCount - 1, ptsUsec,
+                        Math.round(mBufferBits - size)));
+            }
+            // the frame would have been dropped or the buffer stalled, keep it full
+            mBufferBits = size;
+        }
+        mMaxBufferBits = Math.max(mMaxBufferBits, mBufferBits);
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * Mean bitrate from the first to the last pts. The last frame is
+     * ignored since its duration is not known.
+     */
+    public int getAverageBitrate() {
+        if (mFrameCount == 0) {
+            return 0;
+        }
+        double totalTime = (mLastPtsUsec - mFirstPtsUsec) / 1000000.0;
+        return (int) Math.round(8 * (mTotalBytes - mLastFrameBytes) / totalTime);
+    }
+
+    public Window[] getWindows() {
+        return mWindows;
+    }
+
+    public double getBufferSizeSec() {
+        return mBufferSec;
+    }
+
+    /**
+     * Highest buffer fullness seen, relative to the buffer size.
+     */
+    public double getMaxBufferFullness() {
+        double size = getBufferSizeBits();
+        return (size > 0) ? mMaxBufferBits / size : 0;
+    }
+
+    public int getOverflowCount() {
+        return mOverflowCount;
+    }
+
+    public List<OverflowEvent> getOverflowEvents() {
+        return mOverflowEvents;
+    }
+}
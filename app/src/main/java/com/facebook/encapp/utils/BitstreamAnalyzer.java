@@ -0,0 +1,264 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Parses the headers of the encoded frames to see what the encoder actually
+ * produced: the frame type, temporal layer, quantizer, reference and long
+ * term reference markings, and how many bytes are headers (start codes, nal
+ * and obu headers, parameter sets, slice and frame headers) and how many are
+ * payload. Only the headers are read, in place, so it keeps up with the
+ * encoder.
+ *
+ * Not thread safe, call from the thread writing the output.
+ */
+public abstract class BitstreamAnalyzer {
+    protected final BitReader mReader = new BitReader();
+
+    // the last parsed frame
+    protected String mFrameType;
+    protected int mTemporalId;
+    protected int mQp;
+    protected boolean mReference;
+    protected boolean mLtrMark;
+    protected boolean mLtrUse;
+    protected int mHeaderBytes;
+    protected int mPayloadBytes;
+
+    private int mFrames = 0;
+    private int mErrors = 0;
+    private long mConfigBytes = 0;
+    private long mTotalHeaderBytes = 0;
+    private long mTotalPayloadBytes = 0;
+    private int mReferenceFrames = 0;
+    private int mLtrMarkFrames = 0;
+    private int mLtrUseFrames = 0;
+    private long mMinPtsUs = Long.MAX_VALUE;
+    private long mMaxPtsUs = Long.MIN_VALUE;
+    private final Map<String, Integer> mFrameTypes = new TreeMap<>();
+    private final Map<Integer, Layer> mLayers = new TreeMap<>();
+
+    public static class Layer {
+        final int mTemporalId;
+        int mFrames;
+        long mBytes;
+        long mHeaderBytes;
+        long mQpSum;
+        int mQpFrames;
+
+        Layer(int temporalId) {
+            mTemporalId = temporalId;
+        }
+
+        public int getTemporalId() {
+            return mTemporalId;
+        }
+
+        public int getFrames() {
+            return mFrames;
+        }
+
+        public long getBytes() {
+            return mBytes;
+        }
+
+        public long getHeaderBytes() {
+            return mHeaderBytes;
+        }
+
+        /**
+         * @return mean quantizer of the frames where it was found, -1 if none
+         */
+        public double getMeanQp() {
+            return (mQpFrames > 0) ? (double) mQpSum / mQpFrames : -1;
+        }
+    }
+
+    /**
+     * @return an analyzer for the mime type, null if not supported
+     */
+    public static BitstreamAnalyzer forMime(String mime) {
+        if (mime == null) {
+            return null;
+        }
+        switch (mime) {
+            case "video/avc":
+                return new AvcAnalyzer();
+            case "video/hevc":
+                return new HevcAnalyzer();
+            case "video/av01":
+                return new Av1Analyzer();
+            default:
+                return null;
+        }
+    }
+
+    public abstract String getCodec();
+
+    /**
+     * Parse the frame (or temporal unit) and add the bytes to the header and
+     * payload counts.
+     */
+    protected abstract void parseFrame(ByteBuffer buffer, int start, int end);
+
+    /**
+     * Parse an output buffer of the encoder. The codec config only sets up
+     * the parameter sets and is not counted as a frame.
+     *
+     * @return false if the headers could not be parsed, the frame is counted
+     * with what was found
+     */
+    public boolean parse(ByteBuffer buffer, int offset, int size, long ptsUs, boolean config) {
+        mFrameType = "unknown";
+        mTemporalId = 0;
+        mQp = -1;
+        mReference = false;
+        mLtrMark = false;
+        mLtrUse = false;
+        mHeaderBytes = 0;
+        mPayloadBytes = 0;
+        boolean ok = true;
+        try {
+            parseFrame(buffer, offset, offset + size);
+        } catch (RuntimeException e) {
+            // the rest of the frame is not known
+            mErrors++;
+            mPayloadBytes = Math.max(size - mHeaderBytes, 0);
+            ok = false;
+        }
+        if (config) {
+            mConfigBytes += size;
+            return ok;
+        }
+        mFrames++;
+        mTotalHeaderBytes += mHeaderBytes;
+        mTotalPayloadBytes += mPayloadBytes;
+        mMinPtsUs = Math.min(mMinPtsUs, ptsUs);
+        mMaxPtsUs = Math.max(mMaxPtsUs, ptsUs);
+        Integer count = mFrameTypes.get(mFrameType);
+        mFrameTypes.put(mFrameType, (count == null) ? 1 : count + 1);
+        if (mReference) {
+            mReferenceFrames++;
+        }
+        if (mLtrMark) {
+            mLtrMarkFrames++;
+        }
+        if (mLtrUse) {
+            mLtrUseFrames++;
+        }
+        Layer layer = mLayers.get(mTemporalId);
+        if (layer == null) {
+            layer = new Layer(mTemporalId);
+            mLayers.put(mTemporalId, layer);
+        }
+        layer.mFrames++;
+        layer.mBytes += size;
+        layer.mHeaderBytes += mHeaderBytes;
+        if (mQp >= 0) {
+            layer.mQpSum += mQp;
+            layer.mQpFrames++;
+        }
+        return ok;
+    }
+
+    /**
+     * @return I, P or B for H.264 and H.265, key, inter, intra_only or switch for AV1
+     */
+    public String getFrameType() {
+        return mFrameType;
+    }
+
+    public int getTemporalId() {
+        return mTemporalId;
+    }
+
+    /**
+     * @return slice qp of the first slice, base_q_idx for AV1, -1 if not found
+     */
+    public int getQp() {
+        return mQp;
+    }
+
+    /**
+     * @return true if the frame may be referenced by later frames
+     */
+    public boolean isReference() {
+        return mReference;
+    }
+
+    /**
+     * @return true if the frame is marked as a long term reference
+     */
+    public boolean isLtrMark() {
+        return mLtrMark;
+    }
+
+    /**
+     * @return true if the frame references a long term reference
+     */
+    public boolean isLtrUse() {
+        return mLtrUse;
+    }
+
+    public int getHeaderBytes() {
+        return mHeaderBytes;
+    }
+
+    public int getPayloadBytes() {
+        return mPayloadBytes;
+    }
+
+    public int getFrameCount() {
+        return mFrames;
+    }
+
+    public int getErrors() {
+        return mErrors;
+    }
+
+    public long getConfigBytes() {
+        return mConfigBytes;
+    }
+
+    public long getTotalHeaderBytes() {
+        return mTotalHeaderBytes;
+    }
+
+    public long getTotalPayloadBytes() {
+        return mTotalPayloadBytes;
+    }
+
+    public int getReferenceFrames() {
+        return mReferenceFrames;
+    }
+
+    public int getLtrMarkFrames() {
+        return mLtrMarkFrames;
+    }
+
+    public int getLtrUseFrames() {
+        return mLtrUseFrames;
+    }
+
+    public Map<String, Integer> getFrameTypes() {
+        return mFrameTypes;
+    }
+
+    public Collection<Layer> getLayers() {
+        return mLayers.values();
+    }
+
+    /**
+     * @return time covered by the frames, assuming a constant frame interval,
+     * 0 with less than two frames
+     */
+    public long getDurationUs() {
+        if (mFrames < 2 || mMaxPtsUs <= mMinPtsUs) {
+            return 0;
+        }
+        return (mMaxPtsUs - mMinPtsUs) * mFrames / (mFrames - 1);
+    }
+}
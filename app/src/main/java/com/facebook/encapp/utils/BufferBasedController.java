@@ -0,0 +1,124 @@
+package com.facebook.encapp.utils;
+
+/**
+ * Buffer based rate control in the style of BBA (Huang et al., "A Buffer-Based
+ * Approach to Rate Adaptation").
+ *
+ * The occupancy is the time a new frame would wait before it is sent: the
+ * channel queue delay plus the frames still in the encoder. Below the low
+ * delay (the reservoir) the maximum bitrate is used, above the high delay the
+ * minimum, and in between (the cushion) the bitrate is mapped linearly.
+ * Decreases are applied at once, increases by at most 10% per 200 ms. When
+ * the minimum bitrate is not enough the framerate is halved, and restored
+ * once the occupancy is back in the reservoir. A sync frame is requested
+ * when a frame is lost.
+ */
+public class BufferBasedController implements BitrateController {
+    private static final double SMOOTHING = 0.8;
+    private static final double MAX_INCREASE = 1.10;
+    // the bitrate is increased at most once per response time
+    private static final long RESPONSE_TIME_NS = 200000000L;
+    private static final float MIN_FRAMERATE = 5;
+    // smaller changes are not applied
+    private static final double MIN_CHANGE = 0.05;
+    // the framerate is halved at most once per second
+    private static final long FRAMERATE_HOLD_NS = 1000000000L;
+
+    private final int mMinBitrate;
+    private final int mMaxBitrate;
+    private final long mLowDelayNs;
+    private final long mHighDelayNs;
+    private final float mFrameRate;
+    private final long mSyncIntervalNs;
+
+    private double mOccupancyNs = -1;
+    private int mAppliedBitrate;
+    private float mAppliedFramerate;
+    private long mLastSyncNs = Long.MIN_VALUE / 2;
+    private long mLastFramerateNs = Long.MIN_VALUE / 2;
+    private long mLastIncreaseNs = Long.MIN_VALUE / 2;
+
+    public BufferBasedController(int startBitrate, int minBitrate, int maxBitrate,
+                                 long lowDelayNs, long highDelayNs, float frameRate,
+                                 long syncIntervalNs) {
+        mMinBitrate = minBitrate;
+        mMaxBitrate = maxBitrate;
+        mLowDelayNs = lowDelayNs;
+        mHighDelayNs = Math.max(highDelayNs, lowDelayNs + 1);
+        mFrameRate = frameRate;
+        mSyncIntervalNs = syncIntervalNs;
+        mAppliedBitrate = startBitrate;
+        mAppliedFramerate = frameRate;
+    }
+
+    @Override
+    public String getName() {
+        return "buffer_based";
+    }
+
+    @Override
+    public BitrateController.Decision onFrame(BitrateController.Feedback feedback) {
+        long frameIntervalNs = (long) (1e9 / mAppliedFramerate);
+        long occupancyNs = feedback.mQueueDelayNs + feedback.mQueueDepth * frameIntervalNs;
+        if (mOccupancyNs < 0) {
+            mOccupancyNs = occupancyNs;
+        } else {
+            mOccupancyNs = SMOOTHING * mOccupancyNs + (1 - SMOOTHING) * occupancyNs;
+        }
+
+        String reason;
+        double target;
+        if (mOccupancyNs <= mLowDelayNs) {
+            reason = "reservoir";
+            target = mMaxBitrate;
+        } else if (mOccupancyNs >= mHighDelayNs) {
+            reason = "upper";
+            target = mMinBitrate;
+        } else {
+            reason = "cushion";
+            double position = (mOccupancyNs - mLowDelayNs) / (mHighDelayNs - mLowDelayNs);
+            target = mMaxBitrate - position * (mMaxBitrate - mMinBitrate);
+        }
+        if (target > mAppliedBitrate) {
+            if (feedback.mTimeNs - mLastIncreaseNs < RESPONSE_TIME_NS) {
+                // the last increase has not had an effect yet
+                target = mAppliedBitrate;
+            } else {
+                target = Math.min(target, mAppliedBitrate * MAX_INCREASE);
+            }
+        }
+        int bitrate = (int) Math.min(Math.max(target, mMinBitrate), mMaxBitrate);
+
+        float framerate = mAppliedFramerate;
+        if (mOccupancyNs >= mHighDelayNs && mAppliedBitrate <= mMinBitrate &&
+                feedback.mTimeNs - mLastFramerateNs >= FRAMERATE_HOLD_NS) {
+            framerate = Math.max(mAppliedFramerate / 2, Math.min(MIN_FRAMERATE, mFrameRate));
+        } else if (mOccupancyNs <= mLowDelayNs) {
+            framerate = mFrameRate;
+        }
+
+        boolean sync = false;
+        if (feedback.mLost && feedback.mTimeNs - mLastSyncNs >= mSyncIntervalNs) {
+            sync = true;
+            mLastSyncNs = feedback.mTimeNs;
+        }
+        boolean change = Math.abs(bitrate - mAppliedBitrate) >= MIN_CHANGE * mAppliedBitrate ||
+                (bitrate != mAppliedBitrate && (bitrate == mMinBitrate || bitrate == mMaxBitrate));
+        boolean rateChange = framerate != mAppliedFramerate;
+        if (!change && !rateChange && !sync) {
+            return null;
+        }
+        if (change) {
+            if (bitrate > mAppliedBitrate) {
+                mLastIncreaseNs = feedback.mTimeNs;
+            }
+            mAppliedBitrate = bitrate;
+        }
+        if (rateChange) {
+            mAppliedFramerate = framerate;
+            mLastFramerateNs = feedback.mTimeNs;
+        }
+        return new BitrateController.Decision(change ? bitrate : 0, rateChange ? framerate : 0,
+                sync, reason);
+    }
+}
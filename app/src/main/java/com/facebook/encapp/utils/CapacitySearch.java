@@ -0,0 +1,195 @@
+package com.facebook.encapp.utils;
+
+import android.util.Log;
+
+import com.facebook.encapp.proto.CapacitySearch.Strategy;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Searches for the highest number of parallel instances of a test where
+ * every instance keeps the target frame rate.
+ *
+ * The caller asks for the next instance count, runs that many instances and
+ * reports the statistics back until nextInstances() returns 0.
+ */
+public class CapacitySearch {
+    private final static String TAG = "encapp.capacity";
+
+    private final com.facebook.encapp.proto.CapacitySearch mConfig;
+    private final String mTestId;
+    private final float mTargetFps;
+    private final String mId;
+    private final List<Step> mSteps = new ArrayList<>();
+    private int mMaxSupportedInstances = -1;
+    private String mCodec = "";
+    private String mAppVersion = "";
+
+    // highest passing and lowest failing instance count so far
+    private int mPassed = 0;
+    private int mFailed = Integer.MAX_VALUE;
+
+    public static class Step {
+        final int mInstances;
+        final boolean mPassed;
+        final int mErrors;
+        final double[] mFps;
+        final String[] mStatsIds;
+        final double mGpuLoad;
+
+        Step(int instances, boolean passed, int errors, double[] fps, String[] statsIds, double gpuLoad) {
+            mInstances = instances;
+            mPassed = passed;
+            mErrors = errors;
+            mFps = fps;
+            mStatsIds = statsIds;
+            mGpuLoad = gpuLoad;
+        }
+
+        double getMinFps() {
+            double min = Double.MAX_VALUE;
+            for (double fps : mFps) {
+                min = Math.min(min, fps);
+            }
+            return (mFps.length > 0) ? min : 0;
+        }
+    }
+
+    public CapacitySearch(com.facebook.encapp.proto.CapacitySearch config, String testId, float targetFps) {
+        mConfig = config;
+        mTestId = testId;
+        mTargetFps = targetFps;
+        mId = "encapp_capacity_" + UUID.randomUUID().toString();
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public void setAppVersion(String appVersion) {
+        mAppVersion = appVersion;
+    }
+
+    public void setCodec(String codec, int maxSupportedInstances) {
+        mCodec = codec;
+        mMaxSupportedInstances = maxSupportedInstances;
+    }
+
+    /**
+     * @return the number of instances to run next, 0 when the search is done
+     */
+    public int nextInstances() {
+        int max = Math.max(mConfig.getMaxInstances(), 1);
+        int start = Math.min(Math.max(mConfig.getStartInstances(), 1), max);
+        if (mSteps.isEmpty()) {
+            return start;
+        }
+        Step last = mSteps.get(mSteps.size() - 1);
+        if (mConfig.getStrategy() == Strategy.binary) {
+            if (mFailed == Integer.MAX_VALUE) {
+                // still growing
+                if (last.mInstances >= max) {
+                    return 0;
+                }
+                return Math.min(last.mInstances * 2, max);
+            }
+            if (mFailed - mPassed <= 1 || (mPassed == 0 && mFailed <= start)) {
+                return 0;
+            }
+            return (mPassed == 0) ? Math.max(mFailed / 2, start) : (mPassed + mFailed) / 2;
+        }
+        // ramp
+        if (!last.mPassed || last.mInstances >= max) {
+            return 0;
+        }
+        return last.mInstances + 1;
+    }
+
+    public int getMaxSustainableInstances() {
+        return mPassed;
+    }
+
+    /**
+     * Report the result of running a number of instances.
+     *
+     * @param errors number of instances that did not finish successfully
+     */
+    public void addStep(int instances, List<Statistics> stats, int errors) {
+        double[] fps = new double[stats.size()];
+        String[] ids = new String[stats.size()];
+        double loadSum = 0;
+        int loadCount = 0;
+        boolean passed = errors == 0 && stats.size() == instances;
+        for (int i = 0; i < stats.size(); i++) {
+            Statistics stat = stats.get(i);
+            fps[i] = stat.getSteadyFps();
+            ids[i] = stat.getId();
+            if (fps[i] < mTargetFps * mConfig.getFpsMargin()) {
+                passed = false;
+            }
+            double load = stat.getAverageGPULoad();
+            if (load >= 0) {
+                loadSum += load;
+                loadCount++;
+            }
+        }
+        // all instances sample the same gpu, use the mean of them
+        double gpuLoad = (loadCount > 0) ? loadSum / loadCount : -1;
+        Step step = new Step(instances, passed, errors, fps, ids, gpuLoad);
+        mSteps.add(step);
+        if (passed) {
+            mPassed = Math.max(mPassed, instances);
+        } else {
+            mFailed = Math.min(mFailed, instances);
+        }
+        Log.d(TAG, mTestId + " - " + instances + " instances " + (passed ? "passed" : "failed") +
+                ", min fps: " + step.getMinFps() + " (target " + mTargetFps + "), gpu load: " + gpuLoad);
+    }
+
+    public void writeJSON(Writer writer) throws IOException {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("id", mId);
+            json.put("test_id", mTestId);
+            json.put("encapp_version", mAppVersion);
+            json.put("codec", mCodec);
+            json.put("strategy", mConfig.getStrategy().name());
+            json.put("target_fps", mTargetFps);
+            json.put("fps_margin", mConfig.getFpsMargin());
+            json.put("max_sustainable_instances", mPassed);
+            json.put("max_supported_instances", mMaxSupportedInstances);
+            JSONArray steps = new JSONArray();
+            for (Step step : mSteps) {
+                JSONObject obj = new JSONObject();
+                obj.put("instances", step.mInstances);
+                obj.put("passed", step.mPassed);
+                obj.put("errors", step.mErrors);
+                obj.put("min_fps", step.getMinFps());
+                JSONArray fps = new JSONArray();
+                for (double value : step.mFps) {
+                    fps.put(value);
+                }
+                obj.put("fps", fps);
+                JSONArray ids = new JSONArray();
+                for (String id : step.mStatsIds) {
+                    ids.put(id);
+                }
+                obj.put("stats_ids", ids);
+                obj.put("gpu_load_percentage", step.mGpuLoad);
+                steps.put(obj);
+            }
+            json.put("steps", steps);
+            writer.write(json.toString(2));
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create capacity json: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package com.facebook.encapp.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Emulates a network link for encoded frames, e.g. between an encoder and a
+ * loopback decoder.
+ *
+ * Every frame waits for the link to be free and for enough tokens in a token
+ * bucket (the rate is the bandwidth, the bucket size the burst that can be
+ * sent at once), frames that would wait longer than the max queue delay are
+ * dropped. The frame then arrives after a fixed delay varied by a uniform
+ * jitter, never before the previous frame. Frames are sent in packets of at
+ * most mtu bytes and a frame with a lost packet is lost, packets (or whole
+ * frames) are lost at random and/or as listed in a loss trace. The bandwidth
+ * can follow a trace as well.
+ *
+ * The random values are drawn from the seed, the frame number and the packet
+ * number only, so a frame is lost the same way whatever the size of the
+ * earlier frames, e.g. when repeating a run with another codec. Given the
+ * same arrival times the result is the same. No Android dependencies so it
+ * can be run on the JVM.
+ */
+public class ChannelEmulator {
+    public enum LossUnit {
+        PACKET,
+        FRAME,
+    }
+
+    /**
+     * What the channel did to one frame. Times are in the time base of the
+     * arrival times.
+     */
+    public static class Frame {
+        final long mPts;
+        final int mSize;
+        final long mArrivalNs;
+        int mPackets;
+        int mLostPackets;
+        long mDepartureNs;
+        long mDeliveryNs;
+        boolean mQueueDropped;
+
+        Frame(long pts, int size, long arrivalNs) {
+            mPts = pts;
+            mSize = size;
+            mArrivalNs = arrivalNs;
+        }
+
+        public long getPts() {
+            return mPts;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+
+        public int getPackets() {
+            return mPackets;
+        }
+
+        /**
+         * @return time the frame was given to the channel
+         */
+        public long getArrivalNs() {
+            return mArrivalNs;
+        }
+
+        public int getLostPackets() {
+            return mLostPackets;
+        }
+
+        /**
+         * @return true if the frame was dropped from the queue or lost
+         */
+        public boolean isDropped() {
+            return mQueueDropped || mLostPackets > 0;
+        }
+
+        public boolean isQueueDropped() {
+            return mQueueDropped;
+        }
+
+        /**
+         * @return time waiting for the link and the tokens
+         */
+        public long getQueueDelayNs() {
+            return mDepartureNs - mArrivalNs;
+        }
+
+        public long getDeliveryNs() {
+            return mDeliveryNs;
+        }
+
+        /**
+         * @return time from the arrival to the delivery of the frame
+         */
+        public long getDelayNs() {
+            return mDeliveryNs - mArrivalNs;
+        }
+    }
+
+    private final long mSeed;
+    // bits per second, 0 is unlimited
+    private long mBandwidth = 0;
+    private int mBurstBytes = 10000;
+    // ms from the first frame and bits per second, the last rate is kept
+    private long[] mTraceTimesMs;
+    private long[] mTraceBandwidths;
+    private long mDelayNs = 0;
+    private long mJitterNs = 0;
+    private long mMaxQueueDelayNs = 0;
+    private int mMtu = 1200;
+    private double mLoss = 0;
+    private LossUnit mLossUnit = LossUnit.PACKET;
+    private boolean[] mLossTrace;
+
+    // link state
+    private long mFrameCount = 0;
+    private long mStartNs = -1;
+    private long mLinkFreeNs = Long.MIN_VALUE;
+    private long mLastDeliveryNs = Long.MIN_VALUE;
+    private double mTokens;
+    private long mTokensNs;
+    private long mLossTraceIndex = 0;
+
+    // totals
+    private long mDroppedFrames = 0;
+    private long mQueueDroppedFrames = 0;
+    private long mPacketCount = 0;
+    private long mLostPacketCount = 0;
+    private long mBytes = 0;
+    private long mQueueDelaySumNs = 0;
+    private long mMaxQueueDelayObservedNs = 0;
+
+    public ChannelEmulator(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * @param bitsPerSecond token bucket rate, 0 is unlimited
+     */
+    public ChannelEmulator setBandwidth(long bitsPerSecond) {
+        mBandwidth = bitsPerSecond;
+        return this;
+    }
+
+    public ChannelEmulator setBurst(int bytes) {
+        mBurstBytes = bytes;
+        return this;
+    }
+
+    public ChannelEmulator setDelay(long delayNs, long jitterNs) {
+        mDelayNs = delayNs;
+        mJitterNs = jitterNs;
+        return this;
+    }
+
+    /**
+     * @param delayNs frames waiting longer for the link are dropped, 0 is no limit
+     */
+    public ChannelEmulator setMaxQueueDelay(long delayNs) {
+        mMaxQueueDelayNs = delayNs;
+        return this;
+    }
+
+    /**
+     * @param bytes largest packet, 0 sends every frame in one packet
+     */
+    public ChannelEmulator setMtu(int bytes) {
+        mMtu = bytes;
+        return this;
+    }
+
+    /**
+     * @param probability share of the packets (or frames) lost at random
+     */
+    public ChannelEmulator setLoss(double probability, LossUnit unit) {
+        mLoss = probability;
+        mLossUnit = unit;
+        return this;
+    }
+
+    /**
+     * Read a bandwidth trace, lines of "<time in ms> <rate in kbps>". Every
+     * rate is used from its time (from the first frame) until the next one,
+     * the last rate is kept. Lines starting with # are ignored.
+     */
+    public ChannelEmulator setBandwidthTrace(Reader trace) throws IOException {
+        List<long[]> entries = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(trace);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 2) {
+                throw new IOException("Bad bandwidth trace line: \"" + line + "\"");
+            }
+            try {
+                entries.add(new long[]{Long.parseLong(fields[0]), Long.parseLong(fields[1]) * 1000});
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad bandwidth trace line: \"" + line + "\"");
+            }
+        }
+        if (entries.isEmpty()) {
+            throw new IOException("Empty bandwidth trace");
+        }
+        mTraceTimesMs = new long[entries.size()];
+        mTraceBandwidths = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            mTraceTimesMs[i] = entries.get(i)[0];
+            mTraceBandwidths[i] = entries.get(i)[1];
+        }
+        return this;
+    }
+
+    /**
+     * Read a loss trace, a 0 (received) or 1 (lost) for every packet (or
+     * frame) in any whitespace layout, repeated when the end is reached.
+     * Lines starting with # are ignored.
+     */
+    public ChannelEmulator setLossTrace(Reader trace, LossUnit unit) throws IOException {
+        StringBuilder values = new StringBuilder();
+        BufferedReader reader = new BufferedReader(trace);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().startsWith("#")) {
+                continue;
+            }
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '0' || c == '1') {
+                    values.append(c);
+                } else if (!Character.isWhitespace(c) && c != ',') {
+                    throw new IOException("Bad loss trace value: '" + c + "'");
+                }
+            }
+        }
+        if (values.length() == 0) {
+            throw new IOException("Empty loss trace");
+        }
+        mLossTrace = new boolean[values.length()];
+        for (int i = 0; i < mLossTrace.length; i++) {
+            mLossTrace[i] = values.charAt(i) == '1';
+        }
+        mLossUnit = unit;
+        return this;
+    }
+
+    // splitmix64, uniform in [0, 1) for (seed, frame, n)
+    private double random(long frame, long n) {
+        long z = mSeed + frame * 0x9e3779b97f4a7c15L + (n + 1) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    private boolean isLost(long frame, int n) {
+        boolean lost = false;
+        if (mLossTrace != null) {
+            lost = mLossTrace[(int) (mLossTraceIndex++ % mLossTrace.length)];
+        }
+        if (mLoss > 0 && random(frame, n) < mLoss) {
+            lost = true;
+        }
+        return lost;
+    }
+
+    private long getBandwidth(long timeNs) {
+        if (mTraceTimesMs == null) {
+            return mBandwidth;
+        }
+        long ms = (timeNs - mStartNs) / 1000000;
+        long bandwidth = mTraceBandwidths[0];
+        for (int i = 0; i < mTraceTimesMs.length && mTraceTimesMs[i] <= ms; i++) {
+            bandwidth = mTraceBandwidths[i];
+        }
+        return bandwidth;
+    }
+
+    /**
+     * Send a frame through the channel.
+     *
+     * @param arrivalNs time the frame is handed to the channel, not decreasing
+     */
+    public synchronized Frame send(long pts, int size, long arrivalNs) {
+        long frameNumber = mFrameCount++;
+        if (mStartNs < 0) {
+            mStartNs = arrivalNs;
+            mTokens = mBurstBytes;
+            mTokensNs = arrivalNs;
+        }
+        Frame frame = new Frame(pts, size, arrivalNs);
+
+        // 1. wait for the link and the tokens
+        long start = Math.max(arrivalNs, mLinkFreeNs);
+        long bandwidth = getBandwidth(start);
+        double tokens = mTokens;
+        long tokensNs = mTokensNs;
+        long departure = start;
+        if (bandwidth > 0) {
+            tokens = Math.min(mBurstBytes, tokens + (start - tokensNs) * bandwidth / 8e9);
+            tokensNs = start;
+            if (tokens >= size) {
+                tokens -= size;
+            } else {
+                departure = start + (long) Math.ceil((size - tokens) * 8e9 / bandwidth);
+                tokens = 0;
+                tokensNs = departure;
+            }
+        }
+        frame.mDepartureNs = departure;
+        if (mMaxQueueDelayNs > 0 && frame.getQueueDelayNs() > mMaxQueueDelayNs) {
+            // tail drop, the link state is unchanged
+            frame.mQueueDropped = true;
+            frame.mDepartureNs = arrivalNs;
+            frame.mDeliveryNs = arrivalNs;
+            mDroppedFrames++;
+            mQueueDroppedFrames++;
+            return frame;
+        }
+        mTokens = tokens;
+        mTokensNs = tokensNs;
+        mLinkFreeNs = departure;
+        mQueueDelaySumNs += frame.getQueueDelayNs();
+        mMaxQueueDelayObservedNs = Math.max(mMaxQueueDelayObservedNs, frame.getQueueDelayNs());
+        mBytes += size;
+
+        // 2. lose packets, lost packets still used the link
+        frame.mPackets = (mMtu > 0) ? Math.max(1, (size + mMtu - 1) / mMtu) : 1;
+        if (mLossUnit == LossUnit.FRAME) {
+            frame.mLostPackets = isLost(frameNumber, 0) ? frame.mPackets : 0;
+        } else {
+            for (int i = 0; i < frame.mPackets; i++) {
+                if (isLost(frameNumber, i)) {
+                    frame.mLostPackets++;
+                }
+            }
+        }
+        mPacketCount += frame.mPackets;
+        mLostPacketCount += frame.mLostPackets;
+
+        // 3. delay, frames are not reordered
+        long jitter = (mJitterNs > 0) ? (long) ((2 * random(frameNumber, -2) - 1) * mJitterNs) : 0;
+        frame.mDeliveryNs = Math.max(departure + Math.max(0, mDelayNs + jitter), mLastDeliveryNs);
+        if (frame.mLostPackets > 0) {
+            mDroppedFrames++;
+        } else {
+            mLastDeliveryNs = frame.mDeliveryNs;
+        }
+        return frame;
+    }
+
+    public synchronized long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return frames dropped from the queue or lost
+     */
+    public synchronized long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    public synchronized long getQueueDroppedFrames() {
+        return mQueueDroppedFrames;
+    }
+
+    public synchronized long getPacketCount() {
+        return mPacketCount;
+    }
+
+    public synchronized long getLostPacketCount() {
+        return mLostPacketCount;
+    }
+
+    /**
+     * @return bytes sent over the link, including lost packets
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return mean queue delay of the frames not dropped from the queue
+     */
+    public synchronized long getMeanQueueDelayNs() {
+        long sent = mFrameCount - mQueueDroppedFrames;
+        return (sent > 0) ? mQueueDelaySumNs / sent : 0;
+    }
+
+    public synchronized long getMaxQueueDelayNs() {
+        return mMaxQueueDelayObservedNs;
+    }
+}
@@ -15,6 +15,8 @@ public class CliSettings {
     public static final String TEST_UI_HOLD_TIME_SEC = "ui_hold_sec";
     public static final String OLD_AUTH_METHOD = "old_auth";
     public static final String WORKDIR = "workdir";
+    public static final String METRICS_PORT = "metrics_port";
+    public static final String RESULT_CACHE = "result_cache";
 
     private static String mWorkDir = "/sdcard/";
 
@@ -0,0 +1,342 @@
+package com.facebook.encapp.utils;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process wide index of the codecs on the device and their capabilities.
+ *
+ * Scanning MediaCodecList (and creating every codec to list the vendor
+ * parameters) is slow on devices with many codecs. The index is built once,
+ * saved in the workdir and reused by later launches as long as the build
+ * fingerprint is the same.
+ */
+public class CodecIndex {
+    private final static String TAG = "encapp.codec_index";
+    private final static String FILENAME = "codec_index.json";
+    // bump when the file content changes
+    private final static int FORMAT_VERSION = 1;
+
+    private static CodecIndex mIndex;
+
+    private final List<Entry> mEntries = new ArrayList<>();
+    // lower case name, canonical name and aliases
+    private final Map<String, Entry> mByName = new HashMap<>();
+    private final Map<String, List<Entry>> mByMime = new HashMap<>();
+
+    public static class ProfileLevel {
+        public final int profile;
+        public final int level;
+
+        ProfileLevel(int profile, int level) {
+            this.profile = profile;
+            this.level = level;
+        }
+    }
+
+    public static class MediaType {
+        public final String mime;
+        public final int maxSupportedInstances;
+        public final int[] colorFormats;
+        public final ProfileLevel[] profileLevels;
+
+        MediaType(String mime, int maxSupportedInstances, int[] colorFormats, ProfileLevel[] profileLevels) {
+            this.mime = mime;
+            this.maxSupportedInstances = maxSupportedInstances;
+            this.colorFormats = colorFormats;
+            this.profileLevels = profileLevels;
+        }
+
+        public boolean supportsColorFormat(int colorFormat) {
+            for (int format : colorFormats) {
+                if (format == colorFormat) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean supportsProfile(int profile) {
+            for (ProfileLevel profileLevel : profileLevels) {
+                if (profileLevel.profile == profile) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static class Entry {
+        public final String name;
+        public final String canonicalName;
+        public final boolean isAlias;
+        public final boolean isEncoder;
+        public final boolean isHardwareAccelerated;
+        public final List<MediaType> mediaTypes;
+        // human readable description, as written by list_codecs
+        public final String text;
+
+        Entry(String name, String canonicalName, boolean isAlias, boolean isEncoder,
+              boolean isHardwareAccelerated, List<MediaType> mediaTypes, String text) {
+            this.name = name;
+            this.canonicalName = canonicalName;
+            this.isAlias = isAlias;
+            this.isEncoder = isEncoder;
+            this.isHardwareAccelerated = isHardwareAccelerated;
+            this.mediaTypes = mediaTypes;
+            this.text = text;
+        }
+
+        public String getFirstMime() {
+            return (mediaTypes.size() > 0) ? mediaTypes.get(0).mime : "";
+        }
+
+        public boolean isVideo() {
+            return getFirstMime().toLowerCase(Locale.US).contains("video");
+        }
+
+        public MediaType getMediaType(String mime) {
+            for (MediaType type : mediaTypes) {
+                if (type.mime.equalsIgnoreCase(mime)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return the index, loaded from the workdir or built on first use
+     */
+    public static synchronized CodecIndex get() {
+        if (mIndex == null) {
+            long start = SystemClock.elapsedRealtime();
+            File file = new File(CliSettings.getWorkDir(), FILENAME);
+            mIndex = load(file);
+            if (mIndex == null) {
+                mIndex = build();
+                mIndex.save(file);
+                Log.d(TAG, "Built codec index with " + mIndex.mEntries.size() + " codecs in " +
+                        (SystemClock.elapsedRealtime() - start) + " ms");
+            } else {
+                Log.d(TAG, "Loaded codec index with " + mIndex.mEntries.size() + " codecs in " +
+                        (SystemClock.elapsedRealtime() - start) + " ms");
+            }
+        }
+        return mIndex;
+    }
+
+    private CodecIndex() {
+    }
+
+    private void add(Entry entry) {
+        mEntries.add(entry);
+        mByName.put(entry.name.toLowerCase(Locale.US), entry);
+        if (!mByName.containsKey(entry.canonicalName.toLowerCase(Locale.US))) {
+            mByName.put(entry.canonicalName.toLowerCase(Locale.US), entry);
+        }
+        for (MediaType type : entry.mediaTypes) {
+            String mime = type.mime.toLowerCase(Locale.US);
+            List<Entry> entries = mByMime.get(mime);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                mByMime.put(mime, entries);
+            }
+            entries.add(entry);
+        }
+    }
+
+    private static CodecIndex build() {
+        CodecIndex index = new CodecIndex();
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.ALL_CODECS);
+        for (MediaCodecInfo info : codecList.getCodecInfos()) {
+            List<MediaType> types = new ArrayList<>();
+            for (String mime : info.getSupportedTypes()) {
+                MediaCodecInfo.CodecCapabilities caps = info.getCapabilitiesForType(mime);
+                ProfileLevel[] profileLevels = new ProfileLevel[caps.profileLevels.length];
+                for (int i = 0; i < profileLevels.length; i++) {
+                    profileLevels[i] = new ProfileLevel(caps.profileLevels[i].profile, caps.profileLevels[i].level);
+                }
+                types.add(new MediaType(mime, caps.getMaxSupportedInstances(), caps.colorFormats, profileLevels));
+            }
+            String canonicalName = info.getName();
+            boolean isAlias = false;
+            boolean isHw = false;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                canonicalName = info.getCanonicalName();
+                isAlias = info.isAlias();
+                isHw = info.isHardwareAccelerated();
+            }
+            index.add(new Entry(info.getName(), canonicalName, isAlias, info.isEncoder(), isHw,
+                    types, MediaCodecInfoHelper.toText(info, 1)));
+        }
+        return index;
+    }
+
+    private static CodecIndex load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String data = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            JSONObject json = new JSONObject(data);
+            if (json.getInt("format_version") != FORMAT_VERSION ||
+                    !Build.FINGERPRINT.equals(json.getString("fingerprint"))) {
+                Log.d(TAG, "Codec index is outdated");
+                return null;
+            }
+            CodecIndex index = new CodecIndex();
+            JSONArray codecs = json.getJSONArray("codecs");
+            for (int i = 0; i < codecs.length(); i++) {
+                JSONObject codec = codecs.getJSONObject(i);
+                List<MediaType> types = new ArrayList<>();
+                JSONArray jsonTypes = codec.getJSONArray("media_types");
+                for (int j = 0; j < jsonTypes.length(); j++) {
+                    JSONObject type = jsonTypes.getJSONObject(j);
+                    JSONArray jsonFormats = type.getJSONArray("color_formats");
+                    int[] colorFormats = new int[jsonFormats.length()];
+                    for (int k = 0; k < colorFormats.length; k++) {
+                        colorFormats[k] = jsonFormats.getInt(k);
+                    }
+                    JSONArray jsonLevels = type.getJSONArray("profile_levels");
+                    ProfileLevel[] profileLevels = new ProfileLevel[jsonLevels.length()];
+                    for (int k = 0; k < profileLevels.length; k++) {
+                        JSONArray pair = jsonLevels.getJSONArray(k);
+                        profileLevels[k] = new ProfileLevel(pair.getInt(0), pair.getInt(1));
+                    }
+                    types.add(new MediaType(type.getString("mime"), type.getInt("max_supported_instances"),
+                            colorFormats, profileLevels));
+                }
+                index.add(new Entry(codec.getString("name"), codec.getString("canonical_name"),
+                        codec.getBoolean("is_alias"), codec.getBoolean("is_encoder"),
+                        codec.getBoolean("is_hardware_accelerated"), types, codec.getString("text")));
+            }
+            return index;
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to read codec index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(File file) {
+        try (FileWriter writer = new FileWriter(file, false)) {
+            JSONObject json = new JSONObject();
+            json.put("format_version", FORMAT_VERSION);
+            json.put("fingerprint", Build.FINGERPRINT);
+            JSONArray codecs = new JSONArray();
+            for (Entry entry : mEntries) {
+                JSONObject codec = new JSONObject();
+                codec.put("name", entry.name);
+                codec.put("canonical_name", entry.canonicalName);
+                codec.put("is_alias", entry.isAlias);
+                codec.put("is_encoder", entry.isEncoder);
+                codec.put("is_hardware_accelerated", entry.isHardwareAccelerated);
+                JSONArray types = new JSONArray();
+                for (MediaType type : entry.mediaTypes) {
+                    JSONObject jsonType = new JSONObject();
+                    jsonType.put("mime", type.mime);
+                    jsonType.put("max_supported_instances", type.maxSupportedInstances);
+                    JSONArray colorFormats = new JSONArray();
+                    for (int format : type.colorFormats) {
+                        colorFormats.put(format);
+                    }
+                    jsonType.put("color_formats", colorFormats);
+                    JSONArray profileLevels = new JSONArray();
+                    for (ProfileLevel profileLevel : type.profileLevels) {
+                        JSONArray pair = new JSONArray();
+                        pair.put(profileLevel.profile);
+                        pair.put(profileLevel.level);
+                        profileLevels.put(pair);
+                    }
+                    jsonType.put("profile_levels", profileLevels);
+                    types.put(jsonType);
+                }
+                codec.put("media_types", types);
+                codec.put("text", entry.text);
+                codecs.put(codec);
+            }
+            json.put("codecs", codecs);
+            writer.write(json.toString());
+        } catch (IOException | JSONException e) {
+            // not fatal, the index is rebuilt next time
+            Log.e(TAG, "Failed to write codec index: " + e.getMessage());
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    /**
+     * Look up a codec by its name, canonical name or alias (case insensitive).
+     */
+    public Entry getByName(String name) {
+        return mByName.get(name.toLowerCase(Locale.US));
+    }
+
+    public List<Entry> getByMime(String mime, boolean encoder) {
+        List<Entry> matching = new ArrayList<>();
+        List<Entry> entries = mByMime.get(mime.toLowerCase(Locale.US));
+        if (entries != null) {
+            for (Entry entry : entries) {
+                if (entry.isEncoder == encoder) {
+                    matching.add(entry);
+                }
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Video encoders whose name contains the partial name. An exact match
+     * only returns that codec.
+     */
+    public List<Entry> findVideoEncoders(String partialName) {
+        String id = partialName.toLowerCase(Locale.US);
+        List<Entry> matching = new ArrayList<>();
+        for (Entry entry : mEntries) {
+            if (!entry.isEncoder || !entry.isVideo()) {
+                continue;
+            }
+            String name = entry.name.toLowerCase(Locale.US);
+            if (name.equals(id)) {
+                matching.clear();
+                matching.add(entry);
+                break;
+            } else if (name.contains(id)) {
+                matching.add(entry);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * @return max_supported_instances for the first media type of the codec, -1 if unknown
+     */
+    public int getMaxSupportedInstances(String codecName) {
+        Entry entry = getByName(codecName);
+        if (entry == null || entry.mediaTypes.size() == 0) {
+            return -1;
+        }
+        return entry.mediaTypes.get(0).maxSupportedInstances;
+    }
+}
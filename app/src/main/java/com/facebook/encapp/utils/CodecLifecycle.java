@@ -0,0 +1,164 @@
+package com.facebook.encapp.utils;
+
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Timestamps (elapsedRealtimeNanos) of the lifecycle phases of one codec
+ * instance: create, configure, start, first input, first output, first
+ * keyframe, stop and release.
+ *
+ * Durations are reported in ns, times to the first input/output/keyframe are
+ * counted from the start of the codec creation. Anything not measured is -1.
+ *
+ * A codec taken from the CodecPool is not created, its create time is left
+ * out and the time to take it is reported as pool_take_ns.
+ */
+public class CodecLifecycle {
+    public enum Phase {
+        create,
+        configure,
+        start,
+        stop,
+        release
+    }
+
+    private final long[] mBegin = new long[Phase.values().length];
+    private final long[] mEnd = new long[Phase.values().length];
+    private long mFirstInput = -1;
+    private long mFirstOutput = -1;
+    private long mFirstKeyframe = -1;
+    private boolean mReused = false;
+
+    public CodecLifecycle() {
+        for (int i = 0; i < mBegin.length; i++) {
+            mBegin[i] = -1;
+            mEnd[i] = -1;
+        }
+    }
+
+    public synchronized void begin(Phase phase) {
+        mBegin[phase.ordinal()] = SystemClock.elapsedRealtimeNanos();
+    }
+
+    public synchronized void end(Phase phase) {
+        mEnd[phase.ordinal()] = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Only the first call has any effect.
+     */
+    public synchronized void input(long timeNs) {
+        if (mFirstInput < 0) {
+            mFirstInput = timeNs;
+        }
+    }
+
+    /**
+     * Only the first output and the first keyframe are kept.
+     */
+    public synchronized void output(long timeNs, boolean keyframe) {
+        if (timeNs <= 0) {
+            return;
+        }
+        if (mFirstOutput < 0) {
+            mFirstOutput = timeNs;
+        }
+        if (keyframe && mFirstKeyframe < 0) {
+            mFirstKeyframe = timeNs;
+        }
+    }
+
+    /**
+     * The codec was taken from the CodecPool, the create phase only timed
+     * the pool.
+     */
+    public synchronized void setReused(boolean reused) {
+        mReused = reused;
+    }
+
+    public synchronized long getDuration(Phase phase) {
+        if (phase == Phase.create && mReused) {
+            return -1;
+        }
+        return getPhaseTime(phase);
+    }
+
+    /**
+     * @return time to take the codec from the CodecPool, -1 if it was created
+     */
+    public synchronized long getPoolTakeTime() {
+        return mReused ? getPhaseTime(Phase.create) : -1;
+    }
+
+    private long getPhaseTime(Phase phase) {
+        long begin = mBegin[phase.ordinal()];
+        long end = mEnd[phase.ordinal()];
+        if (begin < 0 || end < begin) {
+            return -1;
+        }
+        return end - begin;
+    }
+
+    private long sinceCreate(long timeNs) {
+        long origin = mBegin[Phase.create.ordinal()];
+        if (origin < 0 || timeNs < origin) {
+            return -1;
+        }
+        return timeNs - origin;
+    }
+
+    public synchronized long getTimeToFirstInput() {
+        return sinceCreate(mFirstInput);
+    }
+
+    public synchronized long getTimeToFirstOutput() {
+        return sinceCreate(mFirstOutput);
+    }
+
+    public synchronized long getTimeToFirstKeyframe() {
+        return sinceCreate(mFirstKeyframe);
+    }
+
+    /**
+     * Time from the codec being started to the first output, i.e. without
+     * the create and configure part.
+     */
+    public synchronized long getFirstOutputAfterStart() {
+        long started = mEnd[Phase.start.ordinal()];
+        if (started < 0 || mFirstOutput < started) {
+            return -1;
+        }
+        return mFirstOutput - started;
+    }
+
+    public synchronized boolean hasData() {
+        return mBegin[Phase.create.ordinal()] >= 0 || mFirstOutput >= 0;
+    }
+
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Phase phase : Phase.values()) {
+            json.put(phase.name() + "_ns", getDuration(phase));
+        }
+        json.put("reused", mReused);
+        json.put("pool_take_ns", getPoolTakeTime());
+        json.put("time_to_first_input_ns", getTimeToFirstInput());
+        json.put("time_to_first_output_ns", getTimeToFirstOutput());
+        json.put("time_to_first_keyframe_ns", getTimeToFirstKeyframe());
+        json.put("first_output_after_start_ns", getFirstOutputAfterStart());
+
+        JSONObject timestamps = new JSONObject();
+        for (Phase phase : Phase.values()) {
+            timestamps.put(phase.name() + "_begin", mBegin[phase.ordinal()]);
+            timestamps.put(phase.name() + "_end", mEnd[phase.ordinal()]);
+        }
+        timestamps.put("first_input", mFirstInput);
+        timestamps.put("first_output", mFirstOutput);
+        timestamps.put("first_keyframe", mFirstKeyframe);
+        json.put("timestamps", timestamps);
+        return json;
+    }
+}
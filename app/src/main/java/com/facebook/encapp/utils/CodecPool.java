@@ -0,0 +1,122 @@
+package com.facebook.encapp.utils;
+
+import android.media.MediaCodec;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps stopped codecs around so that the next test using the same codec
+ * and mime can configure it again instead of creating a new instance.
+ *
+ * Codecs are keyed by the codec name of the test configuration, which may
+ * be an alias of the name the codec reports.
+ *
+ * Codecs are only handed to a coder using the same mode: a codec that ran
+ * with a callback (asynchronous) keeps it after stop(), so it cannot be
+ * used with the synchronous dequeue calls and vice versa.
+ *
+ * Only codecs that were stopped cleanly should be returned to the pool,
+ * a codec in error state must be released.
+ */
+public class CodecPool {
+    private static final String TAG = "encapp.codec_pool";
+    // hw codec instances are a limited resource, keep few of them idle
+    private static final int MAX_IDLE_PER_KEY = 1;
+
+    private static final Map<String, ArrayDeque<MediaCodec>> mIdle = new HashMap<>();
+    private static int mHits = 0;
+    private static int mMisses = 0;
+
+    private static String getKey(String codecName, String mime, boolean async) {
+        return codecName + "/" + mime + (async ? "/async" : "/sync");
+    }
+
+    /**
+     * Get a stopped codec from the pool.
+     *
+     * @param async true if the caller sets a callback on the codec
+     * @return the codec or null if there is none, in which case the caller creates one
+     */
+    public static MediaCodec take(String codecName, String mime, boolean async) {
+        synchronized (mIdle) {
+            ArrayDeque<MediaCodec> idle = mIdle.get(getKey(codecName, mime, async));
+            if (idle != null && !idle.isEmpty()) {
+                mHits++;
+                Log.d(TAG, "Reuse " + codecName + " (" + mime + "), hits: " + mHits + ", misses: " + mMisses);
+                return idle.poll();
+            }
+            mMisses++;
+            return null;
+        }
+    }
+
+    /**
+     * Return a stopped codec to the pool. The codec is released if reuse is
+     * not allowed or the pool already holds an idle codec of the same kind.
+     *
+     * @param codecName the name the codec was created with, as for take()
+     * @param async true if the codec was used with a callback
+     * @return true if the codec was kept
+     */
+    public static boolean recycle(MediaCodec codec, String codecName, String mime, boolean async, boolean reuse) {
+        if (reuse) {
+            synchronized (mIdle) {
+                String key = getKey(codecName, mime, async);
+                ArrayDeque<MediaCodec> idle = mIdle.get(key);
+                if (idle == null) {
+                    idle = new ArrayDeque<>();
+                    mIdle.put(key, idle);
+                }
+                if (idle.size() < MAX_IDLE_PER_KEY) {
+                    idle.add(codec);
+                    return true;
+                }
+            }
+        }
+        codec.release();
+        return false;
+    }
+
+    /**
+     * Release all idle codecs, e.g. before tests that need all codec instances.
+     */
+    public static void releaseAll() {
+        synchronized (mIdle) {
+            for (ArrayDeque<MediaCodec> idle : mIdle.values()) {
+                for (MediaCodec codec : idle) {
+                    try {
+                        codec.release();
+                    } catch (IllegalStateException e) {
+                        Log.e(TAG, "Failed to release codec: " + e.getMessage());
+                    }
+                }
+            }
+            mIdle.clear();
+        }
+    }
+
+    public static int getHits() {
+        synchronized (mIdle) {
+            return mHits;
+        }
+    }
+
+    public static int getMisses() {
+        synchronized (mIdle) {
+            return mMisses;
+        }
+    }
+
+    /**
+     * Share of the codec requests (with reuse allowed) served from the pool.
+     */
+    public static double getHitRate() {
+        synchronized (mIdle) {
+            int total = mHits + mMisses;
+            return (total > 0) ? (double) mHits / total : 0;
+        }
+    }
+}
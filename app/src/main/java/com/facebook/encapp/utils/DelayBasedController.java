@@ -0,0 +1,295 @@
+package com.facebook.encapp.utils;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Delay based rate control in the style of Google Congestion Control
+ * (draft-ietf-rmcat-gcc).
+ *
+ * The one way delay variation of every frame (the arrival interval minus the
+ * send interval) is accumulated and smoothed, and the slope of a line fitted
+ * to the last frames (the trendline) is compared with an adaptive threshold.
+ * A growing delay means the link is overused and the bitrate is set to 0.85
+ * times the rate that actually arrived, a shrinking delay means the queue is
+ * draining and the bitrate is held, otherwise it is increased by 8% per
+ * second, or by about a packet per response time once close to the rate that
+ * last caused a decrease. The bitrate stays below 1.5 times the arrived rate.
+ *
+ * A loss based estimate runs next to it: above 10% loss the bitrate is cut
+ * by half the loss, below 2% it may grow by 5% per second. The lower of the
+ * two is used. A sync frame is requested when a frame is lost.
+ */
+public class DelayBasedController implements BitrateController {
+    private static final int TRENDLINE_WINDOW = 20;
+    private static final double SMOOTHING = 0.9;
+    private static final double TRENDLINE_GAIN = 4;
+    private static final double THRESHOLD_GAIN_UP = 0.0087;
+    private static final double THRESHOLD_GAIN_DOWN = 0.039;
+    private static final double OVERUSE_TIME_MS = 10;
+    private static final double BETA = 0.85;
+    private static final long RATE_WINDOW_NS = 500000000L;
+    private static final long LOSS_WINDOW_NS = 1000000000L;
+    // the bitrate is decreased at most once per response time
+    private static final long RESPONSE_TIME_NS = 200000000L;
+    // about a 1200 byte packet per response time
+    private static final double ADDITIVE_BPS_PER_SEC = 48000;
+    // smaller changes are not applied
+    private static final double MIN_CHANGE = 0.05;
+
+    private enum Usage {
+        normal,
+        overuse,
+        underuse,
+    }
+
+    private enum State {
+        hold,
+        increase,
+        decrease,
+    }
+
+    private final int mMinBitrate;
+    private final int mMaxBitrate;
+    private final long mSyncIntervalNs;
+
+    private double mBitrate;
+    private double mLossBitrate;
+    private int mAppliedBitrate;
+    private double mLastDecreaseRate = -1;
+    private long mLastDecreaseNs = Long.MIN_VALUE / 2;
+    private String mReason = "";
+    private State mState = State.increase;
+    private long mLastUpdateNs = -1;
+    private long mLastSyncNs = Long.MIN_VALUE / 2;
+
+    // trendline
+    private long mPrevSendNs = -1;
+    private long mPrevArrivalNs;
+    private long mFirstArrivalNs;
+    private double mAccumulatedDelayMs = 0;
+    private double mSmoothedDelayMs = 0;
+    private int mDeltas = 0;
+    private final ArrayDeque<double[]> mSamples = new ArrayDeque<>();
+
+    // overuse detector
+    private Usage mUsage = Usage.normal;
+    private double mThresholdMs = 12.5;
+    private long mLastThresholdNs = -1;
+    private double mOveruseTimeMs = 0;
+    private int mOveruseCount = 0;
+    private double mPrevTrend = 0;
+
+    // arrival time and bytes of the received frames
+    private final ArrayDeque<long[]> mReceived = new ArrayDeque<>();
+    // time and 1 if lost
+    private final ArrayDeque<long[]> mLosses = new ArrayDeque<>();
+    private long mLastLossUpdateNs = -1;
+
+    public DelayBasedController(int startBitrate, int minBitrate, int maxBitrate, long syncIntervalNs) {
+        mMinBitrate = minBitrate;
+        mMaxBitrate = maxBitrate;
+        mSyncIntervalNs = syncIntervalNs;
+        mBitrate = startBitrate;
+        mLossBitrate = maxBitrate;
+        mAppliedBitrate = startBitrate;
+    }
+
+    @Override
+    public String getName() {
+        return "delay_based";
+    }
+
+    private void updateTrendline(BitrateController.Feedback feedback) {
+        if (mPrevSendNs < 0) {
+            mFirstArrivalNs = feedback.mArrivalTimeNs;
+        } else {
+            double deltaMs = ((feedback.mArrivalTimeNs - mPrevArrivalNs) -
+                    (feedback.mSendTimeNs - mPrevSendNs)) / 1e6;
+            mDeltas++;
+            mAccumulatedDelayMs += deltaMs;
+            mSmoothedDelayMs = SMOOTHING * mSmoothedDelayMs + (1 - SMOOTHING) * mAccumulatedDelayMs;
+            mSamples.add(new double[]{(feedback.mArrivalTimeNs - mFirstArrivalNs) / 1e6, mSmoothedDelayMs});
+            if (mSamples.size() > TRENDLINE_WINDOW) {
+                mSamples.poll();
+            }
+            if (mSamples.size() == TRENDLINE_WINDOW) {
+                double trend = Math.min(mDeltas, 60) * slope() * TRENDLINE_GAIN;
+                detect(trend, feedback.mArrivalTimeNs - mPrevArrivalNs, feedback.mTimeNs);
+            }
+        }
+        mPrevSendNs = feedback.mSendTimeNs;
+        mPrevArrivalNs = feedback.mArrivalTimeNs;
+    }
+
+    // least squares slope of the samples
+    private double slope() {
+        double meanX = 0;
+        double meanY = 0;
+        for (double[] sample : mSamples) {
+            meanX += sample[0];
+            meanY += sample[1];
+        }
+        meanX /= mSamples.size();
+        meanY /= mSamples.size();
+        double numerator = 0;
+        double denominator = 0;
+        for (double[] sample : mSamples) {
+            numerator += (sample[0] - meanX) * (sample[1] - meanY);
+            denominator += (sample[0] - meanX) * (sample[0] - meanX);
+        }
+        return (denominator > 0) ? numerator / denominator : 0;
+    }
+
+    private void detect(double trend, long intervalNs, long nowNs) {
+        if (trend > mThresholdMs) {
+            mOveruseTimeMs += intervalNs / 1e6;
+            mOveruseCount++;
+            if (mOveruseTimeMs > OVERUSE_TIME_MS && mOveruseCount > 1 && trend >= mPrevTrend) {
+                mUsage = Usage.overuse;
+                mOveruseTimeMs = 0;
+                mOveruseCount = 0;
+            }
+        } else if (trend < -mThresholdMs) {
+            mUsage = Usage.underuse;
+            mOveruseTimeMs = 0;
+            mOveruseCount = 0;
+        } else {
+            mUsage = Usage.normal;
+            mOveruseTimeMs = 0;
+            mOveruseCount = 0;
+        }
+        mPrevTrend = trend;
+        // the threshold follows the trend, slowly up and faster down
+        double distance = Math.abs(trend) - mThresholdMs;
+        if (mLastThresholdNs >= 0 && distance <= 15) {
+            double gain = (Math.abs(trend) < mThresholdMs) ? THRESHOLD_GAIN_DOWN : THRESHOLD_GAIN_UP;
+            double dtMs = Math.min((nowNs - mLastThresholdNs) / 1e6, 100);
+            mThresholdMs = Math.min(Math.max(mThresholdMs + gain * distance * dtMs, 6), 600);
+        }
+        mLastThresholdNs = nowNs;
+    }
+
+    /**
+     * @return bits per second arrived in the last window, -1 until a window is seen
+     */
+    private double getIncomingRate() {
+        if (mReceived.isEmpty()) {
+            return -1;
+        }
+        long last = mReceived.peekLast()[0];
+        long span = Math.min(last - mReceived.peekFirst()[0], RATE_WINDOW_NS);
+        if (span < RATE_WINDOW_NS / 2) {
+            return -1;
+        }
+        long bytes = 0;
+        for (Iterator<long[]> it = mReceived.descendingIterator(); it.hasNext(); ) {
+            long[] frame = it.next();
+            if (frame[0] <= last - RATE_WINDOW_NS) {
+                break;
+            }
+            bytes += frame[1];
+        }
+        return bytes * 8 * 1e9 / span;
+    }
+
+    private void updateRate(long nowNs) {
+        switch (mUsage) {
+            case overuse:
+                mState = State.decrease;
+                break;
+            case underuse:
+                mState = State.hold;
+                break;
+            default:
+                if (mState == State.hold) {
+                    mState = State.increase;
+                } else if (mState == State.decrease) {
+                    mState = State.hold;
+                }
+        }
+        if (mState == State.decrease && nowNs - mLastDecreaseNs < RESPONSE_TIME_NS) {
+            // the last decrease has not had an effect yet
+            mState = State.hold;
+        }
+        mReason = mUsage + "/" + mState;
+        double incoming = getIncomingRate();
+        double dt = (mLastUpdateNs < 0) ? 0 : Math.min((nowNs - mLastUpdateNs) / 1e9, 1);
+        if (mState == State.increase) {
+            if (mLastDecreaseRate > 0 && mBitrate > 0.95 * mLastDecreaseRate) {
+                // close to the last capacity found
+                mBitrate += ADDITIVE_BPS_PER_SEC * dt;
+            } else {
+                mBitrate *= Math.pow(1.08, dt);
+            }
+        } else if (mState == State.decrease) {
+            double base = (incoming > 0) ? incoming : mBitrate;
+            mBitrate = BETA * base;
+            mLastDecreaseRate = base;
+            mLastDecreaseNs = nowNs;
+            mState = State.hold;
+        }
+        if (incoming > 0) {
+            mBitrate = Math.min(mBitrate, 1.5 * incoming + 10000);
+        }
+        mBitrate = Math.min(Math.max(mBitrate, mMinBitrate), mMaxBitrate);
+        mLastUpdateNs = nowNs;
+    }
+
+    private double updateLoss(BitrateController.Feedback feedback) {
+        mLosses.add(new long[]{feedback.mTimeNs, feedback.mLost ? 1 : 0});
+        while (mLosses.peekFirst()[0] <= feedback.mTimeNs - LOSS_WINDOW_NS) {
+            mLosses.poll();
+        }
+        if (mLastLossUpdateNs < 0) {
+            mLastLossUpdateNs = feedback.mTimeNs;
+        }
+        // act once per window
+        if (feedback.mTimeNs - mLastLossUpdateNs < LOSS_WINDOW_NS) {
+            return mLossBitrate;
+        }
+        mLastLossUpdateNs = feedback.mTimeNs;
+        int lost = 0;
+        for (long[] frame : mLosses) {
+            lost += frame[1];
+        }
+        double loss = (double) lost / mLosses.size();
+        if (loss > 0.10) {
+            mLossBitrate = mAppliedBitrate * (1 - 0.5 * loss);
+        } else if (loss < 0.02) {
+            mLossBitrate = Math.min(mLossBitrate * 1.05, mMaxBitrate);
+        }
+        mLossBitrate = Math.max(mLossBitrate, mMinBitrate);
+        return mLossBitrate;
+    }
+
+    @Override
+    public BitrateController.Decision onFrame(BitrateController.Feedback feedback) {
+        if (!feedback.mLost) {
+            mReceived.add(new long[]{feedback.mArrivalTimeNs, feedback.mSize});
+            while (mReceived.size() > 1 &&
+                    mReceived.peekFirst()[0] <= feedback.mArrivalTimeNs - 2 * RATE_WINDOW_NS) {
+                mReceived.poll();
+            }
+            updateTrendline(feedback);
+        }
+        updateRate(feedback.mTimeNs);
+        double lossBitrate = updateLoss(feedback);
+        int target = (int) Math.min(mBitrate, lossBitrate);
+
+        boolean sync = false;
+        if (feedback.mLost && feedback.mTimeNs - mLastSyncNs >= mSyncIntervalNs) {
+            sync = true;
+            mLastSyncNs = feedback.mTimeNs;
+        }
+        boolean change = Math.abs(target - mAppliedBitrate) >= MIN_CHANGE * mAppliedBitrate;
+        if (!change && !sync) {
+            return null;
+        }
+        if (change) {
+            mAppliedBitrate = target;
+        }
+        String reason = (lossBitrate < mBitrate) ? mReason + "/loss" : mReason;
+        return new BitrateController.Decision(change ? target : 0, 0, sync, reason);
+    }
+}
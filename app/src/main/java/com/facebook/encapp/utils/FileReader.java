@@ -5,11 +5,14 @@ import android.media.Image;
 import android.util.Log;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ReadOnlyBufferException;
 
@@ -21,17 +24,69 @@ public class FileReader {
     File mFile;
     BufferedInputStream mBis;
     PixFmt mPixFmt;
+    // the start of the file is read from the InputCache
+    boolean mCached = false;
+    // reused frame for fillImage()
+    private byte[] mFrameBytes;
+    // only needed to convert 10 bit frames, see setResolution()
+    int mFrameWidth = 0;
+    int mFrameHeight = 0;
 
     public FileReader() {
     }
 
+    public static boolean is10Bit(PixFmt pixFmt) {
+        return pixFmt.getNumber() == PixFmt.p010_VALUE || pixFmt.getNumber() == PixFmt.yuv420p10le_VALUE;
+    }
+
+    /**
+     * @return size in bytes of a frame
+     */
+    public static int getFrameSize(PixFmt pixFmt, int width, int height) {
+        if (pixFmt.getNumber() == PixFmt.rgba_VALUE) {
+            return width * height * 4;
+        }
+        // 4:2:0
+        int bytesPerSample = is10Bit(pixFmt) ? 2 : 1;
+        return width * height * 3 / 2 * bytesPerSample;
+    }
+
+    /**
+     * Resolution of the frames, needed to read yuv420p10le.
+     */
+    public void setResolution(int width, int height) {
+        mFrameWidth = width;
+        mFrameHeight = height;
+    }
+
+    /**
+     * @return layout of the frames fillBuffer() writes, codecs take 10 bit
+     * input as P010 so yuv420p10le is converted
+     */
+    public PixFmt getBufferPixFmt() {
+        if (mPixFmt != null && mPixFmt.getNumber() == PixFmt.yuv420p10le_VALUE) {
+            return PixFmt.p010;
+        }
+        return mPixFmt;
+    }
+
     public boolean openFile(String name, PixFmt pixFmt) {
         try {
             Log.i(TAG, "FileReader.openFile: name: " + name + " pix_fmt: " + pixFmt);
             mPixFmt = pixFmt;
             mFile = new File(name);
-            mBis = new BufferedInputStream(new FileInputStream(mFile));
-        } catch (FileNotFoundException e) {
+            byte[] head = InputCache.get(name);
+            if (head != null) {
+                // read the cached start from memory and the rest from the file
+                FileInputStream fis = new FileInputStream(mFile);
+                fis.getChannel().position(head.length);
+                mBis = new BufferedInputStream(new SequenceInputStream(new ByteArrayInputStream(head), fis));
+                mCached = true;
+            } else {
+                mBis = new BufferedInputStream(new FileInputStream(mFile));
+                mCached = false;
+            }
+        } catch (IOException e) {
             Log.e(TAG, "Failed to open file: " + name + ", " + e.getMessage());
             e.printStackTrace();
             return false;
@@ -39,6 +94,94 @@ public class FileReader {
         return true;
     }
 
+    /**
+     * Read the first bytes of the file into memory so that the first
+     * frames are not read from storage while encoding. The memory is
+     * released when the encoding has read past it.
+     *
+     * @return number of bytes preloaded
+     */
+    public int preload(int bytes) {
+        synchronized (this) {
+            if (isClosed() || bytes <= 0 || mCached) {
+                return 0;
+            }
+            byte[] head = new byte[bytes];
+            int total = 0;
+            try {
+                // nothing has been read from the file yet
+                FileInputStream fis = new FileInputStream(mFile);
+                while (total < bytes) {
+                    int read = fis.read(head, total, bytes - total);
+                    if (read < 0) {
+                        break;
+                    }
+                    total += read;
+                }
+                mBis.close();
+                mBis = new BufferedInputStream(new PreloadedInputStream(head, total, fis));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to preload: " + e.getMessage());
+                return 0;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Reads the preloaded start of the file from memory and then the rest
+     * from the file. The memory is released once it has been read.
+     */
+    private static class PreloadedInputStream extends InputStream {
+        private byte[] mHead;
+        private final int mLength;
+        private int mPos = 0;
+        private final InputStream mRest;
+
+        PreloadedInputStream(byte[] head, int length, InputStream rest) {
+            mHead = head;
+            mLength = length;
+            mRest = rest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mHead != null) {
+                if (mPos < mLength) {
+                    return mHead[mPos++] & 0xff;
+                }
+                mHead = null;
+            }
+            return mRest.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mHead != null) {
+                if (mPos < mLength) {
+                    int read = Math.min(len, mLength - mPos);
+                    System.arraycopy(mHead, mPos, b, off, read);
+                    mPos += read;
+                    return read;
+                }
+                mHead = null;
+            }
+            return mRest.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            int head = (mHead != null) ? mLength - mPos : 0;
+            return head + mRest.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mHead = null;
+            mRest.close();
+        }
+    }
+
     public boolean isClosed() {
         synchronized (this) {
             return (mBis == null);
@@ -65,6 +208,9 @@ public class FileReader {
                 return 0;
             }
         }
+        if (mPixFmt.getNumber() == PixFmt.yuv420p10le_VALUE) {
+            return fillBufferP010(byteBuffer, size);
+        }
         if (byteBuffer.hasArray()) {
             byte[] bytes = byteBuffer.array();
             try {
@@ -101,6 +247,35 @@ public class FileReader {
         }
     }
 
+    private int fillBufferP010(ByteBuffer byteBuffer, int size) {
+        int frameLength = getFrameSize(mPixFmt, mFrameWidth, mFrameHeight);
+        if (frameLength == 0 || size < frameLength || byteBuffer.remaining() < frameLength) {
+            Log.e(TAG, "error: cannot convert a " + mFrameWidth + "x" + mFrameHeight + " " + mPixFmt +
+                    " frame into a ByteBuffer (remaining: " + byteBuffer.remaining() + ")");
+            return 0;
+        }
+        if (mFrameBytes == null || mFrameBytes.length != frameLength) {
+            mFrameBytes = new byte[frameLength];
+        }
+        try {
+            int total = 0;
+            while (total < frameLength) {
+                int read = mBis.read(mFrameBytes, total, frameLength - total);
+                if (read < 0) {
+                    // file is finished
+                    return -1;
+                }
+                total += read;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "error: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        }
+        PlaneCopier.planar10ToP010(mFrameBytes, 0, byteBuffer, mFrameWidth, mFrameHeight);
+        return frameLength;
+    }
+
     // Copy a full frame from the BufferedInputStream into an Image.
     // Inspired in android-13/cts/tests/mediapc/src/android/mediapc/cts/CodecTestBase.java
     public int fillImage(Image image) {
@@ -114,11 +289,14 @@ public class FileReader {
         Assert.assertTrue(mPixFmt.getNumber() == PixFmt.yuv420p_VALUE ||
                           mPixFmt.getNumber() == PixFmt.yvu420p_VALUE ||
                           mPixFmt.getNumber() == PixFmt.nv12_VALUE ||
-                          mPixFmt.getNumber() == PixFmt.nv21_VALUE,
+                          mPixFmt.getNumber() == PixFmt.nv21_VALUE ||
+                          is10Bit(mPixFmt),
                           "Invalid PixFmt: " + mPixFmt);
-        Assert.assertTrue(image.getFormat() == ImageFormat.YUV_420_888, "Invalid ImageFormat: " + image.getFormat());
+        Assert.assertTrue(image.getFormat() == ImageFormat.YUV_420_888 ||
+                          image.getFormat() == ImageFormat.YCBCR_P010,
+                          "Invalid ImageFormat: " + image.getFormat());
         // YUV420
-        int bytesPerComponent = (ImageFormat.getBitsPerPixel(image.getFormat()) * 2) / (8 * 3);
+        int bytesPerComponent = is10Bit(mPixFmt) ? 2 : 1;
         int imageWidth = image.getWidth();
         int imageHeight = image.getHeight();
         Image.Plane[] planes = image.getPlanes();
@@ -127,7 +305,10 @@ public class FileReader {
         int lumaLength = imageWidth * imageHeight * bytesPerComponent;
         int chromaLength = imageWidth * imageHeight * bytesPerComponent / 4;
         int frameLength = lumaLength + 2 * chromaLength;
-        final byte[] bytes = new byte[frameLength];
+        if (mFrameBytes == null || mFrameBytes.length != frameLength) {
+            mFrameBytes = new byte[frameLength];
+        }
+        final byte[] bytes = mFrameBytes;
         try {
             int actually_read = mBis.read(bytes, 0, frameLength);
             if (actually_read < frameLength) {
@@ -139,65 +320,56 @@ public class FileReader {
             e.printStackTrace();
             return 0;
         }
-        // Y, U, V pixel strides and input plane offsets
+        return copyToImage(bytes, image);
+    }
+
+    // Copy a full frame in mPixFmt layout into an Image.
+    protected int copyToImage(byte[] bytes, Image image) {
+        int bytesPerComponent = is10Bit(mPixFmt) ? 2 : 1;
+        // YUV_420_888 has 8 bit samples, YCBCR_P010 MSB aligned 16 bit samples
+        if ((image.getFormat() == ImageFormat.YCBCR_P010) != (bytesPerComponent == 2)) {
+            Log.e(TAG, "fillImage: cannot copy " + mPixFmt + " into ImageFormat " + image.getFormat());
+            return 0;
+        }
+        int shift = (mPixFmt.getNumber() == PixFmt.yuv420p10le_VALUE) ? 6 : 0;
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+        int lumaLength = imageWidth * imageHeight * bytesPerComponent;
+        int chromaLength = imageWidth * imageHeight * bytesPerComponent / 4;
+        int frameLength = lumaLength + 2 * chromaLength;
+        // Y, U, V input pixel strides and plane offsets (in bytes)
         int[] inputPixelStride = {bytesPerComponent, bytesPerComponent, bytesPerComponent};
-        if (mPixFmt.getNumber() == PixFmt.nv12_VALUE || mPixFmt.getNumber() == PixFmt.nv21_VALUE) {
+        int[] inputPlaneOffset = {0, lumaLength, lumaLength + chromaLength};
+        if (mPixFmt.getNumber() == PixFmt.yvu420p_VALUE) {
+            inputPlaneOffset[1] = lumaLength + chromaLength;
+            inputPlaneOffset[2] = lumaLength;
+        } else if (mPixFmt.getNumber() == PixFmt.nv12_VALUE || mPixFmt.getNumber() == PixFmt.nv21_VALUE ||
+                mPixFmt.getNumber() == PixFmt.p010_VALUE) {
             inputPixelStride[1] = 2 * bytesPerComponent;
             inputPixelStride[2] = 2 * bytesPerComponent;
+            boolean uFirst = mPixFmt.getNumber() != PixFmt.nv21_VALUE;
+            inputPlaneOffset[1] = lumaLength + (uFirst ? 0 : bytesPerComponent);
+            inputPlaneOffset[2] = lumaLength + (uFirst ? bytesPerComponent : 0);
         }
 
-        int[] inputPlaneOffset = {0, lumaLength, lumaLength};
-        if (mPixFmt.getNumber() == PixFmt.yuv420p_VALUE) {
-            inputPlaneOffset[2] = lumaLength + chromaLength;
-        } else if (mPixFmt.getNumber() == PixFmt.yvu420p_VALUE) {
-            inputPlaneOffset[1] = lumaLength + chromaLength;
-        }
-
+        // planes sharing memory are copied one after the other
         for (int planeid = 0; planeid < planes.length; ++planeid) {
-            Log.e(TAG, "fillImage: plane[" + planeid + "] { rowStride: " + planes[planeid].getRowStride() + " pixelStride: " + planes[planeid].getPixelStride() + " }");
-            ByteBuffer buf = planes[planeid].getBuffer();
             int width = imageWidth;
             int height = imageHeight;
-            int outputRowStride = planes[planeid].getRowStride();
-            int outputPixelStride = planes[planeid].getPixelStride();
             // chromas are subsampled (4:2:0)
             if (planeid != 0) {
                 width = imageWidth / 2;
                 height = imageHeight / 2;
             }
             try {
-                if ((inputPixelStride[planeid] == bytesPerComponent) && (outputPixelStride == bytesPerComponent) && (width == outputRowStride)) {
-                    // 1. optimized copy: full plane
-                    //Log.i(TAG, "FileReader::fillImage(): plane: " + planeid + " full plane copy: resolution: " + width + "x" + height + " outputPixelStride: " + outputPixelStride + " outputRowStride: " + outputRowStride);
-                    int inputOffset = inputPlaneOffset[planeid];
-                    buf.put(bytes, inputOffset, width * height * bytesPerComponent);
-                } else if ((inputPixelStride[planeid] == bytesPerComponent) && (outputPixelStride == bytesPerComponent)) {
-                    // 2. optimized copy: full row
-                    //Log.i(TAG, "FileReader::fillImage(): plane: " + planeid + " full row copy: resolution: " + width + "x" + height + " outputPixelStride: " + outputPixelStride + " outputRowStride: " + outputRowStride);
-                    for (int row = 0; row < height; row += 1) {
-                        int inputOffset = inputPlaneOffset[planeid] + row * width * bytesPerComponent;
-                        int outputOffset = row * outputRowStride * bytesPerComponent;
-                        buf.position(outputOffset);
-                        buf.put(bytes, inputOffset, width * bytesPerComponent);
-                    }
-                } else {
-                    // 3. non-optimized copy: pixel-by-pixel
-                    //Log.i(TAG, "FileReader::fillImage(): plane: " + planeid + " pixel-by-pixel copy: resolution: " + width + "x" + height + " outputPixelStride: " + outputPixelStride + " outputRowStride: " + outputRowStride);
-                    for (int row = 0; row < height; row += 1) {
-                        for (int x = 0; x < width; x += 1) {
-                            int inputOffset = inputPlaneOffset[planeid] + (row * width + x) * inputPixelStride[planeid] * bytesPerComponent;
-                            if ((planeid == 2 && mPixFmt.getNumber() == PixFmt.nv12_VALUE) ||
-                                (planeid == 1 && mPixFmt.getNumber() == PixFmt.nv21_VALUE)) {
-                                inputOffset += bytesPerComponent;
-                            }
-                            int outputOffset = (row * outputRowStride + x * outputPixelStride) * bytesPerComponent;
-                            buf.position(outputOffset);
-                            buf.put(bytes, inputOffset, bytesPerComponent);
-                        }
-                    }
-                }
-            } catch (BufferOverflowException e) {
-                Log.e(TAG, "error BufferOverflowException: " + e.getMessage());
+                PlaneCopier.copyPlane(bytes, inputPlaneOffset[planeid], inputPixelStride[planeid],
+                        width * inputPixelStride[planeid],
+                        planes[planeid].getBuffer(), planes[planeid].getPixelStride(), planes[planeid].getRowStride(),
+                        width, height, bytesPerComponent, shift);
+            } catch (BufferOverflowException | BufferUnderflowException e) {
+                Log.e(TAG, "error " + e.getClass().getSimpleName() + ": plane[" + planeid + "] { rowStride: " +
+                        planes[planeid].getRowStride() + " pixelStride: " + planes[planeid].getPixelStride() + " }");
                 e.printStackTrace();
                 return 0;
             } catch (ReadOnlyBufferException e) {
@@ -206,7 +378,6 @@ public class FileReader {
                 return 0;
             }
         }
-        // Log.i(TAG, "FileReader::fillImage(): frameLength: " + frameLength);
         return frameLength;
     }
 }
@@ -0,0 +1,70 @@
+package com.facebook.encapp.utils;
+
+import android.media.MediaFormat;
+
+import java.util.Dictionary;
+import java.util.Enumeration;
+
+/**
+ * Keeps the latest output format of a codec and the changes that have not
+ * yet been attached to a frame.
+ *
+ * Formats are only compared when the codec signals a change
+ * (onOutputFormatChanged / INFO_OUTPUT_FORMAT_CHANGED) so nothing is done per
+ * frame except for checking if there is a pending change.
+ */
+public class FormatChangeTracker {
+    private MediaFormat mFormat;
+    private Dictionary<String, Object> mPending;
+    private final boolean mReportInitialFormat;
+
+    /**
+     * @param reportInitialFormat if true the first format is reported as a change
+     *                            with all keys, otherwise it is only used as reference
+     */
+    public FormatChangeTracker(boolean reportInitialFormat) {
+        mReportInitialFormat = reportInitialFormat;
+    }
+
+    /**
+     * Set the reference format without reporting it as a change.
+     */
+    public synchronized void setFormat(MediaFormat format) {
+        mFormat = format;
+    }
+
+    public synchronized MediaFormat getFormat() {
+        return mFormat;
+    }
+
+    public synchronized void onFormatChanged(MediaFormat format) {
+        if (mFormat == null && !mReportInitialFormat) {
+            mFormat = format;
+            return;
+        }
+        Dictionary<String, Object> changes = MediaCodecInfoHelper.mediaFormatComparison(mFormat, format);
+        mFormat = format;
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (mPending == null) {
+            mPending = changes;
+        } else {
+            // several changes before the next frame, the latest value wins
+            Enumeration<String> keys = changes.keys();
+            while (keys.hasMoreElements()) {
+                String key = keys.nextElement();
+                mPending.put(key, changes.get(key));
+            }
+        }
+    }
+
+    /**
+     * @return the changes since the previous call, or null if nothing has changed
+     */
+    public synchronized Dictionary<String, Object> takeChanges() {
+        Dictionary<String, Object> changes = mPending;
+        mPending = null;
+        return changes;
+    }
+}
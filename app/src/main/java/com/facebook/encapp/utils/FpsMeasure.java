@@ -7,7 +7,7 @@ import java.util.Vector;
 
 public class FpsMeasure extends Thread {
     private final String TAG = "encapp.fps";
-    double mFps = 0;
+    volatile double mFps = 0;
     long[] mLatestPts;
     boolean mStable = false;
     float mTargetFps = 0;
@@ -4,11 +4,14 @@ import android.graphics.Bitmap;
 import android.media.MediaCodec;
 
 import java.nio.Buffer;
+import java.util.Dictionary;
 
 public class FrameBuffer implements BufferObject {
         public MediaCodec mCodec;
         public int mBufferId = -1;
         public MediaCodec.BufferInfo mInfo;
+        // output format changes preceding this buffer, if any
+        public Dictionary<String, Object> mFormatChanges;
 
     public FrameBuffer(MediaCodec codec, int id, MediaCodec.BufferInfo info) {
         mCodec = codec;
@@ -0,0 +1,301 @@
+package com.facebook.encapp.utils;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashes every frame (xxh64) to tell if two runs produced the same bits,
+ * e.g. before and after a firmware update, without keeping the video.
+ *
+ * The frame is copied into a pooled array on the calling thread, so the
+ * codec buffer can be released right away, and hashed on a small pool of
+ * worker threads. At most MAX_PENDING copies are in flight, after that the
+ * caller waits for a worker. Decoded frames are hashed on the visible
+ * samples only, plane by plane, so strides and padding do not matter.
+ *
+ * The hashes are in pts order in the statistics, as one hex string with 16
+ * characters per frame, see scripts/encapp_compare_hashes.py.
+ */
+public class FrameHasher {
+    private static final String TAG = "encapp.hasher";
+    private static final int MAX_PENDING = 8;
+    private static final long FINISH_TIMEOUT_MS = 5000;
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private final ExecutorService mExecutor;
+    private final ConcurrentLinkedQueue<byte[]> mPool = new ConcurrentLinkedQueue<>();
+    private final Semaphore mPending = new Semaphore(MAX_PENDING);
+    // indexed by submission order
+    private long[] mPts = new long[256];
+    private long[] mHashes = new long[256];
+    private int mFrames = 0;
+    private boolean mFinished = false;
+    private byte[] mRow;
+
+    public FrameHasher(int threads) {
+        mExecutor = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static String getAlgorithm() {
+        return "xxh64";
+    }
+
+    /**
+     * Hash size bytes of the buffer from offset, the buffer position and
+     * limit are not changed.
+     */
+    public void hash(long pts, ByteBuffer buffer, int offset, int size) {
+        if (buffer == null || size <= 0) {
+            return;
+        }
+        byte[] data = obtain(size);
+        if (data == null) {
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.clear();
+        source.position(offset);
+        source.get(data, 0, size);
+        submit(pts, data, size);
+    }
+
+    /**
+     * Hash the visible samples of a decoded image, plane by plane. The image
+     * can be closed when this returns.
+     */
+    public void hashImage(long pts, Image image) {
+        int sampleSize = (image.getFormat() == ImageFormat.YCBCR_P010) ? 2 : 1;
+        Rect crop = image.getCropRect();
+        Image.Plane[] planes = image.getPlanes();
+        int size = 0;
+        for (int i = 0; i < planes.length; i++) {
+            int div = (i == 0) ? 1 : 2;
+            size += (crop.width() / div) * (crop.height() / div) * sampleSize;
+        }
+        byte[] data = obtain(size);
+        if (data == null) {
+            return;
+        }
+        int length = 0;
+        for (int i = 0; i < planes.length; i++) {
+            int div = (i == 0) ? 1 : 2;
+            int left = crop.left / div;
+            int top = crop.top / div;
+            int width = crop.width() / div;
+            int height = crop.height() / div;
+            int pixelStride = planes[i].getPixelStride();
+            int rowStride = planes[i].getRowStride();
+            ByteBuffer buffer = planes[i].getBuffer().duplicate();
+            // the last row may end at the last sample rather than at the stride
+            int span = (width - 1) * pixelStride + sampleSize;
+            for (int y = 0; y < height; y++) {
+                buffer.position((top + y) * rowStride + left * pixelStride);
+                if (pixelStride == sampleSize) {
+                    buffer.get(data, length, width * sampleSize);
+                } else {
+                    byte[] row = getRow(span);
+                    buffer.get(row, 0, span);
+                    for (int x = 0; x < width; x++) {
+                        System.arraycopy(row, x * pixelStride, data, length + x * sampleSize, sampleSize);
+                    }
+                }
+                length += width * sampleSize;
+            }
+        }
+        submit(pts, data, length);
+    }
+
+    private byte[] getRow(int length) {
+        if (mRow == null || mRow.length < length) {
+            mRow = new byte[length];
+        }
+        return mRow;
+    }
+
+    /**
+     * @return null if interrupted while waiting for a worker, the frame is
+     * not hashed
+     */
+    private byte[] obtain(int size) {
+        try {
+            mPending.acquire();
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted, frame not hashed");
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        byte[] data = mPool.poll();
+        if (data == null || data.length < size) {
+            // frames grow rarely, keep the larger one from now on
+            data = new byte[size];
+        }
+        return data;
+    }
+
+    private void submit(long pts, byte[] data, int length) {
+        final int slot;
+        synchronized (this) {
+            if (mFrames == mHashes.length) {
+                mPts = Arrays.copyOf(mPts, mFrames * 2);
+                mHashes = Arrays.copyOf(mHashes, mFrames * 2);
+            }
+            slot = mFrames++;
+            mPts[slot] = pts;
+        }
+        Runnable task = () -> {
+            long hash = xxh64(data, 0, length, 0);
+            synchronized (this) {
+                mHashes[slot] = hash;
+            }
+            mPool.offer(data);
+            mPending.release();
+        };
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // already finished, e.g. a late frame from the writer thread
+            task.run();
+        }
+    }
+
+    /**
+     * Wait for the frames in flight and stop the workers. Frames hashed
+     * after this are hashed on the calling thread.
+     */
+    public void finish() {
+        synchronized (this) {
+            if (mFinished) {
+                return;
+            }
+            mFinished = true;
+        }
+        mExecutor.shutdown();
+        try {
+            if (!mExecutor.awaitTermination(FINISH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Hashing did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mPool.clear();
+    }
+
+    public synchronized int getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * @return the hashes in pts order, 16 hex characters per frame
+     */
+    public synchronized String getHashes() {
+        Integer[] order = new Integer[mFrames];
+        for (int i = 0; i < mFrames; i++) {
+            order[i] = i;
+        }
+        // stable, frames with the same pts stay in output order
+        Arrays.sort(order, (a, b) -> Long.compare(mPts[a], mPts[b]));
+        StringBuilder hashes = new StringBuilder(mFrames * 16);
+        for (int i : order) {
+            hashes.append(String.format(Locale.US, "%016x", mHashes[i]));
+        }
+        return hashes.toString();
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        finish();
+        JSONObject json = new JSONObject();
+        json.put("algorithm", getAlgorithm());
+        json.put("frames", getFrameCount());
+        json.put("hashes", getHashes());
+        return json;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        return Long.rotateLeft(acc, 31) * PRIME1;
+    }
+
+    private static long merge(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    /**
+     * XXH64 as in the reference implementation.
+     */
+    static long xxh64(byte[] data, int offset, int length, long seed) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int pos = offset;
+        int end = offset + length;
+        long hash;
+        if (length >= 32) {
+            long v1 = seed + PRIME1 + PRIME2;
+            long v2 = seed + PRIME2;
+            long v3 = seed;
+            long v4 = seed - PRIME1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, buffer.getLong(pos));
+                v2 = round(v2, buffer.getLong(pos + 8));
+                v3 = round(v3, buffer.getLong(pos + 16));
+                v4 = round(v4, buffer.getLong(pos + 24));
+                pos += 32;
+            } while (pos <= limit);
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+                    Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+        hash += length;
+        while (pos + 8 <= end) {
+            hash ^= round(0, buffer.getLong(pos));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            pos += 8;
+        }
+        if (pos + 4 <= end) {
+            hash ^= (buffer.getInt(pos) & 0xffffffffL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            pos += 4;
+        }
+        while (pos < end) {
+            hash ^= (data[pos] & 0xff) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            pos++;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+}
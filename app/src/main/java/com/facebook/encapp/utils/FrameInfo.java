@@ -2,6 +2,7 @@ package com.facebook.encapp.utils;
 import android.os.SystemClock;
 
 import java.util.Dictionary;
+import java.util.Hashtable;
 
 public class FrameInfo {
     long mPts;
@@ -12,6 +13,7 @@ public class FrameInfo {
     boolean mIsIframe;
     int mFlags;
     int mOriginalFrame;
+    boolean mSteady;
 
     Dictionary<String, Object> mInfo;
 
@@ -47,6 +49,14 @@ public class FrameInfo {
         return mIsIframe;
     }
 
+    public void isSteady(boolean steady) {
+        mSteady = steady;
+    }
+
+    public boolean isSteady() {
+        return mSteady;
+    }
+
     public int getFlags() {return mFlags;}
 
     public void setFlags(int flags) {
@@ -78,4 +88,14 @@ public class FrameInfo {
         mInfo = info;
     }
 
+    /**
+     * Add one value to the info, keeping what is already there.
+     */
+    public void putInfo(String key, Object value) {
+        if (mInfo == null) {
+            mInfo = new Hashtable<>();
+        }
+        mInfo.put(key, value);
+    }
+
 }
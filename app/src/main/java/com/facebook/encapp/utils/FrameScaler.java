@@ -0,0 +1,285 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scales 4:2:0 frames on the cpu, planar or with interleaved chroma, with
+ * 8 bit or 16 bit (P010) little endian samples.
+ *
+ * The scaling is separable: every output row is a weighted sum of a few
+ * input rows, then every output sample a weighted sum of a few samples of
+ * that row. The weights are computed once per axis, so area (box) and
+ * bilinear filtering only differ in the tables. Area filtering averages
+ * every input sample covered by an output sample and is the one to use for
+ * downscaling (it falls back to bilinear when upscaling), bilinear only
+ * looks at the two nearest samples and aliases below half the size.
+ *
+ * Output rows are written with one bulk put each, large planes are split
+ * in bands of rows scaled in parallel. No Android dependencies so it can be
+ * run on the JVM.
+ */
+public class FrameScaler {
+    public enum Filter {
+        AREA,
+        BILINEAR,
+    }
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MIN_BAND_ROWS = 32;
+    // weights are fixed point, every table row sums to ONE
+    private static final int BITS = 12;
+    private static final int ONE = 1 << BITS;
+    private static final int HALF = ONE / 2;
+
+    private static final ExecutorService mPool = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "FrameScaler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ThreadLocal<int[]> mAccumulator = new ThreadLocal<>();
+    private static final ThreadLocal<byte[]> mRow = new ThreadLocal<>();
+
+    /**
+     * Input samples and weights of every output sample along one axis.
+     */
+    private static class Axis {
+        final int[] mStart;
+        final int mTaps;
+        final int[] mWeights;
+
+        Axis(int srcLength, int dstLength, Filter filter) {
+            double scale = (double) srcLength / dstLength;
+            boolean area = filter == Filter.AREA && scale > 1;
+            mTaps = area ? (int) Math.ceil(scale) + 1 : 2;
+            mStart = new int[dstLength];
+            mWeights = new int[dstLength * mTaps];
+            int[] index = new int[mTaps];
+            double[] weights = new double[mTaps];
+            for (int i = 0; i < dstLength; i++) {
+                int count = 0;
+                if (area) {
+                    // share of every input sample covered by [begin, end)
+                    double begin = i * scale;
+                    double end = Math.min(srcLength, (i + 1) * scale);
+                    for (int j = (int) begin; j < end && count < mTaps; j++) {
+                        index[count] = j;
+                        weights[count++] = (Math.min(end, j + 1) - Math.max(begin, j)) / (end - begin);
+                    }
+                } else {
+                    // sample centers are aligned, the edge samples are repeated
+                    double center = Math.min(Math.max(0, (i + 0.5) * scale - 0.5), srcLength - 1);
+                    int j = (int) center;
+                    index[count] = j;
+                    weights[count++] = 1 - (center - j);
+                    index[count] = Math.min(j + 1, srcLength - 1);
+                    weights[count++] = center - j;
+                }
+                // keep the taps inside the input
+                int start = Math.min(index[0], Math.max(0, srcLength - mTaps));
+                mStart[i] = start;
+                int sum = 0;
+                for (int k = 0; k < count; k++) {
+                    int weight = (int) Math.round(weights[k] * ONE);
+                    mWeights[i * mTaps + index[k] - start] += weight;
+                    sum += weight;
+                }
+                // rounding must not change the level
+                int largest = 0;
+                for (int k = 1; k < mTaps; k++) {
+                    if (mWeights[i * mTaps + k] > mWeights[i * mTaps + largest]) {
+                        largest = k;
+                    }
+                }
+                mWeights[i * mTaps + largest] += ONE - sum;
+            }
+        }
+    }
+
+    /**
+     * One plane, chroma planes of interleaved frames have two channels.
+     */
+    private static class Plane {
+        int mSrcOffset;
+        int mSrcWidth;
+        int mDstOffset;
+        int mDstWidth;
+        int mDstHeight;
+        int mChannels;
+        Axis mX;
+        Axis mY;
+    }
+
+    private final int mSampleSize;
+    private final Plane[] mPlanes;
+    private final int mSrcFrameSize;
+    private final int mDstFrameSize;
+
+    /**
+     * @param interleaved chroma samples are interleaved (nv12, nv21, P010)
+     * @param sampleSize  1 for 8 bit samples, 2 for P010
+     */
+    public FrameScaler(int srcWidth, int srcHeight, int dstWidth, int dstHeight,
+                       boolean interleaved, int sampleSize, Filter filter) {
+        if (sampleSize != 1 && sampleSize != 2) {
+            throw new IllegalArgumentException("Unsupported sample size: " + sampleSize);
+        }
+        mSampleSize = sampleSize;
+        mPlanes = new Plane[interleaved ? 2 : 3];
+        int srcOffset = 0;
+        int dstOffset = 0;
+        for (int i = 0; i < mPlanes.length; i++) {
+            Plane plane = new Plane();
+            int div = (i == 0) ? 1 : 2;
+            plane.mChannels = (i > 0 && interleaved) ? 2 : 1;
+            plane.mSrcOffset = srcOffset;
+            plane.mSrcWidth = srcWidth / div;
+            plane.mDstOffset = dstOffset;
+            plane.mDstWidth = dstWidth / div;
+            plane.mDstHeight = dstHeight / div;
+            plane.mX = new Axis(srcWidth / div, dstWidth / div, filter);
+            plane.mY = new Axis(srcHeight / div, dstHeight / div, filter);
+            srcOffset += plane.mSrcWidth * plane.mChannels * (srcHeight / div) * sampleSize;
+            dstOffset += plane.mDstWidth * plane.mChannels * plane.mDstHeight * sampleSize;
+            mPlanes[i] = plane;
+        }
+        mSrcFrameSize = srcOffset;
+        mDstFrameSize = dstOffset;
+    }
+
+    public int getSrcFrameSize() {
+        return mSrcFrameSize;
+    }
+
+    public int getDstFrameSize() {
+        return mDstFrameSize;
+    }
+
+    /**
+     * Scale a frame into dst at its position and move the position past it.
+     */
+    public void scale(byte[] src, ByteBuffer dst) {
+        int base = dst.position();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Plane plane : mPlanes) {
+            int rowBytes = plane.mDstWidth * plane.mChannels * mSampleSize;
+            int bands = Math.max(1, Math.min(THREADS, plane.mDstHeight / MIN_BAND_ROWS));
+            int rows = (plane.mDstHeight + bands - 1) / bands;
+            for (int y = 0; y < plane.mDstHeight; y += rows) {
+                final int y0 = y;
+                final int y1 = Math.min(plane.mDstHeight, y + rows);
+                // positions are not thread safe, every band gets its own view
+                final ByteBuffer view = dst.duplicate();
+                final int offset = base + plane.mDstOffset;
+                tasks.add(() -> {
+                    scaleRows(src, plane, view, offset, rowBytes, y0, y1);
+                    return null;
+                });
+            }
+        }
+        if (THREADS == 1) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } else {
+            try {
+                for (Future<Void> result : mPool.invokeAll(tasks)) {
+                    result.get();
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Frame scaling interrupted", e);
+            }
+        }
+        dst.position(base + mDstFrameSize);
+    }
+
+    private void scaleRows(byte[] src, Plane plane, ByteBuffer dst, int dstOffset, int rowBytes, int y0, int y1) {
+        int srcRowLength = plane.mSrcWidth * plane.mChannels;
+        int[] acc = mAccumulator.get();
+        if (acc == null || acc.length < srcRowLength) {
+            acc = new int[srcRowLength];
+            mAccumulator.set(acc);
+        }
+        byte[] row = mRow.get();
+        if (row == null || row.length < rowBytes) {
+            row = new byte[rowBytes];
+            mRow.set(row);
+        }
+        Axis ax = plane.mX;
+        Axis ay = plane.mY;
+        int channels = plane.mChannels;
+        int max = (mSampleSize == 1) ? 0xff : 0xffff;
+        for (int y = y0; y < y1; y++) {
+            // 1. vertical: weighted sum of the input rows
+            for (int k = 0; k < ay.mTaps; k++) {
+                int weight = ay.mWeights[y * ay.mTaps + k];
+                if (k > 0 && weight == 0) {
+                    continue;
+                }
+                int offset = plane.mSrcOffset + (ay.mStart[y] + k) * srcRowLength * mSampleSize;
+                if (mSampleSize == 1) {
+                    if (k == 0) {
+                        for (int i = 0; i < srcRowLength; i++) {
+                            acc[i] = (src[offset + i] & 0xff) * weight;
+                        }
+                    } else {
+                        for (int i = 0; i < srcRowLength; i++) {
+                            acc[i] += (src[offset + i] & 0xff) * weight;
+                        }
+                    }
+                } else {
+                    // 16 bit samples would overflow, sum in 1/16
+                    for (int i = 0; i < srcRowLength; i++) {
+                        int value = ((src[offset + 2 * i] & 0xff) | ((src[offset + 2 * i + 1] & 0xff) << 8)) >>> 4;
+                        acc[i] = (k == 0) ? value * weight : acc[i] + value * weight;
+                    }
+                }
+            }
+            for (int i = 0; i < srcRowLength; i++) {
+                acc[i] = (acc[i] + HALF) >> BITS;
+            }
+            // 2. horizontal: weighted sum of the row samples
+            int taps = ax.mTaps;
+            int[] weights = ax.mWeights;
+            for (int x = 0; x < plane.mDstWidth; x++) {
+                int start = ax.mStart[x] * channels;
+                int w = x * taps;
+                for (int c = 0; c < channels; c++) {
+                    int sum = 0;
+                    for (int k = 0, i = start + c; k < taps; k++, i += channels) {
+                        sum += acc[i] * weights[w + k];
+                    }
+                    int value = (sum + HALF) >> BITS;
+                    int d = x * channels + c;
+                    if (mSampleSize == 1) {
+                        row[d] = (byte) Math.min(value, max);
+                    } else {
+                        // back to P010, the 6 low bits are 0
+                        value = Math.min((value << 4) + 32, max) & 0xffc0;
+                        row[2 * d] = (byte) value;
+                        row[2 * d + 1] = (byte) (value >> 8);
+                    }
+                }
+            }
+            dst.position(dstOffset + y * rowBytes);
+            dst.put(row, 0, rowBytes);
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * H.265 slice segment header parser (ITU-T H.265 7.3), single layer
+ * streams. The temporal layer is the TemporalId of the nal unit header.
+ * Long term references are seen when the slice references them, a frame is
+ * not marked as long term when it is coded.
+ */
+public class HevcAnalyzer extends AnnexBAnalyzer {
+    private static final int NAL_BLA_W_LP = 16;
+    private static final int NAL_IDR_W_RADL = 19;
+    private static final int NAL_IDR_N_LP = 20;
+    private static final int NAL_RSV_IRAP_23 = 23;
+    private static final int NAL_SPS = 33;
+    private static final int NAL_PPS = 34;
+    private static final String[] SLICE_TYPES = {"B", "P", "I"};
+    private static final int MAX_RPS = 65;
+
+    private static class Sps {
+        int mChromaArrayType;
+        boolean mSeparateColourPlane;
+        int mPicSizeInCtbs;
+        int mLog2MaxPocLsb;
+        int mNumShortTermRefPicSets;
+        // per rps, the last one is the one of the slice
+        int[] mNumDeltaPocs = new int[MAX_RPS];
+        int[] mNumUsed = new int[MAX_RPS];
+        boolean mLongTermRefPicsPresent;
+        int mNumLongTermRefPicsSps;
+        boolean[] mUsedByCurrPicLtSps;
+        boolean mTemporalMvp;
+        boolean mSao;
+    }
+
+    private static class Pps {
+        int mSpsId;
+        boolean mDependentSliceSegments;
+        boolean mOutputFlagPresent;
+        int mNumExtraSliceHeaderBits;
+        boolean mCabacInitPresent;
+        int mNumRefIdxL0;
+        int mNumRefIdxL1;
+        int mInitQp;
+        boolean mSliceChromaQpOffsetsPresent;
+        boolean mWeightedPred;
+        boolean mWeightedBipred;
+        boolean mTilesOrWpp;
+        boolean mLoopFilterAcrossSlices;
+        boolean mDeblockingFilterOverride;
+        boolean mDeblockingFilterDisabled;
+        boolean mListsModificationPresent;
+        boolean mSliceHeaderExtensionPresent;
+        boolean mChromaQpOffsetList;
+    }
+
+    private final Sps[] mSps = new Sps[16];
+    private final Pps[] mPps = new Pps[64];
+    private boolean mFirstSlice;
+
+    @Override
+    public String getCodec() {
+        return "hevc";
+    }
+
+    @Override
+    protected void parseFrame(ByteBuffer buffer, int start, int end) {
+        mFirstSlice = true;
+        super.parseFrame(buffer, start, end);
+    }
+
+    @Override
+    protected int parseNal(ByteBuffer buffer, int start, int end) {
+        if (end - start < 2) {
+            return end - start;
+        }
+        int type = (buffer.get(start) >> 1) & 0x3f;
+        int temporalId = (buffer.get(start + 1) & 7) - 1;
+        if (type < 32) {
+            if (type <= NAL_RSV_IRAP_23) {
+                mTemporalId = Math.max(temporalId, 0);
+                // sub-layer non-reference pictures have even types below 16
+                if (type >= 16 || (type & 1) != 0) {
+                    mReference = true;
+                }
+                return 2 + parseSlice(buffer, start + 2, end, type);
+            }
+            // reserved or unspecified
+            return end - start;
+        }
+        if (type == NAL_SPS) {
+            parseSps(mReader.reset(buffer, start + 2, end, true));
+        } else if (type == NAL_PPS) {
+            parsePps(mReader.reset(buffer, start + 2, end, true));
+        }
+        // everything else is a header
+        return end - start;
+    }
+
+    private static int ceilLog2(int value) {
+        int bits = 0;
+        while ((1 << bits) < value) {
+            bits++;
+        }
+        return bits;
+    }
+
+    private static void skipProfileTierLevel(BitReader reader, int maxSubLayersMinus1) {
+        reader.skipBits(96);
+        boolean[] profilePresent = new boolean[8];
+        boolean[] levelPresent = new boolean[8];
+        for (int i = 0; i < maxSubLayersMinus1; i++) {
+            profilePresent[i] = reader.readFlag();
+            levelPresent[i] = reader.readFlag();
+        }
+        if (maxSubLayersMinus1 > 0) {
+            reader.skipBits(2 * (8 - maxSubLayersMinus1));
+        }
+        for (int i = 0; i < maxSubLayersMinus1; i++) {
+            if (profilePresent[i]) {
+                reader.skipBits(88);
+            }
+            if (levelPresent[i]) {
+                reader.skipBits(8);
+            }
+        }
+    }
+
+    private static void skipScalingListData(BitReader reader) {
+        for (int sizeId = 0; sizeId < 4; sizeId++) {
+            for (int matrixId = 0; matrixId < 6; matrixId += (sizeId == 3) ? 3 : 1) {
+                if (!reader.readFlag()) {
+                    reader.readUe();
+                } else {
+                    int coefficients = Math.min(64, 1 << (4 + (sizeId << 1)));
+                    if (sizeId > 1) {
+                        reader.readSe();
+                    }
+                    for (int i = 0; i < coefficients; i++) {
+                        reader.readSe();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * st_ref_pic_set(), sets the number of pictures and of used pictures of the set.
+     */
+    private static void parseShortTermRefPicSet(BitReader reader, Sps sps, int index) {
+        if (index != 0 && reader.readFlag()) {
+            int deltaIdx = 1;
+            if (index == sps.mNumShortTermRefPicSets) {
+                deltaIdx = reader.readUe() + 1;
+            }
+            reader.readBit();
+            reader.readUe();
+            int refIndex = index - deltaIdx;
+            if (refIndex < 0) {
+                throw new IllegalStateException("Invalid rps reference");
+            }
+            int pictures = 0;
+            int used = 0;
+            for (int j = 0; j <= sps.mNumDeltaPocs[refIndex]; j++) {
+                boolean usedByCurrPic = reader.readFlag();
+                boolean useDelta = usedByCurrPic || reader.readFlag();
+                if (useDelta) {
+                    pictures++;
+                }
+                if (usedByCurrPic) {
+                    used++;
+                }
+            }
+            sps.mNumDeltaPocs[index] = pictures;
+            sps.mNumUsed[index] = used;
+            return;
+        }
+        int negative = reader.readUe();
+        int positive = reader.readUe();
+        if (negative + positive > 32) {
+            throw new IllegalStateException("Invalid rps");
+        }
+        int used = 0;
+        for (int i = 0; i < negative + positive; i++) {
+            reader.readUe();
+            if (reader.readFlag()) {
+                used++;
+            }
+        }
+        sps.mNumDeltaPocs[index] = negative + positive;
+        sps.mNumUsed[index] = used;
+    }
+
+    private void parseSps(BitReader reader) {
+        Sps sps = new Sps();
+        reader.readInt(4);
+        int maxSubLayersMinus1 = reader.readInt(3);
+        reader.readBit();
+        skipProfileTierLevel(reader, maxSubLayersMinus1);
+        int id = reader.readUe();
+        int chromaFormat = reader.readUe();
+        sps.mChromaArrayType = chromaFormat;
+        if (chromaFormat == 3 && reader.readFlag()) {
+            sps.mSeparateColourPlane = true;
+            sps.mChromaArrayType = 0;
+        }
+        int width = reader.readUe();
+        int height = reader.readUe();
+        if (reader.readFlag()) {
+            for (int i = 0; i < 4; i++) {
+                reader.readUe();
+            }
+        }
+        reader.readUe();
+        reader.readUe();
+        sps.mLog2MaxPocLsb = reader.readUe() + 4;
+        boolean subLayerOrderingInfo = reader.readFlag();
+        for (int i = subLayerOrderingInfo ? 0 : maxSubLayersMinus1; i <= maxSubLayersMinus1; i++) {
+            reader.readUe();
+            reader.readUe();
+            reader.readUe();
+        }
+        int log2MinCb = reader.readUe() + 3;
+        int log2Ctb = log2MinCb + reader.readUe();
+        int ctb = 1 << log2Ctb;
+        sps.mPicSizeInCtbs = ((width + ctb - 1) / ctb) * ((height + ctb - 1) / ctb);
+        reader.readUe();
+        reader.readUe();
+        reader.readUe();
+        reader.readUe();
+        if (reader.readFlag() && reader.readFlag()) {
+            skipScalingListData(reader);
+        }
+        reader.readBit();
+        sps.mSao = reader.readFlag();
+        if (reader.readFlag()) {
+            // pcm
+            reader.skipBits(8);
+            reader.readUe();
+            reader.readUe();
+            reader.readBit();
+        }
+        sps.mNumShortTermRefPicSets = reader.readUe();
+        if (sps.mNumShortTermRefPicSets >= MAX_RPS) {
+            throw new IllegalStateException("Invalid number of rps");
+        }
+        for (int i = 0; i < sps.mNumShortTermRefPicSets; i++) {
+            parseShortTermRefPicSet(reader, sps, i);
+        }
+        sps.mLongTermRefPicsPresent = reader.readFlag();
+        if (sps.mLongTermRefPicsPresent) {
+            sps.mNumLongTermRefPicsSps = reader.readUe();
+            sps.mUsedByCurrPicLtSps = new boolean[sps.mNumLongTermRefPicsSps];
+            for (int i = 0; i < sps.mNumLongTermRefPicsSps; i++) {
+                reader.skipBits(sps.mLog2MaxPocLsb);
+                sps.mUsedByCurrPicLtSps[i] = reader.readFlag();
+            }
+        }
+        sps.mTemporalMvp = reader.readFlag();
+        mSps[id & 15] = sps;
+    }
+
+    private void parsePps(BitReader reader) {
+        Pps pps = new Pps();
+        int id = reader.readUe();
+        pps.mSpsId = reader.readUe();
+        pps.mDependentSliceSegments = reader.readFlag();
+        pps.mOutputFlagPresent = reader.readFlag();
+        pps.mNumExtraSliceHeaderBits = reader.readInt(3);
+        reader.readBit();
+        pps.mCabacInitPresent = reader.readFlag();
+        pps.mNumRefIdxL0 = reader.readUe() + 1;
+        pps.mNumRefIdxL1 = reader.readUe() + 1;
+        pps.mInitQp = 26 + reader.readSe();
+        reader.readBit();
+        boolean transformSkip = reader.readFlag();
+        if (reader.readFlag()) {
+            reader.readUe();
+        }
+        reader.readSe();
+        reader.readSe();
+        pps.mSliceChromaQpOffsetsPresent = reader.readFlag();
+        pps.mWeightedPred = reader.readFlag();
+        pps.mWeightedBipred = reader.readFlag();
+        reader.readBit();
+        boolean tiles = reader.readFlag();
+        boolean wpp = reader.readFlag();
+        pps.mTilesOrWpp = tiles || wpp;
+        if (tiles) {
+            int columns = reader.readUe();
+            int rows = reader.readUe();
+            if (!reader.readFlag()) {
+                for (int i = 0; i < columns + rows; i++) {
+                    reader.readUe();
+                }
+            }
+            reader.readBit();
+        }
+        pps.mLoopFilterAcrossSlices = reader.readFlag();
+        if (reader.readFlag()) {
+            pps.mDeblockingFilterOverride = reader.readFlag();
+            pps.mDeblockingFilterDisabled = reader.readFlag();
+            if (!pps.mDeblockingFilterDisabled) {
+                reader.readSe();
+                reader.readSe();
+            }
+        }
+        if (reader.readFlag()) {
+            skipScalingListData(reader);
+        }
+        pps.mListsModificationPresent = reader.readFlag();
+        reader.readUe();
+        pps.mSliceHeaderExtensionPresent = reader.readFlag();
+        if (reader.readFlag() && reader.readFlag()) {
+            // pps_range_extension(), the other extensions follow it
+            reader.skipBits(3);
+            reader.readInt(4);
+            if (transformSkip) {
+                reader.readUe();
+            }
+            reader.readBit();
+            pps.mChromaQpOffsetList = reader.readFlag();
+        }
+        mPps[id & 63] = pps;
+    }
+
+    private static void skipWeights(BitReader reader, int refs, int chromaArrayType) {
+        boolean[] luma = new boolean[refs];
+        boolean[] chroma = new boolean[refs];
+        for (int i = 0; i < refs; i++) {
+            luma[i] = reader.readFlag();
+        }
+        if (chromaArrayType != 0) {
+            for (int i = 0; i < refs; i++) {
+                chroma[i] = reader.readFlag();
+            }
+        }
+        for (int i = 0; i < refs; i++) {
+            if (luma[i]) {
+                reader.readSe();
+                reader.readSe();
+            }
+            if (chroma[i]) {
+                for (int j = 0; j < 4; j++) {
+                    reader.readSe();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bytes of the slice segment header
+     */
+    private int parseSlice(ByteBuffer buffer, int start, int end, int nalType) {
+        BitReader reader = mReader.reset(buffer, start, end, true);
+        boolean firstSliceSegment = reader.readFlag();
+        if (nalType >= NAL_BLA_W_LP) {
+            reader.readBit();
+        }
+        Pps pps = mPps[reader.readUe() & 63];
+        Sps sps = (pps != null) ? mSps[pps.mSpsId & 15] : null;
+        if (sps == null) {
+            return reader.getBytesRead();
+        }
+        boolean dependent = false;
+        if (!firstSliceSegment) {
+            if (pps.mDependentSliceSegments) {
+                dependent = reader.readFlag();
+            }
+            reader.skipBits(ceilLog2(sps.mPicSizeInCtbs));
+        }
+        boolean deblockingDisabled = pps.mDeblockingFilterDisabled;
+        boolean sao = false;
+        if (!dependent) {
+            reader.skipBits(pps.mNumExtraSliceHeaderBits);
+            int sliceType = reader.readUe();
+            if (sliceType > 2) {
+                throw new IllegalStateException("Invalid slice type");
+            }
+            boolean first = mFirstSlice;
+            mFirstSlice = false;
+            if (first) {
+                mFrameType = SLICE_TYPES[sliceType];
+            }
+            if (pps.mOutputFlagPresent) {
+                reader.readBit();
+            }
+            if (sps.mSeparateColourPlane) {
+                reader.readInt(2);
+            }
+            int numPicTotalCurr = 0;
+            boolean temporalMvp = false;
+            if (nalType != NAL_IDR_W_RADL && nalType != NAL_IDR_N_LP) {
+                reader.skipBits(sps.mLog2MaxPocLsb);
+                if (!reader.readFlag()) {
+                    parseShortTermRefPicSet(reader, sps, sps.mNumShortTermRefPicSets);
+                    numPicTotalCurr = sps.mNumUsed[sps.mNumShortTermRefPicSets];
+                } else {
+                    int index = 0;
+                    if (sps.mNumShortTermRefPicSets > 1) {
+                        index = reader.readInt(ceilLog2(sps.mNumShortTermRefPicSets));
+                    }
+                    numPicTotalCurr = sps.mNumUsed[index];
+                }
+                if (sps.mLongTermRefPicsPresent) {
+                    int longTermSps = 0;
+                    if (sps.mNumLongTermRefPicsSps > 0) {
+                        longTermSps = reader.readUe();
+                    }
+                    int longTermPics = reader.readUe();
+                    for (int i = 0; i < longTermSps + longTermPics; i++) {
+                        boolean used;
+                        if (i < longTermSps) {
+                            int index = 0;
+                            if (sps.mNumLongTermRefPicsSps > 1) {
+                                index = reader.readInt(ceilLog2(sps.mNumLongTermRefPicsSps));
+                            }
+                            used = sps.mUsedByCurrPicLtSps[index];
+                        } else {
+                            reader.skipBits(sps.mLog2MaxPocLsb);
+                            used = reader.readFlag();
+                        }
+                        if (reader.readFlag()) {
+                            reader.readUe();
+                        }
+                        if (used) {
+                            numPicTotalCurr++;
+                            mLtrUse = true;
+                        }
+                    }
+                }
+                if (sps.mTemporalMvp) {
+                    temporalMvp = reader.readFlag();
+                }
+            }
+            if (sps.mSao) {
+                sao = reader.readFlag();
+                if (sps.mChromaArrayType != 0) {
+                    sao |= reader.readFlag();
+                }
+            }
+            if (sliceType != 2) {
+                boolean b = sliceType == 0;
+                int refsL0 = pps.mNumRefIdxL0;
+                int refsL1 = pps.mNumRefIdxL1;
+                if (reader.readFlag()) {
+                    refsL0 = reader.readUe() + 1;
+                    if (b) {
+                        refsL1 = reader.readUe() + 1;
+                    }
+                }
+                if (pps.mListsModificationPresent && numPicTotalCurr > 1) {
+                    int bits = ceilLog2(numPicTotalCurr);
+                    if (reader.readFlag()) {
+                        reader.skipBits((long) refsL0 * bits);
+                    }
+                    if (b && reader.readFlag()) {
+                        reader.skipBits((long) refsL1 * bits);
+                    }
+                }
+                if (b) {
+                    reader.readBit();
+                }
+                if (pps.mCabacInitPresent) {
+                    reader.readBit();
+                }
+                if (temporalMvp) {
+                    boolean collocatedFromL0 = true;
+                    if (b) {
+                        collocatedFromL0 = reader.readFlag();
+                    }
+                    if ((collocatedFromL0 && refsL0 > 1) || (!collocatedFromL0 && refsL1 > 1)) {
+                        reader.readUe();
+                    }
+                }
+                if ((pps.mWeightedPred && !b) || (pps.mWeightedBipred && b)) {
+                    reader.readUe();
+                    if (sps.mChromaArrayType != 0) {
+                        reader.readSe();
+                    }
+                    skipWeights(reader, refsL0, sps.mChromaArrayType);
+                    if (b) {
+                        skipWeights(reader, refsL1, sps.mChromaArrayType);
+                    }
+                }
+                reader.readUe();
+            }
+            int qp = pps.mInitQp + reader.readSe();
+            if (first) {
+                mQp = qp;
+            }
+            if (pps.mSliceChromaQpOffsetsPresent) {
+                reader.readSe();
+                reader.readSe();
+            }
+            if (pps.mChromaQpOffsetList) {
+                reader.readBit();
+            }
+            boolean override = false;
+            if (pps.mDeblockingFilterOverride) {
+                override = reader.readFlag();
+            }
+            if (override) {
+                deblockingDisabled = reader.readFlag();
+                if (!deblockingDisabled) {
+                    reader.readSe();
+                    reader.readSe();
+                }
+            }
+            if (pps.mLoopFilterAcrossSlices && (sao || !deblockingDisabled)) {
+                reader.readBit();
+            }
+        }
+        if (pps.mTilesOrWpp) {
+            int entryPoints = reader.readUe();
+            if (entryPoints > 0) {
+                int bits = reader.readUe() + 1;
+                reader.skipBits((long) entryPoints * bits);
+            }
+        }
+        if (pps.mSliceHeaderExtensionPresent) {
+            reader.skipBits(8L * reader.readUe());
+        }
+        // byte_alignment(), a one bit and zeros
+        reader.readBit();
+        reader.byteAlign();
+        return reader.getBytesRead();
+    }
+}
@@ -0,0 +1,89 @@
+package com.facebook.encapp.utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the start of input files in memory so that tests running one after
+ * the other on the same input (e.g. the variants of a sweep) do not read it
+ * from storage again.
+ *
+ * The data is shared as is, readers must not modify it.
+ */
+public class InputCache {
+    private static final String TAG = "encapp.input_cache";
+
+    private static class Head {
+        final byte[] mData;
+        int mRefs = 0;
+
+        Head(byte[] data) {
+            mData = data;
+        }
+    }
+
+    private static final Map<String, Head> mHeads = new HashMap<>();
+
+    private static String getKey(String path) {
+        return new File(path).getAbsolutePath();
+    }
+
+    /**
+     * Load (at most maxBytes of) the file unless already loaded and
+     * increase the reference count.
+     *
+     * @return false if the file could not be read
+     */
+    public static synchronized boolean retain(String path, int maxBytes) {
+        String key = getKey(path);
+        Head head = mHeads.get(key);
+        if (head == null) {
+            File file = new File(key);
+            int size = (int) Math.min(file.length(), maxBytes);
+            byte[] data = new byte[size];
+            try (FileInputStream fis = new FileInputStream(file)) {
+                int total = 0;
+                while (total < size) {
+                    int read = fis.read(data, total, size - total);
+                    if (read < 0) {
+                        break;
+                    }
+                    total += read;
+                }
+                if (total < size) {
+                    Log.e(TAG, "Short read of " + key + ": " + total + " of " + size + " bytes");
+                    return false;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read " + key + ": " + e.getMessage());
+                return false;
+            }
+            head = new Head(data);
+            mHeads.put(key, head);
+            Log.d(TAG, "Cached " + size + " bytes of " + key);
+        }
+        head.mRefs++;
+        return true;
+    }
+
+    public static synchronized void release(String path) {
+        String key = getKey(path);
+        Head head = mHeads.get(key);
+        if (head != null && --head.mRefs <= 0) {
+            mHeads.remove(key);
+        }
+    }
+
+    /**
+     * @return the cached start of the file or null if not cached
+     */
+    public static synchronized byte[] get(String path) {
+        Head head = mHeads.get(getKey(path));
+        return (head != null) ? head.mData : null;
+    }
+}
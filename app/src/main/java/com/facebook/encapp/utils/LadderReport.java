@@ -0,0 +1,115 @@
+package com.facebook.encapp.utils;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Summary of a ladder test: the cost of reading the input once and of
+ * scaling it for every rendition, next to the encoding result of every
+ * rendition. The per frame encoding times are in the statistics of the
+ * renditions (stats_id), they do not include reading or scaling.
+ */
+public class LadderReport {
+    private final static String TAG = "encapp.ladder";
+
+    private final String mTestId;
+    private final String mInputResolution;
+    private final String mId;
+    private final List<Rendition> mRenditions = new ArrayList<>();
+    private String mAppVersion = "";
+    private int mErrors = 0;
+
+    private static class Rendition {
+        String mStatsId;
+        String mResolution;
+        String mCodec;
+        int mBitrate;
+        double mFps;
+        int mEncodedFrames;
+        long mProcTime;
+        long mScaleTimeNs;
+        long mReadTimeNs;
+    }
+
+    public LadderReport(String testId, String inputResolution) {
+        mTestId = testId;
+        mInputResolution = inputResolution;
+        mId = "encapp_ladder_" + UUID.randomUUID().toString();
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public void setAppVersion(String appVersion) {
+        mAppVersion = appVersion;
+    }
+
+    public void setErrors(int errors) {
+        mErrors = errors;
+    }
+
+    public void addRendition(Statistics stats) {
+        Rendition rendition = new Rendition();
+        rendition.mStatsId = stats.getId();
+        rendition.mCodec = stats.getCodec();
+        rendition.mBitrate = stats.getAverageBitrate();
+        rendition.mFps = stats.getSteadyFps();
+        rendition.mEncodedFrames = stats.getEncodedFrameCount();
+        rendition.mProcTime = stats.getProcessingTime();
+        ScalingReader scaler = stats.getInputScaler();
+        if (scaler != null) {
+            rendition.mResolution = scaler.getResolution();
+            rendition.mScaleTimeNs = scaler.getScaleTimeNs();
+            rendition.mReadTimeNs = scaler.getReadTimeNs();
+        } else {
+            // encoded at the input resolution
+            rendition.mResolution = mInputResolution;
+        }
+        mRenditions.add(rendition);
+    }
+
+    public void writeJSON(Writer writer) throws IOException {
+        try {
+            long readTimeNs = 0;
+            long scaleTimeNs = 0;
+            JSONArray renditions = new JSONArray();
+            for (Rendition rendition : mRenditions) {
+                // the input is read once for all renditions
+                readTimeNs = Math.max(readTimeNs, rendition.mReadTimeNs);
+                scaleTimeNs += rendition.mScaleTimeNs;
+                JSONObject obj = new JSONObject();
+                obj.put("stats_id", rendition.mStatsId);
+                obj.put("resolution", rendition.mResolution);
+                obj.put("codec", rendition.mCodec);
+                obj.put("bitrate", rendition.mBitrate);
+                obj.put("fps", rendition.mFps);
+                obj.put("encoded_frames", rendition.mEncodedFrames);
+                obj.put("scale_time_ns", rendition.mScaleTimeNs);
+                obj.put("proctime", rendition.mProcTime);
+                renditions.put(obj);
+            }
+            JSONObject json = new JSONObject();
+            json.put("id", mId);
+            json.put("test_id", mTestId);
+            json.put("encapp_version", mAppVersion);
+            json.put("input_resolution", mInputResolution);
+            json.put("errors", mErrors);
+            json.put("read_time_ns", readTimeNs);
+            json.put("scale_time_ns", scaleTimeNs);
+            json.put("renditions", renditions);
+            writer.write(json.toString(2));
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create ladder json: " + e.getMessage());
+        }
+    }
+}
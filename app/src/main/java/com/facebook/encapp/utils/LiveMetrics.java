@@ -0,0 +1,240 @@
+package com.facebook.encapp.utils;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-flight counters for a single test.
+ *
+ * All updates are done with atomics only so that the codec threads never
+ * block on a scrape (see MetricsServer). Readers may see a slightly torn
+ * view across counters, which is fine for monitoring.
+ */
+public class LiveMetrics {
+    private static final ConcurrentHashMap<String, LiveMetrics> mRegistry = new ConcurrentHashMap<>();
+
+    // latency histogram: 4 buckets per power of two, in usec
+    static final int SUB_BUCKET_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int HISTOGRAM_SIZE = 64 * SUB_BUCKETS;
+    static final int RATE_WINDOW = 32; // frames used for the output rate
+    static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final String mTestId;
+    private final String mStatsId;
+    private final Stage mEncoder = new Stage("encoder");
+    private final Stage mDecoder = new Stage("decoder");
+    private final AtomicInteger mQueueDepth = new AtomicInteger();
+    private volatile FpsMeasure mFpsMeasure;
+    private volatile SystemLoad mLoad;
+
+    public LiveMetrics(String testId, String statsId) {
+        mTestId = testId;
+        mStatsId = statsId;
+    }
+
+    public static void register(LiveMetrics metrics) {
+        mRegistry.put(metrics.mStatsId, metrics);
+    }
+
+    public static void unregister(LiveMetrics metrics) {
+        mRegistry.remove(metrics.mStatsId);
+    }
+
+    public static Collection<LiveMetrics> getRegistered() {
+        return mRegistry.values();
+    }
+
+    public Stage encoder() {
+        return mEncoder;
+    }
+
+    public Stage decoder() {
+        return mDecoder;
+    }
+
+    public void setFpsMeasure(FpsMeasure fpsMeasure) {
+        mFpsMeasure = fpsMeasure;
+    }
+
+    public void setSystemLoad(SystemLoad load) {
+        mLoad = load;
+    }
+
+    public void queued() {
+        mQueueDepth.incrementAndGet();
+    }
+
+    public void dequeued() {
+        mQueueDepth.decrementAndGet();
+    }
+
+    /**
+     * Append this test's metrics in Prometheus text exposition format.
+     * The HELP/TYPE headers are written once by MetricsServer.
+     */
+    public void appendPrometheus(StringBuilder str, String metric) {
+        String labels = "test_id=\"" + escape(mTestId) + "\",stats_id=\"" + escape(mStatsId) + "\"";
+        switch (metric) {
+            case "encapp_frames_in_total":
+                mEncoder.appendValue(str, metric, labels, mEncoder.mFramesIn.get());
+                mDecoder.appendValue(str, metric, labels, mDecoder.mFramesIn.get());
+                break;
+            case "encapp_frames_out_total":
+                mEncoder.appendValue(str, metric, labels, mEncoder.mFramesOut.get());
+                mDecoder.appendValue(str, metric, labels, mDecoder.mFramesOut.get());
+                break;
+            case "encapp_bytes_out_total":
+                mEncoder.appendValue(str, metric, labels, mEncoder.mBytesOut.get());
+                mDecoder.appendValue(str, metric, labels, mDecoder.mBytesOut.get());
+                break;
+            case "encapp_frames_in_flight":
+                mEncoder.appendValue(str, metric, labels, mEncoder.mFramesIn.get() - mEncoder.mFramesOut.get());
+                mDecoder.appendValue(str, metric, labels, mDecoder.mFramesIn.get() - mDecoder.mFramesOut.get());
+                break;
+            case "encapp_output_fps":
+                mEncoder.appendValue(str, metric, labels, mEncoder.getOutputFps());
+                mDecoder.appendValue(str, metric, labels, mDecoder.getOutputFps());
+                break;
+            case "encapp_frame_latency_usec":
+                mEncoder.appendLatency(str, metric, labels);
+                mDecoder.appendLatency(str, metric, labels);
+                break;
+            case "encapp_output_queue_depth":
+                appendLine(str, metric, labels, mQueueDepth.get());
+                break;
+            case "encapp_fps_measure":
+                FpsMeasure fpsMeasure = mFpsMeasure;
+                if (fpsMeasure != null) {
+                    appendLine(str, metric, labels, fpsMeasure.getFps());
+                }
+                break;
+            case "encapp_gpu_load_percentage":
+                SystemLoad load = mLoad;
+                if (load != null && load.getLatestGPULoadPercentage() >= 0) {
+                    appendLine(str, metric, labels, load.getLatestGPULoadPercentage());
+                }
+                break;
+        }
+    }
+
+    static void appendLine(StringBuilder str, String metric, String labels, double value) {
+        str.append(metric).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            str.append((long) value);
+        } else {
+            str.append(String.format(Locale.US, "%.3f", value));
+        }
+        str.append('\n');
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    static int bucketIndex(long usec) {
+        if (usec < SUB_BUCKETS) {
+            return (int) Math.max(usec, 0);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(usec);
+        int sub = (int) ((usec >> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return Math.min((exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub, HISTOGRAM_SIZE - 1);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+        int exp = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Counters for one direction of the pipeline (encoder or decoder).
+     */
+    public static class Stage {
+        private final String mName;
+        final AtomicLong mFramesIn = new AtomicLong();
+        final AtomicLong mFramesOut = new AtomicLong();
+        final AtomicLong mBytesOut = new AtomicLong();
+        final AtomicLong mLatencySumUsec = new AtomicLong();
+        final AtomicLongArray mLatency = new AtomicLongArray(HISTOGRAM_SIZE);
+        final AtomicLongArray mOutputTimesNs = new AtomicLongArray(RATE_WINDOW);
+
+        Stage(String name) {
+            mName = name;
+        }
+
+        public void frameIn() {
+            mFramesIn.incrementAndGet();
+        }
+
+        public void frameOut(long latencyNs, long size, long nowNs) {
+            long count = mFramesOut.getAndIncrement();
+            mOutputTimesNs.set((int) (count % RATE_WINDOW), nowNs);
+            mBytesOut.addAndGet(size);
+            if (latencyNs > 0) {
+                long usec = latencyNs / 1000;
+                mLatency.incrementAndGet(bucketIndex(usec));
+                mLatencySumUsec.addAndGet(usec);
+            }
+        }
+
+        double getOutputFps() {
+            long count = mFramesOut.get();
+            if (count < 2) {
+                return 0;
+            }
+            int frames = (int) Math.min(count, RATE_WINDOW);
+            long newest = mOutputTimesNs.get((int) ((count - 1) % RATE_WINDOW));
+            long oldest = mOutputTimesNs.get((int) ((count - frames) % RATE_WINDOW));
+            if (newest <= oldest) {
+                return 0;
+            }
+            return (frames - 1) * 1000000000.0 / (newest - oldest);
+        }
+
+        void appendValue(StringBuilder str, String metric, String labels, double value) {
+            if (mFramesIn.get() == 0 && mFramesOut.get() == 0) {
+                return;
+            }
+            appendLine(str, metric, labels + ",stage=\"" + mName + "\"", value);
+        }
+
+        void appendLatency(StringBuilder str, String metric, String labels) {
+            long[] counts = new long[HISTOGRAM_SIZE];
+            long total = 0;
+            for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                counts[i] = mLatency.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return;
+            }
+            String stageLabels = labels + ",stage=\"" + mName + "\"";
+            for (double quantile : QUANTILES) {
+                long target = (long) Math.ceil(quantile * total);
+                long seen = 0;
+                int index = 0;
+                for (; index < HISTOGRAM_SIZE; index++) {
+                    seen += counts[index];
+                    if (seen >= target) {
+                        break;
+                    }
+                }
+                appendLine(str, metric, stageLabels + ",quantile=\"" + quantile + "\"",
+                        bucketUpperBound(Math.min(index, HISTOGRAM_SIZE - 1)));
+            }
+            appendLine(str, metric + "_sum", stageLabels, mLatencySumUsec.get());
+            appendLine(str, metric + "_count", stageLabels, total);
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package com.facebook.encapp.utils;
+
+import android.graphics.Rect;
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.encapp.proto.Test;
+import com.facebook.encapp.utils.CodecLifecycle.Phase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Decodes the output of an encoder in the same process while it is encoding,
+ * like the receiving side of a call, without going through the muxer or files.
+ *
+ * Encoded frames are copied straight into a free decoder input buffer (or
+ * into a pooled packet until one is free) on the thread handling the encoder
+ * output, the decoder output is handled on a thread of its own. For every
+ * decoded frame the glass to glass latency is recorded, from reading the raw
+ * source frame (or queueing it into the encoder when the source is not known,
+ * e.g. surface input) to the decoded output, and the interval to the previous
+ * decoded frame, i.e. the pacing a receiver would render with. Decoded frames
+ * can also be hashed (xxh64 of the visible samples, in the decoded_hashes
+ * like a decoder test, see FrameHasher) and their luma compared with the
+ * raw input (psnr).
+ *
+ * Frames sent through a ChannelEmulator are held until their delivery time.
+ *
+ * The decoded frames are in the decoded_frames of the statistics, the
+ * summary in the loopback block.
+ */
+public class LoopbackDecoder {
+    private static final String TAG = "encapp.loopback";
+    // raw frames kept for comparison while the decoder lags behind
+    private static final int MAX_SOURCE_FRAMES = 64;
+    private static final long FINISH_TIMEOUT_MS = 5000;
+
+    private final Test mTest;
+    private final Statistics mStats;
+    private final boolean mHash;
+    private final boolean mCompare;
+    private final int mWidth;
+    private final int mHeight;
+    private final long mFrameIntervalNs;
+
+    private MediaCodec mDecoder;
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private final Runnable mPump = this::pump;
+    private String mDecoderName = "";
+
+    // guarded by this
+    private final ArrayDeque<Integer> mFreeInputs = new ArrayDeque<>();
+    private final ArrayDeque<Packet> mPackets = new ArrayDeque<>();
+    private final ArrayDeque<Packet> mPool = new ArrayDeque<>();
+    private boolean mFailed = false;
+    private boolean mEndOfStream = false;
+    private boolean mOutputDone = false;
+    private int mQueued = 0;
+    private int mDecoded = 0;
+
+    // pts -> time the source frame was read, until the frame is decoded,
+    // dropped or passed by a later one
+    private final ConcurrentHashMap<Long, Long> mSourceTimes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, byte[]> mSourceLuma = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<byte[]> mLumaPool = new ConcurrentLinkedQueue<>();
+
+    // decoder output thread only
+    private final List<Long> mLatencies = new ArrayList<>();
+    private final List<Long> mIntervals = new ArrayList<>();
+    private long mLastOutputNs = -1;
+    private int mLateFrames = 0;
+    private double mPsnrSum = 0;
+    private double mPsnrMin = Double.MAX_VALUE;
+    private int mPsnrFrames = 0;
+    private FrameHasher mHasher;
+    private byte[] mRow;
+
+    private static class Packet {
+        byte[] mData;
+        int mSize;
+        long mPts;
+        int mFlags;
+        long mDeliveryNs;
+    }
+
+    /**
+     * @param width     resolution of the encoded (and raw) frames
+     * @param frameRate frame rate the decoded frames are expected at
+     */
+    public LoopbackDecoder(Test test, Statistics stats, int width, int height, float frameRate) {
+        mTest = test;
+        mStats = stats;
+        mHash = test.getLoopback().getHashFrames();
+        mCompare = test.getLoopback().getCompare();
+        mWidth = width;
+        mHeight = height;
+        mFrameIntervalNs = (frameRate > 0) ? (long) (1000000000L / frameRate) : 0;
+        if (mHash) {
+            mHasher = new FrameHasher(1);
+            mStats.setDecodedHasher(mHasher);
+        }
+    }
+
+    /**
+     * Called when a raw frame has been read, before it is queued into the
+     * encoder.
+     *
+     * @param frame the raw frame from position 0, null if not available
+     */
+    public void sourceFrame(long ptsUsec, long readTimeNs, ByteBuffer frame) {
+        mSourceTimes.put(ptsUsec, readTimeNs);
+        if (!mCompare || frame == null || mSourceLuma.size() >= MAX_SOURCE_FRAMES) {
+            return;
+        }
+        byte[] luma = mLumaPool.poll();
+        if (luma == null) {
+            luma = new byte[mWidth * mHeight];
+        }
+        ByteBuffer view = frame.duplicate();
+        view.position(0);
+        view.get(luma, 0, luma.length);
+        mSourceLuma.put(ptsUsec, luma);
+    }
+
+    /**
+     * Forget the source of a frame that will not be decoded, e.g. lost in
+     * the channel.
+     */
+    public void dropFrame(long ptsUsec) {
+        mSourceTimes.remove(ptsUsec);
+        byte[] luma = mSourceLuma.remove(ptsUsec);
+        if (luma != null) {
+            mLumaPool.add(luma);
+        }
+    }
+
+    /**
+     * Frames are decoded in pts order, so the frames before a decoded one
+     * were dropped, e.g. by the encoder, and are never decoded.
+     */
+    private void dropFramesBefore(long ptsUsec) {
+        mSourceTimes.keySet().removeIf(pts -> pts < ptsUsec);
+        for (Long pts : mSourceLuma.keySet()) {
+            if (pts < ptsUsec) {
+                dropFrame(pts);
+            }
+        }
+    }
+
+    /**
+     * Queue an encoder output buffer (codec config, frame or end of stream)
+     * into the decoder. The data is copied, the buffer can be released when
+     * this returns.
+     *
+     * @param encoderFormat  output format of the encoder, used for the first buffer
+     * @param sourceTimeNs   start of the frame when sourceFrame() was not called for it
+     * @param deliveryNs     time the frame may be decoded, frames are decoded in order
+     */
+    public void queue(MediaFormat encoderFormat, ByteBuffer data, MediaCodec.BufferInfo info,
+                      long sourceTimeNs, long deliveryNs) {
+        synchronized (this) {
+            if (mFailed || mEndOfStream) {
+                return;
+            }
+            if (mDecoder == null && !startDecoder(encoderFormat)) {
+                mFailed = true;
+                return;
+            }
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                mEndOfStream = true;
+            }
+            if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0) {
+                mSourceTimes.putIfAbsent(info.presentationTimeUs, sourceTimeNs);
+            }
+            ByteBuffer payload = data.duplicate();
+            payload.limit(info.offset + info.size);
+            payload.position(info.offset);
+            long delayNs = deliveryNs - SystemClock.elapsedRealtimeNanos();
+            if (delayNs <= 0 && mPackets.isEmpty() && !mFreeInputs.isEmpty()) {
+                queueInput(mFreeInputs.poll(), payload, info.presentationTimeUs, info.flags);
+                return;
+            }
+            Packet packet = mPool.poll();
+            if (packet == null) {
+                packet = new Packet();
+            }
+            if (packet.mData == null || packet.mData.length < info.size) {
+                packet.mData = new byte[info.size];
+            }
+            payload.get(packet.mData, 0, info.size);
+            packet.mSize = info.size;
+            packet.mPts = info.presentationTimeUs;
+            packet.mFlags = info.flags;
+            packet.mDeliveryNs = deliveryNs;
+            mPackets.add(packet);
+            if (delayNs > 0) {
+                mHandler.postDelayed(mPump, (delayNs + 999999) / 1000000);
+            } else {
+                pump();
+            }
+        }
+    }
+
+    /**
+     * Signal the end of stream, wait for the decoder to output the last frame
+     * and release it.
+     */
+    public void finish() {
+        synchronized (this) {
+            if (mDecoder == null) {
+                return;
+            }
+            if (!mEndOfStream && !mFailed) {
+                MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+                info.set(0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                queue(null, ByteBuffer.allocate(0), info, 0, 0);
+            }
+            long end = SystemClock.elapsedRealtime() + FINISH_TIMEOUT_MS;
+            while (!mOutputDone && !mFailed) {
+                long wait = end - SystemClock.elapsedRealtime();
+                if (wait <= 0) {
+                    Log.w(TAG, "No end of stream from the decoder, decoded " + mDecoded + " of " + mQueued);
+                    break;
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (mHasher != null) {
+            mHasher.finish();
+        }
+        try {
+            mStats.getDecoderLifecycle().begin(Phase.stop);
+            mDecoder.stop();
+            mStats.getDecoderLifecycle().end(Phase.stop);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Failed to stop the decoder: " + e.getMessage());
+        }
+        mStats.getDecoderLifecycle().begin(Phase.release);
+        mDecoder.release();
+        mStats.getDecoderLifecycle().end(Phase.release);
+        mHandler.removeCallbacks(mPump);
+        mThread.quitSafely();
+    }
+
+    private boolean startDecoder(MediaFormat encoderFormat) {
+        String mime = encoderFormat.getString(MediaFormat.KEY_MIME);
+        MediaFormat format = MediaFormat.createVideoFormat(mime,
+                encoderFormat.getInteger(MediaFormat.KEY_WIDTH),
+                encoderFormat.getInteger(MediaFormat.KEY_HEIGHT));
+        if (mHash || mCompare) {
+            // the decoded frames are read as Images
+            format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                    MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        }
+        TestDefinitionHelper.setDecoderConfigureParams(mTest, format);
+        try {
+            mStats.getDecoderLifecycle().begin(Phase.create);
+            if (mTest.getDecoderConfigure().hasCodec()) {
+                Log.d(TAG, "Create decoder by name: " + mTest.getDecoderConfigure().getCodec());
+                mDecoder = MediaCodec.createByCodecName(mTest.getDecoderConfigure().getCodec());
+            } else {
+                Log.d(TAG, "Create decoder by mime: " + mime);
+                mDecoder = MediaCodec.createDecoderByType(mime);
+            }
+            mStats.getDecoderLifecycle().end(Phase.create);
+            mThread = new HandlerThread("LoopbackDecoder");
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+            mDecoder.setCallback(new DecoderCallback(), mHandler);
+            mStats.getDecoderLifecycle().begin(Phase.configure);
+            mDecoder.configure(format, null, null, 0);
+            mStats.getDecoderLifecycle().end(Phase.configure);
+            mStats.setDecoderMediaFormat(mDecoder.getInputFormat());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                mStats.setDecoderIsHardwareAccelerated(mDecoder.getCodecInfo().isHardwareAccelerated());
+                mDecoderName = mDecoder.getCodecInfo().getCanonicalName();
+            } else {
+                mDecoderName = mDecoder.getCodecInfo().getName();
+            }
+            mStats.setDecoder(mDecoderName);
+            mStats.getDecoderLifecycle().begin(Phase.start);
+            mDecoder.start();
+            mStats.getDecoderLifecycle().end(Phase.start);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "Failed to start the loopback decoder: " + e.getMessage());
+            if (mDecoder != null) {
+                mDecoder.release();
+                mDecoder = null;
+            }
+            if (mThread != null) {
+                mThread.quitSafely();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue the packets that are due while there are free input buffers.
+     */
+    private synchronized void pump() {
+        long now = SystemClock.elapsedRealtimeNanos();
+        while (!mFailed && !mPackets.isEmpty() && !mFreeInputs.isEmpty() &&
+                mPackets.peek().mDeliveryNs <= now) {
+            Packet packet = mPackets.poll();
+            queueInput(mFreeInputs.poll(), ByteBuffer.wrap(packet.mData, 0, packet.mSize),
+                    packet.mPts, packet.mFlags);
+            mPool.add(packet);
+        }
+    }
+
+    // called with the lock held
+    private void queueInput(int index, ByteBuffer payload, long pts, int flags) {
+        try {
+            ByteBuffer input = mDecoder.getInputBuffer(index);
+            input.clear();
+            int size = payload.remaining();
+            input.put(payload);
+            if ((flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && size > 0) {
+                mStats.startDecodingFrame(pts, size, flags);
+                mQueued++;
+            }
+            mDecoder.queueInputBuffer(index, 0, size, pts, flags &
+                    (MediaCodec.BUFFER_FLAG_CODEC_CONFIG | MediaCodec.BUFFER_FLAG_END_OF_STREAM |
+                            MediaCodec.BUFFER_FLAG_KEY_FRAME));
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Failed to queue into the decoder: " + e.getMessage());
+            mFailed = true;
+            notifyAll();
+        }
+    }
+
+    private void onFrame(MediaCodec codec, int index, MediaCodec.BufferInfo info, long outputNs) {
+        Hashtable<String, Object> dict = new Hashtable<>();
+        Long sourceNs = mSourceTimes.remove(info.presentationTimeUs);
+        dropFramesBefore(info.presentationTimeUs);
+        if (sourceNs != null && sourceNs > 0) {
+            long latency = outputNs - sourceNs;
+            mLatencies.add(latency);
+            dict.put("g2g_latency", latency);
+        }
+        if (mLastOutputNs >= 0) {
+            long interval = outputNs - mLastOutputNs;
+            mIntervals.add(interval);
+            // a receiver rendering at the frame rate would have stalled
+            if (mFrameIntervalNs > 0 && interval > mFrameIntervalNs * 3 / 2) {
+                mLateFrames++;
+            }
+        }
+        mLastOutputNs = outputNs;
+        if (mHash || mCompare) {
+            Image image = codec.getOutputImage(index);
+            if (image != null) {
+                if (mHasher != null) {
+                    mHasher.hashImage(info.presentationTimeUs, image);
+                }
+                byte[] luma = mSourceLuma.remove(info.presentationTimeUs);
+                if (luma != null) {
+                    double psnr = psnrY(image, luma);
+                    mPsnrSum += psnr;
+                    mPsnrMin = Math.min(mPsnrMin, psnr);
+                    mPsnrFrames++;
+                    dict.put("psnr_y", String.format(Locale.US, "%.2f", psnr));
+                    mLumaPool.add(luma);
+                }
+                image.close();
+            }
+        }
+        synchronized (this) {
+            FrameInfo frame = mStats.stopDecodingFrame(info.presentationTimeUs);
+            if (frame != null) {
+                frame.addInfo(dict);
+            }
+            mDecoded++;
+        }
+    }
+
+    private byte[] getRow(int length) {
+        if (mRow == null || mRow.length < length) {
+            mRow = new byte[length];
+        }
+        return mRow;
+    }
+
+    private double psnrY(Image image, byte[] luma) {
+        Rect crop = image.getCropRect();
+        Image.Plane plane = image.getPlanes()[0];
+        int width = Math.min(crop.width(), mWidth);
+        int height = Math.min(crop.height(), mHeight);
+        int rowStride = plane.getRowStride();
+        ByteBuffer buffer = plane.getBuffer().duplicate();
+        byte[] row = getRow(width);
+        long sse = 0;
+        for (int y = 0; y < height; y++) {
+            buffer.position((crop.top + y) * rowStride + crop.left);
+            buffer.get(row, 0, width);
+            int offset = y * mWidth;
+            for (int x = 0; x < width; x++) {
+                int diff = (row[x] & 0xff) - (luma[offset + x] & 0xff);
+                sse += diff * diff;
+            }
+        }
+        if (sse == 0) {
+            return 100;
+        }
+        double mse = (double) sse / ((long) width * height);
+        return 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    private class DecoderCallback extends MediaCodec.Callback {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            synchronized (LoopbackDecoder.this) {
+                mFreeInputs.add(index);
+                pump();
+            }
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            long outputNs = SystemClock.elapsedRealtimeNanos();
+            boolean endOfStream = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            try {
+                if (info.size > 0 || !endOfStream) {
+                    onFrame(codec, index, info, outputNs);
+                }
+                codec.releaseOutputBuffer(index, false /* render */);
+            } catch (IllegalStateException e) {
+                // released by finish() after a timeout
+                Log.e(TAG, "Decoder output failed: " + e.getMessage());
+            }
+            if (endOfStream) {
+                synchronized (LoopbackDecoder.this) {
+                    mOutputDone = true;
+                    LoopbackDecoder.this.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            Log.e(TAG, "onError: " + e.getMessage() + ", error code: " + e.getErrorCode());
+            // no end of stream will come, release finish()
+            synchronized (LoopbackDecoder.this) {
+                mFailed = true;
+                LoopbackDecoder.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            Log.d(TAG, "Decoder output format: " + format);
+        }
+    }
+
+    private static JSONObject distribution(List<Long> values) throws JSONException {
+        JSONObject json = new JSONObject();
+        if (values.isEmpty()) {
+            return json;
+        }
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        double sum = 0;
+        for (long value : sorted) {
+            sum += value;
+        }
+        double mean = sum / sorted.size();
+        double variance = 0;
+        for (long value : sorted) {
+            variance += (value - mean) * (value - mean);
+        }
+        json.put("mean", (long) mean);
+        json.put("stddev", (long) Math.sqrt(variance / sorted.size()));
+        json.put("min", sorted.get(0));
+        json.put("p50", sorted.get(sorted.size() / 2));
+        json.put("p90", sorted.get((int) (sorted.size() * 0.9)));
+        json.put("p99", sorted.get((int) (sorted.size() * 0.99)));
+        json.put("max", sorted.get(sorted.size() - 1));
+        return json;
+    }
+
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("decoder", mDecoderName);
+        json.put("failed", mFailed);
+        json.put("queued_frames", mQueued);
+        json.put("decoded_frames", mDecoded);
+        json.put("g2g_latency_ns", distribution(mLatencies));
+        JSONObject pacing = distribution(mIntervals);
+        pacing.put("frame_interval_ns", mFrameIntervalNs);
+        pacing.put("late_frames", mLateFrames);
+        json.put("output_interval_ns", pacing);
+        json.put("hash_frames", mHash);
+        if (mPsnrFrames > 0) {
+            json.put("psnr_y_mean", mPsnrSum / mPsnrFrames);
+            json.put("psnr_y_min", mPsnrMin);
+        }
+        return json;
+    }
+}
@@ -145,6 +145,9 @@ public class MediaCodecInfoHelper {
         return str.toString();
     }
 
+    // MediaCodecInfo.CodecCapabilities.COLOR_FormatYUVP010, added in API 33
+    public static final int COLOR_FormatYUVP010 = 54;
+
     public static int mapEncappPixFmtToAndroidColorFormat(PixFmt pix_fmt) {
         switch (pix_fmt.getNumber()) {
             case PixFmt.yuv420p_VALUE:
@@ -157,6 +160,10 @@ public class MediaCodecInfoHelper {
                 return MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420PackedSemiPlanar;
             case PixFmt.rgba_VALUE:
                 return MediaCodecInfo.CodecCapabilities.COLOR_Format32bitARGB8888;
+            case PixFmt.p010_VALUE:
+            case PixFmt.yuv420p10le_VALUE:
+                // 10 bit input is fed as P010
+                return COLOR_FormatYUVP010;
             default:
                 throw new RuntimeException("unsupported pix_fmt: " + pix_fmt);
         }
@@ -203,6 +210,7 @@ public class MediaCodecInfoHelper {
         m.put(MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV411PackedPlanar, "COLOR_FormatYUV411PackedPlanar");
         m.put(MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV411Planar, "COLOR_FormatYUV411Planar");
         m.put(MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible, "COLOR_FormatYUV420Flexible");
+        m.put(COLOR_FormatYUVP010, "COLOR_FormatYUVP010");
         m.put(MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420PackedPlanar, "COLOR_FormatYUV420PackedPlanar");
         m.put(MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420PackedSemiPlanar, "COLOR_FormatYUV420PackedSemiPlanar");
         m.put(MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar, "COLOR_FormatYUV420Planar");
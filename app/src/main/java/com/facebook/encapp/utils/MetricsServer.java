@@ -0,0 +1,142 @@
+package com.facebook.encapp.utils;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP server exposing LiveMetrics in Prometheus text format.
+ *
+ * Binds to loopback only, use "adb forward tcp:<port> tcp:<port>" and
+ * scrape http://localhost:<port>/metrics from the host.
+ */
+public class MetricsServer extends Thread {
+    private static final String TAG = "encapp.metrics";
+    private static final int READ_TIMEOUT_MS = 1000;
+
+    // name, type, help
+    private static final String[][] METRICS = {
+        {"encapp_frames_in_total", "counter", "Frames queued to the codec"},
+        {"encapp_frames_out_total", "counter", "Frames returned by the codec"},
+        {"encapp_bytes_out_total", "counter", "Bytes returned by the codec"},
+        {"encapp_frames_in_flight", "gauge", "Frames queued but not yet returned"},
+        {"encapp_output_fps", "gauge", "Output frame rate over the latest frames"},
+        {"encapp_frame_latency_usec", "summary", "Codec processing time per frame"},
+        {"encapp_output_queue_depth", "gauge", "Encoded buffers waiting for the writer"},
+        {"encapp_fps_measure", "gauge", "Frame rate reported by FpsMeasure"},
+        {"encapp_gpu_load_percentage", "gauge", "Latest GPU busy percentage"},
+    };
+
+    private final int mPort;
+    private ServerSocket mServerSocket;
+    private volatile boolean mDone = false;
+
+    public MetricsServer(int port) {
+        super("metrics_server");
+        mPort = port;
+        setDaemon(true);
+    }
+
+    public void stopServer() {
+        mDone = true;
+        if (mServerSocket != null) {
+            try {
+                mServerSocket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close socket: " + e.getMessage());
+            }
+        }
+    }
+
+    public static String getPrometheusText() {
+        StringBuilder str = new StringBuilder();
+        for (String[] metric : METRICS) {
+            str.append("# HELP ").append(metric[0]).append(' ').append(metric[2]).append('\n');
+            str.append("# TYPE ").append(metric[0]).append(' ').append(metric[1]).append('\n');
+            for (LiveMetrics live : LiveMetrics.getRegistered()) {
+                live.appendPrometheus(str, metric[0]);
+            }
+        }
+        return str.toString();
+    }
+
+    @Override
+    public void run() {
+        try {
+            mServerSocket = new ServerSocket(mPort, 4, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open metrics port " + mPort + ": " + e.getMessage());
+            return;
+        }
+        Log.d(TAG, "Serving metrics on port " + mPort);
+        while (!mDone) {
+            try (Socket socket = mServerSocket.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                String path = readRequestPath(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                if (path == null || !(path.equals("/") || path.startsWith("/metrics"))) {
+                    out.write("HTTP/1.0 404 Not Found\r\nContent-Length: 0\r\n\r\n"
+                            .getBytes(StandardCharsets.US_ASCII));
+                } else {
+                    byte[] body = getPrometheusText().getBytes(StandardCharsets.UTF_8);
+                    String header = "HTTP/1.0 200 OK\r\n" +
+                            "Content-Type: text/plain; version=0.0.4\r\n" +
+                            "Content-Length: " + body.length + "\r\n\r\n";
+                    out.write(header.getBytes(StandardCharsets.US_ASCII));
+                    out.write(body);
+                }
+                out.flush();
+            } catch (SocketException e) {
+                if (!mDone) {
+                    Log.e(TAG, "Socket failure: " + e.getMessage());
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to serve metrics: " + e.getMessage());
+            }
+        }
+        Log.d(TAG, "Metrics server stopped");
+    }
+
+    /**
+     * Reads the request headers and returns the requested path.
+     * A plain connect (e.g. "nc localhost <port>") without request line
+     * times out and is treated as a request for the metrics.
+     */
+    private static String readRequestPath(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        String requestLine = null;
+        int previous = -1;
+        try {
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    if (requestLine == null) {
+                        requestLine = line.toString().trim();
+                    } else if (line.toString().trim().isEmpty()) {
+                        break;
+                    }
+                    line.setLength(0);
+                } else if (c != '\r') {
+                    line.append((char) c);
+                }
+                previous = c;
+            }
+        } catch (java.net.SocketTimeoutException e) {
+            if (requestLine == null && previous == -1) {
+                return "/";
+            }
+        }
+        if (requestLine == null) {
+            return null;
+        }
+        String[] parts = requestLine.split(" ");
+        return (parts.length >= 2) ? parts[1] : null;
+    }
+}
@@ -0,0 +1,260 @@
+package com.facebook.encapp.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies a plane of samples from a byte array into a ByteBuffer (e.g. an
+ * Image plane) for any combination of input and output pixel stride and
+ * row stride. All strides are in bytes.
+ *
+ * Every row is moved with one bulk put (and one bulk get when the output
+ * is interleaved), the (de)interleaving is done in a reusable row scratch
+ * array. Interleaved output rows are read, modified and written back so
+ * the samples of the other plane sharing the memory are kept, this means
+ * planes sharing memory must not be copied at the same time. Large
+ * (de)interleaved planes are split in bands of rows copied in parallel.
+ *
+ * 16 bit little endian samples can be shifted while copying, which
+ * converts between LSB aligned (yuv420p10le) and MSB aligned (P010) 10 bit
+ * samples.
+ *
+ * No Android dependencies so it is unit tested and benchmarked on the JVM,
+ * see PlaneCopierTest and PlaneCopierBenchmark.
+ */
+public class PlaneCopier {
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    // below this many bytes per plane a thread hop costs more than it saves
+    private static final int PARALLEL_MIN_BYTES = 512 * 1024;
+    private static final int MIN_BAND_ROWS = 64;
+
+    private static final ExecutorService mPool = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "PlaneCopier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ThreadLocal<byte[]> mScratch = new ThreadLocal<>();
+
+    private static byte[] getScratch(int length) {
+        byte[] scratch = mScratch.get();
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[length];
+            mScratch.set(scratch);
+        }
+        return scratch;
+    }
+
+    /**
+     * Copy width x height samples of sampleSize bytes.
+     *
+     * @param src            input data
+     * @param srcOffset      offset of the first sample of the plane
+     * @param srcPixelStride bytes from one sample to the next in a row
+     * @param srcRowStride   bytes from one row to the next
+     * @param dst            output, indexed from 0 regardless of its position
+     */
+    public static void copyPlane(byte[] src, int srcOffset, int srcPixelStride, int srcRowStride,
+                                 ByteBuffer dst, int dstPixelStride, int dstRowStride,
+                                 int width, int height, int sampleSize) {
+        copyPlane(src, srcOffset, srcPixelStride, srcRowStride, dst, dstPixelStride, dstRowStride,
+                width, height, sampleSize, 0);
+    }
+
+    /**
+     * Copy width x height samples of sampleSize bytes, 16 bit samples are
+     * shifted left by shift bits (right if negative).
+     */
+    public static void copyPlane(byte[] src, int srcOffset, int srcPixelStride, int srcRowStride,
+                                 ByteBuffer dst, int dstPixelStride, int dstRowStride,
+                                 int width, int height, int sampleSize, int shift) {
+        if (shift != 0 && sampleSize != 2) {
+            throw new IllegalArgumentException("Only 16 bit samples can be shifted");
+        }
+        int bands = 1;
+        // packed rows are plain memory copies, only (de)interleaving gains from threads
+        boolean packed = srcPixelStride == sampleSize && dstPixelStride == sampleSize && shift == 0;
+        if (!packed && THREADS > 1 && (long) width * height * sampleSize >= PARALLEL_MIN_BYTES) {
+            bands = Math.max(1, Math.min(THREADS, height / MIN_BAND_ROWS));
+        }
+        if (bands == 1) {
+            copyRows(src, srcOffset, srcPixelStride, srcRowStride, dst.duplicate(),
+                    dstPixelStride, dstRowStride, width, 0, height, sampleSize, shift);
+            return;
+        }
+        int rows = (height + bands - 1) / bands;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int y = 0; y < height; y += rows) {
+            final int y0 = y;
+            final int y1 = Math.min(height, y + rows);
+            // positions are not thread safe, every band gets its own view
+            final ByteBuffer view = dst.duplicate();
+            tasks.add(() -> {
+                copyRows(src, srcOffset, srcPixelStride, srcRowStride, view,
+                        dstPixelStride, dstRowStride, width, y0, y1, sampleSize, shift);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> result : mPool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Plane copy interrupted", e);
+        }
+    }
+
+    private static ByteBuffer view(ByteBuffer buffer, int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(buffer.position() + offset);
+        return view.slice();
+    }
+
+    /**
+     * Convert a yuv420p10le frame (LSB aligned, planar) into a P010 frame
+     * (MSB aligned, interleaved chroma) at the position of dst, and move the
+     * position past it.
+     */
+    public static void planar10ToP010(byte[] src, int srcOffset, ByteBuffer dst, int width, int height) {
+        int lumaLength = 2 * width * height;
+        int chromaLength = lumaLength / 4;
+        copyPlane(src, srcOffset, 2, 2 * width, view(dst, 0), 2, 2 * width, width, height, 2, 6);
+        copyPlane(src, srcOffset + lumaLength, 2, width,
+                view(dst, lumaLength), 4, 2 * width, width / 2, height / 2, 2, 6);
+        copyPlane(src, srcOffset + lumaLength + chromaLength, 2, width,
+                view(dst, lumaLength + 2), 4, 2 * width, width / 2, height / 2, 2, 6);
+        dst.position(dst.position() + lumaLength + 2 * chromaLength);
+    }
+
+    /**
+     * Convert a P010 frame into a yuv420p10le frame at the position of dst,
+     * and move the position past it.
+     */
+    public static void p010ToPlanar10(byte[] src, int srcOffset, ByteBuffer dst, int width, int height) {
+        int lumaLength = 2 * width * height;
+        int chromaLength = lumaLength / 4;
+        copyPlane(src, srcOffset, 2, 2 * width, view(dst, 0), 2, 2 * width, width, height, 2, -6);
+        copyPlane(src, srcOffset + lumaLength, 4, 2 * width,
+                view(dst, lumaLength), 2, width, width / 2, height / 2, 2, -6);
+        copyPlane(src, srcOffset + lumaLength + 2, 4, 2 * width,
+                view(dst, lumaLength + chromaLength), 2, width, width / 2, height / 2, 2, -6);
+        dst.position(dst.position() + lumaLength + 2 * chromaLength);
+    }
+
+    private static void copyRows(byte[] src, int srcOffset, int srcPixelStride, int srcRowStride,
+                                 ByteBuffer dst, int dstPixelStride, int dstRowStride,
+                                 int width, int y0, int y1, int sampleSize, int shift) {
+        boolean srcPacked = srcPixelStride == sampleSize;
+        boolean dstPacked = dstPixelStride == sampleSize;
+        int rowBytes = width * sampleSize;
+        if (srcPacked && dstPacked && shift == 0) {
+            if (srcRowStride == rowBytes && dstRowStride == rowBytes) {
+                // 1. both contiguous: one put for all rows
+                dst.position(y0 * dstRowStride);
+                dst.put(src, srcOffset + y0 * srcRowStride, (y1 - y0) * rowBytes);
+                return;
+            }
+            // 2. one put per row
+            for (int y = y0; y < y1; y++) {
+                dst.position(y * dstRowStride);
+                dst.put(src, srcOffset + y * srcRowStride, rowBytes);
+            }
+            return;
+        }
+        if (dstPacked) {
+            // 3. deinterleave (or shift) the input row into the scratch, one put per row
+            byte[] row = getScratch(rowBytes);
+            for (int y = y0; y < y1; y++) {
+                if (shift != 0) {
+                    scatterShifted(src, srcOffset + y * srcRowStride, srcPixelStride, row, sampleSize, width, shift);
+                } else {
+                    gather(src, srcOffset + y * srcRowStride, srcPixelStride, row, width, sampleSize);
+                }
+                dst.position(y * dstRowStride);
+                dst.put(row, 0, rowBytes);
+            }
+            return;
+        }
+        // 4. interleaved output: read the row, interleave in place, write it back.
+        // The last row may end at the last sample rather than at the stride.
+        int span = (width - 1) * dstPixelStride + sampleSize;
+        byte[] row = getScratch(span);
+        for (int y = y0; y < y1; y++) {
+            int start = y * dstRowStride;
+            dst.position(start);
+            dst.get(row, 0, span);
+            if (shift != 0) {
+                scatterShifted(src, srcOffset + y * srcRowStride, srcPixelStride, row, dstPixelStride, width, shift);
+            } else {
+                scatter(src, srcOffset + y * srcRowStride, srcPixelStride, row, dstPixelStride, width, sampleSize);
+            }
+            dst.position(start);
+            dst.put(row, 0, span);
+        }
+    }
+
+    private static void gather(byte[] src, int offset, int pixelStride, byte[] row, int width, int sampleSize) {
+        if (sampleSize == 1) {
+            for (int x = 0; x < width; x++) {
+                row[x] = src[offset + x * pixelStride];
+            }
+        } else {
+            for (int x = 0; x < width; x++) {
+                System.arraycopy(src, offset + x * pixelStride, row, x * sampleSize, sampleSize);
+            }
+        }
+    }
+
+    private static void scatter(byte[] src, int offset, int srcPixelStride,
+                                byte[] row, int dstPixelStride, int width, int sampleSize) {
+        if (sampleSize == 1) {
+            for (int x = 0; x < width; x++) {
+                row[x * dstPixelStride] = src[offset + x * srcPixelStride];
+            }
+        } else if (sampleSize == 2) {
+            for (int x = 0; x < width; x++) {
+                int s = offset + x * srcPixelStride;
+                int d = x * dstPixelStride;
+                row[d] = src[s];
+                row[d + 1] = src[s + 1];
+            }
+        } else {
+            for (int x = 0; x < width; x++) {
+                System.arraycopy(src, offset + x * srcPixelStride, row, x * dstPixelStride, sampleSize);
+            }
+        }
+    }
+
+    private static void scatterShifted(byte[] src, int offset, int srcPixelStride,
+                                       byte[] row, int dstPixelStride, int width, int shift) {
+        if (shift > 0) {
+            for (int x = 0; x < width; x++) {
+                int s = offset + x * srcPixelStride;
+                int d = x * dstPixelStride;
+                int value = ((src[s] & 0xff) | ((src[s + 1] & 0xff) << 8)) << shift;
+                row[d] = (byte) value;
+                row[d + 1] = (byte) (value >> 8);
+            }
+        } else {
+            for (int x = 0; x < width; x++) {
+                int s = offset + x * srcPixelStride;
+                int d = x * dstPixelStride;
+                int value = ((src[s] & 0xff) | ((src[s + 1] & 0xff) << 8)) >>> -shift;
+                row[d] = (byte) value;
+                row[d + 1] = (byte) (value >> 8);
+            }
+        }
+    }
+}
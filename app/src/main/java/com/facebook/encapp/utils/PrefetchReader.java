@@ -0,0 +1,247 @@
+package com.facebook.encapp.utils;
+
+import android.media.Image;
+import android.util.Log;
+
+import com.facebook.encapp.proto.PixFmt;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads frames of another reader ahead on its own thread, so that storage
+ * latency does not stall the thread feeding the codec.
+ *
+ * The I/O thread fills a bounded ring of pooled frame buffers up to depth
+ * frames ahead; fillBuffer() and fillImage() only copy a ready frame. A
+ * frame that is ready when asked for is a hit, otherwise it is a miss and
+ * the wait is added to the stall time.
+ *
+ * The I/O thread ends at the end of the input or on a read error, and
+ * otherwise waits for a free buffer until closeFile() interrupts it.
+ */
+public class PrefetchReader extends FileReader {
+    private static final String TAG = "encapp.prefetch";
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final FileReader mReader;
+    private final int mDepth;
+    private final int mFrameSize;
+    private final BlockingQueue<ByteBuffer> mFree;
+    private final BlockingQueue<ByteBuffer> mFilled;
+    private Thread mThread;
+    private volatile boolean mRunning = false;
+    private boolean mOpen = false;
+    private boolean mEnded = false;
+
+    // written in take() by the thread feeding the codec, read for the stats
+    private volatile long mHits = 0;
+    private volatile long mMisses = 0;
+    private volatile long mStallTimeNs = 0;
+
+    public PrefetchReader(FileReader reader, int depth, int frameSize) {
+        mReader = reader;
+        mDepth = Math.max(1, depth);
+        mFrameSize = frameSize;
+        mFree = new ArrayBlockingQueue<>(mDepth);
+        // room for the end marker
+        mFilled = new ArrayBlockingQueue<>(mDepth + 1);
+        for (int i = 0; i < mDepth; i++) {
+            mFree.add(ByteBuffer.allocate(frameSize));
+        }
+    }
+
+    @Override
+    public boolean openFile(String name, PixFmt pixFmt) {
+        closeFile();
+        if (!mReader.openFile(name, pixFmt)) {
+            return false;
+        }
+        synchronized (this) {
+            // the reader may know better (e.g. a y4m header), frames are
+            // taken in the layout fillBuffer() writes
+            mPixFmt = mReader.getBufferPixFmt();
+            mOpen = true;
+            mEnded = false;
+        }
+        return true;
+    }
+
+    /**
+     * Preloads the wrapped reader, the I/O thread is started by the first read.
+     */
+    @Override
+    public int preload(int bytes) {
+        synchronized (this) {
+            if (mThread != null) {
+                return 0;
+            }
+        }
+        return mReader.preload(bytes);
+    }
+
+    private synchronized void startThread() {
+        if (mThread != null || !mOpen) {
+            return;
+        }
+        mRunning = true;
+        mThread = new Thread(this::prefetch, "PrefetchReader");
+        mThread.start();
+    }
+
+    private void prefetch() {
+        try {
+            while (mRunning) {
+                ByteBuffer frame = mFree.take();
+                frame.clear();
+                int read;
+                try {
+                    read = mReader.fillBuffer(frame, mFrameSize);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Prefetch failed: " + e.getMessage());
+                    read = -1;
+                }
+                if (read < mFrameSize) {
+                    if (read >= 0 && mRunning) {
+                        Log.e(TAG, "Prefetch read " + read + " of " + mFrameSize + " bytes, ending the input");
+                    }
+                    // the end marker never blocks, the queue has room for it
+                    mFree.add(frame);
+                    mFilled.add(END);
+                    return;
+                }
+                frame.position(0);
+                frame.limit(mFrameSize);
+                mFilled.add(frame);
+            }
+        } catch (InterruptedException e) {
+            // closeFile()
+        }
+    }
+
+    /**
+     * @return the next frame, or null at the end of the input
+     */
+    private ByteBuffer take() {
+        if (mEnded) {
+            return null;
+        }
+        startThread();
+        ByteBuffer frame = mFilled.poll();
+        if (frame == null) {
+            long start = System.nanoTime();
+            try {
+                frame = mFilled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            mStallTimeNs += System.nanoTime() - start;
+            if (frame != END) {
+                mMisses++;
+            }
+        } else if (frame != END) {
+            mHits++;
+        }
+        if (frame == END) {
+            mEnded = true;
+            return null;
+        }
+        return frame;
+    }
+
+    private void recycle(ByteBuffer frame) {
+        mFree.add(frame);
+    }
+
+    @Override
+    public int fillBuffer(ByteBuffer byteBuffer, int size) {
+        if (isClosed()) {
+            return 0;
+        }
+        // check before taking, the frame stays queued
+        if (byteBuffer.remaining() < mFrameSize) {
+            Log.e(TAG, "error: not enough space in ByteBuffer (capacity: " + byteBuffer.capacity() +
+                    ") to copy size: " + mFrameSize + " bytes");
+            return 0;
+        }
+        ByteBuffer frame = take();
+        if (frame == null) {
+            return -1;
+        }
+        try {
+            byteBuffer.put(frame);
+            return mFrameSize;
+        } finally {
+            recycle(frame);
+        }
+    }
+
+    @Override
+    public int fillImage(Image image) {
+        if (isClosed()) {
+            return 0;
+        }
+        ByteBuffer frame = take();
+        if (frame == null) {
+            return -1;
+        }
+        try {
+            return copyToImage(frame.array(), image);
+        } finally {
+            recycle(frame);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        synchronized (this) {
+            return !mOpen;
+        }
+    }
+
+    @Override
+    public void closeFile() {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+            mThread = null;
+            mRunning = false;
+            mOpen = false;
+        }
+        if (thread != null) {
+            // wakes the thread waiting for a free buffer
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        mReader.closeFile();
+        // return the frames read ahead to the pool
+        ByteBuffer frame;
+        while ((frame = mFilled.poll()) != null) {
+            if (frame != END) {
+                mFree.add(frame);
+            }
+        }
+    }
+
+    public int getDepth() {
+        return mDepth;
+    }
+
+    public long getHits() {
+        return mHits;
+    }
+
+    public long getMisses() {
+        return mMisses;
+    }
+
+    public long getStallTimeNs() {
+        return mStallTimeNs;
+    }
+}
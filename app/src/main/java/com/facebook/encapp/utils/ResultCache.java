@@ -0,0 +1,213 @@
+package com.facebook.encapp.utils;
+
+import android.os.Build;
+import android.util.Log;
+
+import com.facebook.encapp.proto.Test;
+import com.google.protobuf.TextFormat;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of earlier runs, keyed by everything that decides the outcome of
+ * a test: the test definition in text format, the content of the input file,
+ * the codec, the device build and the app version.
+ *
+ * A test with a cached result is not run, instead the cached stats (and
+ * encoded file) are copied to the workdir as if the test had just run.
+ * Every key has a directory in workdir/result_cache with the stats json and
+ * the encoded file.
+ */
+public class ResultCache {
+    private static final String TAG = "encapp.result_cache";
+    private static final String DIRNAME = "result_cache";
+    private static final String STATS_FILENAME = "stats.json";
+
+    private final File mDir;
+    private final String mAppVersion;
+    // key of the tests that missed and whose result should be stored
+    private final Map<Test, String> mPending = new IdentityHashMap<>();
+    // "path:length:modified" -> sha-256 of the content
+    private final Map<String, String> mFileDigests = new HashMap<>();
+    private int mHits = 0;
+    private int mMisses = 0;
+
+    public ResultCache(String workDir, String appVersion) {
+        mDir = new File(workDir, DIRNAME);
+        mAppVersion = appVersion;
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Log.e(TAG, "Failed to create " + mDir.getPath());
+        }
+    }
+
+    private static String toHex(byte[] data) {
+        StringBuilder str = new StringBuilder();
+        for (byte b : data) {
+            str.append(String.format("%02x", b));
+        }
+        return str.toString();
+    }
+
+    private static void update(MessageDigest digest, String name, byte[] value) {
+        // length prefixed so that fields cannot run into each other
+        digest.update((name + ":" + value.length + ":").getBytes(StandardCharsets.UTF_8));
+        digest.update(value);
+    }
+
+    private synchronized String getFileDigest(String path) throws IOException, NoSuchAlgorithmException {
+        File file = new File(path);
+        if (!file.exists()) {
+            return "";
+        }
+        String id = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        String digest = mFileDigests.get(id);
+        if (digest == null) {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1024 * 1024];
+            try (FileInputStream fis = new FileInputStream(file)) {
+                int read;
+                while ((read = fis.read(buffer)) > 0) {
+                    sha.update(buffer, 0, read);
+                }
+            }
+            digest = toHex(sha.digest());
+            mFileDigests.put(id, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * @param inputPath resolved path of the input file
+     */
+    public String getKey(Test test, String inputPath) throws IOException, NoSuchAlgorithmException {
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        // the binary serialization is not canonical, e.g. for unknown fields
+        update(sha, "test", TextFormat.printer().printToString(test).getBytes(StandardCharsets.UTF_8));
+        update(sha, "input", getFileDigest(inputPath).getBytes(StandardCharsets.UTF_8));
+        String codec = test.getConfigure().getCodec();
+        if (test.getConfigure().getMime().length() == 0 && codec.length() > 0) {
+            // the same partial name may select another codec on another build
+            List<CodecIndex.Entry> matching = CodecIndex.get().findVideoEncoders(codec);
+            if (matching.size() == 1) {
+                codec = matching.get(0).name;
+            }
+        }
+        update(sha, "codec", codec.getBytes(StandardCharsets.UTF_8));
+        update(sha, "decoder", test.getDecoderConfigure().getCodec().getBytes(StandardCharsets.UTF_8));
+        update(sha, "fingerprint", Build.FINGERPRINT.getBytes(StandardCharsets.UTF_8));
+        update(sha, "version", mAppVersion.getBytes(StandardCharsets.UTF_8));
+        return toHex(sha.digest());
+    }
+
+    /**
+     * Copy the cached result of the test to the workdir.
+     *
+     * @return the id of the cached stats, or null if there is no cached result
+     * in which case the result of the test should be passed to store()
+     */
+    public String restore(Test test, String inputPath) {
+        String key;
+        try {
+            key = getKey(test, inputPath);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.e(TAG, "Failed to create key for " + test.getCommon().getId() + ": " + e.getMessage());
+            return null;
+        }
+        File entry = new File(mDir, key);
+        File statsFile = new File(entry, STATS_FILENAME);
+        if (statsFile.exists()) {
+            try {
+                JSONObject json = new JSONObject(new String(Files.readAllBytes(statsFile.toPath()), StandardCharsets.UTF_8));
+                String id = json.getString("id");
+                String encodedFile = json.optString("encodedfile", "");
+                File workDir = mDir.getParentFile();
+                File cached = new File(entry, encodedFile);
+                if (encodedFile.length() > 0 && cached.exists()) {
+                    Files.copy(cached.toPath(), new File(workDir, encodedFile).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+                JSONObject cache = new JSONObject();
+                cache.put("key", key);
+                cache.put("hit", true);
+                json.put("result_cache", cache);
+                try (FileWriter writer = new FileWriter(new File(workDir, id + ".json"), false)) {
+                    writer.write(json.toString(2));
+                }
+                synchronized (this) {
+                    mHits++;
+                }
+                Log.d(TAG, test.getCommon().getId() + " - cached result " + id + " (" + key + ")");
+                return id;
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Failed to restore " + key + ", running the test: " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            mMisses++;
+            mPending.put(test, key);
+        }
+        return null;
+    }
+
+    /**
+     * Keep the result of a test that missed in restore(). Other tests are ignored.
+     */
+    public void store(Test test, File statsFile, String encodedFile) {
+        String key;
+        synchronized (this) {
+            key = mPending.remove(test);
+        }
+        if (key == null || !statsFile.exists()) {
+            return;
+        }
+        File entry = new File(mDir, key);
+        try {
+            if (!entry.exists() && !entry.mkdirs()) {
+                throw new IOException("Failed to create " + entry.getPath());
+            }
+            if (encodedFile != null && encodedFile.length() > 0) {
+                File encoded = new File(mDir.getParentFile(), encodedFile);
+                if (encoded.exists()) {
+                    Files.copy(encoded.toPath(), new File(entry, encodedFile).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            // the stats go last, an entry without them is not used
+            Files.copy(statsFile.toPath(), new File(entry, STATS_FILENAME).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to store " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forget a test that missed in restore() but did not pass, its result is
+     * not stored.
+     */
+    public synchronized void discard(Test test) {
+        mPending.remove(test);
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+}
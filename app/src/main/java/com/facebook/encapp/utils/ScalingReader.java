@@ -0,0 +1,152 @@
+package com.facebook.encapp.utils;
+
+import android.media.Image;
+import android.util.Log;
+
+import com.facebook.encapp.proto.PixFmt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scales the frames of a shared reader to the resolution the codec is
+ * configured with, e.g. for the renditions of a ladder test.
+ *
+ * The input frames are scaled in place from the shared window, straight
+ * into the codec buffer (or into a frame copied to the Image). The time
+ * spent scaling is kept apart from the time the shared source spent
+ * reading, and both apart from the encoding.
+ */
+public class ScalingReader extends FileReader {
+    private static final String TAG = "encapp.scaling_reader";
+
+    private final SharedFrameReader mReader;
+    private final int mInputWidth;
+    private final int mInputHeight;
+    private final int mWidth;
+    private final int mHeight;
+    private final FrameScaler.Filter mFilter;
+    private FrameScaler mScaler;
+    // scaled frame for fillImage()
+    private byte[] mFrame;
+
+    private long mFrames = 0;
+    private long mScaleTimeNs = 0;
+
+    public ScalingReader(SharedFrameReader reader, int inputWidth, int inputHeight,
+                         int width, int height, FrameScaler.Filter filter) {
+        mReader = reader;
+        mInputWidth = inputWidth;
+        mInputHeight = inputHeight;
+        mWidth = width;
+        mHeight = height;
+        mFilter = filter;
+    }
+
+    @Override
+    public boolean openFile(String name, PixFmt pixFmt) {
+        closeFile();
+        if (!mReader.openFile(name, pixFmt)) {
+            return false;
+        }
+        // frames are scaled in the layout the shared reader writes
+        PixFmt bufferPixFmt = mReader.getBufferPixFmt();
+        if (bufferPixFmt.getNumber() == PixFmt.rgba_VALUE) {
+            Log.e(TAG, "Scaling is only supported for 4:2:0 input, got " + bufferPixFmt);
+            mReader.closeFile();
+            return false;
+        }
+        boolean interleaved = bufferPixFmt.getNumber() == PixFmt.nv12_VALUE ||
+                bufferPixFmt.getNumber() == PixFmt.nv21_VALUE ||
+                bufferPixFmt.getNumber() == PixFmt.p010_VALUE;
+        synchronized (this) {
+            mPixFmt = bufferPixFmt;
+            mScaler = new FrameScaler(mInputWidth, mInputHeight, mWidth, mHeight,
+                    interleaved, is10Bit(bufferPixFmt) ? 2 : 1, mFilter);
+        }
+        Log.d(TAG, name + ": scaling " + mInputWidth + "x" + mInputHeight + " to " +
+                mWidth + "x" + mHeight + " (" + mFilter + ")");
+        return true;
+    }
+
+    @Override
+    public int preload(int bytes) {
+        return mReader.preload(bytes);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return mReader.isClosed();
+    }
+
+    @Override
+    public void closeFile() {
+        mReader.closeFile();
+    }
+
+    private int scale(byte[] frame, ByteBuffer byteBuffer) {
+        long start = System.nanoTime();
+        mScaler.scale(frame, byteBuffer);
+        mScaleTimeNs += System.nanoTime() - start;
+        mFrames++;
+        return mScaler.getDstFrameSize();
+    }
+
+    @Override
+    public int fillBuffer(ByteBuffer byteBuffer, int size) {
+        synchronized (this) {
+            if (isClosed()) {
+                return 0;
+            }
+            if (byteBuffer.remaining() < mScaler.getDstFrameSize()) {
+                Log.e(TAG, "error: not enough space in ByteBuffer (capacity: " + byteBuffer.capacity() +
+                        ") to scale into size: " + mScaler.getDstFrameSize() + " bytes");
+                return 0;
+            }
+            return mReader.consumeFrame(frame -> scale(frame, byteBuffer));
+        }
+    }
+
+    @Override
+    public int fillImage(Image image) {
+        synchronized (this) {
+            if (isClosed()) {
+                return 0;
+            }
+            if (mFrame == null) {
+                mFrame = new byte[mScaler.getDstFrameSize()];
+            }
+            int read = mReader.consumeFrame(frame -> scale(frame, ByteBuffer.wrap(mFrame)));
+            if (read <= 0) {
+                return read;
+            }
+            return copyToImage(mFrame, image);
+        }
+    }
+
+    public String getInputResolution() {
+        return mInputWidth + "x" + mInputHeight;
+    }
+
+    public String getResolution() {
+        return mWidth + "x" + mHeight;
+    }
+
+    public FrameScaler.Filter getFilter() {
+        return mFilter;
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public long getScaleTimeNs() {
+        return mScaleTimeNs;
+    }
+
+    /**
+     * @return time spent reading the input, shared by all readers of it
+     */
+    public long getReadTimeNs() {
+        return mReader.getReadTimeNs();
+    }
+}
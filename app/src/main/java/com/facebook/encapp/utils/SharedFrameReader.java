@@ -0,0 +1,581 @@
+package com.facebook.encapp.utils;
+
+import android.media.Image;
+import android.util.Log;
+
+import com.facebook.encapp.proto.PixFmt;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares the raw frames of one input between the tests reading it at the
+ * same time, e.g. the tests of a parallel block encoding one source with
+ * several codecs or bitrates.
+ *
+ * A reader alone on its file, pixel format and resolution reads straight
+ * from the underlying reader, e.g. from a Y4mReader into the codec buffer
+ * without a copy. Readers opening the same key while the first one is at
+ * most a window of frames in join one source: from then on a single
+ * underlying reader reads every frame once into a window of pooled,
+ * read-only frame arrays and every reader copies from there. A reader that
+ * joins late reads the frames it missed on a reader of its own first. The
+ * source is reference counted by its readers and closed with the last one.
+ * A frame is evicted as soon as every reader has passed it.
+ *
+ * The window is bounded, so the fastest reader waits for the slowest when
+ * they drift too far apart. A reader blocking the window for longer than
+ * MAX_WAIT_MS is dropped from the source and continues on a reader of its
+ * own, so a slow test does not throttle the others for long.
+ */
+public class SharedFrameReader extends FileReader {
+    private static final String TAG = "encapp.shared_frames";
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+    private static final int MIN_WINDOW_FRAMES = 4;
+    private static final long MAX_WAIT_MS = 200;
+
+    private static final Map<String, Source> mSources = new HashMap<>();
+
+    /**
+     * Creates the reader of the underlying file.
+     */
+    public interface ReaderFactory {
+        FileReader create();
+    }
+
+    /**
+     * Reads a frame in place, the array must not be kept or modified.
+     */
+    public interface FrameConsumer {
+        /**
+         * @return the number of bytes produced, like fillBuffer()
+         */
+        int accept(byte[] frame);
+    }
+
+    /**
+     * Reads the next frame from a reader of the file.
+     */
+    private interface DirectRead {
+        /**
+         * @return the number of bytes read, 0 if no frame was read and
+         * negative at the end of the input
+         */
+        int read(FileReader reader);
+    }
+
+    private static class Handle {
+        int mCursor = 0;
+        boolean mDropped = false;
+        // the frame at the cursor is being copied or read
+        boolean mBusy = false;
+        // the frame at the cursor, set by Source.next()
+        byte[] mFrame;
+    }
+
+    private static class Source {
+        enum Next {
+            // the frame is in Handle.mFrame
+            FRAME,
+            // the only reader, read from mReader and call directDone()
+            DIRECT,
+            // the frame was evicted before the reader joined
+            BEHIND,
+            DROPPED,
+            END
+        }
+
+        final String mKey;
+        final FileReader mReader;
+        final int mFrameSize;
+        // frame i is kept in mWindow[i % mWindow.length]
+        final byte[][] mWindow;
+        final ArrayDeque<byte[]> mPool = new ArrayDeque<>();
+        final List<Handle> mHandles = new ArrayList<>();
+        // first frame in the window, all frames before it are read
+        int mBase = 0;
+        int mCount = 0;
+        boolean mReading = false;
+        boolean mEnded = false;
+        boolean mClosed = false;
+        int mPeakReaders = 0;
+        long mFramesRead = 0;
+        long mFramesServed = 0;
+        long mReadTimeNs = 0;
+
+        Source(String key, FileReader reader, int frameSize) {
+            mKey = key;
+            mReader = reader;
+            mFrameSize = frameSize;
+            mWindow = new byte[(int) Math.max(MIN_WINDOW_FRAMES, WINDOW_BYTES / frameSize)][];
+        }
+
+        /**
+         * Readers can only join while the frames they missed are few enough
+         * to catch up with.
+         */
+        synchronized boolean join(Handle handle) {
+            if (mClosed || mEnded || mBase > mWindow.length) {
+                return false;
+            }
+            mHandles.add(handle);
+            mPeakReaders = Math.max(mPeakReaders, mHandles.size());
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * @return false if this was the last reader
+         */
+        synchronized boolean leave(Handle handle) {
+            mHandles.remove(handle);
+            evict();
+            notifyAll();
+            if (mHandles.isEmpty()) {
+                mClosed = true;
+                return false;
+            }
+            return true;
+        }
+
+        private void evict() {
+            while (mCount > 0) {
+                for (Handle handle : mHandles) {
+                    if (!handle.mDropped && handle.mCursor <= mBase) {
+                        return;
+                    }
+                }
+                int slot = mBase % mWindow.length;
+                mPool.push(mWindow[slot]);
+                mWindow[slot] = null;
+                mBase++;
+                mCount--;
+            }
+        }
+
+        private void dropLagging() {
+            for (Handle handle : mHandles) {
+                if (!handle.mDropped && !handle.mBusy && handle.mCursor <= mBase) {
+                    Log.w(TAG, mKey + ": reader at frame " + handle.mCursor + " is too far behind, reading on its own");
+                    handle.mDropped = true;
+                }
+            }
+            evict();
+        }
+
+        /**
+         * Wait for the frame at the cursor of the handle.
+         */
+        Next next(Handle handle) throws InterruptedException {
+            byte[] frame;
+            synchronized (this) {
+                long waitStart = -1;
+                while (true) {
+                    if (handle.mDropped) {
+                        return Next.DROPPED;
+                    }
+                    if (handle.mCursor < mBase) {
+                        return Next.BEHIND;
+                    }
+                    if (handle.mCursor < mBase + mCount) {
+                        mFramesServed++;
+                        handle.mBusy = true;
+                        handle.mFrame = mWindow[handle.mCursor % mWindow.length];
+                        return Next.FRAME;
+                    }
+                    if (mEnded || mClosed) {
+                        return Next.END;
+                    }
+                    if (mReading) {
+                        wait();
+                        continue;
+                    }
+                    if (mHandles.size() == 1 && mCount == 0) {
+                        // nothing to share, read in place
+                        mReading = true;
+                        handle.mBusy = true;
+                        return Next.DIRECT;
+                    }
+                    if (mCount == mWindow.length) {
+                        // frames are evicted when passed, so someone lags
+                        long now = System.currentTimeMillis();
+                        if (waitStart < 0) {
+                            waitStart = now;
+                        } else if (now - waitStart > MAX_WAIT_MS) {
+                            dropLagging();
+                            continue;
+                        }
+                        wait(MAX_WAIT_MS);
+                        continue;
+                    }
+                    break;
+                }
+                // read the next frame without holding the lock
+                mReading = true;
+                frame = mPool.isEmpty() ? new byte[mFrameSize] : mPool.pop();
+            }
+            long start = System.nanoTime();
+            int read = mReader.fillBuffer(ByteBuffer.wrap(frame), mFrameSize);
+            long readTimeNs = System.nanoTime() - start;
+            synchronized (this) {
+                mReading = false;
+                mReadTimeNs += readTimeNs;
+                if (read < mFrameSize) {
+                    mEnded = true;
+                    mPool.push(frame);
+                } else {
+                    mWindow[(mBase + mCount) % mWindow.length] = frame;
+                    mCount++;
+                    mFramesRead++;
+                }
+                notifyAll();
+            }
+            return next(handle);
+        }
+
+        /**
+         * End a read in place started by next().
+         *
+         * @param read the result of the read, see DirectRead
+         */
+        synchronized void directDone(Handle handle, int read, long readTimeNs) {
+            mReading = false;
+            handle.mBusy = false;
+            mReadTimeNs += readTimeNs;
+            if (read < 0) {
+                mEnded = true;
+            } else if (read > 0) {
+                // not kept, so a reader joining now starts behind
+                mBase++;
+                handle.mCursor++;
+                mFramesRead++;
+                mFramesServed++;
+            }
+            notifyAll();
+        }
+
+        /**
+         * Preload the underlying reader unless reading has started.
+         */
+        int preload(int bytes) {
+            synchronized (this) {
+                if (mReading || mFramesRead > 0 || mEnded) {
+                    return 0;
+                }
+                mReading = true;
+            }
+            try {
+                return mReader.preload(bytes);
+            } finally {
+                synchronized (this) {
+                    mReading = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Release the frame at the cursor of the handle.
+         *
+         * @param passed false if the frame was not used and should be
+         *               returned again
+         */
+        synchronized void advance(Handle handle, boolean passed) {
+            handle.mBusy = false;
+            handle.mFrame = null;
+            if (passed) {
+                handle.mCursor++;
+                evict();
+            }
+            notifyAll();
+        }
+
+        /**
+         * Pass a frame read on the own reader of a handle that is behind.
+         *
+         * @return true when the handle has reached the window
+         */
+        synchronized boolean skip(Handle handle) {
+            handle.mCursor++;
+            notifyAll();
+            return !handle.mDropped && handle.mCursor >= mBase;
+        }
+
+        synchronized boolean isDropped(Handle handle) {
+            return handle.mDropped;
+        }
+    }
+
+    private final ReaderFactory mFactory;
+    private final int mFrameSize;
+    private final String mVariant;
+    private Source mSource;
+    private Handle mHandle;
+    // used when dropped from the source or until caught up with it
+    private FileReader mOwnReader;
+    private String mName;
+    private PixFmt mFilePixFmt;
+    // frame read in place for consumeFrame()
+    private byte[] mOwnFrame;
+    private int mSharedReaders = 0;
+    private long mReadTimeNs = 0;
+    private boolean mDropped = false;
+
+    /**
+     * @param variant anything besides path and pixel format that changes the
+     *                frames read, e.g. the resolution
+     */
+    public SharedFrameReader(ReaderFactory factory, int frameSize, String variant) {
+        mFactory = factory;
+        mFrameSize = frameSize;
+        mVariant = variant;
+    }
+
+    @Override
+    public boolean openFile(String name, PixFmt pixFmt) {
+        closeFile();
+        String key = new File(name).getAbsolutePath() + ":" + pixFmt + ":" + mVariant;
+        Handle handle = new Handle();
+        Source source;
+        synchronized (mSources) {
+            source = mSources.get(key);
+            if (source == null || !source.join(handle)) {
+                FileReader reader = mFactory.create();
+                if (!reader.openFile(name, pixFmt)) {
+                    return false;
+                }
+                source = new Source(key, reader, mFrameSize);
+                source.join(handle);
+                mSources.put(key, source);
+            } else {
+                Log.d(TAG, "Sharing the frames of " + key);
+            }
+        }
+        synchronized (this) {
+            mName = name;
+            mFilePixFmt = pixFmt;
+            mSource = source;
+            mHandle = handle;
+            // the reader may know better (e.g. a y4m header), frames are
+            // shared in the layout fillBuffer() writes
+            mPixFmt = source.mReader.getBufferPixFmt();
+        }
+        return true;
+    }
+
+    @Override
+    public int preload(int bytes) {
+        Source source;
+        synchronized (this) {
+            source = mSource;
+        }
+        // the first reader to ask preloads for all of them
+        return (source != null) ? source.preload(bytes) : 0;
+    }
+
+    @Override
+    public boolean isClosed() {
+        synchronized (this) {
+            return mSource == null;
+        }
+    }
+
+    @Override
+    public void closeFile() {
+        Source source;
+        Handle handle;
+        synchronized (this) {
+            source = mSource;
+            handle = mHandle;
+            if (source != null) {
+                mSharedReaders = Math.max(mSharedReaders, source.mPeakReaders);
+                mReadTimeNs = source.mReadTimeNs;
+            }
+            mSource = null;
+            mHandle = null;
+            if (mOwnReader != null) {
+                mOwnReader.closeFile();
+                mOwnReader = null;
+            }
+        }
+        if (source == null) {
+            return;
+        }
+        synchronized (mSources) {
+            if (!source.leave(handle)) {
+                if (mSources.get(source.mKey) == source) {
+                    mSources.remove(source.mKey);
+                }
+                source.mReader.closeFile();
+                Log.d(TAG, source.mKey + ": read " + source.mFramesRead + " frames, served " +
+                        source.mFramesServed + " to " + source.mPeakReaders + " readers");
+            }
+        }
+    }
+
+    /**
+     * Continue on an own reader at the cursor, when dropped from the source
+     * or to catch up with it.
+     */
+    private boolean openOwnReader() {
+        FileReader reader = mFactory.create();
+        if (!reader.openFile(mName, mFilePixFmt)) {
+            return false;
+        }
+        ByteBuffer skip = ByteBuffer.allocate(mFrameSize);
+        for (int i = 0; i < mHandle.mCursor; i++) {
+            skip.clear();
+            if (reader.fillBuffer(skip, mFrameSize) < mFrameSize) {
+                break;
+            }
+        }
+        mOwnReader = reader;
+        return true;
+    }
+
+    /**
+     * Read the next frame in place when alone on the source or on an own
+     * reader, from the shared window otherwise.
+     *
+     * @return the result of the read, -1 at the end of the input
+     */
+    private int read(DirectRead direct, FrameConsumer shared) {
+        synchronized (this) {
+            if (isClosed()) {
+                return 0;
+            }
+            while (true) {
+                if (mOwnReader != null) {
+                    int read = direct.read(mOwnReader);
+                    if (!mDropped && read > 0) {
+                        if (mSource.skip(mHandle)) {
+                            // caught up, continue on the shared frames
+                            mOwnReader.closeFile();
+                            mOwnReader = null;
+                        } else {
+                            mDropped = mSource.isDropped(mHandle);
+                        }
+                    }
+                    return read;
+                }
+                Source.Next next;
+                try {
+                    next = mSource.next(mHandle);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+                switch (next) {
+                    case FRAME: {
+                        int read = 0;
+                        try {
+                            read = shared.accept(mHandle.mFrame);
+                            return read;
+                        } finally {
+                            mSource.advance(mHandle, read != 0);
+                        }
+                    }
+                    case DIRECT: {
+                        long start = System.nanoTime();
+                        int read = -1;
+                        try {
+                            read = direct.read(mSource.mReader);
+                            return read;
+                        } finally {
+                            mSource.directDone(mHandle, read, System.nanoTime() - start);
+                        }
+                    }
+                    case BEHIND:
+                    case DROPPED:
+                        if (!openOwnReader()) {
+                            return -1;
+                        }
+                        if (next == Source.Next.BEHIND) {
+                            Log.d(TAG, mSource.mKey + ": joined at frame " + mHandle.mCursor + ", catching up");
+                        } else {
+                            mDropped = true;
+                        }
+                        continue;
+                    default:
+                        return -1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int fillBuffer(ByteBuffer byteBuffer, int size) {
+        return read(reader -> reader.fillBuffer(byteBuffer, size), frame -> {
+            if (byteBuffer.remaining() < mFrameSize) {
+                Log.e(TAG, "error: not enough space in ByteBuffer (capacity: " + byteBuffer.capacity() +
+                        ") to copy size: " + mFrameSize + " bytes");
+                return 0;
+            }
+            byteBuffer.put(frame, 0, mFrameSize);
+            return mFrameSize;
+        });
+    }
+
+    /**
+     * Pass the next frame to the consumer without copying it from the
+     * shared window.
+     *
+     * @return the result of the consumer, -1 at the end of the input
+     */
+    public int consumeFrame(FrameConsumer consumer) {
+        return read(reader -> {
+            if (mOwnFrame == null) {
+                mOwnFrame = new byte[mFrameSize];
+            }
+            int read = reader.fillBuffer(ByteBuffer.wrap(mOwnFrame), mFrameSize);
+            if (read <= 0) {
+                return (read < 0) ? -1 : 0;
+            }
+            if (read < mFrameSize) {
+                return -1;
+            }
+            return consumer.accept(mOwnFrame);
+        }, consumer);
+    }
+
+    @Override
+    public int fillImage(Image image) {
+        return read(reader -> reader.fillImage(image), frame -> copyToImage(frame, image));
+    }
+
+    /**
+     * @return the most readers that shared the frames with this one
+     */
+    public int getSharedReaders() {
+        synchronized (this) {
+            if (mSource != null) {
+                mSharedReaders = Math.max(mSharedReaders, mSource.mPeakReaders);
+            }
+            return mSharedReaders;
+        }
+    }
+
+    /**
+     * @return time spent reading the shared frames, once for all readers
+     */
+    public long getReadTimeNs() {
+        synchronized (this) {
+            if (mSource != null) {
+                mReadTimeNs = mSource.mReadTimeNs;
+            }
+            return mReadTimeNs;
+        }
+    }
+
+    /**
+     * @return true if this reader fell too far behind and read on its own
+     */
+    public boolean isDropped() {
+        return mDropped;
+    }
+}
@@ -1,10 +1,12 @@
 package com.facebook.encapp.utils;
 
+import android.media.MediaCodec;
 import android.media.MediaFormat;
 import android.os.Build;
 import android.util.Log;
 import android.os.SystemClock;
 
+import com.facebook.encapp.proto.Configure;
 import com.facebook.encapp.proto.Test;
 import com.google.protobuf.util.JsonFormat;
 
@@ -23,6 +25,8 @@ import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -41,6 +45,11 @@ public class Statistics {
     private String mCodec;
     private long mStartTime = -1;
     private long mStopTime = -1;
+    // codec creation, configuration, input and muxer setup
+    private long mSetupStartTime = -1;
+    private long mSetupStopTime = -1;
+    // end of the previous test when this test was set up while it was running
+    private long mPreviousTestStopTime = -1;
     private MediaFormat mEncoderConfigFormat;
     private MediaFormat mEncoderMediaFormat;
     private MediaFormat mDecoderMediaFormat;
@@ -48,6 +57,28 @@ public class Statistics {
     private String mAppVersion = "";
     private boolean mIsEncoderHw = false;
     private boolean mIsDecoderHw = false;
+    private boolean mCodecReused = false;
+    private PrefetchReader mInputPrefetch;
+    private SharedFrameReader mSharedInput;
+    private ScalingReader mInputScaler;
+    private LoopbackDecoder mLoopback;
+    private ChannelEmulator mChannel;
+    private BitstreamAnalyzer mAnalyzer;
+    private FrameHasher mEncodedHasher;
+    private FrameHasher mDecodedHasher;
+    private String mBitrateController;
+    private int mBitrateDecisions = 0;
+    private int mBitrateSyncRequests = 0;
+    private int mMinRequestedBitrate = Integer.MAX_VALUE;
+    private int mMaxRequestedBitrate = 0;
+    private final LiveMetrics mLive;
+    private final BitrateTracker mBitrateTracker;
+    private final SteadyStateDetector mEncoderSteadyState = new SteadyStateDetector();
+    private final SteadyStateDetector mDecoderSteadyState = new SteadyStateDetector();
+    private final CodecLifecycle mEncoderLifecycle = new CodecLifecycle();
+    private final CodecLifecycle mDecoderLifecycle = new CodecLifecycle();
+    private volatile boolean mEncoding = false;
+    private volatile boolean mSteadyFramesReached = false;
 
 
     private static List<String> MEDIAFORMAT_KEY_STRING_LIST = Arrays.asList(
@@ -122,6 +153,29 @@ public class Statistics {
         mTest = test;
         mStartDate = new Date();
         mId = "encapp_" + UUID.randomUUID().toString();
+        mLive = new LiveMetrics(test.getCommon().getId(), mId);
+        mBitrateTracker = createBitrateTracker(test.getConfigure());
+    }
+
+    private static BitrateTracker createBitrateTracker(Configure config) {
+        long bitrate = 0;
+        try {
+            bitrate = TestDefinitionHelper.magnitudeToInt(config.getBitrate());
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Failed to parse bitrate: " + config.getBitrate());
+        }
+        float[] windows;
+        if (config.getBitrateWindowSecCount() > 0) {
+            windows = new float[config.getBitrateWindowSecCount()];
+            for (int i = 0; i < windows.length; i++) {
+                windows[i] = config.getBitrateWindowSec(i);
+            }
+        } else {
+            // 1 sec and the gop length (same default as in updateBasicSettings)
+            int gop = config.hasIFrameInterval() ? config.getIFrameInterval() : 10;
+            windows = new float[]{1.0f, gop};
+        }
+        return new BitrateTracker(bitrate, windows, config.getVbvBufferSec());
     }
 
     public void setAppVersion(String mAppVersion) {
@@ -132,6 +186,10 @@ public class Statistics {
         return mId;
     }
 
+    public LiveMetrics getLiveMetrics() {
+        return mLive;
+    }
+
     public String toString() {
         ArrayList<FrameInfo> allEncodingFrames = mEncodingFrames;
         Comparator<FrameInfo> compareByPts = (FrameInfo o1, FrameInfo o2) -> Long.valueOf(o1.getPts()).compareTo(Long.valueOf(o2.getPts()));
@@ -155,18 +213,63 @@ public class Statistics {
     public void start() {
         mStartTime = SystemClock.elapsedRealtimeNanos();
         mLoad.start();
+        mLive.setSystemLoad(mLoad);
+        LiveMetrics.register(mLive);
     }
 
     public void stop() {
         mStopTime = SystemClock.elapsedRealtimeNanos();
         mLoad.stop();
+        LiveMetrics.unregister(mLive);
+    }
+
+    public void startSetup() {
+        mSetupStartTime = SystemClock.elapsedRealtimeNanos();
+    }
+
+    public void stopSetup() {
+        mSetupStopTime = SystemClock.elapsedRealtimeNanos();
+    }
+
+    public CodecLifecycle getEncoderLifecycle() {
+        return mEncoderLifecycle;
+    }
+
+    public CodecLifecycle getDecoderLifecycle() {
+        return mDecoderLifecycle;
+    }
+
+    public void setPreviousTestStopTime(long stopTime) {
+        mPreviousTestStopTime = stopTime;
+    }
+
+    public long getSetupTime() {
+        if (mSetupStartTime < 0 || mSetupStopTime < mSetupStartTime) {
+            return 0;
+        }
+        return mSetupStopTime - mSetupStartTime;
+    }
+
+    /**
+     * Part of the setup that overlapped with the previous test, i.e. the
+     * time saved by pipelining.
+     */
+    public long getHiddenSetupTime() {
+        if (mPreviousTestStopTime < 0 || getSetupTime() == 0) {
+            return 0;
+        }
+        long hidden = Math.min(mSetupStopTime, mPreviousTestStopTime) - mSetupStartTime;
+        return Math.max(hidden, 0);
     }
 
     public void startEncodingFrame(long pts, int originalFrame) {
         FrameInfo frame = new FrameInfo(pts, originalFrame);
         frame.start();
         mEncodingFrames.add(frame);
+        mEncoding = true;
         mEncodingProcessingFrames += 1;
+        mEncoderLifecycle.input(frame.getStartTime());
+        mLive.encoder().frameIn();
     }
 
     public FrameInfo stopEncodingFrame(long pts, long size, boolean isIFrame) {
@@ -175,6 +278,11 @@ public class Statistics {
             frame.stop();
             frame.setSize(size);
             frame.isIFrame(isIFrame);
+            mLive.encoder().frameOut(frame.getProcessingTime(), size, frame.getStopTime());
+            mBitrateTracker.addFrame(frame.getPts(), size);
+            frame.isSteady(mEncoderSteadyState.addFrame(frame.getProcessingTime(), frame.getStopTime()));
+            checkSteadyFrames();
+            mEncoderLifecycle.output(frame.getStopTime(), isIFrame);
         } else {
             Log.e(TAG, "No matching pts! Error in time handling. Pts = " + pts);
         }
@@ -207,12 +315,19 @@ public class Statistics {
         frame.setFlags(flags);
         frame.start();
         mDecodingFrames.put(Long.valueOf(pts), frame);
+        mDecoderLifecycle.input(frame.getStartTime());
+        mLive.decoder().frameIn();
     }
 
     public FrameInfo stopDecodingFrame(long pts) {
         FrameInfo frame = mDecodingFrames.get(Long.valueOf(pts));
         if (frame != null) {
             frame.stop();
+            mLive.decoder().frameOut(frame.getProcessingTime(), frame.getSize(), frame.getStopTime());
+            frame.isSteady(mDecoderSteadyState.addFrame(frame.getProcessingTime(), frame.getStopTime()));
+            checkSteadyFrames();
+            mDecoderLifecycle.output(frame.getStopTime(),
+                    (frame.getFlags() & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0);
         }
 
         return frame;
@@ -230,29 +345,132 @@ public class Statistics {
         return mDecodingFrames.size();
     }
 
+    /**
+     * Number of steady state frames of the encoder, or of the decoder
+     * when nothing is encoded.
+     */
+    public long getSteadyFrameCount() {
+        if (mEncoding || mEncoderSteadyState.getFrameCount() > 0) {
+            return mEncoderSteadyState.getSteadyFrameCount();
+        }
+        return mDecoderSteadyState.getSteadyFrameCount();
+    }
+
+    /**
+     * Called on every output frame, encoded or decoded, so the buffer,
+     * surface and camera tests all see steady_frames through doneReading().
+     */
+    private void checkSteadyFrames() {
+        int target = mTest.getInput().getSteadyFrames();
+        if (target > 0 && !mSteadyFramesReached && getSteadyFrameCount() >= target) {
+            Log.d(TAG, mTest.getCommon().getId() + " - Steady frames reached: " + getSteadyFrameCount());
+            mSteadyFramesReached = true;
+        }
+    }
+
+    /**
+     * @return true once input.steady_frames steady state frames are collected
+     */
+    public boolean isSteadyFramesReached() {
+        return mSteadyFramesReached;
+    }
+
+    /**
+     * Steady state fps of the encoder (or decoder when nothing is encoded).
+     * Falls back to the fps over the whole test if no steady state was found.
+     */
+    public double getSteadyFps() {
+        boolean encoding = mEncodingFrames.size() > 0;
+        SteadyStateDetector detector = encoding ? mEncoderSteadyState : mDecoderSteadyState;
+        if (detector.getSteadyFps() > 0) {
+            return detector.getSteadyFps();
+        }
+        long proctime = getProcessingTime();
+        int frames = encoding ? getEncodedFrameCount() : getDecodedFrameCount();
+        return (proctime > 0) ? frames * 1000000000.0 / proctime : 0;
+    }
+
+    /**
+     * @return mean gpu load in percent, -1 if not available
+     */
+    public double getAverageGPULoad() {
+        int[] load = mLoad.getGPULoadPercentagePerTimeUnit();
+        if (load.length == 0) {
+            return -1;
+        }
+        long sum = 0;
+        for (int value : load) {
+            sum += value;
+        }
+        return (double) sum / load.length;
+    }
+
+    private static JSONObject getSteadyStateStats(SteadyStateDetector detector) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("steady", detector.isSteady());
+        json.put("warmup_frames", detector.getWarmupFrameCount());
+        json.put("steady_frames", detector.getSteadyFrameCount());
+        json.put("fps", detector.getSteadyFps());
+        json.put("mean_proctime", Math.round(detector.getSteadyMeanLatencyNs()));
+        json.put("max_proctime", detector.getSteadyMaxLatencyNs());
+        return json;
+    }
+
     public void setCodec(String codec) {
         mCodec = codec;
     }
 
+    public String getCodec() {
+        return mCodec;
+    }
+
     public int getAverageBitrate() {
-        ArrayList<FrameInfo> allFrames = mEncodingFrames;
-        Comparator<FrameInfo> compareByPts = (FrameInfo o1, FrameInfo o2) -> Long.valueOf(o1.getPts()).compareTo(Long.valueOf(o2.getPts()));
-        Collections.sort(allFrames, compareByPts);
-        int framecount = allFrames.size();
-        if (framecount > 0) {
-            long startPts = allFrames.get(0).mPts;
-            //We just ignore the last frame, for the average does not mean much.
-            long lastTime = allFrames.get(allFrames.size() - 1).mPts;
-            double totalTime = ((double) (lastTime - startPts)) / 1000000.0;
-            long totalSize = 0;
-            for (FrameInfo info : allFrames) {
-                totalSize += info.getSize();
+        return mBitrateTracker.getAverageBitrate();
+    }
+
+    public void setTargetBitrate(int bitrate) {
+        mBitrateTracker.setTargetBitrate(bitrate);
+    }
+
+    private JSONObject getBitrateStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("target_bitrate", mBitrateTracker.getTargetBitrate());
+        JSONArray windows = new JSONArray();
+        for (BitrateTracker.Window window : mBitrateTracker.getWindows()) {
+            if (!window.hasSamples()) {
+                continue;
             }
-            totalSize -= allFrames.get(framecount - 1).mSize;
-            return (int) (Math.round(8 * totalSize / (totalTime))); // bytes/Secs -> bit/sec
-        } else {
-            return 0;
+            JSONObject obj = new JSONObject();
+            obj.put("window_sec", window.getLengthSec());
+            obj.put("peak_bitrate", Math.round(window.getPeakBitrate()));
+            obj.put("peak_pts", window.getPeakPtsUsec());
+            obj.put("min_bitrate", Math.round(window.getMinBitrate()));
+            obj.put("mean_abs_deviation", window.getMeanAbsDeviation());
+            obj.put("max_deviation", window.getMaxDeviation());
+            windows.put(obj);
         }
+        json.put("windows", windows);
+        if (mBitrateTracker.getBufferSizeSec() > 0) {
+            JSONObject buffer = new JSONObject();
+            buffer.put("size_sec", mBitrateTracker.getBufferSizeSec());
+            buffer.put("max_fullness", mBitrateTracker.getMaxBufferFullness());
+            buffer.put("overflow_count", mBitrateTracker.getOverflowCount());
+            JSONArray events = new JSONArray();
+            for (BitrateTracker.OverflowEvent event : mBitrateTracker.getOverflowEvents()) {
+                JSONObject obj = new JSONObject();
+                obj.put("output_frame", event.frame);
+                obj.put("pts", event.ptsUsec);
+                obj.put("excess_bits", event.excessBits);
+                events.put(obj);
+            }
+            buffer.put("overflow_events", events);
+            json.put("buffer_model", buffer);
+        }
+        return json;
+    }
+
+    public String getEncodedfile() {
+        return mEncodedfile;
     }
 
     public void setEncodedfile(String filename) {
@@ -279,6 +497,77 @@ public class Statistics {
 
     public void setDecoderIsHardwareAccelerated(boolean accelerated) { mIsDecoderHw = accelerated; }
 
+    public void setCodecReused(boolean reused) {
+        mCodecReused = reused;
+        mEncoderLifecycle.setReused(reused);
+    }
+
+    public void setInputPrefetch(PrefetchReader prefetch) { mInputPrefetch = prefetch; }
+
+    public void setSharedInput(SharedFrameReader reader) { mSharedInput = reader; }
+
+    public void setInputScaler(ScalingReader scaler) { mInputScaler = scaler; }
+
+    public ScalingReader getInputScaler() { return mInputScaler; }
+
+    public void setLoopback(LoopbackDecoder loopback) { mLoopback = loopback; }
+
+    public void setChannel(ChannelEmulator channel) { mChannel = channel; }
+
+    public void setBitrateController(String name) { mBitrateController = name; }
+
+    public void setBitstreamAnalyzer(BitstreamAnalyzer analyzer) { mAnalyzer = analyzer; }
+
+    public void setEncodedHasher(FrameHasher hasher) { mEncodedHasher = hasher; }
+
+    public void setDecodedHasher(FrameHasher hasher) { mDecodedHasher = hasher; }
+
+    private JSONObject getBitstreamStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("codec", mAnalyzer.getCodec());
+        json.put("frames", mAnalyzer.getFrameCount());
+        json.put("errors", mAnalyzer.getErrors());
+        json.put("config_bytes", mAnalyzer.getConfigBytes());
+        json.put("header_bytes", mAnalyzer.getTotalHeaderBytes());
+        json.put("payload_bytes", mAnalyzer.getTotalPayloadBytes());
+        json.put("reference_frames", mAnalyzer.getReferenceFrames());
+        json.put("ltr_mark_frames", mAnalyzer.getLtrMarkFrames());
+        json.put("ltr_use_frames", mAnalyzer.getLtrUseFrames());
+        JSONObject types = new JSONObject();
+        for (Map.Entry<String, Integer> type : mAnalyzer.getFrameTypes().entrySet()) {
+            types.put(type.getKey(), type.getValue());
+        }
+        json.put("frame_types", types);
+        double durationSec = mAnalyzer.getDurationUs() / 1000000.0;
+        JSONArray layers = new JSONArray();
+        for (BitstreamAnalyzer.Layer layer : mAnalyzer.getLayers()) {
+            JSONObject obj = new JSONObject();
+            obj.put("temporal_id", layer.getTemporalId());
+            obj.put("frames", layer.getFrames());
+            obj.put("bytes", layer.getBytes());
+            obj.put("header_bytes", layer.getHeaderBytes());
+            obj.put("mean_qp", layer.getMeanQp());
+            if (durationSec > 0) {
+                obj.put("bitrate", (int) (layer.getBytes() * 8 / durationSec));
+                obj.put("fps", layer.getFrames() / durationSec);
+            }
+            layers.put(obj);
+        }
+        json.put("layers", layers);
+        return json;
+    }
+
+    public void addBitrateDecision(BitrateController.Decision decision) {
+        mBitrateDecisions++;
+        if (decision.isRequestSync()) {
+            mBitrateSyncRequests++;
+        }
+        if (decision.getBitrate() > 0) {
+            mMinRequestedBitrate = Math.min(mMinRequestedBitrate, decision.getBitrate());
+            mMaxRequestedBitrate = Math.max(mMaxRequestedBitrate, decision.getBitrate());
+        }
+    }
+
     private JSONObject getSettingsFromMediaFormat(MediaFormat mediaFormat) {
         // Log.d(TAG, "mediaFormat: " + mediaFormat);
         JSONObject json = new JSONObject();
@@ -388,10 +677,52 @@ public class Statistics {
                 }
             }
             json.put("meanbitrate", getAverageBitrate());
+            if (mEncodingFrames.size() > 0) {
+                json.put("bitrate_stats", getBitrateStats());
+                json.put("encoder_steady_state", getSteadyStateStats(mEncoderSteadyState));
+            }
+            if (mEncoderLifecycle.hasData()) {
+                json.put("encoder_lifecycle", mEncoderLifecycle.toJSON());
+            }
+            if (mTest.getConfigure().getReuseCodec()) {
+                JSONObject pool = new JSONObject();
+                pool.put("codec_reused", mCodecReused);
+                pool.put("hits", CodecPool.getHits());
+                pool.put("misses", CodecPool.getMisses());
+                pool.put("hit_rate", CodecPool.getHitRate());
+                json.put("codec_pool", pool);
+            }
+            if (mInputPrefetch != null) {
+                JSONObject prefetch = new JSONObject();
+                prefetch.put("depth", mInputPrefetch.getDepth());
+                prefetch.put("hits", mInputPrefetch.getHits());
+                prefetch.put("misses", mInputPrefetch.getMisses());
+                prefetch.put("stall_time_ns", mInputPrefetch.getStallTimeNs());
+                json.put("input_prefetch", prefetch);
+            }
+            if (mSharedInput != null && mSharedInput.getSharedReaders() > 1) {
+                JSONObject shared = new JSONObject();
+                shared.put("readers", mSharedInput.getSharedReaders());
+                shared.put("dropped", mSharedInput.isDropped());
+                json.put("shared_input", shared);
+            }
+            if (mInputScaler != null) {
+                JSONObject scaler = new JSONObject();
+                scaler.put("input_resolution", mInputScaler.getInputResolution());
+                scaler.put("resolution", mInputScaler.getResolution());
+                scaler.put("filter", mInputScaler.getFilter().name().toLowerCase(Locale.US));
+                scaler.put("frames", mInputScaler.getFrames());
+                scaler.put("scale_time_ns", mInputScaler.getScaleTimeNs());
+                // the input is read once for all tests sharing it
+                scaler.put("read_time_ns", mInputScaler.getReadTimeNs());
+                json.put("input_scaler", scaler);
+            }
             json.put("date", mStartDate.toString());
             Log.d(TAG, "log app version: " + mAppVersion);
             json.put("encapp_version", mAppVersion);
             json.put("proctime", getProcessingTime());
+            json.put("setuptime", getSetupTime());
+            json.put("hidden_setuptime", getHiddenSetupTime());
             json.put("framecount", getEncodedFrameCount());
             json.put("encodedfile", mEncodedfile);
             String[] tmp = mTest.getInput().getFilepath().split("/");
@@ -400,12 +731,51 @@ public class Statistics {
             json.put("encoder_media_format", getSettingsFromMediaFormat(mEncoderMediaFormat));
             if (mDecodingFrames.size() > 0) {
                 json.put("decoder", mDecoderName);
+                json.put("decoder_steady_state", getSteadyStateStats(mDecoderSteadyState));
+                if (mDecoderLifecycle.hasData()) {
+                    json.put("decoder_lifecycle", mDecoderLifecycle.toJSON());
+                }
                 json.put("decoder_media_format", getSettingsFromMediaFormat(mDecoderMediaFormat));
 
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
                     json.put("decoder_hw_accelerated", mIsDecoderHw);
                 }
             }
+            if (mChannel != null) {
+                JSONObject channel = new JSONObject();
+                channel.put("frames", mChannel.getFrameCount());
+                channel.put("dropped_frames", mChannel.getDroppedFrames());
+                channel.put("queue_dropped_frames", mChannel.getQueueDroppedFrames());
+                channel.put("packets", mChannel.getPacketCount());
+                channel.put("lost_packets", mChannel.getLostPacketCount());
+                channel.put("bytes", mChannel.getBytes());
+                channel.put("mean_queue_delay_ns", mChannel.getMeanQueueDelayNs());
+                channel.put("max_queue_delay_ns", mChannel.getMaxQueueDelayNs());
+                json.put("channel", channel);
+            }
+            if (mAnalyzer != null) {
+                json.put("bitstream", getBitstreamStats());
+            }
+            if (mBitrateController != null) {
+                JSONObject control = new JSONObject();
+                control.put("controller", mBitrateController);
+                control.put("decisions", mBitrateDecisions);
+                control.put("sync_requests", mBitrateSyncRequests);
+                if (mMaxRequestedBitrate > 0) {
+                    control.put("min_bitrate", mMinRequestedBitrate);
+                    control.put("max_bitrate", mMaxRequestedBitrate);
+                }
+                json.put("bitrate_control", control);
+            }
+            if (mLoopback != null) {
+                json.put("loopback", mLoopback.toJSON());
+            }
+            if (mEncodedHasher != null) {
+                json.put("encoded_hashes", mEncodedHasher.toJSON());
+            }
+            if (mDecodedHasher != null) {
+                json.put("decoded_hashes", mDecodedHasher.toJSON());
+            }
             ArrayList<FrameInfo> allFrames = mEncodingFrames;
             Comparator<FrameInfo> compareByPts = (FrameInfo o1, FrameInfo o2) -> Long.valueOf(o1.getPts()).compareTo(Long.valueOf(o2.getPts()));
             Collections.sort(allFrames, compareByPts);
@@ -429,6 +799,7 @@ public class Statistics {
                 }
                 obj.put("starttime", info.getStartTime());
                 obj.put("stoptime", info.getStopTime());
+                obj.put("steady", (info.isSteady()) ? 1 : 0);
                 Dictionary<String, Object> dict = info.getInfo();
                 if (dict != null) {
                     Enumeration<String> keys = dict.keys();
@@ -461,6 +832,7 @@ public class Statistics {
                         obj.put("proctime", info.getProcessingTime());
                         obj.put("starttime", info.getStartTime());
                         obj.put("stoptime", info.getStopTime());
+                        obj.put("steady", (info.isSteady()) ? 1 : 0);
                         Dictionary<String, Object> dict = info.getInfo();
                         if (dict != null) {
                             Enumeration<String> keys = dict.keys();
@@ -0,0 +1,146 @@
+package com.facebook.encapp.utils;
+
+/**
+ * Separates the codec warm-up from the steady state.
+ *
+ * Frames are grouped in blocks of a fixed number of frames. For every block
+ * the mean processing time (latency) and the mean time between finished frames
+ * (inverse throughput) are calculated. The steady state starts when the block
+ * means of a number of consecutive blocks stay within a relative tolerance of
+ * each other. Once steady, all following frames are counted as steady.
+ */
+public class SteadyStateDetector {
+    public static final int DEFAULT_BLOCK_FRAMES = 15;
+    public static final int DEFAULT_STABLE_BLOCKS = 3;
+    public static final double DEFAULT_TOLERANCE = 0.1;
+
+    private final int mBlockFrames;
+    private final int mStableBlocks;
+    private final double mTolerance;
+
+    // current block
+    private int mBlockCount = 0;
+    private long mBlockLatencySum = 0;
+    private long mBlockFirstStopNs = -1;
+    private long mLastStopNs = -1;
+    // previous block means
+    private double mPrevLatency = -1;
+    private double mPrevInterval = -1;
+    private int mConsecutiveStable = 0;
+
+    // written by the output thread, read by the input thread and the stats
+    private long mFrames = 0;
+    private long mWarmupFrames = 0;
+    private long mSteadyFrames = 0;
+    private boolean mSteady = false;
+    private long mSteadyFirstStopNs = -1;
+    private long mSteadyLastStopNs = -1;
+    private long mSteadyLatencySum = 0;
+    private long mSteadyLatencyMax = 0;
+
+    public SteadyStateDetector() {
+        this(DEFAULT_BLOCK_FRAMES, DEFAULT_STABLE_BLOCKS, DEFAULT_TOLERANCE);
+    }
+
+    public SteadyStateDetector(int blockFrames, int stableBlocks, double tolerance) {
+        mBlockFrames = Math.max(blockFrames, 2);
+        mStableBlocks = Math.max(stableBlocks, 2);
+        mTolerance = tolerance;
+    }
+
+    /**
+     * Add a finished frame.
+     *
+     * @param latencyNs processing time of the frame
+     * @param stopNs time the frame was returned by the codec
+     * @return true if the frame belongs to the steady state
+     */
+    public synchronized boolean addFrame(long latencyNs, long stopNs) {
+        mFrames++;
+        if (latencyNs <= 0 || stopNs <= 0) {
+            // no valid timing, cannot say anything about this frame
+            if (!mSteady) {
+                mWarmupFrames++;
+            }
+            return mSteady;
+        }
+        if (mSteady) {
+            mSteadyFrames++;
+            mSteadyLastStopNs = Math.max(mSteadyLastStopNs, stopNs);
+            mSteadyLatencySum += latencyNs;
+            mSteadyLatencyMax = Math.max(mSteadyLatencyMax, latencyNs);
+            return true;
+        }
+
+        mWarmupFrames++;
+        if (mBlockCount == 0) {
+            mBlockFirstStopNs = (mLastStopNs > 0) ? mLastStopNs : stopNs;
+        }
+        mBlockCount++;
+        mBlockLatencySum += latencyNs;
+        mLastStopNs = stopNs;
+        if (mBlockCount < mBlockFrames) {
+            return false;
+        }
+
+        double latency = (double) mBlockLatencySum / mBlockCount;
+        double interval = (double) (stopNs - mBlockFirstStopNs) / mBlockCount;
+        if (mPrevLatency > 0 && isClose(latency, mPrevLatency) && isClose(interval, mPrevInterval)) {
+            mConsecutiveStable++;
+        } else {
+            mConsecutiveStable = 1;
+        }
+        mPrevLatency = latency;
+        mPrevInterval = interval;
+        mBlockCount = 0;
+        mBlockLatencySum = 0;
+        if (mConsecutiveStable >= mStableBlocks) {
+            mSteady = true;
+            mSteadyFirstStopNs = stopNs;
+            mSteadyLastStopNs = stopNs;
+        }
+        return false;
+    }
+
+    private boolean isClose(double value, double reference) {
+        if (reference <= 0) {
+            return value <= 0;
+        }
+        return Math.abs(value - reference) / reference <= mTolerance;
+    }
+
+    public synchronized boolean isSteady() {
+        return mSteady;
+    }
+
+    public synchronized long getFrameCount() {
+        return mFrames;
+    }
+
+    public synchronized long getWarmupFrameCount() {
+        return mWarmupFrames;
+    }
+
+    public synchronized long getSteadyFrameCount() {
+        return mSteadyFrames;
+    }
+
+    /**
+     * Frame rate over the steady frames, 0 if not known.
+     */
+    public synchronized double getSteadyFps() {
+        if (mSteadyFrames == 0 || mSteadyLastStopNs <= mSteadyFirstStopNs) {
+            return 0;
+        }
+        // the first steady frame is timed from the last warm-up frame
+        return mSteadyFrames * 1000000000.0 / (mSteadyLastStopNs - mSteadyFirstStopNs);
+    }
+
+    public synchronized double getSteadyMeanLatencyNs() {
+        return (mSteadyFrames > 0) ? (double) mSteadyLatencySum / mSteadyFrames : 0;
+    }
+
+    public synchronized long getSteadyMaxLatencyNs() {
+        return mSteadyLatencyMax;
+    }
+}
@@ -0,0 +1,106 @@
+package com.facebook.encapp.utils;
+
+import com.facebook.encapp.proto.Configure;
+import com.facebook.encapp.proto.Sweep;
+import com.facebook.encapp.proto.Test;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Expands the sweep block of a test into one test per combination of the
+ * swept values. Variants are created one at a time when asked for so
+ * large sweeps do not have to be kept in memory.
+ *
+ * The last listed dimension (i-frame interval) changes fastest.
+ */
+public class SweepIterator implements Iterator<Test> {
+    private final Test mBase;
+    private final Sweep mSweep;
+    // number of values per dimension: bitrate, framerate, resolution, i-frame interval
+    private final int[] mSizes;
+    private final int[] mPosition;
+    private final int mCount;
+    private int mIndex = 0;
+
+    public SweepIterator(Test test) {
+        mSweep = test.getSweep();
+        mBase = test.toBuilder().clearSweep().build();
+        mSizes = new int[]{
+                mSweep.getBitrateCount(),
+                mSweep.getFramerateCount(),
+                mSweep.getResolutionCount(),
+                mSweep.getIFrameIntervalCount()};
+        mPosition = new int[mSizes.length];
+        int count = 1;
+        for (int size : mSizes) {
+            count *= Math.max(size, 1);
+        }
+        mCount = count;
+    }
+
+    /**
+     * @return total number of variants
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return mIndex < mCount;
+    }
+
+    @Override
+    public Test next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Configure.Builder configure = mBase.getConfigure().toBuilder();
+        StringBuilder id = new StringBuilder(mBase.getCommon().getId());
+        if (mSizes[0] > 0) {
+            String bitrate = mSweep.getBitrate(mPosition[0]);
+            configure.setBitrate(bitrate);
+            id.append("_").append(bitrate.replaceAll("\\s", "").toLowerCase(Locale.US));
+        }
+        if (mSizes[1] > 0) {
+            float framerate = mSweep.getFramerate(mPosition[1]);
+            configure.setFramerate(framerate);
+            id.append(String.format(Locale.US, "_%sfps", formatFloat(framerate)));
+        }
+        if (mSizes[2] > 0) {
+            String resolution = mSweep.getResolution(mPosition[2]);
+            configure.setResolution(resolution);
+            id.append("_").append(resolution.trim());
+        }
+        if (mSizes[3] > 0) {
+            int iFrameInterval = mSweep.getIFrameInterval(mPosition[3]);
+            configure.setIFrameInterval(iFrameInterval);
+            id.append("_i").append(iFrameInterval);
+        }
+        Test.Builder variant = mBase.toBuilder().setConfigure(configure);
+        variant.setCommon(mBase.getCommon().toBuilder().setId(id.toString()));
+
+        // advance, last dimension fastest
+        mIndex++;
+        for (int i = mPosition.length - 1; i >= 0; i--) {
+            if (mSizes[i] == 0) {
+                continue;
+            }
+            mPosition[i]++;
+            if (mPosition[i] < mSizes[i]) {
+                break;
+            }
+            mPosition[i] = 0;
+        }
+        return variant.build();
+    }
+
+    private static String formatFloat(float value) {
+        if (value == Math.rint(value)) {
+            return String.valueOf((int) value);
+        }
+        return String.valueOf(value);
+    }
+}
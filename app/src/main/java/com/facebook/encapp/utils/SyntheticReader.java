@@ -0,0 +1,476 @@
+package com.facebook.encapp.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.media.Image;
+import android.util.Log;
+
+import com.facebook.encapp.proto.PixFmt;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates raw frames instead of reading them from a file. Selected by an
+ * input filepath like
+ *
+ *   synthetic:pattern=noise,entropy=0.3,cut=60
+ *
+ * pattern: gradient (default), noise or text (scrolling text)
+ * entropy: share of random bits added to every sample, 0-1 (default 0.5 for noise, else 0)
+ * cut:     change the scene every cut frames, 0 for no cuts (default)
+ * speed:   motion in pixels per frame, 0 or more (default 4)
+ * frames:  number of frames until the input ends and is looped (default 300)
+ *
+ * The frames are written straight into the codec buffer or Image planes.
+ * Every frame is split in bands of rows generated in parallel, the inner
+ * loops only do integer arithmetic on the column so they can be vectorized.
+ */
+public class SyntheticReader extends FileReader {
+    private static final String TAG = "encapp.synthetic";
+    public static final String PREFIX = "synthetic:";
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    // smaller bands are not worth a thread hop
+    private static final int MIN_BAND_ROWS = 32;
+    private static final String TEXT = "encapp synthetic 0123456789 ";
+
+    // shared by all readers so parallel tests do not oversubscribe the cpu
+    private static final ExecutorService mPool = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "SyntheticReader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ThreadLocal<byte[][]> mRows = new ThreadLocal<>();
+    private static final int NOISE_LENGTH = 1 << 16;
+    // random bytes, long enough for a run of any row at 8k
+    private static final byte[] mNoise = new byte[NOISE_LENGTH + 8192];
+
+    static {
+        new Random(0x5eed).nextBytes(mNoise);
+    }
+
+    enum Pattern {gradient, noise, text}
+
+    private final int mWidth;
+    private final int mHeight;
+    // one period of the gradient (up and down over twice the width) and the
+    // start of the next, so that any shifted row is a single copy
+    private final byte[] mLumaLine;
+    private final byte[] mChromaLine;
+    private Pattern mPattern = Pattern.gradient;
+    private int mNoiseMask = 0;
+    private int mCut = 0;
+    private int mSpeed = 4;
+    private int mFrames = 300;
+    private int mFrame = 0;
+    private boolean mOpen = false;
+    // text coverage, every row is stored twice so a scrolled row is one run
+    private byte[] mTextMask;
+    private int mTextWidth;
+    private int mTextHeight;
+
+    public static boolean isSynthetic(String filepath) {
+        return filepath.startsWith(PREFIX);
+    }
+
+    public SyntheticReader(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mLumaLine = createLine(width, 220);
+        mChromaLine = createLine(width / 2, 64);
+    }
+
+    /**
+     * Parameters of a frame, the same for all bands.
+     */
+    private static final class Frame {
+        final int motion;
+        final int offset;
+        final int seed;
+        final int tintU;
+        final int tintV;
+
+        Frame(int index, int cut, int speed) {
+            int scene = (cut > 0) ? index / cut : 0;
+            int hash = mix(scene * 0x9E3779B1 + 0x7F4A7C15);
+            motion = index * speed;
+            offset = hash & 0xff;
+            seed = mix(index * 0x85EBCA77 + hash);
+            tintU = 80 + ((hash >>> 8) & 0x5f);
+            tintV = 80 + ((hash >>> 16) & 0x5f);
+        }
+    }
+
+    /**
+     * Triangle wave over 2 * width samples with values 0 to range - 1,
+     * followed by the first width samples again.
+     */
+    private static byte[] createLine(int width, int range) {
+        int period = 2 * Math.max(width, 1);
+        byte[] line = new byte[period + width];
+        for (int i = 0; i < line.length; i++) {
+            int p = i % period;
+            int ramp = (p < period / 2) ? p : period - 1 - p;
+            line[i] = (byte) (ramp * (range - 1) / Math.max(period / 2 - 1, 1));
+        }
+        return line;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 15;
+        h *= 0x2C1B3C6D;
+        h ^= h >>> 12;
+        h *= 0x297A2D39;
+        h ^= h >>> 15;
+        return h;
+    }
+
+    @Override
+    public boolean openFile(String name, PixFmt pixFmt) {
+        Log.i(TAG, "SyntheticReader.openFile: " + name + " pix_fmt: " + pixFmt);
+        if (!isSynthetic(name)) {
+            Log.e(TAG, "Not a synthetic input: " + name);
+            return false;
+        }
+        if (pixFmt.getNumber() != PixFmt.yuv420p_VALUE && pixFmt.getNumber() != PixFmt.yvu420p_VALUE &&
+                pixFmt.getNumber() != PixFmt.nv12_VALUE && pixFmt.getNumber() != PixFmt.nv21_VALUE) {
+            Log.e(TAG, "Synthetic input only supports 4:2:0 yuv, not " + pixFmt);
+            return false;
+        }
+        if (mWidth <= 0 || mHeight <= 0 || mWidth % 2 != 0 || mHeight % 2 != 0 || mWidth > 8192) {
+            Log.e(TAG, "Synthetic input needs an even resolution up to 8k wide, not " + mWidth + "x" + mHeight);
+            return false;
+        }
+        mPixFmt = pixFmt;
+        boolean entropySet = false;
+        try {
+            for (String param : name.substring(PREFIX.length()).split(",")) {
+                if (param.trim().length() == 0) {
+                    continue;
+                }
+                String[] keyValue = param.split("=", 2);
+                String key = keyValue[0].trim().toLowerCase(Locale.US);
+                String value = (keyValue.length > 1) ? keyValue[1].trim() : "";
+                switch (key) {
+                    case "pattern":
+                        mPattern = Pattern.valueOf(value.toLowerCase(Locale.US));
+                        break;
+                    case "entropy":
+                        float entropy = Float.parseFloat(value);
+                        mNoiseMask = (1 << Math.round(Math.max(0, Math.min(1, entropy)) * 8)) - 1;
+                        entropySet = true;
+                        break;
+                    case "cut":
+                        mCut = Integer.parseInt(value);
+                        break;
+                    case "speed":
+                        mSpeed = Integer.parseInt(value);
+                        if (mSpeed < 0) {
+                            throw new IllegalArgumentException("speed can not be negative: " + mSpeed);
+                        }
+                        break;
+                    case "frames":
+                        mFrames = Integer.parseInt(value);
+                        break;
+                    default:
+                        Log.e(TAG, "Unknown synthetic input parameter: " + key);
+                        return false;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Bad synthetic input: " + name + ", " + e.getMessage());
+            return false;
+        }
+        if (mPattern == Pattern.noise && !entropySet) {
+            mNoiseMask = 0x0f;
+        }
+        if (mPattern == Pattern.text && mTextMask == null) {
+            createTextMask();
+        }
+        synchronized (this) {
+            mFrame = 0;
+            mOpen = true;
+        }
+        return true;
+    }
+
+    private void createTextMask() {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.WHITE);
+        paint.setTextSize(Math.max(12, mHeight / 8));
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        StringBuilder text = new StringBuilder(TEXT);
+        while (paint.measureText(text.toString()) < mWidth) {
+            text.append(TEXT);
+        }
+        mTextWidth = (int) Math.ceil(paint.measureText(text.toString()));
+        mTextHeight = metrics.bottom - metrics.top;
+        Bitmap bitmap = Bitmap.createBitmap(mTextWidth, mTextHeight, Bitmap.Config.ALPHA_8);
+        new Canvas(bitmap).drawText(text.toString(), 0, -metrics.top, paint);
+        int rowBytes = bitmap.getRowBytes();
+        ByteBuffer alpha = ByteBuffer.allocate(rowBytes * mTextHeight);
+        bitmap.copyPixelsToBuffer(alpha);
+        bitmap.recycle();
+        mTextMask = new byte[2 * mTextWidth * mTextHeight];
+        for (int y = 0; y < mTextHeight; y++) {
+            System.arraycopy(alpha.array(), y * rowBytes, mTextMask, 2 * y * mTextWidth, mTextWidth);
+            System.arraycopy(alpha.array(), y * rowBytes, mTextMask, (2 * y + 1) * mTextWidth, mTextWidth);
+        }
+    }
+
+    @Override
+    public int preload(int bytes) {
+        // nothing is read
+        return 0;
+    }
+
+    @Override
+    public boolean isClosed() {
+        synchronized (this) {
+            return !mOpen;
+        }
+    }
+
+    @Override
+    public void closeFile() {
+        synchronized (this) {
+            mOpen = false;
+        }
+    }
+
+    /**
+     * @return the next frame or null when the input has ended
+     */
+    private Frame nextFrame() {
+        synchronized (this) {
+            if (!mOpen || (mFrames > 0 && mFrame >= mFrames)) {
+                return null;
+            }
+            return new Frame(mFrame++, mCut, mSpeed);
+        }
+    }
+
+    private static byte[][] getRows(int width) {
+        byte[][] rows = mRows.get();
+        if (rows == null || rows[0].length < width) {
+            rows = new byte[][]{new byte[width], new byte[width], new byte[width]};
+            mRows.set(rows);
+        }
+        return rows;
+    }
+
+    private void lumaRow(byte[] row, int y, Frame frame) {
+        // diagonal gradient: the row is the line shifted by y
+        int period = 2 * mWidth;
+        // the motion wraps around on very long runs, keep the shift positive
+        int shift = (int) Math.floorMod((long) y * mWidth / mHeight + frame.offset * period / 256 + frame.motion,
+                (long) period);
+        System.arraycopy(mLumaLine, shift, row, 0, mWidth);
+        for (int x = 0; x < mWidth; x++) {
+            row[x] = (byte) (row[x] + 16);
+        }
+        if (mPattern == Pattern.text) {
+            int linePeriod = 2 * mTextHeight;
+            int line = y / linePeriod;
+            int textY = y - line * linePeriod;
+            if (textY < mTextHeight) {
+                // every other line scrolls twice as fast
+                int start = Math.floorMod(frame.motion * (1 + (line & 1)), mTextWidth);
+                int offset = 2 * textY * mTextWidth + start;
+                for (int x = 0; x < mWidth; x++) {
+                    row[x] = (byte) (((row[x] & 0xff) >> 1) + (((mTextMask[offset + x] & 0xff) * 118) >> 8));
+                }
+            }
+        }
+        addNoise(row, mWidth, y, frame.seed, mNoiseMask);
+    }
+
+    private void chromaRows(byte[] u, byte[] v, int y, Frame frame) {
+        int width = mWidth / 2;
+        int period = 2 * width;
+        // u moves with the luma, v changes over the height
+        System.arraycopy(mChromaLine, Math.floorMod(frame.motion / 2, period), u, 0, width);
+        System.arraycopy(mChromaLine, (int) (((long) y * 4 * width / mHeight) % period), v, 0, width);
+        int tintU = frame.tintU - 32;
+        int tintV = frame.tintV - 32;
+        for (int x = 0; x < width; x++) {
+            u[x] = (byte) (u[x] + tintU);
+            v[x] = (byte) (v[x] + tintV);
+        }
+        addNoise(u, width, y, frame.seed ^ 0x5bd1e995, mNoiseMask >> 2);
+        addNoise(v, width, y, frame.seed ^ 0x1b873593, mNoiseMask >> 2);
+    }
+
+    private static void addNoise(byte[] row, int width, int y, int seed, int mask) {
+        if (mask == 0) {
+            return;
+        }
+        // a random run of the noise table, different for every row and frame
+        int offset = mix(seed + y * 0x85EBCA77) & (NOISE_LENGTH - 1);
+        int bias = mask >> 1;
+        for (int x = 0; x < width; x++) {
+            int value = (row[x] & 0xff) + (mNoise[offset + x] & mask) - bias;
+            row[x] = (byte) Math.max(0, Math.min(255, value));
+        }
+    }
+
+    private static void put(ByteBuffer buffer, int position, byte[] data, int length) {
+        ByteBuffer dst = buffer.duplicate();
+        dst.position(position);
+        dst.put(data, 0, length);
+    }
+
+    /**
+     * Plane offsets (in bytes) of the chroma in a contiguous frame.
+     */
+    private int[] getChromaOffsets() {
+        int lumaLength = mWidth * mHeight;
+        int chromaLength = lumaLength / 4;
+        if (mPixFmt.getNumber() == PixFmt.yvu420p_VALUE) {
+            return new int[]{lumaLength + chromaLength, lumaLength};
+        }
+        return new int[]{lumaLength, lumaLength + chromaLength};
+    }
+
+    private void fillBufferBand(ByteBuffer buffer, int base, int y0, int y1, Frame frame) {
+        byte[][] rows = getRows(mWidth);
+        for (int y = y0; y < y1; y++) {
+            lumaRow(rows[0], y, frame);
+            put(buffer, base + y * mWidth, rows[0], mWidth);
+        }
+        int width = mWidth / 2;
+        int[] chromaOffsets = getChromaOffsets();
+        boolean semiPlanar = mPixFmt.getNumber() == PixFmt.nv12_VALUE || mPixFmt.getNumber() == PixFmt.nv21_VALUE;
+        for (int y = y0 / 2; y < y1 / 2; y++) {
+            chromaRows(rows[1], rows[2], y, frame);
+            if (semiPlanar) {
+                byte[] first = (mPixFmt.getNumber() == PixFmt.nv12_VALUE) ? rows[1] : rows[2];
+                byte[] second = (first == rows[1]) ? rows[2] : rows[1];
+                byte[] interleaved = rows[0];
+                for (int x = 0; x < width; x++) {
+                    interleaved[2 * x] = first[x];
+                    interleaved[2 * x + 1] = second[x];
+                }
+                put(buffer, base + mWidth * mHeight + y * mWidth, interleaved, mWidth);
+            } else {
+                put(buffer, base + chromaOffsets[0] + y * width, rows[1], width);
+                put(buffer, base + chromaOffsets[1] + y * width, rows[2], width);
+            }
+        }
+    }
+
+    private static void putPlaneRow(Image.Plane plane, int y, byte[] row, int width) {
+        ByteBuffer buffer = plane.getBuffer();
+        int position = y * plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+        if (pixelStride == 1) {
+            put(buffer, position, row, width);
+        } else {
+            // interleaved chroma shares memory with the other plane
+            for (int x = 0; x < width; x++) {
+                buffer.put(position + x * pixelStride, row[x]);
+            }
+        }
+    }
+
+    private void fillImageBand(Image.Plane[] planes, int y0, int y1, Frame frame) {
+        byte[][] rows = getRows(mWidth);
+        for (int y = y0; y < y1; y++) {
+            lumaRow(rows[0], y, frame);
+            putPlaneRow(planes[0], y, rows[0], mWidth);
+        }
+        for (int y = y0 / 2; y < y1 / 2; y++) {
+            chromaRows(rows[1], rows[2], y, frame);
+            putPlaneRow(planes[1], y, rows[1], mWidth / 2);
+            putPlaneRow(planes[2], y, rows[2], mWidth / 2);
+        }
+    }
+
+    private interface Band {
+        void fill(int y0, int y1);
+    }
+
+    /**
+     * Run the band over all rows, split on the pool. Bands start on even
+     * rows so every band owns whole chroma rows.
+     *
+     * @return false if a band did not finish, the frame is then incomplete
+     */
+    private boolean runBands(Band band) {
+        int bands = Math.max(1, Math.min(THREADS, mHeight / MIN_BAND_ROWS));
+        if (bands == 1) {
+            band.fill(0, mHeight);
+            return true;
+        }
+        int rows = ((mHeight / bands) + 1) & ~1;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int y = 0; y < mHeight; y += rows) {
+            final int y0 = y;
+            final int y1 = Math.min(mHeight, y + rows);
+            tasks.add(() -> {
+                band.fill(y0, y1);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> result : mPool.invokeAll(tasks)) {
+                result.get();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted while generating frame");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to generate frame: " + e.getCause());
+        }
+        return false;
+    }
+
+    @Override
+    public int fillBuffer(ByteBuffer byteBuffer, int size) {
+        int frameLength = mWidth * mHeight * 3 / 2;
+        if (size < frameLength || byteBuffer.capacity() - byteBuffer.position() < frameLength) {
+            Log.e(TAG, "error: not enough space in ByteBuffer (capacity: " + byteBuffer.capacity() +
+                    ") for a " + mWidth + "x" + mHeight + " frame");
+            return 0;
+        }
+        Frame frame = nextFrame();
+        if (frame == null) {
+            return -1;
+        }
+        int base = byteBuffer.position();
+        if (!runBands((y0, y1) -> fillBufferBand(byteBuffer, base, y0, y1, frame))) {
+            return -1;
+        }
+        byteBuffer.position(base + frameLength);
+        return frameLength;
+    }
+
+    @Override
+    public int fillImage(Image image) {
+        if (image.getWidth() != mWidth || image.getHeight() != mHeight) {
+            Log.e(TAG, "fillImage: image " + image.getWidth() + "x" + image.getHeight() +
+                    " does not match " + mWidth + "x" + mHeight);
+            return 0;
+        }
+        Frame frame = nextFrame();
+        if (frame == null) {
+            return -1;
+        }
+        Image.Plane[] planes = image.getPlanes();
+        if (!runBands((y0, y1) -> fillImageBand(planes, y0, y1, frame))) {
+            return -1;
+        }
+        return mWidth * mHeight * 3 / 2;
+    }
+}
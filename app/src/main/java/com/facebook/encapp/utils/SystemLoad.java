@@ -33,6 +33,8 @@ public class SystemLoad {
     HashMap<String, String> mGPUInfo = new HashMap<>();
     ArrayList<String> mGpuLoad = new ArrayList<>();
     ArrayList<String> mGpuClock = new ArrayList<>();
+    // Latest sample kept separately so it can be read without locking
+    volatile int mLatestGpuLoad = -1;
     public void start() {
         // check whether the directory exists
         if (! Files.exists(Paths.get(FILE_QCOM_GPU_INFO_DIR))) {
@@ -70,6 +72,7 @@ public class SystemLoad {
                             //gpu
                             tmp = readSystemData(FILE_QCOM_GPU_BUSY_PERCENTAGE);
                             mGpuLoad.add(tmp.trim());
+                            mLatestGpuLoad = parsePercentage(tmp.trim());
                             tmp = readSystemData(FILE_QCOM_GPU_CLOCK_MHZ);
                             mGpuClock.add(tmp.trim());
                         }
@@ -150,6 +153,22 @@ public class SystemLoad {
         return ret;
     }
 
+    private static int parsePercentage(String line) {
+        int value = 0;
+        int digits = 0;
+        for (; digits < line.length() && Character.isDigit(line.charAt(digits)); digits++) {
+            value = value * 10 + (line.charAt(digits) - '0');
+        }
+        return (digits > 0) ? value : -1;
+    }
+
+    /**
+     * Returns the most recent GPU busy percentage or -1 if no sample is available.
+     */
+    public int getLatestGPULoadPercentage() {
+        return mLatestGpuLoad;
+    }
+
     public ArrayList<String> getGPUClockFreqPerTimeUnit() { return mGpuClock; }
 
     public HashMap<String, String> getGPUInfo() { return mGPUInfo; }
@@ -13,6 +13,7 @@ import com.facebook.encapp.proto.PixFmt;
 import com.facebook.encapp.proto.Test;
 import com.facebook.encapp.utils.MediaCodecInfoHelper;
 
+import java.io.File;
 import java.util.List;
 
 
@@ -172,6 +173,7 @@ public class TestDefinitionHelper {
         Configure.Builder config = test.getConfigure().toBuilder();
         // make sure the input is well-defined
         Input.Builder input = test.getInput().toBuilder();
+        updateY4mInputSettings(input);
         // default configure.encode value is True
         if (!config.hasEncode() || (config.getEncode() == true)) {
             if (!input.hasResolution()) {
@@ -187,9 +189,41 @@ public class TestDefinitionHelper {
         return true;
     }
 
+    /**
+     * Take the input resolution, frame rate and pixel format from the
+     * header of a y4m input, overriding any values set in the test.
+     */
+    public static void updateY4mInputSettings(Input.Builder input) {
+        String path = input.getFilepath();
+        if (!Y4mReader.isY4m(path)) {
+            return;
+        }
+        if (!new File(path).isAbsolute()) {
+            path = CliSettings.getWorkDir() + "/" + path;
+        }
+        Y4mReader.Header header = Y4mReader.readHeader(path);
+        if (header == null || header.pixFmt == null) {
+            Log.e(TAG, "No usable y4m header in " + path);
+            return;
+        }
+        input.setResolution(header.width + "x" + header.height);
+        input.setFramerate(header.framerate);
+        input.setPixFmt(header.pixFmt);
+    }
+
+    public static Test updateY4mInputSettings(Test test) {
+        if (!Y4mReader.isY4m(test.getInput().getFilepath())) {
+            return test;
+        }
+        Input.Builder input = test.getInput().toBuilder();
+        updateY4mInputSettings(input);
+        return test.toBuilder().setInput(input).build();
+    }
+
     public static Test updateBasicSettings(Test test) {
         // get derived values
         Input.Builder input = test.getInput().toBuilder();
+        updateY4mInputSettings(input);
         Configure.Builder config = test.getConfigure().toBuilder();
         if (test.getConfigure().getEncode() && !config.hasBitrate()) {
             throw new RuntimeException("No valid bitrate on configuration settings");
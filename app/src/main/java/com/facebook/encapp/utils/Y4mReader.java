@@ -0,0 +1,479 @@
+package com.facebook.encapp.utils;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.util.Log;
+
+import com.facebook.encapp.proto.PixFmt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads raw frames from a YUV4MPEG2 (.y4m) file.
+ *
+ * The resolution, frame rate and chroma layout come from the stream header.
+ * On open the offset of every frame is indexed, so seeking to a frame is a
+ * lookup. When the first and last frame headers are plain "FRAME" and the
+ * file holds whole frames (the common case) the index is computed from the
+ * header length and frame size, otherwise the frame headers are scanned once
+ * and the index is kept for the next open. Colorspaces other than 8 and
+ * 10 bit 4:2:0 are rejected.
+ *
+ * Frames are read with positional reads straight into the codec buffer or
+ * the Image planes where the layouts match, without intermediate copies.
+ * 10 bit input (C420p10) is converted to P010, the layout codecs take.
+ */
+public class Y4mReader extends FileReader {
+    private static final String TAG = "encapp.y4mreader";
+    private static final String MAGIC = "YUV4MPEG2";
+    private static final String FRAME = "FRAME";
+    // a header line longer than this is not a y4m file
+    private static final int MAX_HEADER_LENGTH = 1024;
+    // scanned indexes kept, a long file has an index of a few hundred kB
+    private static final int MAX_CACHED_INDEXES = 8;
+
+    // scanned frame offsets by path, length and modification time, least
+    // recently used first
+    private static final Map<String, long[]> mIndexCache =
+            new LinkedHashMap<String, long[]>(MAX_CACHED_INDEXES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                    return size() > MAX_CACHED_INDEXES;
+                }
+            };
+
+    /**
+     * Stream parameters from the y4m header.
+     */
+    public static class Header {
+        public int width;
+        public int height;
+        public float framerate;
+        public PixFmt pixFmt;
+        public String colorspace;
+        // length of the stream header including the newline
+        int length;
+    }
+
+    private FileChannel mChannel;
+    private Header mHeader;
+    private int mFrameSize;
+    // offset of the data of every frame
+    private long[] mOffsets;
+    private int mFrame = 0;
+    private int mStartFrame = 0;
+    // start of the file in memory, from the InputCache or preload()
+    private byte[] mHead;
+    private byte[] mScratch;
+
+    public static boolean isY4m(String filepath) {
+        return filepath.toLowerCase(Locale.US).endsWith(".y4m");
+    }
+
+    public Y4mReader() {
+    }
+
+    /**
+     * Start reading at this frame on every open.
+     */
+    public void setStartFrame(int frame) {
+        mStartFrame = Math.max(0, frame);
+    }
+
+    private static String readLine(RandomAccessFile file, long offset) throws IOException {
+        byte[] line = new byte[MAX_HEADER_LENGTH];
+        file.seek(offset);
+        int length = file.read(line);
+        for (int i = 0; i < length; i++) {
+            if (line[i] == '\n') {
+                return new String(line, 0, i, StandardCharsets.US_ASCII);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the colorspace is not supported
+     */
+    private static Header parseHeader(String line) {
+        if (line == null || !line.startsWith(MAGIC)) {
+            return null;
+        }
+        Header header = new Header();
+        header.length = line.length() + 1;
+        header.framerate = 30.0f;
+        header.colorspace = "420jpeg";
+        for (String token : line.substring(MAGIC.length()).trim().split(" +")) {
+            if (token.length() < 2) {
+                continue;
+            }
+            String value = token.substring(1);
+            try {
+                switch (token.charAt(0)) {
+                    case 'W':
+                        header.width = Integer.parseInt(value);
+                        break;
+                    case 'H':
+                        header.height = Integer.parseInt(value);
+                        break;
+                    case 'F':
+                        String[] rate = value.split(":");
+                        float den = (rate.length > 1) ? Float.parseFloat(rate[1]) : 1.0f;
+                        header.framerate = Float.parseFloat(rate[0]) / ((den > 0) ? den : 1.0f);
+                        break;
+                    case 'C':
+                        header.colorspace = value;
+                        break;
+                    default:
+                        // interlacing, aspect ratio and extensions do not matter here
+                }
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "Bad y4m header token: " + token);
+                return null;
+            }
+        }
+        if (header.width <= 0 || header.height <= 0) {
+            return null;
+        }
+        switch (header.colorspace) {
+            case "420":
+            case "420jpeg":
+            case "420paldv":
+            case "420mpeg2":
+                // the 8 bit 4:2:0 variants only differ in chroma siting
+                header.pixFmt = PixFmt.yuv420p;
+                break;
+            case "420p10":
+                header.pixFmt = PixFmt.yuv420p10le;
+                break;
+            default:
+                // other depths (420p12, 420p16) and subsamplings have no pix_fmt
+                throw new IllegalArgumentException("Unsupported y4m colorspace: C" + header.colorspace);
+        }
+        return header;
+    }
+
+    /**
+     * @return the stream header of the file, or null if it is not a readable y4m file
+     */
+    public static Header readHeader(String path) {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            return parseHeader(readLine(file, 0));
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to read y4m header of " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Index the frame data offsets, computed when possible, otherwise scanned.
+     */
+    private static long[] buildIndex(File file, RandomAccessFile raf, Header header, int frameSize)
+            throws IOException {
+        long length = raf.length();
+        long stride = FRAME.length() + 1 + frameSize;
+        // a frame header with parameters between plain first and last ones
+        // would also have to add up to whole frames, which is not expected
+        if ((length - header.length) % stride == 0 && length > header.length &&
+                FRAME.equals(readLine(raf, header.length)) &&
+                FRAME.equals(readLine(raf, length - stride))) {
+            int frames = (int) ((length - header.length) / stride);
+            long[] offsets = new long[frames];
+            for (int i = 0; i < frames; i++) {
+                offsets[i] = header.length + i * stride + FRAME.length() + 1;
+            }
+            return offsets;
+        }
+        String key = file.getAbsolutePath() + ":" + length + ":" + file.lastModified();
+        synchronized (mIndexCache) {
+            long[] cached = mIndexCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // frame headers carry parameters, walk them once
+        long[] offsets = new long[(int) Math.max(16, (length - header.length) / (frameSize + FRAME.length() + 1))];
+        int frames = 0;
+        long offset = header.length;
+        while (offset < length) {
+            String line = readLine(raf, offset);
+            if (line == null || !line.startsWith(FRAME)) {
+                Log.e(TAG, "Bad y4m frame header at " + offset + " in " + file);
+                break;
+            }
+            long data = offset + line.length() + 1;
+            if (data + frameSize > length) {
+                Log.w(TAG, "Truncated last frame in " + file);
+                break;
+            }
+            if (frames == offsets.length) {
+                long[] grown = new long[2 * frames];
+                System.arraycopy(offsets, 0, grown, 0, frames);
+                offsets = grown;
+            }
+            offsets[frames++] = data;
+            offset = data + frameSize;
+        }
+        long[] index = new long[frames];
+        System.arraycopy(offsets, 0, index, 0, frames);
+        synchronized (mIndexCache) {
+            mIndexCache.put(key, index);
+        }
+        return index;
+    }
+
+    @Override
+    public boolean openFile(String name, PixFmt pixFmt) {
+        Log.i(TAG, "Y4mReader.openFile: name: " + name);
+        closeFile();
+        RandomAccessFile raf = null;
+        try {
+            File file = new File(name);
+            raf = new RandomAccessFile(file, "r");
+            Header header = parseHeader(readLine(raf, 0));
+            if (header == null) {
+                Log.e(TAG, "Not a y4m file: " + name);
+                raf.close();
+                return false;
+            }
+            if (pixFmt != null && pixFmt != header.pixFmt) {
+                Log.w(TAG, "Input pix_fmt " + pixFmt + " does not match the y4m header, using " + header.pixFmt);
+            }
+            int frameSize = getFrameSize(header.pixFmt, header.width, header.height);
+            long[] offsets = buildIndex(file, raf, header, frameSize);
+            byte[] head = InputCache.get(name);
+            synchronized (this) {
+                mHeader = header;
+                mPixFmt = header.pixFmt;
+                mFrameWidth = header.width;
+                mFrameHeight = header.height;
+                mFrameSize = frameSize;
+                mOffsets = offsets;
+                mFrame = Math.min(mStartFrame, offsets.length);
+                mHead = head;
+                mCached = (head != null);
+                mFile = file;
+                mChannel = raf.getChannel();
+            }
+            Log.d(TAG, name + ": " + header.width + "x" + header.height + " @ " + header.framerate +
+                    " fps, " + offsets.length + " frames");
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to open file: " + name + ", " + e.getMessage());
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    public Header getHeader() {
+        return mHeader;
+    }
+
+    public int getFrameCount() {
+        return (mOffsets != null) ? mOffsets.length : 0;
+    }
+
+    /**
+     * Make frame the next frame to be read.
+     */
+    public synchronized boolean seekFrame(int frame) {
+        if (mOffsets == null || frame < 0 || frame >= mOffsets.length) {
+            return false;
+        }
+        mFrame = frame;
+        return true;
+    }
+
+    @Override
+    public int preload(int bytes) {
+        synchronized (this) {
+            if (isClosed() || bytes <= 0 || mCached) {
+                return 0;
+            }
+            int size = (int) Math.min(bytes, mOffsets.length > 0 ?
+                    mOffsets[mOffsets.length - 1] + mFrameSize : 0);
+            ByteBuffer head = ByteBuffer.allocate(size);
+            try {
+                while (head.hasRemaining()) {
+                    if (mChannel.read(head, head.position()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to preload: " + e.getMessage());
+                return 0;
+            }
+            mHead = head.array();
+            return head.position();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        synchronized (this) {
+            return (mChannel == null);
+        }
+    }
+
+    @Override
+    public void closeFile() {
+        synchronized (this) {
+            if (mChannel != null) {
+                Log.i(TAG, "Close file");
+                try {
+                    mChannel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                mChannel = null;
+            }
+            mHead = null;
+        }
+    }
+
+    /**
+     * Read length bytes at offset into dst at its position, from memory if preloaded.
+     */
+    private boolean read(ByteBuffer dst, long offset, int length) throws IOException {
+        byte[] head = mHead;
+        if (head != null) {
+            if (offset + length <= head.length) {
+                dst.put(head, (int) offset, length);
+                return true;
+            }
+            if (!mCached) {
+                // past the preloaded frames, the rest is read from the file
+                mHead = null;
+            }
+        }
+        ByteBuffer target = dst.duplicate();
+        target.limit(target.position() + length);
+        while (target.hasRemaining()) {
+            if (mChannel.read(target, offset + target.position() - dst.position()) < 0) {
+                return false;
+            }
+        }
+        dst.position(target.position());
+        return true;
+    }
+
+    /**
+     * @return data offset of the next frame, or -1 at the end of the file
+     */
+    private long nextFrameOffset() {
+        if (isClosed() || mFrame >= mOffsets.length) {
+            return -1;
+        }
+        return mOffsets[mFrame++];
+    }
+
+    private boolean readScratch(long offset) throws IOException {
+        if (mScratch == null || mScratch.length != mFrameSize) {
+            mScratch = new byte[mFrameSize];
+        }
+        return read(ByteBuffer.wrap(mScratch), offset, mFrameSize);
+    }
+
+    @Override
+    public int fillBuffer(ByteBuffer byteBuffer, int size) {
+        synchronized (this) {
+            if (isClosed()) {
+                return -1;
+            }
+            // checked first so that the frame is not skipped
+            if (byteBuffer.remaining() < mFrameSize) {
+                Log.e(TAG, "error: not enough space in ByteBuffer (capacity: " + byteBuffer.capacity() +
+                        ") to copy size: " + mFrameSize + " bytes");
+                return 0;
+            }
+            long offset = nextFrameOffset();
+            if (offset < 0) {
+                return -1;
+            }
+            try {
+                if (is10Bit(mPixFmt)) {
+                    if (!readScratch(offset)) {
+                        return -1;
+                    }
+                    PlaneCopier.planar10ToP010(mScratch, 0, byteBuffer, mFrameWidth, mFrameHeight);
+                    return mFrameSize;
+                }
+                return read(byteBuffer, offset, mFrameSize) ? mFrameSize : -1;
+            } catch (IOException e) {
+                Log.e(TAG, "error: " + e.getMessage());
+                return 0;
+            }
+        }
+    }
+
+    @Override
+    public int fillImage(Image image) {
+        synchronized (this) {
+            if (isClosed()) {
+                return -1;
+            }
+            int width = mHeader.width;
+            int height = mHeader.height;
+            int format = is10Bit(mPixFmt) ? ImageFormat.YCBCR_P010 : ImageFormat.YUV_420_888;
+            if (image.getFormat() != format ||
+                    image.getWidth() != width || image.getHeight() != height) {
+                Log.e(TAG, "fillImage: image " + image.getWidth() + "x" + image.getHeight() +
+                        " format " + image.getFormat() + " does not match " + width + "x" + height);
+                return 0;
+            }
+            long offset = nextFrameOffset();
+            if (offset < 0) {
+                return -1;
+            }
+            Image.Plane[] planes = image.getPlanes();
+            try {
+                if (is10Bit(mPixFmt) || planes[1].getPixelStride() != 1 || planes[2].getPixelStride() != 1) {
+                    // interleaved chroma or shifted samples, copy from a frame in memory
+                    if (!readScratch(offset)) {
+                        return -1;
+                    }
+                    return copyToImage(mScratch, image);
+                }
+                // planar, read every plane (or row) in place
+                long planeOffset = offset;
+                for (int planeid = 0; planeid < planes.length; planeid++) {
+                    int planeWidth = (planeid == 0) ? width : width / 2;
+                    int planeHeight = (planeid == 0) ? height : height / 2;
+                    ByteBuffer buf = planes[planeid].getBuffer();
+                    int rowStride = planes[planeid].getRowStride();
+                    if (rowStride == planeWidth) {
+                        buf.position(0);
+                        if (!read(buf, planeOffset, planeWidth * planeHeight)) {
+                            return -1;
+                        }
+                    } else {
+                        for (int row = 0; row < planeHeight; row++) {
+                            buf.position(row * rowStride);
+                            if (!read(buf, planeOffset + (long) row * planeWidth, planeWidth)) {
+                                return -1;
+                            }
+                        }
+                    }
+                    planeOffset += (long) planeWidth * planeHeight;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "error IOException: " + e.getMessage());
+                return 0;
+            }
+            return mFrameSize;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class Av1AnalyzerTest {
+    private static final int OBU_SEQUENCE_HEADER = 1;
+    private static final int OBU_TEMPORAL_DELIMITER = 2;
+    private static final int OBU_FRAME = 6;
+    // tile data after the frame header
+    private static final byte[] TILES = {0x12, 0x34, 0x56, 0x78, (byte) 0x9a};
+
+    private BitstreamAnalyzer mAnalyzer;
+
+    @Before
+    public void setUp() {
+        mAnalyzer = BitstreamAnalyzer.forMime("video/av01");
+        assertTrue(parse(obu(OBU_SEQUENCE_HEADER, -1, sequenceHeader()), true));
+    }
+
+    private boolean parse(byte[] data, boolean config) {
+        return mAnalyzer.parse(ByteBuffer.wrap(data), 0, data.length, 0, config);
+    }
+
+    /**
+     * @param temporalId -1 for an obu without the extension header
+     */
+    private static byte[] obu(int type, int temporalId, byte[] payload) {
+        BitWriter writer = new BitWriter().flag(false).bits(type, 4).flag(temporalId >= 0).flag(true).flag(false);
+        if (temporalId >= 0) {
+            writer.bits(temporalId, 3).bits(0, 2).bits(0, 3);
+        }
+        return writer.leb128(payload.length).bytes(payload).toByteArray();
+    }
+
+    private static byte[] temporalUnit(byte[]... obus) {
+        byte[][] parts = new byte[obus.length + 1][];
+        parts[0] = obu(OBU_TEMPORAL_DELIMITER, -1, new byte[0]);
+        System.arraycopy(obus, 0, parts, 1, obus.length);
+        return BitWriter.concat(parts);
+    }
+
+    /**
+     * 640x480, one operating point, order hint in 7 bits, screen content
+     * tools selected per frame.
+     */
+    private static byte[] sequenceHeader() {
+        return new BitWriter()
+                .bits(0, 3).flag(false).flag(false)
+                .flag(false).flag(false).bits(0, 5)
+                .bits(0, 12).bits(4, 5)
+                .bits(9, 4).bits(9, 4).bits(639, 10).bits(479, 10)
+                .flag(false).flag(false).flag(true).flag(true)
+                .bits(0, 4)
+                // enable_order_hint, enable_jnt_comp, enable_ref_frame_mvs
+                .flag(true).flag(false).flag(false)
+                // seq_choose_screen_content_tools, seq_choose_integer_mv
+                .flag(true).flag(true)
+                .bits(6, 3)
+                .flag(false)
+                // cdef, restoration and color_config() are not read
+                .bits(0x5a, 8)
+                .trailing().toByteArray();
+    }
+
+    private static byte[] keyFrame(int baseQIdx) {
+        return new BitWriter()
+                .flag(false).bits(0, 2).flag(true)
+                // disable_cdf_update, allow_screen_content_tools, frame_size_override_flag
+                .flag(false).flag(false).flag(false)
+                .bits(0, 7)
+                // render_and_frame_size_different, disable_frame_end_update_cdf
+                .flag(false).flag(false)
+                // uniform tile spacing, one tile
+                .flag(true).flag(false).flag(false)
+                .bits(baseQIdx, 8)
+                .align().bytes(TILES).toByteArray();
+    }
+
+    private static byte[] interFrame(boolean show, int refresh, int baseQIdx) {
+        BitWriter writer = new BitWriter().flag(false).bits(1, 2).flag(show);
+        if (!show) {
+            // showable_frame
+            writer.flag(true);
+        }
+        return writer
+                // error_resilient_mode, disable_cdf_update, allow_screen_content_tools
+                .flag(false).flag(false).flag(false)
+                .flag(false).bits(1, 7)
+                // primary_ref_frame
+                .bits(7, 3)
+                .bits(refresh, 8)
+                // frame_refs_short_signaling, ref_frame_idx
+                .flag(false).bits(0, 21)
+                .flag(false)
+                // allow_high_precision_mv, is_filter_switchable, is_motion_mode_switchable
+                .flag(true).flag(true).flag(false)
+                .flag(false)
+                .flag(true).flag(false).flag(false)
+                .bits(baseQIdx, 8)
+                .align().bytes(TILES).toByteArray();
+    }
+
+    @Test
+    public void sequenceHeaderIsConfig() {
+        assertEquals(0, mAnalyzer.getFrameCount());
+        assertEquals(0, mAnalyzer.getErrors());
+        assertEquals(obu(OBU_SEQUENCE_HEADER, -1, sequenceHeader()).length, mAnalyzer.getConfigBytes());
+    }
+
+    @Test
+    public void keyFrame() {
+        byte[] unit = temporalUnit(obu(OBU_FRAME, -1, keyFrame(100)));
+        assertTrue(parse(unit, false));
+        assertEquals("key", mAnalyzer.getFrameType());
+        assertEquals(100, mAnalyzer.getQp());
+        assertEquals(0, mAnalyzer.getTemporalId());
+        assertTrue(mAnalyzer.isReference());
+        assertFalse(mAnalyzer.isLtrMark());
+        // the tile data
+        assertEquals(TILES.length, mAnalyzer.getPayloadBytes());
+        assertEquals(unit.length, mAnalyzer.getHeaderBytes() + mAnalyzer.getPayloadBytes());
+    }
+
+    @Test
+    public void temporalIdFromTheObuExtension() {
+        assertTrue(parse(temporalUnit(obu(OBU_FRAME, -1, keyFrame(90))), false));
+        assertTrue(parse(temporalUnit(obu(OBU_FRAME, 2, interFrame(true, 0, 180))), false));
+        assertEquals("inter", mAnalyzer.getFrameType());
+        assertEquals(2, mAnalyzer.getTemporalId());
+        assertEquals(180, mAnalyzer.getQp());
+        assertFalse(mAnalyzer.isReference());
+
+        assertTrue(parse(temporalUnit(obu(OBU_FRAME, 1, interFrame(true, 0x02, 120))), false));
+        assertEquals("inter", mAnalyzer.getFrameType());
+        assertEquals(1, mAnalyzer.getTemporalId());
+        assertEquals(120, mAnalyzer.getQp());
+        assertTrue(mAnalyzer.isReference());
+
+        assertEquals(3, mAnalyzer.getLayers().size());
+        assertEquals(2, mAnalyzer.getReferenceFrames());
+        assertEquals(0, mAnalyzer.getErrors());
+    }
+
+    @Test
+    public void valuesOfTheShownFrame() {
+        assertTrue(parse(temporalUnit(obu(OBU_FRAME, -1, keyFrame(90))), false));
+        byte[] unit = temporalUnit(obu(OBU_FRAME, 0, interFrame(false, 0x04, 60)),
+                obu(OBU_FRAME, 0, interFrame(true, 0, 150)));
+        assertTrue(parse(unit, false));
+        assertEquals("inter", mAnalyzer.getFrameType());
+        assertEquals(150, mAnalyzer.getQp());
+        // the hidden frame is a reference
+        assertTrue(mAnalyzer.isReference());
+        assertEquals(2 * TILES.length, mAnalyzer.getPayloadBytes());
+        assertEquals(unit.length, mAnalyzer.getHeaderBytes() + mAnalyzer.getPayloadBytes());
+    }
+
+    @Test
+    public void av1cConfigRecord() {
+        mAnalyzer = BitstreamAnalyzer.forMime("video/av01");
+        byte[] av1c = BitWriter.concat(new byte[]{(byte) 0x81, 0x04, 0x0c, 0x00},
+                obu(OBU_SEQUENCE_HEADER, -1, sequenceHeader()));
+        assertTrue(parse(av1c, true));
+        assertTrue(parse(temporalUnit(obu(OBU_FRAME, -1, keyFrame(42))), false));
+        assertEquals(42, mAnalyzer.getQp());
+    }
+
+    @Test
+    public void frameWithoutSequenceHeader() {
+        mAnalyzer = BitstreamAnalyzer.forMime("video/av01");
+        byte[] unit = temporalUnit(obu(OBU_FRAME, -1, keyFrame(42)));
+        assertFalse(parse(unit, false));
+        assertEquals(1, mAnalyzer.getErrors());
+        assertEquals(1, mAnalyzer.getFrameCount());
+        assertEquals(-1, mAnalyzer.getQp());
+    }
+
+    @Test
+    public void obuSizeBeyondTheBuffer() {
+        byte[] unit = temporalUnit(obu(OBU_FRAME, -1, keyFrame(42)));
+        byte[] truncated = new byte[unit.length - 2];
+        System.arraycopy(unit, 0, truncated, 0, truncated.length);
+        assertFalse(parse(truncated, false));
+        assertEquals(1, mAnalyzer.getErrors());
+    }
+}
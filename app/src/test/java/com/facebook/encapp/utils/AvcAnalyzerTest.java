@@ -0,0 +1,189 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class AvcAnalyzerTest {
+    // slice data, with a 00 00 00 that needs emulation prevention
+    private static final byte[] PAYLOAD = {0x11, 0x22, 0x00, 0x00, 0x00, 0x33, 0x44, 0x55};
+
+    private BitstreamAnalyzer mAnalyzer;
+
+    @Before
+    public void setUp() {
+        mAnalyzer = BitstreamAnalyzer.forMime("video/avc");
+        assertTrue(parse(BitWriter.annexB(sps(), pps()), true));
+    }
+
+    private boolean parse(byte[] data, boolean config) {
+        // the frame does not start at the beginning of the buffer
+        ByteBuffer buffer = ByteBuffer.allocate(data.length + 16);
+        buffer.position(7);
+        buffer.put(data);
+        return mAnalyzer.parse(buffer, 7, data.length, 0, config);
+    }
+
+    /**
+     * Baseline 320x240, frame_num in 4 bits, poc type 2.
+     */
+    private static byte[] sps() {
+        return new BitWriter()
+                .bits(0x67, 8)
+                .bits(66, 8).bits(0xc0, 8).bits(30, 8)
+                .ue(0).ue(0).ue(2).ue(1).flag(false)
+                .ue(19).ue(14).flag(true).flag(true).flag(false).flag(false)
+                .trailing().toByteArray();
+    }
+
+    /**
+     * cavlc, pic_init_qp 26, with deblocking filter control.
+     */
+    private static byte[] pps() {
+        return new BitWriter()
+                .bits(0x68, 8)
+                .ue(0).ue(0).flag(false).flag(false).ue(0)
+                .ue(0).ue(0).flag(false).bits(0, 2)
+                .se(0).se(0).se(0)
+                .flag(true).flag(false).flag(false)
+                .trailing().toByteArray();
+    }
+
+    private static byte[] idr(int qpDelta, boolean longTerm) {
+        return new BitWriter()
+                .bits(0x65, 8)
+                // first_mb, I slice, pps, frame_num, idr_pic_id
+                .ue(0).ue(7).ue(0).bits(0, 4).ue(0)
+                // no_output_of_prior_pics, long_term_reference_flag
+                .flag(false).flag(longTerm)
+                .se(qpDelta)
+                // disable_deblocking_filter_idc
+                .ue(1)
+                .trailing().bytes(PAYLOAD).toByteArray();
+    }
+
+    private static byte[] pSlice(int nalRefIdc, int qpDelta, boolean longTermRef) {
+        BitWriter writer = new BitWriter()
+                .bits((nalRefIdc << 5) | 1, 8)
+                .ue(0).ue(5).ue(0).bits(1, 4)
+                // num_ref_idx_active_override_flag
+                .flag(false);
+        if (longTermRef) {
+            // ref_pic_list_modification with long_term_pic_num 0
+            writer.flag(true).ue(2).ue(0).ue(3);
+        } else {
+            writer.flag(false);
+        }
+        if (nalRefIdc != 0) {
+            // adaptive_ref_pic_marking_mode_flag
+            writer.flag(false);
+        }
+        return writer.se(qpDelta).ue(1).trailing().bytes(PAYLOAD).toByteArray();
+    }
+
+    /**
+     * svc prefix nal unit with the temporal_id
+     */
+    private static byte[] prefix(int temporalId) {
+        return new byte[]{0x6e, (byte) 0x80, 0x00, (byte) ((temporalId << 5) | 3)};
+    }
+
+    @Test
+    public void configIsNotAFrame() {
+        assertEquals(0, mAnalyzer.getFrameCount());
+        assertEquals(4 + sps().length + 4 + pps().length, mAnalyzer.getConfigBytes());
+        assertEquals(0, mAnalyzer.getErrors());
+    }
+
+    @Test
+    public void idrSlice() {
+        byte[] frame = BitWriter.annexB(idr(-4, false));
+        assertTrue(parse(frame, false));
+        assertEquals("I", mAnalyzer.getFrameType());
+        assertEquals(22, mAnalyzer.getQp());
+        assertEquals(0, mAnalyzer.getTemporalId());
+        assertTrue(mAnalyzer.isReference());
+        assertFalse(mAnalyzer.isLtrMark());
+        assertEquals(1, mAnalyzer.getFrameCount());
+        // the slice data with the emulation prevention byte is payload
+        assertEquals(PAYLOAD.length + 1, mAnalyzer.getPayloadBytes());
+        assertEquals(frame.length, mAnalyzer.getHeaderBytes() + mAnalyzer.getPayloadBytes());
+    }
+
+    @Test
+    public void sliceWithParameterSets() {
+        assertTrue(parse(BitWriter.annexB(idr(2, false)), false));
+        int payloadBytes = mAnalyzer.getPayloadBytes();
+        byte[] frame = BitWriter.annexB(sps(), pps(), idr(2, false));
+        assertTrue(parse(frame, false));
+        assertEquals("I", mAnalyzer.getFrameType());
+        assertEquals(28, mAnalyzer.getQp());
+        // the parameter sets are headers
+        assertEquals(payloadBytes, mAnalyzer.getPayloadBytes());
+        assertEquals(frame.length, mAnalyzer.getHeaderBytes() + mAnalyzer.getPayloadBytes());
+    }
+
+    @Test
+    public void pSlice() {
+        assertTrue(parse(BitWriter.annexB(pSlice(2, 3, false)), false));
+        assertEquals("P", mAnalyzer.getFrameType());
+        assertEquals(29, mAnalyzer.getQp());
+        assertTrue(mAnalyzer.isReference());
+        assertFalse(mAnalyzer.isLtrUse());
+
+        assertTrue(parse(BitWriter.annexB(pSlice(0, -10, false)), false));
+        assertEquals("P", mAnalyzer.getFrameType());
+        assertEquals(16, mAnalyzer.getQp());
+        assertFalse(mAnalyzer.isReference());
+        assertEquals(1, mAnalyzer.getReferenceFrames());
+    }
+
+    @Test
+    public void longTermReferences() {
+        assertTrue(parse(BitWriter.annexB(idr(0, true)), false));
+        assertTrue(mAnalyzer.isLtrMark());
+        assertTrue(parse(BitWriter.annexB(pSlice(2, 0, true)), false));
+        assertFalse(mAnalyzer.isLtrMark());
+        assertTrue(mAnalyzer.isLtrUse());
+        assertEquals(26, mAnalyzer.getQp());
+    }
+
+    @Test
+    public void temporalIdFromThePrefixNal() {
+        assertTrue(parse(BitWriter.annexB(idr(0, false)), false));
+        assertTrue(parse(BitWriter.annexB(prefix(2), pSlice(0, 0, false)), false));
+        assertEquals(2, mAnalyzer.getTemporalId());
+        assertEquals("P", mAnalyzer.getFrameType());
+        assertTrue(parse(BitWriter.annexB(prefix(1), pSlice(2, 0, false)), false));
+        assertEquals(1, mAnalyzer.getTemporalId());
+
+        assertEquals(3, mAnalyzer.getLayers().size());
+        for (BitstreamAnalyzer.Layer layer : mAnalyzer.getLayers()) {
+            assertEquals(1, layer.getFrames());
+        }
+    }
+
+    @Test
+    public void unknownParameterSetsOnlyGiveTheType() {
+        mAnalyzer = BitstreamAnalyzer.forMime("video/avc");
+        assertTrue(parse(BitWriter.annexB(idr(0, false)), false));
+        assertEquals("I", mAnalyzer.getFrameType());
+        assertEquals(-1, mAnalyzer.getQp());
+    }
+
+    @Test
+    public void truncatedSliceIsAnError() {
+        byte[] slice = pSlice(2, 0, false);
+        byte[] truncated = new byte[3];
+        System.arraycopy(slice, 0, truncated, 0, truncated.length);
+        assertFalse(parse(BitWriter.annexB(truncated), false));
+        assertEquals(1, mAnalyzer.getErrors());
+        // still counted as a frame
+        assertEquals(1, mAnalyzer.getFrameCount());
+    }
+}
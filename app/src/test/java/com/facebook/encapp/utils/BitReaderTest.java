@@ -0,0 +1,131 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class BitReaderTest {
+    private static BitReader reader(byte[] data, boolean emulationPrevention) {
+        return new BitReader().reset(ByteBuffer.wrap(data), 0, data.length, emulationPrevention);
+    }
+
+    @Test
+    public void bitsAcrossBytes() {
+        BitReader reader = reader(new byte[]{(byte) 0xa5, 0x0f, (byte) 0xff, 0x01}, false);
+        assertTrue(reader.readFlag());
+        assertEquals(0, reader.readBit());
+        assertEquals(0x9, reader.readBits(4));
+        assertEquals(0x43, reader.readBits(8));
+        assertEquals(2, reader.getBytesRead());
+        reader.byteAlign();
+        assertEquals(0xff01, reader.readBits(16));
+        assertEquals(4, reader.getBytesRead());
+    }
+
+    @Test
+    public void readBitsOf32() {
+        BitReader reader = reader(new byte[]{(byte) 0xff, (byte) 0xfe, 0x00, 0x01}, false);
+        assertEquals(0xfffe0001L, reader.readBits(32));
+    }
+
+    @Test
+    public void expGolomb() {
+        int[] values = {0, 1, 2, 3, 7, 8, 254, 255, 65535, 1 << 20};
+        BitWriter writer = new BitWriter();
+        for (int value : values) {
+            writer.ue(value).se(value).se(-value);
+        }
+        BitReader reader = reader(writer.trailing().toByteArray(), false);
+        for (int value : values) {
+            assertEquals(value, reader.readUe());
+            assertEquals(value, reader.readSe());
+            assertEquals(-value, reader.readSe());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalidExpGolomb() {
+        reader(new byte[]{0, 0, 0, 0, 0x01}, false).readUe();
+    }
+
+    @Test
+    public void emulationPreventionIsSkipped() {
+        byte[] data = {0x00, 0x00, 0x03, 0x01, 0x00, 0x00, 0x03, 0x03, 0x7f};
+        BitReader reader = reader(data, true);
+        assertEquals(0x000001L, reader.readBits(24));
+        assertEquals(4, reader.getBytesRead());
+        assertEquals(0x000003L, reader.readBits(24));
+        assertEquals(0x7f, reader.readBits(8));
+        assertEquals(data.length, reader.getBytesRead());
+
+        // not for AV1
+        reader = reader(data, false);
+        assertEquals(0x000003L, reader.readBits(24));
+    }
+
+    @Test
+    public void readsFromTheMiddleOfTheBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{0x11, 0x22, 0x33, 0x44});
+        buffer.position(3);
+        BitReader reader = new BitReader().reset(buffer, 1, 3, false);
+        assertEquals(0x2233, reader.readBits(16));
+        assertEquals(3, reader.getPosition());
+        // the position of the buffer is not changed
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void leb128() {
+        BitReader reader = reader(new BitWriter().leb128(0).leb128(127).leb128(128).leb128(1L << 34)
+                .toByteArray(), false);
+        assertEquals(0, reader.readLeb128());
+        assertEquals(127, reader.readLeb128());
+        assertEquals(128, reader.readLeb128());
+        assertEquals(1L << 34, reader.readLeb128());
+    }
+
+    @Test
+    public void uvlcAndNs() {
+        // uvlc 0, 1, 6
+        BitReader reader = reader(new BitWriter().bits(1, 1).bits(2, 3).bits(0x7, 5)
+                .trailing().toByteArray(), false);
+        assertEquals(0, reader.readUvlc());
+        assertEquals(1, reader.readUvlc());
+        assertEquals(6, reader.readUvlc());
+
+        // ns(5): 0 - 2 in two bits, 3 and 4 in three bits
+        reader = reader(new BitWriter().bits(2, 2).bits(6, 3).bits(7, 3).trailing().toByteArray(), false);
+        assertEquals(2, reader.readNs(5));
+        assertEquals(3, reader.readNs(5));
+        assertEquals(4, reader.readNs(5));
+    }
+
+    @Test
+    public void endOfData() {
+        BitReader reader = reader(new byte[]{0x01, 0x02}, false);
+        reader.skipBits(16);
+        boolean thrown = false;
+        try {
+            reader.readBit();
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+
+        // the emulation prevention byte is the last one
+        reader = reader(new byte[]{0x00, 0x00, 0x03}, true);
+        reader.readBits(16);
+        thrown = false;
+        try {
+            reader.readBits(8);
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+        assertFalse(reader.getBytesRead() > 3);
+    }
+}
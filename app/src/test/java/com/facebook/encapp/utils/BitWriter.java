@@ -0,0 +1,115 @@
+package com.facebook.encapp.utils;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Writes bits msb first, to build the headers the analyzers parse.
+ */
+class BitWriter {
+    private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+    private int mCurrent = 0;
+    private int mBits = 0;
+
+    BitWriter bits(long value, int bits) {
+        for (int i = bits - 1; i >= 0; i--) {
+            mCurrent = (mCurrent << 1) | (int) ((value >> i) & 1);
+            if (++mBits == 8) {
+                mBytes.write(mCurrent);
+                mCurrent = 0;
+                mBits = 0;
+            }
+        }
+        return this;
+    }
+
+    BitWriter flag(boolean value) {
+        return bits(value ? 1 : 0, 1);
+    }
+
+    /**
+     * Exp-Golomb ue(v)
+     */
+    BitWriter ue(int value) {
+        long code = value + 1L;
+        int length = 64 - Long.numberOfLeadingZeros(code);
+        bits(0, length - 1);
+        return bits(code, length);
+    }
+
+    /**
+     * Exp-Golomb se(v)
+     */
+    BitWriter se(int value) {
+        return ue((value > 0) ? 2 * value - 1 : -2 * value);
+    }
+
+    /**
+     * AV1 leb128()
+     */
+    BitWriter leb128(long value) {
+        do {
+            int b = (int) (value & 0x7f);
+            value >>>= 7;
+            bits((value != 0) ? b | 0x80 : b, 8);
+        } while (value != 0);
+        return this;
+    }
+
+    BitWriter bytes(byte[] data) {
+        for (byte b : data) {
+            bits(b & 0xff, 8);
+        }
+        return this;
+    }
+
+    /**
+     * rbsp_trailing_bits(), a one bit and zeros to the byte boundary.
+     */
+    BitWriter trailing() {
+        bits(1, 1);
+        return align();
+    }
+
+    BitWriter align() {
+        while (mBits != 0) {
+            bits(0, 1);
+        }
+        return this;
+    }
+
+    byte[] toByteArray() {
+        align();
+        return mBytes.toByteArray();
+    }
+
+    /**
+     * @return the nal units with start codes and emulation prevention bytes
+     */
+    static byte[] annexB(byte[]... nals) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] nal : nals) {
+            stream.write(0);
+            stream.write(0);
+            stream.write(0);
+            stream.write(1);
+            int zeros = 0;
+            for (byte b : nal) {
+                if (zeros >= 2 && (b & 0xff) <= 3) {
+                    stream.write(3);
+                    zeros = 0;
+                }
+                stream.write(b);
+                zeros = (b == 0) ? zeros + 1 : 0;
+            }
+        }
+        return stream.toByteArray();
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            stream.write(part, 0, part.length);
+        }
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,125 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BufferBasedControllerTest {
+    private static final long MS = 1000000L;
+    private static final long FRAME_INTERVAL_NS = 33 * MS;
+    private static final int MIN_BITRATE = 200000;
+    private static final int MAX_BITRATE = 2000000;
+
+    private BufferBasedController mController;
+    private int mBitrate;
+    private float mFramerate;
+    private long mTimeNs;
+    private String mLastReason;
+
+    private void start(int startBitrate) {
+        // reservoir below 100 ms, minimum bitrate above 500 ms
+        mController = new BufferBasedController(startBitrate, MIN_BITRATE, MAX_BITRATE,
+                100 * MS, 500 * MS, 30, 1000 * MS);
+        mBitrate = startBitrate;
+        mFramerate = 30;
+        mTimeNs = 0;
+        mLastReason = null;
+    }
+
+    private BitrateController.Decision frame(long queueDelayNs, boolean lost) {
+        BitrateController.Feedback feedback = new BitrateController.Feedback();
+        feedback.mQueueDelayNs = queueDelayNs;
+        feedback.mTimeNs = mTimeNs;
+        feedback.mLost = lost;
+        mTimeNs += FRAME_INTERVAL_NS;
+        BitrateController.Decision decision = mController.onFrame(feedback);
+        if (decision != null) {
+            if (decision.getBitrate() > 0) {
+                mBitrate = decision.getBitrate();
+            }
+            if (decision.getFramerate() > 0) {
+                mFramerate = decision.getFramerate();
+            }
+            mLastReason = decision.getReason();
+        }
+        return decision;
+    }
+
+    @Test
+    public void reservoirIncreasesStepwiseToTheMaximum() {
+        start(1000000);
+        BitrateController.Decision decision = frame(0, false);
+        assertNotNull(decision);
+        assertEquals(1100000, decision.getBitrate());
+        assertEquals("reservoir", decision.getReason());
+        // at most one increase per 200 ms
+        for (int i = 0; i < 5; i++) {
+            assertNull(frame(0, false));
+        }
+        int previous = mBitrate;
+        for (int i = 0; i < 300; i++) {
+            frame(0, false);
+            assertTrue(mBitrate <= previous * 1.10 + 1);
+            previous = mBitrate;
+        }
+        assertEquals(MAX_BITRATE, mBitrate);
+    }
+
+    @Test
+    public void fullBufferDropsToTheMinimumAtOnce() {
+        start(MAX_BITRATE);
+        for (int i = 0; i < 30; i++) {
+            frame(800 * MS, false);
+        }
+        assertEquals(MIN_BITRATE, mBitrate);
+        assertEquals("upper", mLastReason);
+    }
+
+    @Test
+    public void cushionMapsTheDelayLinearly() {
+        start(MAX_BITRATE);
+        // half way between the low and high delay
+        for (int i = 0; i < 100; i++) {
+            frame(300 * MS, false);
+        }
+        assertEquals("cushion", mLastReason);
+        int middle = (MIN_BITRATE + MAX_BITRATE) / 2;
+        // changes under 5% are not applied
+        assertEquals(middle, mBitrate, 0.05 * middle);
+    }
+
+    @Test
+    public void framerateIsHalvedAndRestored() {
+        start(MIN_BITRATE);
+        frame(800 * MS, false);
+        assertEquals(15, mFramerate, 0.01);
+        // at most once per second
+        for (int i = 0; i < 10; i++) {
+            frame(800 * MS, false);
+        }
+        assertEquals(15, mFramerate, 0.01);
+        for (int i = 0; i < 200; i++) {
+            frame(800 * MS, false);
+        }
+        assertEquals(5, mFramerate, 0.01);
+
+        for (int i = 0; i < 100; i++) {
+            frame(0, false);
+        }
+        assertEquals(30, mFramerate, 0.01);
+    }
+
+    @Test
+    public void syncIsRequestedOnLoss() {
+        start(MAX_BITRATE);
+        BitrateController.Decision decision = frame(0, true);
+        assertNotNull(decision);
+        assertTrue(decision.isRequestSync());
+        decision = frame(0, true);
+        assertFalse(decision != null && decision.isRequestSync());
+    }
+}
@@ -0,0 +1,181 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+public class ChannelEmulatorTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void tokenBucketDrainsAtTheBandwidth() {
+        // 1 Mbps, 12500 byte frames take 100 ms each
+        ChannelEmulator channel = new ChannelEmulator(1).setBandwidth(1000000).setBurst(1000);
+        ChannelEmulator.Frame frame = null;
+        for (int i = 0; i < 100; i++) {
+            frame = channel.send(i, 12500, 0);
+            assertFalse(frame.isDropped());
+        }
+        // the first 1000 bytes go with the burst
+        long expectedNs = (long) ((100 * 12500 - 1000) * 8e9 / 1000000);
+        assertEquals(expectedNs, frame.getQueueDelayNs(), 100);
+        assertEquals(100 * 12500, channel.getBytes());
+
+        // frames within the burst are sent at once
+        channel = new ChannelEmulator(1).setBandwidth(1000000).setBurst(10000);
+        assertEquals(0, channel.send(0, 5000, 0).getQueueDelayNs());
+        assertEquals(0, channel.send(1, 5000, 0).getQueueDelayNs());
+        assertEquals(8 * MS, channel.send(2, 1000, 0).getQueueDelayNs(), 1);
+    }
+
+    @Test
+    public void tokensRefillWhileIdle() {
+        ChannelEmulator channel = new ChannelEmulator(1).setBandwidth(1000000).setBurst(12500);
+        assertEquals(0, channel.send(0, 12500, 0).getQueueDelayNs());
+        // the bucket is full again after 100 ms
+        assertEquals(0, channel.send(1, 12500, 100 * MS).getQueueDelayNs());
+        assertEquals(50 * MS, channel.send(2, 12500, 150 * MS).getQueueDelayNs(), 1);
+    }
+
+    @Test
+    public void jitterNeverReordersFrames() {
+        // the jitter is wider than the frame interval
+        ChannelEmulator channel = new ChannelEmulator(7).setDelay(50 * MS, 40 * MS);
+        long lastDeliveryNs = Long.MIN_VALUE;
+        long minDelayNs = Long.MAX_VALUE;
+        long maxDelayNs = Long.MIN_VALUE;
+        int heldBack = 0;
+        for (int i = 0; i < 1000; i++) {
+            ChannelEmulator.Frame frame = channel.send(i, 1000, i * 10 * MS);
+            assertTrue("frame " + i + " delivered before the previous one",
+                    frame.getDeliveryNs() >= lastDeliveryNs);
+            assertTrue(frame.getDelayNs() >= 10 * MS);
+            assertTrue(frame.getDelayNs() <= 90 * MS);
+            if (frame.getDeliveryNs() == lastDeliveryNs) {
+                heldBack++;
+            }
+            lastDeliveryNs = frame.getDeliveryNs();
+            minDelayNs = Math.min(minDelayNs, frame.getDelayNs());
+            maxDelayNs = Math.max(maxDelayNs, frame.getDelayNs());
+        }
+        // the jitter is applied, and would have reordered some frames
+        assertTrue(maxDelayNs - minDelayNs > 40 * MS);
+        assertTrue(heldBack > 0);
+    }
+
+    @Test
+    public void maxQueueDelayDropsFrames() {
+        // 100 ms frames every 50 ms, the queue grows until frames are dropped
+        ChannelEmulator channel = new ChannelEmulator(1).setBandwidth(1000000).setBurst(0)
+                .setMaxQueueDelay(100 * MS);
+        int dropped = 0;
+        for (int i = 0; i < 100; i++) {
+            ChannelEmulator.Frame frame = channel.send(i, 12500, i * 50 * MS);
+            if (frame.isQueueDropped()) {
+                assertTrue(frame.isDropped());
+                dropped++;
+            } else {
+                assertTrue(frame.getQueueDelayNs() <= 100 * MS);
+            }
+        }
+        // only about every other frame fits
+        assertEquals(50, dropped, 2);
+        assertEquals(dropped, channel.getQueueDroppedFrames());
+        assertEquals(dropped, channel.getDroppedFrames());
+        assertEquals((100 - dropped) * 12500L, channel.getBytes());
+    }
+
+    @Test
+    public void noQueueLimitKeepsAllFrames() {
+        ChannelEmulator channel = new ChannelEmulator(1).setBandwidth(1000000).setBurst(0);
+        for (int i = 0; i < 100; i++) {
+            assertFalse(channel.send(i, 12500, i * 50 * MS).isDropped());
+        }
+        assertEquals(0, channel.getDroppedFrames());
+    }
+
+    private static boolean[] lossPattern(long seed, ChannelEmulator.LossUnit unit, int sizeStep) {
+        ChannelEmulator channel = new ChannelEmulator(seed).setMtu(1200).setLoss(0.2, unit);
+        boolean[] lost = new boolean[500];
+        for (int i = 0; i < lost.length; i++) {
+            lost[i] = channel.send(i, 1000 + (i % 7) * sizeStep, i * 33 * MS).isDropped();
+        }
+        return lost;
+    }
+
+    @Test
+    public void sameSeedGivesTheSameLoss() {
+        for (ChannelEmulator.LossUnit unit : ChannelEmulator.LossUnit.values()) {
+            boolean[] lost = lossPattern(42, unit, 1000);
+            assertArrayEquals(lost, lossPattern(42, unit, 1000));
+            assertFalse(Arrays.equals(lost, lossPattern(43, unit, 1000)));
+        }
+        // frame loss does not depend on the size of the earlier frames
+        assertArrayEquals(lossPattern(42, ChannelEmulator.LossUnit.FRAME, 1000),
+                lossPattern(42, ChannelEmulator.LossUnit.FRAME, 3000));
+    }
+
+    @Test
+    public void lossRateIsClose() {
+        ChannelEmulator channel = new ChannelEmulator(3).setMtu(0)
+                .setLoss(0.1, ChannelEmulator.LossUnit.PACKET);
+        for (int i = 0; i < 10000; i++) {
+            channel.send(i, 1000, i * MS);
+        }
+        assertEquals(10000, channel.getPacketCount());
+        assertEquals(1000, channel.getLostPacketCount(), 100);
+    }
+
+    @Test
+    public void bandwidthTraceIsParsed() throws IOException {
+        ChannelEmulator channel = new ChannelEmulator(1).setBurst(0).setBandwidthTrace(new StringReader(
+                "# time_ms kbps\n" +
+                "0 1000\n" +
+                "\n" +
+                "  1000   500  \n"));
+        // 12500 bytes at 1000 kbps, then at 500 kbps
+        assertEquals(100 * MS, channel.send(0, 12500, 0).getQueueDelayNs(), 1);
+        assertEquals(200 * MS, channel.send(1, 12500, 2000 * MS).getQueueDelayNs(), 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void bandwidthTraceRejectsExtraFields() throws IOException {
+        new ChannelEmulator(1).setBandwidthTrace(new StringReader("0 1000 5\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void bandwidthTraceRejectsNumbers() throws IOException {
+        new ChannelEmulator(1).setBandwidthTrace(new StringReader("0 fast\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void bandwidthTraceRejectsEmpty() throws IOException {
+        new ChannelEmulator(1).setBandwidthTrace(new StringReader("# nothing\n"));
+    }
+
+    @Test
+    public void lossTraceIsParsedAndRepeated() throws IOException {
+        ChannelEmulator channel = new ChannelEmulator(1).setLossTrace(new StringReader(
+                "# lost frames\n" +
+                "1 0,0\n" +
+                "1\n"), ChannelEmulator.LossUnit.FRAME);
+        boolean[] lost = new boolean[8];
+        for (int i = 0; i < lost.length; i++) {
+            lost[i] = channel.send(i, 1000, i * MS).isDropped();
+        }
+        assertArrayEquals(new boolean[]{true, false, false, true, true, false, false, true}, lost);
+        assertEquals(4, channel.getDroppedFrames());
+    }
+
+    @Test(expected = IOException.class)
+    public void lossTraceRejectsValues() throws IOException {
+        new ChannelEmulator(1).setLossTrace(new StringReader("0 1 2\n"), ChannelEmulator.LossUnit.PACKET);
+    }
+}
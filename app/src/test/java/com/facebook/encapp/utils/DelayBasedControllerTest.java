@@ -0,0 +1,148 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DelayBasedControllerTest {
+    private static final long MS = 1000000L;
+    private static final long FRAME_INTERVAL_NS = 33 * MS;
+    private static final int START_BITRATE = 1000000;
+
+    private DelayBasedController mController;
+    private int mBitrate;
+    private long mSendNs;
+    private String mLastReason;
+
+    private void start() {
+        mController = new DelayBasedController(START_BITRATE, 100000, 5000000, 1000 * MS);
+        mBitrate = START_BITRATE;
+        mSendNs = 0;
+        mLastReason = null;
+    }
+
+    /**
+     * Send a frame of the current bitrate that is delayed delayMs by the link.
+     */
+    private BitrateController.Decision frame(double delayMs, boolean lost) {
+        BitrateController.Feedback feedback = new BitrateController.Feedback();
+        feedback.mSize = (int) (mBitrate / 8 * FRAME_INTERVAL_NS / 1e9);
+        feedback.mSendTimeNs = mSendNs;
+        feedback.mArrivalTimeNs = mSendNs + (long) (delayMs * MS);
+        feedback.mTimeNs = feedback.mArrivalTimeNs;
+        feedback.mLost = lost;
+        mSendNs += FRAME_INTERVAL_NS;
+        BitrateController.Decision decision = mController.onFrame(feedback);
+        if (decision != null) {
+            if (decision.getBitrate() > 0) {
+                mBitrate = decision.getBitrate();
+            }
+            mLastReason = decision.getReason();
+        }
+        return decision;
+    }
+
+    @Test
+    public void increasesOnAStableDelay() {
+        start();
+        for (int i = 0; i < 150; i++) {
+            frame(20, false);
+        }
+        assertTrue("bitrate " + mBitrate, mBitrate > START_BITRATE);
+        assertEquals("normal/increase", mLastReason);
+    }
+
+    @Test
+    public void delayRampIsOveruseThenRecovers() {
+        start();
+        for (int i = 0; i < 90; i++) {
+            frame(20, false);
+        }
+        int beforeRamp = mBitrate;
+
+        // the queue grows by 5 ms per frame
+        boolean overuse = false;
+        double delayMs = 20;
+        for (int i = 0; i < 30; i++) {
+            delayMs += 5;
+            BitrateController.Decision decision = frame(delayMs, false);
+            if (decision != null && decision.getReason().startsWith("overuse")) {
+                overuse = true;
+            }
+        }
+        assertTrue("no overuse detected", overuse);
+        int afterRamp = mBitrate;
+        assertTrue("bitrate " + afterRamp + " not below " + beforeRamp, afterRamp < beforeRamp);
+
+        // the queue drains, the bitrate is held
+        int drained = 0;
+        while (delayMs > 20) {
+            delayMs = Math.max(20, delayMs - 10);
+            frame(delayMs, false);
+            drained++;
+            assertTrue(mBitrate <= afterRamp);
+        }
+        assertTrue(drained > 0);
+
+        // and increases again once the delay is stable
+        for (int i = 0; i < 300; i++) {
+            frame(20, false);
+        }
+        assertTrue("bitrate " + mBitrate + " did not recover from " + afterRamp, mBitrate > afterRamp);
+        assertEquals("normal/increase", mLastReason);
+    }
+
+    @Test
+    public void lossCutsTheBitrate() {
+        start();
+        for (int i = 0; i < 30; i++) {
+            frame(20, false);
+        }
+        int beforeLoss = mBitrate;
+        // every third frame is lost for two seconds
+        boolean lossReason = false;
+        for (int i = 0; i < 60; i++) {
+            BitrateController.Decision decision = frame(20, i % 3 == 0);
+            if (decision != null && decision.getBitrate() > 0 && decision.getReason().endsWith("/loss")) {
+                lossReason = true;
+            }
+        }
+        assertTrue(lossReason);
+        assertTrue("bitrate " + mBitrate, mBitrate < beforeLoss);
+    }
+
+    @Test
+    public void syncIsRequestedOncePerInterval() {
+        start();
+        BitrateController.Decision decision = frame(20, true);
+        assertNotNull(decision);
+        assertTrue(decision.isRequestSync());
+        // within the sync interval
+        decision = frame(20, true);
+        assertFalse(decision != null && decision.isRequestSync());
+        for (int i = 0; i < 30; i++) {
+            frame(20, false);
+        }
+        decision = frame(20, true);
+        assertNotNull(decision);
+        assertTrue(decision.isRequestSync());
+    }
+
+    @Test
+    public void bitrateStaysWithinTheLimits() {
+        start();
+        for (int i = 0; i < 2000; i++) {
+            frame(20, false);
+            assertTrue(mBitrate <= 5000000);
+        }
+        double delayMs = 20;
+        for (int i = 0; i < 600; i++) {
+            delayMs += 5;
+            frame(delayMs, false);
+            assertTrue(mBitrate >= 100000);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+public class FrameHasherTest {
+    private static long xxh64(String text) {
+        byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+        return FrameHasher.xxh64(data, 0, data.length, 0);
+    }
+
+    private static String hex(long hash) {
+        return String.format(Locale.US, "%016x", hash);
+    }
+
+    @Test
+    public void referenceVectors() {
+        assertEquals(0xef46db3751d8e999L, xxh64(""));
+        assertEquals(0xd24ec4f1a98c6e5bL, xxh64("a"));
+        assertEquals(0x44bc2cf5ad770999L, xxh64("abc"));
+        // 32 bytes or more take the four lane path
+        assertEquals(0xfbcea83c8a378bf1L, xxh64("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    public void offsetIntoTheArray() {
+        byte[] data = "xxabcxx".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0x44bc2cf5ad770999L, FrameHasher.xxh64(data, 2, 3, 0));
+    }
+
+    @Test
+    public void hashesAreInPtsOrder() {
+        FrameHasher hasher = new FrameHasher(2);
+        byte[][] frames = new byte[300][];
+        // output order is not pts order, and more frames than the initial capacity
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = String.format(Locale.US, "frame %d of the test", i).getBytes(StandardCharsets.US_ASCII);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        for (int i = 0; i < frames.length; i++) {
+            int index = (i % 2 == 0) ? i + 1 : i - 1;
+            buffer.clear();
+            buffer.position(3);
+            buffer.put(frames[index]);
+            buffer.position(5);
+            hasher.hash(index * 1000L, buffer, 3, frames[index].length);
+            // the buffer is not changed
+            assertEquals(5, buffer.position());
+        }
+        hasher.finish();
+        assertEquals(frames.length, hasher.getFrameCount());
+        StringBuilder expected = new StringBuilder();
+        for (byte[] frame : frames) {
+            expected.append(hex(FrameHasher.xxh64(frame, 0, frame.length, 0)));
+        }
+        assertEquals(expected.toString(), hasher.getHashes());
+    }
+
+    @Test
+    public void framesAfterFinishAreHashed() {
+        FrameHasher hasher = new FrameHasher(1);
+        hasher.finish();
+        byte[] data = "abc".getBytes(StandardCharsets.US_ASCII);
+        hasher.hash(0, ByteBuffer.wrap(data), 0, data.length);
+        assertEquals(hex(0x44bc2cf5ad770999L), hasher.getHashes());
+    }
+
+    @Test
+    public void interruptedFrameIsSkipped() {
+        FrameHasher hasher = new FrameHasher(1);
+        byte[] data = "abc".getBytes(StandardCharsets.US_ASCII);
+        Thread.currentThread().interrupt();
+        hasher.hash(0, ByteBuffer.wrap(data), 0, data.length);
+        // the interrupt is kept for the caller
+        assertTrue(Thread.interrupted());
+        hasher.hash(1, ByteBuffer.wrap(data), 0, data.length);
+        hasher.finish();
+        assertEquals(1, hasher.getFrameCount());
+        assertEquals(hex(0x44bc2cf5ad770999L), hasher.getHashes());
+    }
+}
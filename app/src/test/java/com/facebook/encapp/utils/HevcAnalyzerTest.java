@@ -0,0 +1,163 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class HevcAnalyzerTest {
+    private static final int NAL_TRAIL_N = 0;
+    private static final int NAL_TRAIL_R = 1;
+    private static final int NAL_IDR_W_RADL = 19;
+    private static final byte[] PAYLOAD = {0x26, 0x00, 0x00, 0x01, 0x77, 0x55};
+
+    private BitstreamAnalyzer mAnalyzer;
+
+    @Before
+    public void setUp() {
+        mAnalyzer = BitstreamAnalyzer.forMime("video/hevc");
+        assertTrue(parse(BitWriter.annexB(vps(), sps(), pps()), true));
+    }
+
+    private boolean parse(byte[] data, boolean config) {
+        return mAnalyzer.parse(ByteBuffer.wrap(data), 0, data.length, 0, config);
+    }
+
+    private static BitWriter nal(int type, int temporalId) {
+        return new BitWriter().bits(type << 1, 8).bits(temporalId + 1, 8);
+    }
+
+    /**
+     * Only the nal header is read.
+     */
+    private static byte[] vps() {
+        return nal(32, 0).bits(0x0c01ffff, 32).trailing().toByteArray();
+    }
+
+    /**
+     * 64x64 in 16x16 ctbs, poc lsb in 8 bits, sao, one rps with one used
+     * picture.
+     */
+    private static byte[] sps() {
+        return nal(33, 0)
+                .bits(0, 4).bits(0, 3).flag(true)
+                // profile_tier_level()
+                .bits(0x01600000, 32).bits(0x00b00000, 32).bits(0x0000005d, 32)
+                .ue(0).ue(1).ue(64).ue(64).flag(false)
+                .ue(0).ue(0).ue(4)
+                .flag(true).ue(1).ue(0).ue(0)
+                .ue(0).ue(1)
+                .ue(0).ue(1).ue(0).ue(0)
+                // scaling lists, amp, sao, pcm
+                .flag(false).flag(true).flag(true).flag(false)
+                // st_ref_pic_set(0)
+                .ue(1).ue(1).ue(0).ue(0).flag(true)
+                .flag(false).flag(false)
+                .trailing().toByteArray();
+    }
+
+    /**
+     * init_qp 30, loop filter across slices.
+     */
+    private static byte[] pps() {
+        return nal(34, 0)
+                .ue(0).ue(0).flag(false).flag(false).bits(0, 3).flag(false).flag(false)
+                .ue(0).ue(0).se(4).flag(false).flag(false).flag(false)
+                .se(0).se(0).flag(false).flag(false).flag(false).flag(false)
+                .flag(false).flag(false)
+                .flag(true).flag(false)
+                .flag(false).flag(false).ue(0).flag(false).flag(false)
+                .trailing().toByteArray();
+    }
+
+    private static byte[] idr(int qpDelta) {
+        return nal(NAL_IDR_W_RADL, 0)
+                .flag(true).flag(false).ue(0)
+                // I slice, sao luma and chroma
+                .ue(2).flag(false).flag(false)
+                .se(qpDelta)
+                // slice_loop_filter_across_slices_enabled_flag
+                .flag(true)
+                .trailing().bytes(PAYLOAD).toByteArray();
+    }
+
+    private static byte[] pSlice(int type, int temporalId, boolean first, int qpDelta) {
+        BitWriter writer = nal(type, temporalId).flag(first).ue(0);
+        if (!first) {
+            // slice_segment_address of one of the 16 ctbs
+            writer.bits(8, 4);
+        }
+        return writer.ue(1)
+                // poc lsb, the rps of the sps
+                .bits(1, 8).flag(true)
+                .flag(false).flag(false)
+                // num_ref_idx_active_override_flag, five_minus_max_num_merge_cand
+                .flag(false).ue(0)
+                .se(qpDelta)
+                .flag(false)
+                .trailing().bytes(PAYLOAD).toByteArray();
+    }
+
+    @Test
+    public void parameterSetsAreConfig() {
+        assertEquals(0, mAnalyzer.getFrameCount());
+        assertEquals(0, mAnalyzer.getErrors());
+        assertEquals(BitWriter.annexB(vps(), sps(), pps()).length, mAnalyzer.getConfigBytes());
+    }
+
+    @Test
+    public void idrSlice() {
+        byte[] frame = BitWriter.annexB(idr(-4));
+        assertTrue(parse(frame, false));
+        assertEquals("I", mAnalyzer.getFrameType());
+        assertEquals(26, mAnalyzer.getQp());
+        assertEquals(0, mAnalyzer.getTemporalId());
+        assertTrue(mAnalyzer.isReference());
+        assertEquals(PAYLOAD.length + 1, mAnalyzer.getPayloadBytes());
+        assertEquals(frame.length, mAnalyzer.getHeaderBytes() + mAnalyzer.getPayloadBytes());
+    }
+
+    @Test
+    public void temporalIdFromTheNalHeader() {
+        assertTrue(parse(BitWriter.annexB(idr(0)), false));
+        assertTrue(parse(BitWriter.annexB(pSlice(NAL_TRAIL_N, 2, true, 5)), false));
+        assertEquals("P", mAnalyzer.getFrameType());
+        assertEquals(2, mAnalyzer.getTemporalId());
+        assertEquals(35, mAnalyzer.getQp());
+        assertFalse(mAnalyzer.isReference());
+
+        assertTrue(parse(BitWriter.annexB(pSlice(NAL_TRAIL_R, 1, true, -2)), false));
+        assertEquals("P", mAnalyzer.getFrameType());
+        assertEquals(1, mAnalyzer.getTemporalId());
+        assertEquals(28, mAnalyzer.getQp());
+        assertTrue(mAnalyzer.isReference());
+        assertFalse(mAnalyzer.isLtrUse());
+
+        assertEquals(3, mAnalyzer.getLayers().size());
+        assertEquals(2, mAnalyzer.getReferenceFrames());
+        assertEquals(0, mAnalyzer.getErrors());
+    }
+
+    @Test
+    public void qpOfTheFirstSlice() {
+        byte[] frame = BitWriter.annexB(pSlice(NAL_TRAIL_R, 0, true, 3),
+                pSlice(NAL_TRAIL_R, 0, false, -3));
+        assertTrue(parse(frame, false));
+        assertEquals(33, mAnalyzer.getQp());
+        assertEquals(2 * (PAYLOAD.length + 1), mAnalyzer.getPayloadBytes());
+        assertEquals(frame.length, mAnalyzer.getHeaderBytes() + mAnalyzer.getPayloadBytes());
+    }
+
+    @Test
+    public void unknownParameterSets() {
+        mAnalyzer = BitstreamAnalyzer.forMime("video/hevc");
+        assertTrue(parse(BitWriter.annexB(idr(0)), false));
+        assertEquals("unknown", mAnalyzer.getFrameType());
+        assertEquals(-1, mAnalyzer.getQp());
+        assertTrue(mAnalyzer.isReference());
+    }
+}
@@ -0,0 +1,168 @@
+package com.facebook.encapp.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class PlaneCopierTest {
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.capacity()];
+        ByteBuffer view = buffer.duplicate();
+        view.clear();
+        view.get(data);
+        return data;
+    }
+
+    // the reference: one sample at a time, 16 bit samples are little endian
+    private static void copyPerSample(byte[] src, int srcOffset, int srcPixelStride, int srcRowStride,
+                                      byte[] dst, int dstOffset, int dstPixelStride, int dstRowStride,
+                                      int width, int height, int sampleSize, int shift) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int s = srcOffset + y * srcRowStride + x * srcPixelStride;
+                int d = dstOffset + y * dstRowStride + x * dstPixelStride;
+                if (shift == 0) {
+                    System.arraycopy(src, s, dst, d, sampleSize);
+                } else {
+                    int value = (src[s] & 0xff) | ((src[s + 1] & 0xff) << 8);
+                    value = (shift > 0) ? value << shift : value >>> -shift;
+                    dst[d] = (byte) value;
+                    dst[d + 1] = (byte) (value >> 8);
+                }
+            }
+        }
+    }
+
+    private static void checkCopy(int srcPixelStride, int srcRowStride, int dstPixelStride, int dstRowStride,
+                                  int width, int height, int sampleSize, int shift) {
+        byte[] src = random(3 + srcRowStride * height, 1);
+        // the output starts with noise, bytes between the samples must be kept
+        byte[] expected = random(dstRowStride * height, 2);
+        ByteBuffer dst = ByteBuffer.allocateDirect(expected.length);
+        dst.put(expected);
+        dst.position(0);
+        copyPerSample(src, 3, srcPixelStride, srcRowStride, expected, 0, dstPixelStride, dstRowStride,
+                width, height, sampleSize, shift);
+        PlaneCopier.copyPlane(src, 3, srcPixelStride, srcRowStride, dst, dstPixelStride, dstRowStride,
+                width, height, sampleSize, shift);
+        assertArrayEquals(expected, toArray(dst));
+    }
+
+    @Test
+    public void packedRows() {
+        checkCopy(1, 64, 1, 64, 64, 16, 1, 0);
+        checkCopy(2, 128, 2, 128, 64, 16, 2, 0);
+    }
+
+    @Test
+    public void paddedRows() {
+        checkCopy(1, 70, 1, 128, 70, 16, 1, 0);
+        checkCopy(1, 80, 1, 72, 70, 16, 1, 0);
+    }
+
+    @Test
+    public void deinterleave() {
+        checkCopy(2, 64, 1, 32, 32, 16, 1, 0);
+        checkCopy(2, 64, 1, 64, 32, 16, 1, 0);
+        checkCopy(4, 128, 2, 64, 32, 16, 2, 0);
+    }
+
+    @Test
+    public void interleave() {
+        checkCopy(1, 32, 2, 64, 32, 16, 1, 0);
+        checkCopy(1, 32, 2, 128, 32, 16, 1, 0);
+        checkCopy(2, 64, 4, 128, 32, 16, 2, 0);
+        // interleaved to interleaved
+        checkCopy(2, 64, 2, 64, 32, 16, 1, 0);
+    }
+
+    @Test
+    public void largePlanesInBands() {
+        // big enough to be split over the threads
+        checkCopy(1, 960, 2, 1920, 960, 540, 1, 0);
+        checkCopy(2, 1920, 1, 1024, 960, 540, 1, 0);
+        checkCopy(2, 3840, 4, 3840, 960, 540, 2, 6);
+    }
+
+    @Test
+    public void shift10Bit() {
+        checkCopy(2, 64, 2, 64, 32, 16, 2, 6);
+        checkCopy(2, 64, 2, 64, 32, 16, 2, -6);
+        checkCopy(2, 32, 4, 64, 16, 16, 2, 6);
+        checkCopy(4, 64, 2, 32, 16, 16, 2, -6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shiftNeeds16BitSamples() {
+        PlaneCopier.copyPlane(new byte[16], 0, 1, 4, ByteBuffer.allocate(16), 1, 4, 4, 4, 1, 6);
+    }
+
+    @Test
+    public void interleavedPlanesShareMemory() {
+        int width = 64;
+        int height = 32;
+        int lumaLength = width * height;
+        int chromaLength = lumaLength / 4;
+        byte[] planar = random(lumaLength + 2 * chromaLength, 3);
+        // nv12 as an Image: v is the chroma memory one byte later
+        ByteBuffer luma = ByteBuffer.allocateDirect(lumaLength);
+        ByteBuffer chroma = ByteBuffer.allocateDirect(lumaLength / 2);
+        ByteBuffer u = chroma.duplicate();
+        chroma.position(1);
+        ByteBuffer v = chroma.slice();
+        PlaneCopier.copyPlane(planar, 0, 1, width, luma, 1, width, width, height, 1);
+        PlaneCopier.copyPlane(planar, lumaLength, 1, width / 2, u, 2, width, width / 2, height / 2, 1);
+        PlaneCopier.copyPlane(planar, lumaLength + chromaLength, 1, width / 2, v, 2, width, width / 2,
+                height / 2, 1);
+        byte[] expected = new byte[lumaLength / 2];
+        for (int i = 0; i < chromaLength; i++) {
+            expected[2 * i] = planar[lumaLength + i];
+            expected[2 * i + 1] = planar[lumaLength + chromaLength + i];
+        }
+        byte[] expectedLuma = new byte[lumaLength];
+        System.arraycopy(planar, 0, expectedLuma, 0, lumaLength);
+        assertArrayEquals(expectedLuma, toArray(luma));
+        assertArrayEquals(expected, toArray(u));
+    }
+
+    @Test
+    public void p010RoundTrip() {
+        int width = 32;
+        int height = 16;
+        int lumaLength = 2 * width * height;
+        int chromaLength = lumaLength / 4;
+        byte[] planar = new byte[lumaLength + 2 * chromaLength];
+        Random random = new Random(4);
+        for (int i = 0; i < planar.length; i += 2) {
+            int value = random.nextInt(1024);
+            planar[i] = (byte) value;
+            planar[i + 1] = (byte) (value >> 8);
+        }
+        byte[] expected = new byte[planar.length];
+        copyPerSample(planar, 0, 2, 2 * width, expected, 0, 2, 2 * width, width, height, 2, 6);
+        copyPerSample(planar, lumaLength, 2, width, expected, lumaLength, 4, 2 * width,
+                width / 2, height / 2, 2, 6);
+        copyPerSample(planar, lumaLength + chromaLength, 2, width, expected, lumaLength + 2, 4, 2 * width,
+                width / 2, height / 2, 2, 6);
+
+        ByteBuffer p010 = ByteBuffer.allocate(planar.length);
+        PlaneCopier.planar10ToP010(planar, 0, p010, width, height);
+        assertEquals(planar.length, p010.position());
+        assertArrayEquals(expected, p010.array());
+
+        ByteBuffer back = ByteBuffer.allocate(planar.length);
+        PlaneCopier.p010ToPlanar10(p010.array(), 0, back, width, height);
+        assertEquals(planar.length, back.position());
+        assertArrayEquals(planar, back.array());
+    }
+}
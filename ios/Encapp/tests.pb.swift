@@ -59,6 +59,9 @@ enum PixFmt: SwiftProtobuf.Enum, Swift.CaseIterable {
   case nv12 // = 2
   case nv21 // = 3
   case rgba // = 4
+  /// 10 bit, 16 bit little endian samples
+  case p010 // = 5
+  case yuv420P10Le // = 6
 
   init() {
     self = .yuv420P
@@ -71,6 +74,8 @@ enum PixFmt: SwiftProtobuf.Enum, Swift.CaseIterable {
     case 2: self = .nv12
     case 3: self = .nv21
     case 4: self = .rgba
+    case 5: self = .p010
+    case 6: self = .yuv420P10Le
     default: return nil
     }
   }
@@ -82,6 +87,36 @@ enum PixFmt: SwiftProtobuf.Enum, Swift.CaseIterable {
     case .nv12: return 2
     case .nv21: return 3
     case .rgba: return 4
+    case .p010: return 5
+    case .yuv420P10Le: return 6
+    }
+  }
+
+}
+
+/// cpu scaling of raw input, see Input.scaler
+enum Scaler: SwiftProtobuf.Enum, Swift.CaseIterable {
+  typealias RawValue = Int
+  /// average of the covered input samples, for downscaling
+  case area // = 0
+  case bilinear // = 1
+
+  init() {
+    self = .area
+  }
+
+  init?(rawValue: Int) {
+    switch rawValue {
+    case 0: self = .area
+    case 1: self = .bilinear
+    default: return nil
+    }
+  }
+
+  var rawValue: Int {
+    switch self {
+    case .area: return 0
+    case .bilinear: return 1
     }
   }
 
@@ -224,6 +259,48 @@ struct Input: Sendable {
   /// Clears the value of `show`. Subsequent reads from it will return its default value.
   mutating func clearShow() {self._show = nil}
 
+  /// stop the test once this many steady state frames have been collected,
+  /// combine with stoptime_sec to bound tests that never settle
+  var steadyFrames: Int32 {
+    get {return _steadyFrames ?? 0}
+    set {_steadyFrames = newValue}
+  }
+  /// Returns true if `steadyFrames` has been explicitly set.
+  var hasSteadyFrames: Bool {return self._steadyFrames != nil}
+  /// Clears the value of `steadyFrames`. Subsequent reads from it will return its default value.
+  mutating func clearSteadyFrames() {self._steadyFrames = nil}
+
+  /// first frame to read, y4m input only
+  var startFrame: Int32 {
+    get {return _startFrame ?? 0}
+    set {_startFrame = newValue}
+  }
+  /// Returns true if `startFrame` has been explicitly set.
+  var hasStartFrame: Bool {return self._startFrame != nil}
+  /// Clears the value of `startFrame`. Subsequent reads from it will return its default value.
+  mutating func clearStartFrame() {self._startFrame = nil}
+
+  /// read this many raw frames ahead on a separate thread, 0 for off
+  var prefetchFrames: Int32 {
+    get {return _prefetchFrames ?? 0}
+    set {_prefetchFrames = newValue}
+  }
+  /// Returns true if `prefetchFrames` has been explicitly set.
+  var hasPrefetchFrames: Bool {return self._prefetchFrames != nil}
+  /// Clears the value of `prefetchFrames`. Subsequent reads from it will return its default value.
+  mutating func clearPrefetchFrames() {self._prefetchFrames = nil}
+
+  /// raw input is scaled on the cpu when configure.resolution differs from
+  /// the input resolution (buffer encoding only)
+  var scaler: Scaler {
+    get {return _scaler ?? .area}
+    set {_scaler = newValue}
+  }
+  /// Returns true if `scaler` has been explicitly set.
+  var hasScaler: Bool {return self._scaler != nil}
+  /// Clears the value of `scaler`. Subsequent reads from it will return its default value.
+  mutating func clearScaler() {self._scaler = nil}
+
   var unknownFields = SwiftProtobuf.UnknownStorage()
 
   init() {}
@@ -237,6 +314,10 @@ struct Input: Sendable {
   fileprivate var _realtime: Bool? = nil
   fileprivate var _stoptimeSec: Float? = nil
   fileprivate var _show: Bool? = nil
+  fileprivate var _steadyFrames: Int32? = nil
+  fileprivate var _startFrame: Int32? = nil
+  fileprivate var _prefetchFrames: Int32? = nil
+  fileprivate var _scaler: Scaler? = nil
 }
 
 struct Configure: @unchecked Sendable {
@@ -448,6 +529,34 @@ struct Configure: @unchecked Sendable {
   /// Clears the value of `decodeDump`. Subsequent reads from it will return its default value.
   mutating func clearDecodeDump() {_uniqueStorage()._decodeDump = nil}
 
+  /// sliding windows (in seconds) used for the bitrate statistics,
+  /// default is 1 sec and the i_frame_interval
+  var bitrateWindowSec: [Float] {
+    get {return _storage._bitrateWindowSec}
+    set {_uniqueStorage()._bitrateWindowSec = newValue}
+  }
+
+  /// buffer model size in seconds of the configured bitrate, 0 disables it
+  var vbvBufferSec: Float {
+    get {return _storage._vbvBufferSec ?? 1}
+    set {_uniqueStorage()._vbvBufferSec = newValue}
+  }
+  /// Returns true if `vbvBufferSec` has been explicitly set.
+  var hasVbvBufferSec: Bool {return _storage._vbvBufferSec != nil}
+  /// Clears the value of `vbvBufferSec`. Subsequent reads from it will return its default value.
+  mutating func clearVbvBufferSec() {_uniqueStorage()._vbvBufferSec = nil}
+
+  /// stop the codec after the test and keep it for the next test with the
+  /// same codec and mime (if that one allows reuse too) instead of releasing it
+  var reuseCodec: Bool {
+    get {return _storage._reuseCodec ?? false}
+    set {_uniqueStorage()._reuseCodec = newValue}
+  }
+  /// Returns true if `reuseCodec` has been explicitly set.
+  var hasReuseCodec: Bool {return _storage._reuseCodec != nil}
+  /// Clears the value of `reuseCodec`. Subsequent reads from it will return its default value.
+  mutating func clearReuseCodec() {_uniqueStorage()._reuseCodec = nil}
+
   var unknownFields = SwiftProtobuf.UnknownStorage()
 
   enum BitrateMode: SwiftProtobuf.Enum, Swift.CaseIterable {
@@ -892,6 +1001,8 @@ struct Parallel: Sendable {
   init() {}
 }
 
+/// Tests run one after the other after the test holding them. The next
+/// test is set up while the previous one is still draining.
 struct Serial: Sendable {
   // SwiftProtobuf.Message conformance is added in an extension below. See the
   // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
@@ -904,6 +1015,567 @@ struct Serial: Sendable {
   init() {}
 }
 
+/// Find the number of identical instances of a test that can run in
+/// parallel while every instance keeps the target frame rate.
+struct CapacitySearch: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  var strategy: CapacitySearch.Strategy {
+    get {return _strategy ?? .ramp}
+    set {_strategy = newValue}
+  }
+  /// Returns true if `strategy` has been explicitly set.
+  var hasStrategy: Bool {return self._strategy != nil}
+  /// Clears the value of `strategy`. Subsequent reads from it will return its default value.
+  mutating func clearStrategy() {self._strategy = nil}
+
+  var startInstances: Int32 {
+    get {return _startInstances ?? 1}
+    set {_startInstances = newValue}
+  }
+  /// Returns true if `startInstances` has been explicitly set.
+  var hasStartInstances: Bool {return self._startInstances != nil}
+  /// Clears the value of `startInstances`. Subsequent reads from it will return its default value.
+  mutating func clearStartInstances() {self._startInstances = nil}
+
+  var maxInstances: Int32 {
+    get {return _maxInstances ?? 16}
+    set {_maxInstances = newValue}
+  }
+  /// Returns true if `maxInstances` has been explicitly set.
+  var hasMaxInstances: Bool {return self._maxInstances != nil}
+  /// Clears the value of `maxInstances`. Subsequent reads from it will return its default value.
+  mutating func clearMaxInstances() {self._maxInstances = nil}
+
+  /// an instance passes when its steady state fps >= fps_margin * target fps
+  var fpsMargin: Float {
+    get {return _fpsMargin ?? 0.95}
+    set {_fpsMargin = newValue}
+  }
+  /// Returns true if `fpsMargin` has been explicitly set.
+  var hasFpsMargin: Bool {return self._fpsMargin != nil}
+  /// Clears the value of `fpsMargin`. Subsequent reads from it will return its default value.
+  mutating func clearFpsMargin() {self._fpsMargin = nil}
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  enum Strategy: SwiftProtobuf.Enum, Swift.CaseIterable {
+    typealias RawValue = Int
+    /// add one instance per step until an instance falls below the target
+    case ramp // = 0
+    /// double the instances until failure, then bisect
+    case binary // = 1
+
+    init() {
+      self = .ramp
+    }
+
+    init?(rawValue: Int) {
+      switch rawValue {
+      case 0: self = .ramp
+      case 1: self = .binary
+      default: return nil
+      }
+    }
+
+    var rawValue: Int {
+      switch self {
+      case .ramp: return 0
+      case .binary: return 1
+      }
+    }
+
+  }
+
+  init() {}
+
+  fileprivate var _strategy: CapacitySearch.Strategy? = nil
+  fileprivate var _startInstances: Int32? = nil
+  fileprivate var _maxInstances: Int32? = nil
+  fileprivate var _fpsMargin: Float? = nil
+}
+
+/// Repeat create, configure, start, first output, stop and release of the
+/// encoder and report the distribution of the time spent in every phase.
+struct StartupBenchmark: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  var iterations: Int32 {
+    get {return _iterations ?? 10}
+    set {_iterations = newValue}
+  }
+  /// Returns true if `iterations` has been explicitly set.
+  var hasIterations: Bool {return self._iterations != nil}
+  /// Clears the value of `iterations`. Subsequent reads from it will return its default value.
+  mutating func clearIterations() {self._iterations = nil}
+
+  /// give up waiting for the first output after this long
+  var firstFrameTimeoutMs: Int32 {
+    get {return _firstFrameTimeoutMs ?? 2000}
+    set {_firstFrameTimeoutMs = newValue}
+  }
+  /// Returns true if `firstFrameTimeoutMs` has been explicitly set.
+  var hasFirstFrameTimeoutMs: Bool {return self._firstFrameTimeoutMs != nil}
+  /// Clears the value of `firstFrameTimeoutMs`. Subsequent reads from it will return its default value.
+  mutating func clearFirstFrameTimeoutMs() {self._firstFrameTimeoutMs = nil}
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  init() {}
+
+  fileprivate var _iterations: Int32? = nil
+  fileprivate var _firstFrameTimeoutMs: Int32? = nil
+}
+
+/// Run the test once for every combination of the listed values, e.g.
+/// 3 bitrates and 2 resolutions give 6 variants. The variants are created
+/// on the device and run one after the other on the same input.
+struct Sweep: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  var bitrate: [String] = []
+
+  var framerate: [Float] = []
+
+  /// raw buffer input is scaled on the cpu, see Input.scaler
+  var resolution: [String] = []
+
+  var iFrameInterval: [Int32] = []
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  init() {}
+}
+
+/// Encode one raw input at several resolutions in parallel, e.g. an ABR
+/// ladder. The input is read once and every frame is scaled on the cpu
+/// into the input buffers of one buffer encoder per rendition.
+struct Ladder: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  var rendition: [Ladder.Rendition] = []
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  struct Rendition: Sendable {
+    // SwiftProtobuf.Message conformance is added in an extension below. See the
+    // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+    // methods supported on all messages.
+
+    var resolution: String {
+      get {return _resolution ?? String()}
+      set {_resolution = newValue}
+    }
+    /// Returns true if `resolution` has been explicitly set.
+    var hasResolution: Bool {return self._resolution != nil}
+    /// Clears the value of `resolution`. Subsequent reads from it will return its default value.
+    mutating func clearResolution() {self._resolution = nil}
+
+    /// the configure values of the test are used when not set
+    var bitrate: String {
+      get {return _bitrate ?? String()}
+      set {_bitrate = newValue}
+    }
+    /// Returns true if `bitrate` has been explicitly set.
+    var hasBitrate: Bool {return self._bitrate != nil}
+    /// Clears the value of `bitrate`. Subsequent reads from it will return its default value.
+    mutating func clearBitrate() {self._bitrate = nil}
+
+    var codec: String {
+      get {return _codec ?? String()}
+      set {_codec = newValue}
+    }
+    /// Returns true if `codec` has been explicitly set.
+    var hasCodec: Bool {return self._codec != nil}
+    /// Clears the value of `codec`. Subsequent reads from it will return its default value.
+    mutating func clearCodec() {self._codec = nil}
+
+    var unknownFields = SwiftProtobuf.UnknownStorage()
+
+    init() {}
+
+    fileprivate var _resolution: String? = nil
+    fileprivate var _bitrate: String? = nil
+    fileprivate var _codec: String? = nil
+  }
+
+  init() {}
+}
+
+/// Decode the encoded frames in the same process while encoding, like the
+/// receiving side of a call. Nothing goes through the muxer or files, the
+/// decoder is set with decoder_configure.
+struct Loopback: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  /// xxh64 of the visible samples of every decoded frame, in decoded_hashes
+  var hashFrames: Bool {
+    get {return _hashFrames ?? false}
+    set {_hashFrames = newValue}
+  }
+  /// Returns true if `hashFrames` has been explicitly set.
+  var hasHashFrames: Bool {return self._hashFrames != nil}
+  /// Clears the value of `hashFrames`. Subsequent reads from it will return its default value.
+  mutating func clearHashFrames() {self._hashFrames = nil}
+
+  /// psnr of the decoded luma against the raw input (8 bit buffer input only)
+  var compare: Bool {
+    get {return _compare ?? false}
+    set {_compare = newValue}
+  }
+  /// Returns true if `compare` has been explicitly set.
+  var hasCompare: Bool {return self._compare != nil}
+  /// Clears the value of `compare`. Subsequent reads from it will return its default value.
+  mutating func clearCompare() {self._compare = nil}
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  init() {}
+
+  fileprivate var _hashFrames: Bool? = nil
+  fileprivate var _compare: Bool? = nil
+}
+
+/// Emulated network link for the encoded frames, before the loopback
+/// decoder and the muxer. Random values come from the seed and the frame
+/// number so a run can be repeated with another codec. Trace files are
+/// read on the device.
+struct Channel: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  /// token bucket rate, e.g. "2 Mbps", unlimited when not set
+  var bandwidth: String {
+    get {return _bandwidth ?? String()}
+    set {_bandwidth = newValue}
+  }
+  /// Returns true if `bandwidth` has been explicitly set.
+  var hasBandwidth: Bool {return self._bandwidth != nil}
+  /// Clears the value of `bandwidth`. Subsequent reads from it will return its default value.
+  mutating func clearBandwidth() {self._bandwidth = nil}
+
+  /// token bucket size, what can be sent at once
+  var burstBytes: Int32 {
+    get {return _burstBytes ?? 10000}
+    set {_burstBytes = newValue}
+  }
+  /// Returns true if `burstBytes` has been explicitly set.
+  var hasBurstBytes: Bool {return self._burstBytes != nil}
+  /// Clears the value of `burstBytes`. Subsequent reads from it will return its default value.
+  mutating func clearBurstBytes() {self._burstBytes = nil}
+
+  /// lines of "<time in ms> <rate in kbps>", replaces bandwidth
+  var bandwidthTrace: String {
+    get {return _bandwidthTrace ?? String()}
+    set {_bandwidthTrace = newValue}
+  }
+  /// Returns true if `bandwidthTrace` has been explicitly set.
+  var hasBandwidthTrace: Bool {return self._bandwidthTrace != nil}
+  /// Clears the value of `bandwidthTrace`. Subsequent reads from it will return its default value.
+  mutating func clearBandwidthTrace() {self._bandwidthTrace = nil}
+
+  var delayMs: Int32 {
+    get {return _delayMs ?? 0}
+    set {_delayMs = newValue}
+  }
+  /// Returns true if `delayMs` has been explicitly set.
+  var hasDelayMs: Bool {return self._delayMs != nil}
+  /// Clears the value of `delayMs`. Subsequent reads from it will return its default value.
+  mutating func clearDelayMs() {self._delayMs = nil}
+
+  /// the delay varies by up to +-jitter_ms, frames are not reordered
+  var jitterMs: Int32 {
+    get {return _jitterMs ?? 0}
+    set {_jitterMs = newValue}
+  }
+  /// Returns true if `jitterMs` has been explicitly set.
+  var hasJitterMs: Bool {return self._jitterMs != nil}
+  /// Clears the value of `jitterMs`. Subsequent reads from it will return its default value.
+  mutating func clearJitterMs() {self._jitterMs = nil}
+
+  /// frames waiting longer for the link are dropped, 0 is no limit
+  var maxQueueMs: Int32 {
+    get {return _maxQueueMs ?? 0}
+    set {_maxQueueMs = newValue}
+  }
+  /// Returns true if `maxQueueMs` has been explicitly set.
+  var hasMaxQueueMs: Bool {return self._maxQueueMs != nil}
+  /// Clears the value of `maxQueueMs`. Subsequent reads from it will return its default value.
+  mutating func clearMaxQueueMs() {self._maxQueueMs = nil}
+
+  /// frames are sent in packets of at most mtu bytes
+  var mtu: Int32 {
+    get {return _mtu ?? 1200}
+    set {_mtu = newValue}
+  }
+  /// Returns true if `mtu` has been explicitly set.
+  var hasMtu: Bool {return self._mtu != nil}
+  /// Clears the value of `mtu`. Subsequent reads from it will return its default value.
+  mutating func clearMtu() {self._mtu = nil}
+
+  /// share of the packets (or frames) lost at random
+  var loss: Float {
+    get {return _loss ?? 0}
+    set {_loss = newValue}
+  }
+  /// Returns true if `loss` has been explicitly set.
+  var hasLoss: Bool {return self._loss != nil}
+  /// Clears the value of `loss`. Subsequent reads from it will return its default value.
+  mutating func clearLoss() {self._loss = nil}
+
+  /// a 0 (received) or 1 (lost) for every packet (or frame), repeated
+  var lossTrace: String {
+    get {return _lossTrace ?? String()}
+    set {_lossTrace = newValue}
+  }
+  /// Returns true if `lossTrace` has been explicitly set.
+  var hasLossTrace: Bool {return self._lossTrace != nil}
+  /// Clears the value of `lossTrace`. Subsequent reads from it will return its default value.
+  mutating func clearLossTrace() {self._lossTrace = nil}
+
+  var lossUnit: Channel.LossUnit {
+    get {return _lossUnit ?? .packet}
+    set {_lossUnit = newValue}
+  }
+  /// Returns true if `lossUnit` has been explicitly set.
+  var hasLossUnit: Bool {return self._lossUnit != nil}
+  /// Clears the value of `lossUnit`. Subsequent reads from it will return its default value.
+  mutating func clearLossUnit() {self._lossUnit = nil}
+
+  var seed: Int64 {
+    get {return _seed ?? 0}
+    set {_seed = newValue}
+  }
+  /// Returns true if `seed` has been explicitly set.
+  var hasSeed: Bool {return self._seed != nil}
+  /// Clears the value of `seed`. Subsequent reads from it will return its default value.
+  mutating func clearSeed() {self._seed = nil}
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  enum LossUnit: SwiftProtobuf.Enum, Swift.CaseIterable {
+    typealias RawValue = Int
+    case packet // = 0
+    case frame // = 1
+
+    init() {
+      self = .packet
+    }
+
+    init?(rawValue: Int) {
+      switch rawValue {
+      case 0: self = .packet
+      case 1: self = .frame
+      default: return nil
+      }
+    }
+
+    var rawValue: Int {
+      switch self {
+      case .packet: return 0
+      case .frame: return 1
+      }
+    }
+
+  }
+
+  init() {}
+
+  fileprivate var _bandwidth: String? = nil
+  fileprivate var _burstBytes: Int32? = nil
+  fileprivate var _bandwidthTrace: String? = nil
+  fileprivate var _delayMs: Int32? = nil
+  fileprivate var _jitterMs: Int32? = nil
+  fileprivate var _maxQueueMs: Int32? = nil
+  fileprivate var _mtu: Int32? = nil
+  fileprivate var _loss: Float? = nil
+  fileprivate var _lossTrace: String? = nil
+  fileprivate var _lossUnit: Channel.LossUnit? = nil
+  fileprivate var _seed: Int64? = nil
+}
+
+struct BitrateControl: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  var algorithm: BitrateControl.Algorithm {
+    get {return _algorithm ?? .delayBased}
+    set {_algorithm = newValue}
+  }
+  /// Returns true if `algorithm` has been explicitly set.
+  var hasAlgorithm: Bool {return self._algorithm != nil}
+  /// Clears the value of `algorithm`. Subsequent reads from it will return its default value.
+  mutating func clearAlgorithm() {self._algorithm = nil}
+
+  var minBitrate: String {
+    get {return _minBitrate ?? "100 kbps"}
+    set {_minBitrate = newValue}
+  }
+  /// Returns true if `minBitrate` has been explicitly set.
+  var hasMinBitrate: Bool {return self._minBitrate != nil}
+  /// Clears the value of `minBitrate`. Subsequent reads from it will return its default value.
+  mutating func clearMinBitrate() {self._minBitrate = nil}
+
+  /// defaults to the configured bitrate
+  var maxBitrate: String {
+    get {return _maxBitrate ?? String()}
+    set {_maxBitrate = newValue}
+  }
+  /// Returns true if `maxBitrate` has been explicitly set.
+  var hasMaxBitrate: Bool {return self._maxBitrate != nil}
+  /// Clears the value of `maxBitrate`. Subsequent reads from it will return its default value.
+  mutating func clearMaxBitrate() {self._maxBitrate = nil}
+
+  /// buffer_based: the maximum bitrate is used below low_delay_ms and the
+  /// minimum above high_delay_ms
+  var lowDelayMs: Int32 {
+    get {return _lowDelayMs ?? 50}
+    set {_lowDelayMs = newValue}
+  }
+  /// Returns true if `lowDelayMs` has been explicitly set.
+  var hasLowDelayMs: Bool {return self._lowDelayMs != nil}
+  /// Clears the value of `lowDelayMs`. Subsequent reads from it will return its default value.
+  mutating func clearLowDelayMs() {self._lowDelayMs = nil}
+
+  var highDelayMs: Int32 {
+    get {return _highDelayMs ?? 200}
+    set {_highDelayMs = newValue}
+  }
+  /// Returns true if `highDelayMs` has been explicitly set.
+  var hasHighDelayMs: Bool {return self._highDelayMs != nil}
+  /// Clears the value of `highDelayMs`. Subsequent reads from it will return its default value.
+  mutating func clearHighDelayMs() {self._highDelayMs = nil}
+
+  /// sync frames requested on loss are at least this far apart
+  var syncIntervalMs: Int32 {
+    get {return _syncIntervalMs ?? 1000}
+    set {_syncIntervalMs = newValue}
+  }
+  /// Returns true if `syncIntervalMs` has been explicitly set.
+  var hasSyncIntervalMs: Bool {return self._syncIntervalMs != nil}
+  /// Clears the value of `syncIntervalMs`. Subsequent reads from it will return its default value.
+  mutating func clearSyncIntervalMs() {self._syncIntervalMs = nil}
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  enum Algorithm: SwiftProtobuf.Enum, Swift.CaseIterable {
+    typealias RawValue = Int
+    case delayBased // = 0
+    case bufferBased // = 1
+
+    init() {
+      self = .delayBased
+    }
+
+    init?(rawValue: Int) {
+      switch rawValue {
+      case 0: self = .delayBased
+      case 1: self = .bufferBased
+      default: return nil
+      }
+    }
+
+    var rawValue: Int {
+      switch self {
+      case .delayBased: return 0
+      case .bufferBased: return 1
+      }
+    }
+
+  }
+
+  init() {}
+
+  fileprivate var _algorithm: BitrateControl.Algorithm? = nil
+  fileprivate var _minBitrate: String? = nil
+  fileprivate var _maxBitrate: String? = nil
+  fileprivate var _lowDelayMs: Int32? = nil
+  fileprivate var _highDelayMs: Int32? = nil
+  fileprivate var _syncIntervalMs: Int32? = nil
+}
+
+/// Parse the headers of the encoded frames (H.264, H.265, AV1) to see what
+/// the encoder produced, summed up per temporal layer.
+struct BitstreamAnalysis: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  /// add the parsed values to every frame
+  var frameInfo: Bool {
+    get {return _frameInfo ?? true}
+    set {_frameInfo = newValue}
+  }
+  /// Returns true if `frameInfo` has been explicitly set.
+  var hasFrameInfo: Bool {return self._frameInfo != nil}
+  /// Clears the value of `frameInfo`. Subsequent reads from it will return its default value.
+  mutating func clearFrameInfo() {self._frameInfo = nil}
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  init() {}
+
+  fileprivate var _frameInfo: Bool? = nil
+}
+
+/// xxh64 of every encoded and decoded frame, compare two runs with
+/// scripts/encapp_compare_hashes.py
+struct FrameHashes: Sendable {
+  // SwiftProtobuf.Message conformance is added in an extension below. See the
+  // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
+  // methods supported on all messages.
+
+  /// encoder output buffers, codec config excluded
+  var encoded: Bool {
+    get {return _encoded ?? true}
+    set {_encoded = newValue}
+  }
+  /// Returns true if `encoded` has been explicitly set.
+  var hasEncoded: Bool {return self._encoded != nil}
+  /// Clears the value of `encoded`. Subsequent reads from it will return its default value.
+  mutating func clearEncoded() {self._encoded = nil}
+
+  /// visible samples of the decoder output (BufferDecoder)
+  var decoded: Bool {
+    get {return _decoded ?? true}
+    set {_decoded = newValue}
+  }
+  /// Returns true if `decoded` has been explicitly set.
+  var hasDecoded: Bool {return self._decoded != nil}
+  /// Clears the value of `decoded`. Subsequent reads from it will return its default value.
+  mutating func clearDecoded() {self._decoded = nil}
+
+  /// hashing threads
+  var threads: Int32 {
+    get {return _threads ?? 2}
+    set {_threads = newValue}
+  }
+  /// Returns true if `threads` has been explicitly set.
+  var hasThreads: Bool {return self._threads != nil}
+  /// Clears the value of `threads`. Subsequent reads from it will return its default value.
+  mutating func clearThreads() {self._threads = nil}
+
+  var unknownFields = SwiftProtobuf.UnknownStorage()
+
+  init() {}
+
+  fileprivate var _encoded: Bool? = nil
+  fileprivate var _decoded: Bool? = nil
+  fileprivate var _threads: Int32? = nil
+}
+
 struct Test: @unchecked Sendable {
   // SwiftProtobuf.Message conformance is added in an extension below. See the
   // `Message` and `Message+*Additions` files in the SwiftProtobuf library for
@@ -972,6 +1644,96 @@ struct Test: @unchecked Sendable {
   /// Clears the value of `parallel`. Subsequent reads from it will return its default value.
   mutating func clearParallel() {_uniqueStorage()._parallel = nil}
 
+  var capacitySearch: CapacitySearch {
+    get {return _storage._capacitySearch ?? CapacitySearch()}
+    set {_uniqueStorage()._capacitySearch = newValue}
+  }
+  /// Returns true if `capacitySearch` has been explicitly set.
+  var hasCapacitySearch: Bool {return _storage._capacitySearch != nil}
+  /// Clears the value of `capacitySearch`. Subsequent reads from it will return its default value.
+  mutating func clearCapacitySearch() {_uniqueStorage()._capacitySearch = nil}
+
+  var serial: Serial {
+    get {return _storage._serial ?? Serial()}
+    set {_uniqueStorage()._serial = newValue}
+  }
+  /// Returns true if `serial` has been explicitly set.
+  var hasSerial: Bool {return _storage._serial != nil}
+  /// Clears the value of `serial`. Subsequent reads from it will return its default value.
+  mutating func clearSerial() {_uniqueStorage()._serial = nil}
+
+  var startupBenchmark: StartupBenchmark {
+    get {return _storage._startupBenchmark ?? StartupBenchmark()}
+    set {_uniqueStorage()._startupBenchmark = newValue}
+  }
+  /// Returns true if `startupBenchmark` has been explicitly set.
+  var hasStartupBenchmark: Bool {return _storage._startupBenchmark != nil}
+  /// Clears the value of `startupBenchmark`. Subsequent reads from it will return its default value.
+  mutating func clearStartupBenchmark() {_uniqueStorage()._startupBenchmark = nil}
+
+  var sweep: Sweep {
+    get {return _storage._sweep ?? Sweep()}
+    set {_uniqueStorage()._sweep = newValue}
+  }
+  /// Returns true if `sweep` has been explicitly set.
+  var hasSweep: Bool {return _storage._sweep != nil}
+  /// Clears the value of `sweep`. Subsequent reads from it will return its default value.
+  mutating func clearSweep() {_uniqueStorage()._sweep = nil}
+
+  var ladder: Ladder {
+    get {return _storage._ladder ?? Ladder()}
+    set {_uniqueStorage()._ladder = newValue}
+  }
+  /// Returns true if `ladder` has been explicitly set.
+  var hasLadder: Bool {return _storage._ladder != nil}
+  /// Clears the value of `ladder`. Subsequent reads from it will return its default value.
+  mutating func clearLadder() {_uniqueStorage()._ladder = nil}
+
+  var loopback: Loopback {
+    get {return _storage._loopback ?? Loopback()}
+    set {_uniqueStorage()._loopback = newValue}
+  }
+  /// Returns true if `loopback` has been explicitly set.
+  var hasLoopback: Bool {return _storage._loopback != nil}
+  /// Clears the value of `loopback`. Subsequent reads from it will return its default value.
+  mutating func clearLoopback() {_uniqueStorage()._loopback = nil}
+
+  var channel: Channel {
+    get {return _storage._channel ?? Channel()}
+    set {_uniqueStorage()._channel = newValue}
+  }
+  /// Returns true if `channel` has been explicitly set.
+  var hasChannel: Bool {return _storage._channel != nil}
+  /// Clears the value of `channel`. Subsequent reads from it will return its default value.
+  mutating func clearChannel() {_uniqueStorage()._channel = nil}
+
+  var bitrateControl: BitrateControl {
+    get {return _storage._bitrateControl ?? BitrateControl()}
+    set {_uniqueStorage()._bitrateControl = newValue}
+  }
+  /// Returns true if `bitrateControl` has been explicitly set.
+  var hasBitrateControl: Bool {return _storage._bitrateControl != nil}
+  /// Clears the value of `bitrateControl`. Subsequent reads from it will return its default value.
+  mutating func clearBitrateControl() {_uniqueStorage()._bitrateControl = nil}
+
+  var bitstreamAnalysis: BitstreamAnalysis {
+    get {return _storage._bitstreamAnalysis ?? BitstreamAnalysis()}
+    set {_uniqueStorage()._bitstreamAnalysis = newValue}
+  }
+  /// Returns true if `bitstreamAnalysis` has been explicitly set.
+  var hasBitstreamAnalysis: Bool {return _storage._bitstreamAnalysis != nil}
+  /// Clears the value of `bitstreamAnalysis`. Subsequent reads from it will return its default value.
+  mutating func clearBitstreamAnalysis() {_uniqueStorage()._bitstreamAnalysis = nil}
+
+  var frameHashes: FrameHashes {
+    get {return _storage._frameHashes ?? FrameHashes()}
+    set {_uniqueStorage()._frameHashes = newValue}
+  }
+  /// Returns true if `frameHashes` has been explicitly set.
+  var hasFrameHashes: Bool {return _storage._frameHashes != nil}
+  /// Clears the value of `frameHashes`. Subsequent reads from it will return its default value.
+  mutating func clearFrameHashes() {_uniqueStorage()._frameHashes = nil}
+
   var unknownFields = SwiftProtobuf.UnknownStorage()
 
   init() {}
@@ -1010,6 +1772,15 @@ extension PixFmt: SwiftProtobuf._ProtoNameProviding {
     2: .same(proto: "nv12"),
     3: .same(proto: "nv21"),
     4: .same(proto: "rgba"),
+    5: .same(proto: "p010"),
+    6: .same(proto: "yuv420p10le"),
+  ]
+}
+
+extension Scaler: SwiftProtobuf._ProtoNameProviding {
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    0: .same(proto: "area"),
+    1: .same(proto: "bilinear"),
   ]
 }
 
@@ -1079,6 +1850,10 @@ extension Input: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase
     7: .same(proto: "realtime"),
     8: .standard(proto: "stoptime_sec"),
     9: .same(proto: "show"),
+    10: .standard(proto: "steady_frames"),
+    11: .standard(proto: "start_frame"),
+    12: .standard(proto: "prefetch_frames"),
+    13: .same(proto: "scaler"),
   ]
 
   mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
@@ -1096,6 +1871,10 @@ extension Input: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase
       case 7: try { try decoder.decodeSingularBoolField(value: &self._realtime) }()
       case 8: try { try decoder.decodeSingularFloatField(value: &self._stoptimeSec) }()
       case 9: try { try decoder.decodeSingularBoolField(value: &self._show) }()
+      case 10: try { try decoder.decodeSingularInt32Field(value: &self._steadyFrames) }()
+      case 11: try { try decoder.decodeSingularInt32Field(value: &self._startFrame) }()
+      case 12: try { try decoder.decodeSingularInt32Field(value: &self._prefetchFrames) }()
+      case 13: try { try decoder.decodeSingularEnumField(value: &self._scaler) }()
       default: break
       }
     }
@@ -1133,6 +1912,18 @@ extension Input: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase
     try { if let v = self._show {
       try visitor.visitSingularBoolField(value: v, fieldNumber: 9)
     } }()
+    try { if let v = self._steadyFrames {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 10)
+    } }()
+    try { if let v = self._startFrame {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 11)
+    } }()
+    try { if let v = self._prefetchFrames {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 12)
+    } }()
+    try { if let v = self._scaler {
+      try visitor.visitSingularEnumField(value: v, fieldNumber: 13)
+    } }()
     try unknownFields.traverse(visitor: &visitor)
   }
 
@@ -1146,6 +1937,10 @@ extension Input: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase
     if lhs._realtime != rhs._realtime {return false}
     if lhs._stoptimeSec != rhs._stoptimeSec {return false}
     if lhs._show != rhs._show {return false}
+    if lhs._steadyFrames != rhs._steadyFrames {return false}
+    if lhs._startFrame != rhs._startFrame {return false}
+    if lhs._prefetchFrames != rhs._prefetchFrames {return false}
+    if lhs._scaler != rhs._scaler {return false}
     if lhs.unknownFields != rhs.unknownFields {return false}
     return true
   }
@@ -1177,6 +1972,9 @@ extension Configure: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementation
     21: .same(proto: "quality"),
     22: .same(proto: "complexity"),
     23: .standard(proto: "decode_dump"),
+    24: .standard(proto: "bitrate_window_sec"),
+    25: .standard(proto: "vbv_buffer_sec"),
+    26: .standard(proto: "reuse_codec"),
   ]
 
   fileprivate class _StorageClass {
@@ -1203,6 +2001,9 @@ extension Configure: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementation
     var _quality: Int32? = nil
     var _complexity: Int32? = nil
     var _decodeDump: Bool? = nil
+    var _bitrateWindowSec: [Float] = []
+    var _vbvBufferSec: Float? = nil
+    var _reuseCodec: Bool? = nil
 
     #if swift(>=5.10)
       // This property is used as the initial default value for new instances of the type.
@@ -1240,6 +2041,9 @@ extension Configure: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementation
       _quality = source._quality
       _complexity = source._complexity
       _decodeDump = source._decodeDump
+      _bitrateWindowSec = source._bitrateWindowSec
+      _vbvBufferSec = source._vbvBufferSec
+      _reuseCodec = source._reuseCodec
     }
   }
 
@@ -1281,6 +2085,9 @@ extension Configure: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementation
         case 21: try { try decoder.decodeSingularInt32Field(value: &_storage._quality) }()
         case 22: try { try decoder.decodeSingularInt32Field(value: &_storage._complexity) }()
         case 23: try { try decoder.decodeSingularBoolField(value: &_storage._decodeDump) }()
+        case 24: try { try decoder.decodeRepeatedFloatField(value: &_storage._bitrateWindowSec) }()
+        case 25: try { try decoder.decodeSingularFloatField(value: &_storage._vbvBufferSec) }()
+        case 26: try { try decoder.decodeSingularBoolField(value: &_storage._reuseCodec) }()
         default: break
         }
       }
@@ -1362,6 +2169,15 @@ extension Configure: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementation
       try { if let v = _storage._decodeDump {
         try visitor.visitSingularBoolField(value: v, fieldNumber: 23)
       } }()
+      if !_storage._bitrateWindowSec.isEmpty {
+        try visitor.visitRepeatedFloatField(value: _storage._bitrateWindowSec, fieldNumber: 24)
+      }
+      try { if let v = _storage._vbvBufferSec {
+        try visitor.visitSingularFloatField(value: v, fieldNumber: 25)
+      } }()
+      try { if let v = _storage._reuseCodec {
+        try visitor.visitSingularBoolField(value: v, fieldNumber: 26)
+      } }()
     }
     try unknownFields.traverse(visitor: &visitor)
   }
@@ -1394,6 +2210,9 @@ extension Configure: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementation
         if _storage._quality != rhs_storage._quality {return false}
         if _storage._complexity != rhs_storage._complexity {return false}
         if _storage._decodeDump != rhs_storage._decodeDump {return false}
+        if _storage._bitrateWindowSec != rhs_storage._bitrateWindowSec {return false}
+        if _storage._vbvBufferSec != rhs_storage._vbvBufferSec {return false}
+        if _storage._reuseCodec != rhs_storage._reuseCodec {return false}
         return true
       }
       if !storagesAreEqual {return false}
@@ -1919,31 +2738,586 @@ extension Serial: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBas
   }
 }
 
-extension Test: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
-  static let protoMessageName: String = "Test"
+extension CapacitySearch: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "CapacitySearch"
   static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
-    1: .same(proto: "common"),
-    2: .same(proto: "input"),
-    3: .same(proto: "configure"),
-    4: .same(proto: "runtime"),
-    5: .standard(proto: "decoder_configure"),
-    6: .standard(proto: "decoder_runtime"),
-    7: .same(proto: "parallel"),
+    1: .same(proto: "strategy"),
+    2: .standard(proto: "start_instances"),
+    3: .standard(proto: "max_instances"),
+    4: .standard(proto: "fps_margin"),
   ]
 
-  fileprivate class _StorageClass {
-    var _common: Common? = nil
-    var _input: Input? = nil
-    var _configure: Configure? = nil
-    var _runtime: Runtime? = nil
-    var _decoderConfigure: DecoderConfigure? = nil
-    var _decoderRuntime: DecoderRuntime? = nil
-    var _parallel: Parallel? = nil
-
-    #if swift(>=5.10)
-      // This property is used as the initial default value for new instances of the type.
-      // The type itself is protecting the reference to its storage via CoW semantics.
-      // This will force a copy to be made of this reference when the first mutation occurs;
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeSingularEnumField(value: &self._strategy) }()
+      case 2: try { try decoder.decodeSingularInt32Field(value: &self._startInstances) }()
+      case 3: try { try decoder.decodeSingularInt32Field(value: &self._maxInstances) }()
+      case 4: try { try decoder.decodeSingularFloatField(value: &self._fpsMargin) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    // The use of inline closures is to circumvent an issue where the compiler
+    // allocates stack space for every if/case branch local when no optimizations
+    // are enabled. https://github.com/apple/swift-protobuf/issues/1034 and
+    // https://github.com/apple/swift-protobuf/issues/1182
+    try { if let v = self._strategy {
+      try visitor.visitSingularEnumField(value: v, fieldNumber: 1)
+    } }()
+    try { if let v = self._startInstances {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 2)
+    } }()
+    try { if let v = self._maxInstances {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 3)
+    } }()
+    try { if let v = self._fpsMargin {
+      try visitor.visitSingularFloatField(value: v, fieldNumber: 4)
+    } }()
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: CapacitySearch, rhs: CapacitySearch) -> Bool {
+    if lhs._strategy != rhs._strategy {return false}
+    if lhs._startInstances != rhs._startInstances {return false}
+    if lhs._maxInstances != rhs._maxInstances {return false}
+    if lhs._fpsMargin != rhs._fpsMargin {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension CapacitySearch.Strategy: SwiftProtobuf._ProtoNameProviding {
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    0: .same(proto: "ramp"),
+    1: .same(proto: "binary"),
+  ]
+}
+
+extension StartupBenchmark: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "StartupBenchmark"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .same(proto: "iterations"),
+    2: .standard(proto: "first_frame_timeout_ms"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeSingularInt32Field(value: &self._iterations) }()
+      case 2: try { try decoder.decodeSingularInt32Field(value: &self._firstFrameTimeoutMs) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    // The use of inline closures is to circumvent an issue where the compiler
+    // allocates stack space for every if/case branch local when no optimizations
+    // are enabled. https://github.com/apple/swift-protobuf/issues/1034 and
+    // https://github.com/apple/swift-protobuf/issues/1182
+    try { if let v = self._iterations {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 1)
+    } }()
+    try { if let v = self._firstFrameTimeoutMs {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 2)
+    } }()
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: StartupBenchmark, rhs: StartupBenchmark) -> Bool {
+    if lhs._iterations != rhs._iterations {return false}
+    if lhs._firstFrameTimeoutMs != rhs._firstFrameTimeoutMs {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension Sweep: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "Sweep"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .same(proto: "bitrate"),
+    2: .same(proto: "framerate"),
+    3: .same(proto: "resolution"),
+    4: .standard(proto: "i_frame_interval"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeRepeatedStringField(value: &self.bitrate) }()
+      case 2: try { try decoder.decodeRepeatedFloatField(value: &self.framerate) }()
+      case 3: try { try decoder.decodeRepeatedStringField(value: &self.resolution) }()
+      case 4: try { try decoder.decodeRepeatedInt32Field(value: &self.iFrameInterval) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    if !self.bitrate.isEmpty {
+      try visitor.visitRepeatedStringField(value: self.bitrate, fieldNumber: 1)
+    }
+    if !self.framerate.isEmpty {
+      try visitor.visitRepeatedFloatField(value: self.framerate, fieldNumber: 2)
+    }
+    if !self.resolution.isEmpty {
+      try visitor.visitRepeatedStringField(value: self.resolution, fieldNumber: 3)
+    }
+    if !self.iFrameInterval.isEmpty {
+      try visitor.visitRepeatedInt32Field(value: self.iFrameInterval, fieldNumber: 4)
+    }
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: Sweep, rhs: Sweep) -> Bool {
+    if lhs.bitrate != rhs.bitrate {return false}
+    if lhs.framerate != rhs.framerate {return false}
+    if lhs.resolution != rhs.resolution {return false}
+    if lhs.iFrameInterval != rhs.iFrameInterval {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension Ladder: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "Ladder"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .same(proto: "rendition"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeRepeatedMessageField(value: &self.rendition) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    if !self.rendition.isEmpty {
+      try visitor.visitRepeatedMessageField(value: self.rendition, fieldNumber: 1)
+    }
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: Ladder, rhs: Ladder) -> Bool {
+    if lhs.rendition != rhs.rendition {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension Ladder.Rendition: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = Ladder.protoMessageName + ".Rendition"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .same(proto: "resolution"),
+    2: .same(proto: "bitrate"),
+    3: .same(proto: "codec"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeSingularStringField(value: &self._resolution) }()
+      case 2: try { try decoder.decodeSingularStringField(value: &self._bitrate) }()
+      case 3: try { try decoder.decodeSingularStringField(value: &self._codec) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    // The use of inline closures is to circumvent an issue where the compiler
+    // allocates stack space for every if/case branch local when no optimizations
+    // are enabled. https://github.com/apple/swift-protobuf/issues/1034 and
+    // https://github.com/apple/swift-protobuf/issues/1182
+    try { if let v = self._resolution {
+      try visitor.visitSingularStringField(value: v, fieldNumber: 1)
+    } }()
+    try { if let v = self._bitrate {
+      try visitor.visitSingularStringField(value: v, fieldNumber: 2)
+    } }()
+    try { if let v = self._codec {
+      try visitor.visitSingularStringField(value: v, fieldNumber: 3)
+    } }()
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: Ladder.Rendition, rhs: Ladder.Rendition) -> Bool {
+    if lhs._resolution != rhs._resolution {return false}
+    if lhs._bitrate != rhs._bitrate {return false}
+    if lhs._codec != rhs._codec {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension Loopback: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "Loopback"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .standard(proto: "hash_frames"),
+    2: .same(proto: "compare"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeSingularBoolField(value: &self._hashFrames) }()
+      case 2: try { try decoder.decodeSingularBoolField(value: &self._compare) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    // The use of inline closures is to circumvent an issue where the compiler
+    // allocates stack space for every if/case branch local when no optimizations
+    // are enabled. https://github.com/apple/swift-protobuf/issues/1034 and
+    // https://github.com/apple/swift-protobuf/issues/1182
+    try { if let v = self._hashFrames {
+      try visitor.visitSingularBoolField(value: v, fieldNumber: 1)
+    } }()
+    try { if let v = self._compare {
+      try visitor.visitSingularBoolField(value: v, fieldNumber: 2)
+    } }()
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: Loopback, rhs: Loopback) -> Bool {
+    if lhs._hashFrames != rhs._hashFrames {return false}
+    if lhs._compare != rhs._compare {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension Channel: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "Channel"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .same(proto: "bandwidth"),
+    2: .standard(proto: "burst_bytes"),
+    3: .standard(proto: "bandwidth_trace"),
+    4: .standard(proto: "delay_ms"),
+    5: .standard(proto: "jitter_ms"),
+    6: .standard(proto: "max_queue_ms"),
+    7: .same(proto: "mtu"),
+    8: .same(proto: "loss"),
+    9: .standard(proto: "loss_trace"),
+    10: .standard(proto: "loss_unit"),
+    11: .same(proto: "seed"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeSingularStringField(value: &self._bandwidth) }()
+      case 2: try { try decoder.decodeSingularInt32Field(value: &self._burstBytes) }()
+      case 3: try { try decoder.decodeSingularStringField(value: &self._bandwidthTrace) }()
+      case 4: try { try decoder.decodeSingularInt32Field(value: &self._delayMs) }()
+      case 5: try { try decoder.decodeSingularInt32Field(value: &self._jitterMs) }()
+      case 6: try { try decoder.decodeSingularInt32Field(value: &self._maxQueueMs) }()
+      case 7: try { try decoder.decodeSingularInt32Field(value: &self._mtu) }()
+      case 8: try { try decoder.decodeSingularFloatField(value: &self._loss) }()
+      case 9: try { try decoder.decodeSingularStringField(value: &self._lossTrace) }()
+      case 10: try { try decoder.decodeSingularEnumField(value: &self._lossUnit) }()
+      case 11: try { try decoder.decodeSingularInt64Field(value: &self._seed) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    // The use of inline closures is to circumvent an issue where the compiler
+    // allocates stack space for every if/case branch local when no optimizations
+    // are enabled. https://github.com/apple/swift-protobuf/issues/1034 and
+    // https://github.com/apple/swift-protobuf/issues/1182
+    try { if let v = self._bandwidth {
+      try visitor.visitSingularStringField(value: v, fieldNumber: 1)
+    } }()
+    try { if let v = self._burstBytes {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 2)
+    } }()
+    try { if let v = self._bandwidthTrace {
+      try visitor.visitSingularStringField(value: v, fieldNumber: 3)
+    } }()
+    try { if let v = self._delayMs {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 4)
+    } }()
+    try { if let v = self._jitterMs {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 5)
+    } }()
+    try { if let v = self._maxQueueMs {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 6)
+    } }()
+    try { if let v = self._mtu {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 7)
+    } }()
+    try { if let v = self._loss {
+      try visitor.visitSingularFloatField(value: v, fieldNumber: 8)
+    } }()
+    try { if let v = self._lossTrace {
+      try visitor.visitSingularStringField(value: v, fieldNumber: 9)
+    } }()
+    try { if let v = self._lossUnit {
+      try visitor.visitSingularEnumField(value: v, fieldNumber: 10)
+    } }()
+    try { if let v = self._seed {
+      try visitor.visitSingularInt64Field(value: v, fieldNumber: 11)
+    } }()
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: Channel, rhs: Channel) -> Bool {
+    if lhs._bandwidth != rhs._bandwidth {return false}
+    if lhs._burstBytes != rhs._burstBytes {return false}
+    if lhs._bandwidthTrace != rhs._bandwidthTrace {return false}
+    if lhs._delayMs != rhs._delayMs {return false}
+    if lhs._jitterMs != rhs._jitterMs {return false}
+    if lhs._maxQueueMs != rhs._maxQueueMs {return false}
+    if lhs._mtu != rhs._mtu {return false}
+    if lhs._loss != rhs._loss {return false}
+    if lhs._lossTrace != rhs._lossTrace {return false}
+    if lhs._lossUnit != rhs._lossUnit {return false}
+    if lhs._seed != rhs._seed {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension Channel.LossUnit: SwiftProtobuf._ProtoNameProviding {
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    0: .same(proto: "packet"),
+    1: .same(proto: "frame"),
+  ]
+}
+
+extension BitrateControl: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "BitrateControl"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .same(proto: "algorithm"),
+    2: .standard(proto: "min_bitrate"),
+    3: .standard(proto: "max_bitrate"),
+    4: .standard(proto: "low_delay_ms"),
+    5: .standard(proto: "high_delay_ms"),
+    6: .standard(proto: "sync_interval_ms"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeSingularEnumField(value: &self._algorithm) }()
+      case 2: try { try decoder.decodeSingularStringField(value: &self._minBitrate) }()
+      case 3: try { try decoder.decodeSingularStringField(value: &self._maxBitrate) }()
+      case 4: try { try decoder.decodeSingularInt32Field(value: &self._lowDelayMs) }()
+      case 5: try { try decoder.decodeSingularInt32Field(value: &self._highDelayMs) }()
+      case 6: try { try decoder.decodeSingularInt32Field(value: &self._syncIntervalMs) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    // The use of inline closures is to circumvent an issue where the compiler
+    // allocates stack space for every if/case branch local when no optimizations
+    // are enabled. https://github.com/apple/swift-protobuf/issues/1034 and
+    // https://github.com/apple/swift-protobuf/issues/1182
+    try { if let v = self._algorithm {
+      try visitor.visitSingularEnumField(value: v, fieldNumber: 1)
+    } }()
+    try { if let v = self._minBitrate {
+      try visitor.visitSingularStringField(value: v, fieldNumber: 2)
+    } }()
+    try { if let v = self._maxBitrate {
+      try visitor.visitSingularStringField(value: v, fieldNumber: 3)
+    } }()
+    try { if let v = self._lowDelayMs {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 4)
+    } }()
+    try { if let v = self._highDelayMs {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 5)
+    } }()
+    try { if let v = self._syncIntervalMs {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 6)
+    } }()
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: BitrateControl, rhs: BitrateControl) -> Bool {
+    if lhs._algorithm != rhs._algorithm {return false}
+    if lhs._minBitrate != rhs._minBitrate {return false}
+    if lhs._maxBitrate != rhs._maxBitrate {return false}
+    if lhs._lowDelayMs != rhs._lowDelayMs {return false}
+    if lhs._highDelayMs != rhs._highDelayMs {return false}
+    if lhs._syncIntervalMs != rhs._syncIntervalMs {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension BitrateControl.Algorithm: SwiftProtobuf._ProtoNameProviding {
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    0: .same(proto: "delay_based"),
+    1: .same(proto: "buffer_based"),
+  ]
+}
+
+extension BitstreamAnalysis: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "BitstreamAnalysis"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .standard(proto: "frame_info"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeSingularBoolField(value: &self._frameInfo) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    // The use of inline closures is to circumvent an issue where the compiler
+    // allocates stack space for every if/case branch local when no optimizations
+    // are enabled. https://github.com/apple/swift-protobuf/issues/1034 and
+    // https://github.com/apple/swift-protobuf/issues/1182
+    try { if let v = self._frameInfo {
+      try visitor.visitSingularBoolField(value: v, fieldNumber: 1)
+    } }()
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: BitstreamAnalysis, rhs: BitstreamAnalysis) -> Bool {
+    if lhs._frameInfo != rhs._frameInfo {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension FrameHashes: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "FrameHashes"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .same(proto: "encoded"),
+    2: .same(proto: "decoded"),
+    3: .same(proto: "threads"),
+  ]
+
+  mutating func decodeMessage<D: SwiftProtobuf.Decoder>(decoder: inout D) throws {
+    while let fieldNumber = try decoder.nextFieldNumber() {
+      // The use of inline closures is to circumvent an issue where the compiler
+      // allocates stack space for every case branch when no optimizations are
+      // enabled. https://github.com/apple/swift-protobuf/issues/1034
+      switch fieldNumber {
+      case 1: try { try decoder.decodeSingularBoolField(value: &self._encoded) }()
+      case 2: try { try decoder.decodeSingularBoolField(value: &self._decoded) }()
+      case 3: try { try decoder.decodeSingularInt32Field(value: &self._threads) }()
+      default: break
+      }
+    }
+  }
+
+  func traverse<V: SwiftProtobuf.Visitor>(visitor: inout V) throws {
+    // The use of inline closures is to circumvent an issue where the compiler
+    // allocates stack space for every if/case branch local when no optimizations
+    // are enabled. https://github.com/apple/swift-protobuf/issues/1034 and
+    // https://github.com/apple/swift-protobuf/issues/1182
+    try { if let v = self._encoded {
+      try visitor.visitSingularBoolField(value: v, fieldNumber: 1)
+    } }()
+    try { if let v = self._decoded {
+      try visitor.visitSingularBoolField(value: v, fieldNumber: 2)
+    } }()
+    try { if let v = self._threads {
+      try visitor.visitSingularInt32Field(value: v, fieldNumber: 3)
+    } }()
+    try unknownFields.traverse(visitor: &visitor)
+  }
+
+  static func ==(lhs: FrameHashes, rhs: FrameHashes) -> Bool {
+    if lhs._encoded != rhs._encoded {return false}
+    if lhs._decoded != rhs._decoded {return false}
+    if lhs._threads != rhs._threads {return false}
+    if lhs.unknownFields != rhs.unknownFields {return false}
+    return true
+  }
+}
+
+extension Test: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase, SwiftProtobuf._ProtoNameProviding {
+  static let protoMessageName: String = "Test"
+  static let _protobuf_nameMap: SwiftProtobuf._NameMap = [
+    1: .same(proto: "common"),
+    2: .same(proto: "input"),
+    3: .same(proto: "configure"),
+    4: .same(proto: "runtime"),
+    5: .standard(proto: "decoder_configure"),
+    6: .standard(proto: "decoder_runtime"),
+    7: .same(proto: "parallel"),
+    8: .standard(proto: "capacity_search"),
+    9: .same(proto: "serial"),
+    10: .standard(proto: "startup_benchmark"),
+    11: .same(proto: "sweep"),
+    12: .same(proto: "ladder"),
+    13: .same(proto: "loopback"),
+    14: .same(proto: "channel"),
+    15: .standard(proto: "bitrate_control"),
+    16: .standard(proto: "bitstream_analysis"),
+    17: .standard(proto: "frame_hashes"),
+  ]
+
+  fileprivate class _StorageClass {
+    var _common: Common? = nil
+    var _input: Input? = nil
+    var _configure: Configure? = nil
+    var _runtime: Runtime? = nil
+    var _decoderConfigure: DecoderConfigure? = nil
+    var _decoderRuntime: DecoderRuntime? = nil
+    var _parallel: Parallel? = nil
+    var _capacitySearch: CapacitySearch? = nil
+    var _serial: Serial? = nil
+    var _startupBenchmark: StartupBenchmark? = nil
+    var _sweep: Sweep? = nil
+    var _ladder: Ladder? = nil
+    var _loopback: Loopback? = nil
+    var _channel: Channel? = nil
+    var _bitrateControl: BitrateControl? = nil
+    var _bitstreamAnalysis: BitstreamAnalysis? = nil
+    var _frameHashes: FrameHashes? = nil
+
+    #if swift(>=5.10)
+      // This property is used as the initial default value for new instances of the type.
+      // The type itself is protecting the reference to its storage via CoW semantics.
+      // This will force a copy to be made of this reference when the first mutation occurs;
       // hence, it is safe to mark this as `nonisolated(unsafe)`.
       static nonisolated(unsafe) let defaultInstance = _StorageClass()
     #else
@@ -1960,6 +3334,16 @@ extension Test: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase,
       _decoderConfigure = source._decoderConfigure
       _decoderRuntime = source._decoderRuntime
       _parallel = source._parallel
+      _capacitySearch = source._capacitySearch
+      _serial = source._serial
+      _startupBenchmark = source._startupBenchmark
+      _sweep = source._sweep
+      _ladder = source._ladder
+      _loopback = source._loopback
+      _channel = source._channel
+      _bitrateControl = source._bitrateControl
+      _bitstreamAnalysis = source._bitstreamAnalysis
+      _frameHashes = source._frameHashes
     }
   }
 
@@ -1985,6 +3369,16 @@ extension Test: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase,
         case 5: try { try decoder.decodeSingularMessageField(value: &_storage._decoderConfigure) }()
         case 6: try { try decoder.decodeSingularMessageField(value: &_storage._decoderRuntime) }()
         case 7: try { try decoder.decodeSingularMessageField(value: &_storage._parallel) }()
+        case 8: try { try decoder.decodeSingularMessageField(value: &_storage._capacitySearch) }()
+        case 9: try { try decoder.decodeSingularMessageField(value: &_storage._serial) }()
+        case 10: try { try decoder.decodeSingularMessageField(value: &_storage._startupBenchmark) }()
+        case 11: try { try decoder.decodeSingularMessageField(value: &_storage._sweep) }()
+        case 12: try { try decoder.decodeSingularMessageField(value: &_storage._ladder) }()
+        case 13: try { try decoder.decodeSingularMessageField(value: &_storage._loopback) }()
+        case 14: try { try decoder.decodeSingularMessageField(value: &_storage._channel) }()
+        case 15: try { try decoder.decodeSingularMessageField(value: &_storage._bitrateControl) }()
+        case 16: try { try decoder.decodeSingularMessageField(value: &_storage._bitstreamAnalysis) }()
+        case 17: try { try decoder.decodeSingularMessageField(value: &_storage._frameHashes) }()
         default: break
         }
       }
@@ -2018,6 +3412,36 @@ extension Test: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase,
       try { if let v = _storage._parallel {
         try visitor.visitSingularMessageField(value: v, fieldNumber: 7)
       } }()
+      try { if let v = _storage._capacitySearch {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 8)
+      } }()
+      try { if let v = _storage._serial {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 9)
+      } }()
+      try { if let v = _storage._startupBenchmark {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 10)
+      } }()
+      try { if let v = _storage._sweep {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 11)
+      } }()
+      try { if let v = _storage._ladder {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 12)
+      } }()
+      try { if let v = _storage._loopback {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 13)
+      } }()
+      try { if let v = _storage._channel {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 14)
+      } }()
+      try { if let v = _storage._bitrateControl {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 15)
+      } }()
+      try { if let v = _storage._bitstreamAnalysis {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 16)
+      } }()
+      try { if let v = _storage._frameHashes {
+        try visitor.visitSingularMessageField(value: v, fieldNumber: 17)
+      } }()
     }
     try unknownFields.traverse(visitor: &visitor)
   }
@@ -2034,6 +3458,16 @@ extension Test: SwiftProtobuf.Message, SwiftProtobuf._MessageImplementationBase,
         if _storage._decoderConfigure != rhs_storage._decoderConfigure {return false}
         if _storage._decoderRuntime != rhs_storage._decoderRuntime {return false}
         if _storage._parallel != rhs_storage._parallel {return false}
+        if _storage._capacitySearch != rhs_storage._capacitySearch {return false}
+        if _storage._serial != rhs_storage._serial {return false}
+        if _storage._startupBenchmark != rhs_storage._startupBenchmark {return false}
+        if _storage._sweep != rhs_storage._sweep {return false}
+        if _storage._ladder != rhs_storage._ladder {return false}
+        if _storage._loopback != rhs_storage._loopback {return false}
+        if _storage._channel != rhs_storage._channel {return false}
+        if _storage._bitrateControl != rhs_storage._bitrateControl {return false}
+        if _storage._bitstreamAnalysis != rhs_storage._bitstreamAnalysis {return false}
+        if _storage._frameHashes != rhs_storage._frameHashes {return false}
         return true
       }
       if !storagesAreEqual {return false}
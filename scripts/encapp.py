@@ -79,6 +79,8 @@ PIX_FMT_TYPES_VALUES = {
     "nv12": 2,
     "nv21": 3,
     "rgba": 4,
+    "p010": 5,
+    "yuv420p10le": 6,
 }
 PIX_FMT_TYPES = {
     "yuv420p": "yuv",
@@ -86,6 +88,8 @@ PIX_FMT_TYPES = {
     "nv12": "yuv",
     "nv21": "yuv",
     "rgba": "rgba",
+    "p010": "yuv",
+    "yuv420p10le": "yuv",
 }
 PREFERRED_PIX_FMT = "yuv420p"
 KNOWN_CONFIGURE_TYPES = {
@@ -390,12 +394,22 @@ def verify_video_size(videofile, resolution):
     return False
 
 
+def get_subtests(test):
+    # tests run in parallel with or after (serial) the main test
+    return list(test.parallel.test) + list(test.serial.test)
+
+
+def is_generated_input(filepath):
+    # camera and synthetic inputs are produced on the device, not pushed
+    return filepath == "camera" or filepath.startswith("synthetic:")
+
+
 def update_file_paths(test, device_workdir=default_values["device_workdir"]):
     # update subtests
-    for subtest in test.parallel.test:
+    for subtest in get_subtests(test):
         update_file_paths(subtest, device_workdir)
-    # camera tests do not need any input file paths
-    if test.input.filepath == "camera":
+    # camera and synthetic tests do not need any input file paths
+    if is_generated_input(test.input.filepath):
         return
     # update main test
     basename = os.path.basename(test.input.filepath)
@@ -406,32 +420,32 @@ def update_file_paths(test, device_workdir=default_values["device_workdir"]):
 
 
 def get_media_files(test, all_files):
-    if test.input.filepath != "camera":
+    if not is_generated_input(test.input.filepath):
         name = os.path.basename(test.input.filepath)
         if name not in all_files:
             all_files.add(name)
-    for subtest in test.parallel.test:
-        if subtest.input.filepath != "camera":
+    for subtest in get_subtests(test):
+        if not is_generated_input(subtest.input.filepath):
             get_media_files(subtest, all_files)
     return
 
 
 def add_media_files(test, files_to_push):
-    if test.input.filepath != "camera":
+    if not is_generated_input(test.input.filepath):
         full_path = os.path.expanduser(test.input.filepath)
         if full_path not in files_to_push:
             files_to_push.add(full_path)
-    for subtest in test.parallel.test:
-        if subtest.input.filepath != "camera":
+    for subtest in get_subtests(test):
+        if not is_generated_input(subtest.input.filepath):
             add_media_files(subtest, files_to_push)
     return
 
 
 def update_media_files(test, options):
-    if test.input.filepath != "camera":
+    if not is_generated_input(test.input.filepath):
         update_media(test, options)
-    for subtest in test.parallel.test:
-        if subtest.input.filepath != "camera":
+    for subtest in get_subtests(test):
+        if not is_generated_input(subtest.input.filepath):
             update_media_files(subtest, options)
     return
 
@@ -1703,7 +1717,9 @@ def process_options(options):
     # 3. check the validity of some parameters
     if "replace" not in options or not options.replace:
         options.replace = {}
-    if options.replace.get("input", {}).get("filepath", ""):
+    if options.replace.get("input", {}).get("filepath", "") and not is_generated_input(
+        options.replace["input"]["filepath"]
+    ):
         videofile = options.replace.get("input", {}).get("filepath", "")
         assert os.path.exists(videofile) and os.access(videofile, os.R_OK), (
             f"file {videofile} does not exist"
@@ -1718,7 +1734,7 @@ def process_options(options):
     if "input" in options.replace and "filepath" in options.replace["input"]:
         input_filepath = options.replace["input"]["filepath"]
         # convert y4m (raw) files into yuv/rgba (raw) files
-        if input_filepath != "camera" and encapp_tool.ffutils.video_is_y4m(
+        if not is_generated_input(input_filepath) and encapp_tool.ffutils.video_is_y4m(
             input_filepath
         ):
 
@@ -0,0 +1,130 @@
+#!/usr/bin/env python3
+
+"""Compare the frame hashes of two encapp runs.
+
+Tests with a frame_hashes block have the xxh64 of every encoded frame
+(encoded_hashes) and of every decoded frame (decoded_hashes) in the json
+file, in pts order. This reports the first frame where the two runs
+differ, e.g. before and after a firmware update.
+
+Exits with 1 if any of the hashes differ.
+"""
+
+import argparse
+import json
+import sys
+
+HASH_CHARS = 16
+# hash block and the frame list with the pts of the same frames
+BLOCKS = [("encoded_hashes", "frames"), ("decoded_hashes", "decoded_frames")]
+
+
+def split_hashes(block):
+    hashes = block.get("hashes", "")
+    return [
+        hashes[i : i + HASH_CHARS] for i in range(0, len(hashes), HASH_CHARS)
+    ]
+
+
+def frame_pts(data, frames_key, count):
+    """Return the pts of the hashed frames, None if they are not known"""
+    frames = data.get(frames_key, [])
+    if len(frames) != count:
+        return None
+    return sorted(int(frame["pts"]) for frame in frames)
+
+
+def first_difference(reference, other):
+    """Return the index of the first differing hash, -1 if there is none"""
+    for index, (ref_hash, other_hash) in enumerate(zip(reference, other)):
+        if ref_hash != other_hash:
+            return index
+    if len(reference) != len(other):
+        return min(len(reference), len(other))
+    return -1
+
+
+def compare(reference, other, block_key, frames_key, debug=0):
+    """Return True if the hashes are identical (or both runs lack them)"""
+    if block_key not in reference and block_key not in other:
+        if debug > 0:
+            print(f"{block_key}: not in any of the runs")
+        return True
+    if block_key not in reference or block_key not in other:
+        print(f"{block_key}: only in one of the runs")
+        return False
+    ref_block = reference[block_key]
+    other_block = other[block_key]
+    if ref_block.get("algorithm") != other_block.get("algorithm"):
+        print(
+            f"{block_key}: different algorithms, "
+            f"{ref_block.get('algorithm')} vs {other_block.get('algorithm')}"
+        )
+        return False
+    ref_hashes = split_hashes(ref_block)
+    other_hashes = split_hashes(other_block)
+    index = first_difference(ref_hashes, other_hashes)
+    if index < 0:
+        print(f"{block_key}: {len(ref_hashes)} frames identical")
+        return True
+
+    pts = frame_pts(reference, frames_key, len(ref_hashes))
+    where = f"frame {index}"
+    if pts is not None and index < len(pts):
+        where += f" (pts {pts[index]})"
+    if index >= min(len(ref_hashes), len(other_hashes)):
+        print(
+            f"{block_key}: first {index} frames identical, "
+            f"frame count differs: {len(ref_hashes)} vs {len(other_hashes)}"
+        )
+        return False
+    differing = sum(
+        1 for ref_hash, other_hash in zip(ref_hashes, other_hashes)
+        if ref_hash != other_hash
+    )
+    print(
+        f"{block_key}: first difference at {where}: "
+        f"{ref_hashes[index]} vs {other_hashes[index]}, "
+        f"{differing} of {min(len(ref_hashes), len(other_hashes))} frames differ"
+    )
+    if len(ref_hashes) != len(other_hashes):
+        print(
+            f"{block_key}: frame count differs: "
+            f"{len(ref_hashes)} vs {len(other_hashes)}"
+        )
+    return False
+
+
+def parse_args():
+    parser = argparse.ArgumentParser(description=__doc__)
+    parser.add_argument(
+        "--debug",
+        action="count",
+        dest="debug",
+        default=0,
+        help="Increase verbosity (use many times for more)",
+    )
+    parser.add_argument("reference", help="encapp json file of the reference run")
+    parser.add_argument("other", help="encapp json file of the run to check")
+    return parser.parse_args()
+
+
+def main():
+    options = parse_args()
+    with open(options.reference) as json_file:
+        reference = json.load(json_file)
+    with open(options.other) as json_file:
+        other = json.load(json_file)
+
+    if not any(block_key in reference or block_key in other for block_key, _ in BLOCKS):
+        print("No frame hashes, run the tests with a frame_hashes block")
+        sys.exit(1)
+    identical = True
+    for block_key, frames_key in BLOCKS:
+        if not compare(reference, other, block_key, frames_key, options.debug):
+            identical = False
+    sys.exit(0 if identical else 1)
+
+
+if __name__ == "__main__":
+    main()
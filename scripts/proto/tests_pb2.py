@@ -15,12 +15,14 @@ _sym_db = _symbol_database.Default()
 
 
 
-DESCRIPTOR = _descriptor_pool.Default().AddSerializedFile(b'\n\x0btests.proto\"K\n\x06\x43ommon\x12\n\n\x02id\x18\x01 \x01(\t\x12\x13\n\x0b\x64\x65scription\x18\x02 \x01(\t\x12\x11\n\toperation\x18\x03 \x01(\t\x12\r\n\x05start\x18\x04 \x01(\t\"\xb9\x01\n\x05Input\x12\x10\n\x08\x66ilepath\x18\x01 \x01(\t\x12\x12\n\nresolution\x18\x02 \x01(\t\x12\x18\n\x07pix_fmt\x18\x03 \x01(\x0e\x32\x07.PixFmt\x12\x11\n\tframerate\x18\x04 \x01(\x02\x12\x16\n\x0eplayout_frames\x18\x05 \x01(\x05\x12\x0f\n\x07pursuit\x18\x06 \x01(\x05\x12\x10\n\x08realtime\x18\x07 \x01(\x08\x12\x14\n\x0cstoptime_sec\x18\x08 \x01(\x02\x12\x0c\n\x04show\x18\t \x01(\x08\"\x9d\x07\n\tConfigure\x12\'\n\tparameter\x18\x01 \x03(\x0b\x32\x14.Configure.Parameter\x12\r\n\x05\x63odec\x18\x02 \x01(\t\x12\x0e\n\x06\x65ncode\x18\x03 \x01(\x08\x12\x0f\n\x07surface\x18\x04 \x01(\x08\x12\x0c\n\x04mime\x18\x05 \x01(\t\x12\x0f\n\x07\x62itrate\x18\x06 \x01(\t\x12,\n\x0c\x62itrate_mode\x18\x07 \x01(\x0e\x32\x16.Configure.BitrateMode\x12\x12\n\ndurationUs\x18\x08 \x01(\x04\x12\x12\n\nresolution\x18\t \x01(\t\x12\x14\n\x0c\x63olor_format\x18\n \x01(\x05\x12\x30\n\x0e\x63olor_standard\x18\x0b \x01(\x0e\x32\x18.Configure.ColorStandard\x12*\n\x0b\x63olor_range\x18\x0c \x01(\x0e\x32\x15.Configure.ColorRange\x12\x30\n\x0e\x63olor_transfer\x18\r \x01(\x0e\x32\x18.Configure.ColorTransfer\x12\x1e\n\x16\x63olor_transfer_request\x18\x0e \x01(\t\x12\x11\n\tframerate\x18\x0f \x01(\x02\x12\x18\n\x10i_frame_interval\x18\x10 \x01(\x05\x12\x1c\n\x14intra_refresh_period\x18\x11 \x01(\x05\x12\x0f\n\x07latency\x18\x12 \x01(\x05\x12#\n\x1brepeat_previous_frame_after\x18\x13 \x01(\x03\x12\x11\n\tts_schema\x18\x14 \x01(\t\x12\x0f\n\x07quality\x18\x15 \x01(\x05\x12\x12\n\ncomplexity\x18\x16 \x01(\x05\x12\x1a\n\x0b\x64\x65\x63ode_dump\x18\x17 \x01(\x08:\x05\x66\x61lse\x1a\x45\n\tParameter\x12\x0b\n\x03key\x18\x01 \x01(\t\x12\x1c\n\x04type\x18\x02 \x01(\x0e\x32\x0e.DataValueType\x12\r\n\x05value\x18\x03 \x01(\t\"3\n\x0b\x42itrateMode\x12\x06\n\x02\x63q\x10\x00\x12\x07\n\x03vbr\x10\x01\x12\x07\n\x03\x63\x62r\x10\x02\x12\n\n\x06\x63\x62r_fd\x10\x03\"E\n\rColorStandard\x12\r\n\tbt601_pal\x10\x02\x12\x0e\n\nbt601_ntsc\x10\x04\x12\t\n\x05\x62t709\x10\x01\x12\n\n\x06\x62t2020\x10\x06\"#\n\nColorRange\x12\x08\n\x04\x66ull\x10\x01\x12\x0b\n\x07limited\x10\x02\"?\n\rColorTransfer\x12\n\n\x06linear\x10\x01\x12\r\n\tsdr_video\x10\x03\x12\n\n\x06st2084\x10\x06\x12\x07\n\x03hlg\x10\x07\"\xa1\x03\n\x07Runtime\x12%\n\tparameter\x18\x01 \x03(\x0b\x32\x12.Runtime.Parameter\x12\x35\n\rvideo_bitrate\x18\x02 \x03(\x0b\x32\x1e.Runtime.VideoBitrateParameter\x12\x0c\n\x04\x64rop\x18\x03 \x03(\x03\x12=\n\x11\x64ynamic_framerate\x18\x04 \x03(\x0b\x32\".Runtime.DynamicFramerateParameter\x12\x14\n\x0crequest_sync\x18\x05 \x03(\x03\x1aW\n\tParameter\x12\x10\n\x08\x66ramenum\x18\x01 \x01(\x03\x12\x0b\n\x03key\x18\x02 \x01(\t\x12\x1c\n\x04type\x18\x03 \x01(\x0e\x32\x0e.DataValueType\x12\r\n\x05value\x18\x04 \x01(\t\x1a:\n\x15VideoBitrateParameter\x12\x10\n\x08\x66ramenum\x18\x01 \x01(\x03\x12\x0f\n\x07\x62itrate\x18\x02 \x01(\t\x1a@\n\x19\x44ynamicFramerateParameter\x12\x10\n\x08\x66ramenum\x18\x01 \x01(\x03\x12\x11\n\tframerate\x18\x02 \x01(\x02\"\x98\x01\n\x10\x44\x65\x63oderConfigure\x12.\n\tparameter\x18\x01 \x03(\x0b\x32\x1b.DecoderConfigure.Parameter\x12\r\n\x05\x63odec\x18\x02 \x01(\t\x1a\x45\n\tParameter\x12\x0b\n\x03key\x18\x01 \x01(\t\x12\x1c\n\x04type\x18\x02 \x01(\x0e\x32\x0e.DataValueType\x12\r\n\x05value\x18\x03 \x01(\t\"\x97\x01\n\x0e\x44\x65\x63oderRuntime\x12,\n\tparameter\x18\x01 \x03(\x0b\x32\x19.DecoderRuntime.Parameter\x1aW\n\tParameter\x12\x10\n\x08\x66ramenum\x18\x01 \x01(\x03\x12\x0b\n\x03key\x18\x02 \x01(\t\x12\x1c\n\x04type\x18\x03 \x01(\x0e\x32\x0e.DataValueType\x12\r\n\x05value\x18\x04 \x01(\t\"\x1f\n\x08Parallel\x12\x13\n\x04test\x18\x01 \x03(\x0b\x32\x05.Test\"\x1d\n\x06Serial\x12\x13\n\x04test\x18\x01 \x03(\x0b\x32\x05.Test\"\xe5\x01\n\x04Test\x12\x17\n\x06\x63ommon\x18\x01 \x01(\x0b\x32\x07.Common\x12\x15\n\x05input\x18\x02 \x01(\x0b\x32\x06.Input\x12\x1d\n\tconfigure\x18\x03 \x01(\x0b\x32\n.Configure\x12\x19\n\x07runtime\x18\x04 \x01(\x0b\x32\x08.Runtime\x12,\n\x11\x64\x65\x63oder_configure\x18\x05 \x01(\x0b\x32\x11.DecoderConfigure\x12(\n\x0f\x64\x65\x63oder_runtime\x18\x06 \x01(\x0b\x32\x0f.DecoderRuntime\x12\x1b\n\x08parallel\x18\x07 \x01(\x0b\x32\t.Parallel\" \n\tTestSuite\x12\x13\n\x04test\x18\x01 \x03(\x0b\x32\x05.Test*I\n\rDataValueType\x12\x0e\n\nstringType\x10\x00\x12\x0b\n\x07intType\x10\x01\x12\r\n\tfloatType\x10\x02\x12\x0c\n\x08longType\x10\x03*@\n\x06PixFmt\x12\x0b\n\x07yuv420p\x10\x00\x12\x0b\n\x07yvu420p\x10\x01\x12\x08\n\x04nv12\x10\x02\x12\x08\n\x04nv21\x10\x03\x12\x08\n\x04rgba\x10\x04\x42-\n\x19\x63om.facebook.encapp.protoB\x0eTestDefinitionP\x01')
+DESCRIPTOR = _descriptor_pool.Default().AddSerializedFile(b'\n\x0btests.proto\"K\n\x06\x43ommon\x12\n\n\x02id\x18\x01 \x01(\t\x12\x13\n\x0b\x64\x65scription\x18\x02 \x01(\t\x12\x11\n\toperation\x18\x03 \x01(\t\x12\r\n\x05start\x18\x04 \x01(\t\"\x9d\x02\n\x05Input\x12\x10\n\x08\x66ilepath\x18\x01 \x01(\t\x12\x12\n\nresolution\x18\x02 \x01(\t\x12\x18\n\x07pix_fmt\x18\x03 \x01(\x0e\x32\x07.PixFmt\x12\x11\n\tframerate\x18\x04 \x01(\x02\x12\x16\n\x0eplayout_frames\x18\x05 \x01(\x05\x12\x0f\n\x07pursuit\x18\x06 \x01(\x05\x12\x10\n\x08realtime\x18\x07 \x01(\x08\x12\x14\n\x0cstoptime_sec\x18\x08 \x01(\x02\x12\x0c\n\x04show\x18\t \x01(\x08\x12\x15\n\rsteady_frames\x18\n \x01(\x05\x12\x13\n\x0bstart_frame\x18\x0b \x01(\x05\x12\x17\n\x0fprefetch_frames\x18\x0c \x01(\x05\x12\x1d\n\x06scaler\x18\r \x01(\x0e\x32\x07.Scaler:\x04\x61rea\"\xf0\x07\n\tConfigure\x12\'\n\tparameter\x18\x01 \x03(\x0b\x32\x14.Configure.Parameter\x12\r\n\x05\x63odec\x18\x02 \x01(\t\x12\x0e\n\x06\x65ncode\x18\x03 \x01(\x08\x12\x0f\n\x07surface\x18\x04 \x01(\x08\x12\x0c\n\x04mime\x18\x05 \x01(\t\x12\x0f\n\x07\x62itrate\x18\x06 \x01(\t\x12,\n\x0c\x62itrate_mode\x18\x07 \x01(\x0e\x32\x16.Configure.BitrateMode\x12\x12\n\ndurationUs\x18\x08 \x01(\x04\x12\x12\n\nresolution\x18\t \x01(\t\x12\x14\n\x0c\x63olor_format\x18\n \x01(\x05\x12\x30\n\x0e\x63olor_standard\x18\x0b \x01(\x0e\x32\x18.Configure.ColorStandard\x12*\n\x0b\x63olor_range\x18\x0c \x01(\x0e\x32\x15.Configure.ColorRange\x12\x30\n\x0e\x63olor_transfer\x18\r \x01(\x0e\x32\x18.Configure.ColorTransfer\x12\x1e\n\x16\x63olor_transfer_request\x18\x0e \x01(\t\x12\x11\n\tframerate\x18\x0f \x01(\x02\x12\x18\n\x10i_frame_interval\x18\x10 \x01(\x05\x12\x1c\n\x14intra_refresh_period\x18\x11 \x01(\x05\x12\x0f\n\x07latency\x18\x12 \x01(\x05\x12#\n\x1brepeat_previous_frame_after\x18\x13 \x01(\x03\x12\x11\n\tts_schema\x18\x14 \x01(\t\x12\x0f\n\x07quality\x18\x15 \x01(\x05\x12\x12\n\ncomplexity\x18\x16 \x01(\x05\x12\x1a\n\x0b\x64\x65\x63ode_dump\x18\x17 \x01(\x08:\x05\x66\x61lse\x12\x1a\n\x12\x62itrate_window_sec\x18\x18 \x03(\x02\x12\x19\n\x0evbv_buffer_sec\x18\x19 \x01(\x02:\x01\x31\x12\x1a\n\x0breuse_codec\x18\x1a \x01(\x08:\x05\x66\x61lse\x1a\x45\n\tParameter\x12\x0b\n\x03key\x18\x01 \x01(\t\x12\x1c\n\x04type\x18\x02 \x01(\x0e\x32\x0e.DataValueType\x12\r\n\x05value\x18\x03 \x01(\t\"3\n\x0b\x42itrateMode\x12\x06\n\x02\x63q\x10\x00\x12\x07\n\x03vbr\x10\x01\x12\x07\n\x03\x63\x62r\x10\x02\x12\n\n\x06\x63\x62r_fd\x10\x03\"E\n\rColorStandard\x12\r\n\tbt601_pal\x10\x02\x12\x0e\n\nbt601_ntsc\x10\x04\x12\t\n\x05\x62t709\x10\x01\x12\n\n\x06\x62t2020\x10\x06\"#\n\nColorRange\x12\x08\n\x04\x66ull\x10\x01\x12\x0b\n\x07limited\x10\x02\"?\n\rColorTransfer\x12\n\n\x06linear\x10\x01\x12\r\n\tsdr_video\x10\x03\x12\n\n\x06st2084\x10\x06\x12\x07\n\x03hlg\x10\x07\"\xa1\x03\n\x07Runtime\x12%\n\tparameter\x18\x01 \x03(\x0b\x32\x12.Runtime.Parameter\x12\x35\n\rvideo_bitrate\x18\x02 \x03(\x0b\x32\x1e.Runtime.VideoBitrateParameter\x12\x0c\n\x04\x64rop\x18\x03 \x03(\x03\x12=\n\x11\x64ynamic_framerate\x18\x04 \x03(\x0b\x32\".Runtime.DynamicFramerateParameter\x12\x14\n\x0crequest_sync\x18\x05 \x03(\x03\x1aW\n\tParameter\x12\x10\n\x08\x66ramenum\x18\x01 \x01(\x03\x12\x0b\n\x03key\x18\x02 \x01(\t\x12\x1c\n\x04type\x18\x03 \x01(\x0e\x32\x0e.DataValueType\x12\r\n\x05value\x18\x04 \x01(\t\x1a:\n\x15VideoBitrateParameter\x12\x10\n\x08\x66ramenum\x18\x01 \x01(\x03\x12\x0f\n\x07\x62itrate\x18\x02 \x01(\t\x1a@\n\x19\x44ynamicFramerateParameter\x12\x10\n\x08\x66ramenum\x18\x01 \x01(\x03\x12\x11\n\tframerate\x18\x02 \x01(\x02\"\x98\x01\n\x10\x44\x65\x63oderConfigure\x12.\n\tparameter\x18\x01 \x03(\x0b\x32\x1b.DecoderConfigure.Parameter\x12\r\n\x05\x63odec\x18\x02 \x01(\t\x1a\x45\n\tParameter\x12\x0b\n\x03key\x18\x01 \x01(\t\x12\x1c\n\x04type\x18\x02 \x01(\x0e\x32\x0e.DataValueType\x12\r\n\x05value\x18\x03 \x01(\t\"\x97\x01\n\x0e\x44\x65\x63oderRuntime\x12,\n\tparameter\x18\x01 \x03(\x0b\x32\x19.DecoderRuntime.Parameter\x1aW\n\tParameter\x12\x10\n\x08\x66ramenum\x18\x01 \x01(\x03\x12\x0b\n\x03key\x18\x02 \x01(\t\x12\x1c\n\x04type\x18\x03 \x01(\x0e\x32\x0e.DataValueType\x12\r\n\x05value\x18\x04 \x01(\t\"\x1f\n\x08Parallel\x12\x13\n\x04test\x18\x01 \x03(\x0b\x32\x05.Test\"\x1d\n\x06Serial\x12\x13\n\x04test\x18\x01 \x03(\x0b\x32\x05.Test\"\xb5\x01\n\x0e\x43\x61pacitySearch\x12\x30\n\x08strategy\x18\x01 \x01(\x0e\x32\x18.CapacitySearch.Strategy:\x04ramp\x12\x1a\n\x0fstart_instances\x18\x02 \x01(\x05:\x01\x31\x12\x19\n\rmax_instances\x18\x03 \x01(\x05:\x02\x31\x36\x12\x18\n\nfps_margin\x18\x04 \x01(\x02:\x04\x30.95\" \n\x08Strategy\x12\x08\n\x04ramp\x10\x00\x12\n\n\x06\x62inary\x10\x01\"P\n\x10StartupBenchmark\x12\x16\n\niterations\x18\x01 \x01(\x05:\x02\x31\x30\x12$\n\x16\x66irst_frame_timeout_ms\x18\x02 \x01(\x05:\x04\x32\x30\x30\x30\"Y\n\x05Sweep\x12\x0f\n\x07\x62itrate\x18\x01 \x03(\t\x12\x11\n\tframerate\x18\x02 \x03(\x02\x12\x12\n\nresolution\x18\x03 \x03(\t\x12\x18\n\x10i_frame_interval\x18\x04 \x03(\x05\"o\n\x06Ladder\x12$\n\trendition\x18\x01 \x03(\x0b\x32\x11.Ladder.Rendition\x1a?\n\tRendition\x12\x12\n\nresolution\x18\x01 \x01(\t\x12\x0f\n\x07\x62itrate\x18\x02 \x01(\t\x12\r\n\x05\x63odec\x18\x03 \x01(\t\">\n\x08Loopback\x12\x1a\n\x0bhash_frames\x18\x01 \x01(\x08:\x05\x66\x61lse\x12\x16\n\x07\x63ompare\x18\x02 \x01(\x08:\x05\x66\x61lse\"\xa0\x02\n\x07\x43hannel\x12\x11\n\tbandwidth\x18\x01 \x01(\t\x12\x1a\n\x0b\x62urst_bytes\x18\x02 \x01(\x05:\x05\x31\x30\x30\x30\x30\x12\x17\n\x0f\x62\x61ndwidth_trace\x18\x03 \x01(\t\x12\x10\n\x08\x64\x65lay_ms\x18\x04 \x01(\x05\x12\x11\n\tjitter_ms\x18\x05 \x01(\x05\x12\x14\n\x0cmax_queue_ms\x18\x06 \x01(\x05\x12\x11\n\x03mtu\x18\x07 \x01(\x05:\x04\x31\x32\x30\x30\x12\x0c\n\x04loss\x18\x08 \x01(\x02\x12\x12\n\nloss_trace\x18\t \x01(\t\x12,\n\tloss_unit\x18\n \x01(\x0e\x32\x11.Channel.LossUnit:\x06packet\x12\x0c\n\x04seed\x18\x0b \x01(\x03\"!\n\x08LossUnit\x12\n\n\x06packet\x10\x00\x12\t\n\x05\x66rame\x10\x01\"\x85\x02\n\x0e\x42itrateControl\x12\x39\n\talgorithm\x18\x01 \x01(\x0e\x32\x19.BitrateControl.Algorithm:\x0b\x64\x65lay_based\x12\x1d\n\x0bmin_bitrate\x18\x02 \x01(\t:\x08\x31\x30\x30 kbps\x12\x13\n\x0bmax_bitrate\x18\x03 \x01(\t\x12\x18\n\x0clow_delay_ms\x18\x04 \x01(\x05:\x02\x35\x30\x12\x1a\n\rhigh_delay_ms\x18\x05 \x01(\x05:\x03\x32\x30\x30\x12\x1e\n\x10sync_interval_ms\x18\x06 \x01(\x05:\x04\x31\x30\x30\x30\".\n\tAlgorithm\x12\x0f\n\x0b\x64\x65lay_based\x10\x00\x12\x10\n\x0c\x62uffer_based\x10\x01\"-\n\x11\x42itstreamAnalysis\x12\x18\n\nframe_info\x18\x01 \x01(\x08:\x04true\"O\n\x0b\x46rameHashes\x12\x15\n\x07\x65ncoded\x18\x01 \x01(\x08:\x04true\x12\x15\n\x07\x64\x65\x63oded\x18\x02 \x01(\x08:\x04true\x12\x12\n\x07threads\x18\x03 \x01(\x05:\x01\x32\"\xbc\x04\n\x04Test\x12\x17\n\x06\x63ommon\x18\x01 \x01(\x0b\x32\x07.Common\x12\x15\n\x05input\x18\x02 \x01(\x0b\x32\x06.Input\x12\x1d\n\tconfigure\x18\x03 \x01(\x0b\x32\n.Configure\x12\x19\n\x07runtime\x18\x04 \x01(\x0b\x32\x08.Runtime\x12,\n\x11\x64\x65\x63oder_configure\x18\x05 \x01(\x0b\x32\x11.DecoderConfigure\x12(\n\x0f\x64\x65\x63oder_runtime\x18\x06 \x01(\x0b\x32\x0f.DecoderRuntime\x12\x1b\n\x08parallel\x18\x07 \x01(\x0b\x32\t.Parallel\x12(\n\x0f\x63\x61pacity_search\x18\x08 \x01(\x0b\x32\x0f.CapacitySearch\x12\x17\n\x06serial\x18\t \x01(\x0b\x32\x07.Serial\x12,\n\x11startup_benchmark\x18\n \x01(\x0b\x32\x11.StartupBenchmark\x12\x15\n\x05sweep\x18\x0b \x01(\x0b\x32\x06.Sweep\x12\x17\n\x06ladder\x18\x0c \x01(\x0b\x32\x07.Ladder\x12\x1b\n\x08loopback\x18\r \x01(\x0b\x32\t.Loopback\x12\x19\n\x07\x63hannel\x18\x0e \x01(\x0b\x32\x08.Channel\x12(\n\x0f\x62itrate_control\x18\x0f \x01(\x0b\x32\x0f.BitrateControl\x12.\n\x12\x62itstream_analysis\x18\x10 \x01(\x0b\x32\x12.BitstreamAnalysis\x12\"\n\x0c\x66rame_hashes\x18\x11 \x01(\x0b\x32\x0c.FrameHashes\" \n\tTestSuite\x12\x13\n\x04test\x18\x01 \x03(\x0b\x32\x05.Test*I\n\rDataValueType\x12\x0e\n\nstringType\x10\x00\x12\x0b\n\x07intType\x10\x01\x12\r\n\tfloatType\x10\x02\x12\x0c\n\x08longType\x10\x03*[\n\x06PixFmt\x12\x0b\n\x07yuv420p\x10\x00\x12\x0b\n\x07yvu420p\x10\x01\x12\x08\n\x04nv12\x10\x02\x12\x08\n\x04nv21\x10\x03\x12\x08\n\x04rgba\x10\x04\x12\x08\n\x04p010\x10\x05\x12\x0f\n\x0byuv420p10le\x10\x06* \n\x06Scaler\x12\x08\n\x04\x61rea\x10\x00\x12\x0c\n\x08\x62ilinear\x10\x01\x42-\n\x19\x63om.facebook.encapp.protoB\x0eTestDefinitionP\x01')
 
 _DATAVALUETYPE = DESCRIPTOR.enum_types_by_name['DataValueType']
 DataValueType = enum_type_wrapper.EnumTypeWrapper(_DATAVALUETYPE)
 _PIXFMT = DESCRIPTOR.enum_types_by_name['PixFmt']
 PixFmt = enum_type_wrapper.EnumTypeWrapper(_PIXFMT)
+_SCALER = DESCRIPTOR.enum_types_by_name['Scaler']
+Scaler = enum_type_wrapper.EnumTypeWrapper(_SCALER)
 stringType = 0
 intType = 1
 floatType = 2
@@ -30,6 +32,10 @@ yvu420p = 1
 nv12 = 2
 nv21 = 3
 rgba = 4
+p010 = 5
+yuv420p10le = 6
+area = 0
+bilinear = 1
 
 
 _COMMON = DESCRIPTOR.message_types_by_name['Common']
@@ -46,12 +52,25 @@ _DECODERRUNTIME = DESCRIPTOR.message_types_by_name['DecoderRuntime']
 _DECODERRUNTIME_PARAMETER = _DECODERRUNTIME.nested_types_by_name['Parameter']
 _PARALLEL = DESCRIPTOR.message_types_by_name['Parallel']
 _SERIAL = DESCRIPTOR.message_types_by_name['Serial']
+_CAPACITYSEARCH = DESCRIPTOR.message_types_by_name['CapacitySearch']
+_STARTUPBENCHMARK = DESCRIPTOR.message_types_by_name['StartupBenchmark']
+_SWEEP = DESCRIPTOR.message_types_by_name['Sweep']
+_LADDER = DESCRIPTOR.message_types_by_name['Ladder']
+_LADDER_RENDITION = _LADDER.nested_types_by_name['Rendition']
+_LOOPBACK = DESCRIPTOR.message_types_by_name['Loopback']
+_CHANNEL = DESCRIPTOR.message_types_by_name['Channel']
+_BITRATECONTROL = DESCRIPTOR.message_types_by_name['BitrateControl']
+_BITSTREAMANALYSIS = DESCRIPTOR.message_types_by_name['BitstreamAnalysis']
+_FRAMEHASHES = DESCRIPTOR.message_types_by_name['FrameHashes']
 _TEST = DESCRIPTOR.message_types_by_name['Test']
 _TESTSUITE = DESCRIPTOR.message_types_by_name['TestSuite']
 _CONFIGURE_BITRATEMODE = _CONFIGURE.enum_types_by_name['BitrateMode']
 _CONFIGURE_COLORSTANDARD = _CONFIGURE.enum_types_by_name['ColorStandard']
 _CONFIGURE_COLORRANGE = _CONFIGURE.enum_types_by_name['ColorRange']
 _CONFIGURE_COLORTRANSFER = _CONFIGURE.enum_types_by_name['ColorTransfer']
+_CAPACITYSEARCH_STRATEGY = _CAPACITYSEARCH.enum_types_by_name['Strategy']
+_CHANNEL_LOSSUNIT = _CHANNEL.enum_types_by_name['LossUnit']
+_BITRATECONTROL_ALGORITHM = _BITRATECONTROL.enum_types_by_name['Algorithm']
 Common = _reflection.GeneratedProtocolMessageType('Common', (_message.Message,), {
   'DESCRIPTOR' : _COMMON,
   '__module__' : 'tests_pb2'
@@ -156,6 +175,77 @@ Serial = _reflection.GeneratedProtocolMessageType('Serial', (_message.Message,),
   })
 _sym_db.RegisterMessage(Serial)
 
+CapacitySearch = _reflection.GeneratedProtocolMessageType('CapacitySearch', (_message.Message,), {
+  'DESCRIPTOR' : _CAPACITYSEARCH,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:CapacitySearch)
+  })
+_sym_db.RegisterMessage(CapacitySearch)
+
+StartupBenchmark = _reflection.GeneratedProtocolMessageType('StartupBenchmark', (_message.Message,), {
+  'DESCRIPTOR' : _STARTUPBENCHMARK,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:StartupBenchmark)
+  })
+_sym_db.RegisterMessage(StartupBenchmark)
+
+Sweep = _reflection.GeneratedProtocolMessageType('Sweep', (_message.Message,), {
+  'DESCRIPTOR' : _SWEEP,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:Sweep)
+  })
+_sym_db.RegisterMessage(Sweep)
+
+Ladder = _reflection.GeneratedProtocolMessageType('Ladder', (_message.Message,), {
+
+  'Rendition' : _reflection.GeneratedProtocolMessageType('Rendition', (_message.Message,), {
+    'DESCRIPTOR' : _LADDER_RENDITION,
+    '__module__' : 'tests_pb2'
+    # @@protoc_insertion_point(class_scope:Ladder.Rendition)
+    })
+  ,
+  'DESCRIPTOR' : _LADDER,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:Ladder)
+  })
+_sym_db.RegisterMessage(Ladder)
+_sym_db.RegisterMessage(Ladder.Rendition)
+
+Loopback = _reflection.GeneratedProtocolMessageType('Loopback', (_message.Message,), {
+  'DESCRIPTOR' : _LOOPBACK,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:Loopback)
+  })
+_sym_db.RegisterMessage(Loopback)
+
+Channel = _reflection.GeneratedProtocolMessageType('Channel', (_message.Message,), {
+  'DESCRIPTOR' : _CHANNEL,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:Channel)
+  })
+_sym_db.RegisterMessage(Channel)
+
+BitrateControl = _reflection.GeneratedProtocolMessageType('BitrateControl', (_message.Message,), {
+  'DESCRIPTOR' : _BITRATECONTROL,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:BitrateControl)
+  })
+_sym_db.RegisterMessage(BitrateControl)
+
+BitstreamAnalysis = _reflection.GeneratedProtocolMessageType('BitstreamAnalysis', (_message.Message,), {
+  'DESCRIPTOR' : _BITSTREAMANALYSIS,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:BitstreamAnalysis)
+  })
+_sym_db.RegisterMessage(BitstreamAnalysis)
+
+FrameHashes = _reflection.GeneratedProtocolMessageType('FrameHashes', (_message.Message,), {
+  'DESCRIPTOR' : _FRAMEHASHES,
+  '__module__' : 'tests_pb2'
+  # @@protoc_insertion_point(class_scope:FrameHashes)
+  })
+_sym_db.RegisterMessage(FrameHashes)
+
 Test = _reflection.GeneratedProtocolMessageType('Test', (_message.Message,), {
   'DESCRIPTOR' : _TEST,
   '__module__' : 'tests_pb2'
@@ -174,48 +264,76 @@ if _descriptor._USE_C_DESCRIPTORS == False:
 
   DESCRIPTOR._options = None
   DESCRIPTOR._serialized_options = b'\n\031com.facebook.encapp.protoB\016TestDefinitionP\001'
-  _DATAVALUETYPE._serialized_start=2267
-  _DATAVALUETYPE._serialized_end=2340
-  _PIXFMT._serialized_start=2342
-  _PIXFMT._serialized_end=2406
+  _DATAVALUETYPE._serialized_start=4010
+  _DATAVALUETYPE._serialized_end=4083
+  _PIXFMT._serialized_start=4085
+  _PIXFMT._serialized_end=4176
+  _SCALER._serialized_start=4178
+  _SCALER._serialized_end=4210
   _COMMON._serialized_start=15
   _COMMON._serialized_end=90
   _INPUT._serialized_start=93
-  _INPUT._serialized_end=278
-  _CONFIGURE._serialized_start=281
-  _CONFIGURE._serialized_end=1206
-  _CONFIGURE_PARAMETER._serialized_start=911
-  _CONFIGURE_PARAMETER._serialized_end=980
-  _CONFIGURE_BITRATEMODE._serialized_start=982
-  _CONFIGURE_BITRATEMODE._serialized_end=1033
-  _CONFIGURE_COLORSTANDARD._serialized_start=1035
-  _CONFIGURE_COLORSTANDARD._serialized_end=1104
-  _CONFIGURE_COLORRANGE._serialized_start=1106
-  _CONFIGURE_COLORRANGE._serialized_end=1141
-  _CONFIGURE_COLORTRANSFER._serialized_start=1143
-  _CONFIGURE_COLORTRANSFER._serialized_end=1206
-  _RUNTIME._serialized_start=1209
-  _RUNTIME._serialized_end=1626
-  _RUNTIME_PARAMETER._serialized_start=1413
-  _RUNTIME_PARAMETER._serialized_end=1500
-  _RUNTIME_VIDEOBITRATEPARAMETER._serialized_start=1502
-  _RUNTIME_VIDEOBITRATEPARAMETER._serialized_end=1560
-  _RUNTIME_DYNAMICFRAMERATEPARAMETER._serialized_start=1562
-  _RUNTIME_DYNAMICFRAMERATEPARAMETER._serialized_end=1626
-  _DECODERCONFIGURE._serialized_start=1629
-  _DECODERCONFIGURE._serialized_end=1781
-  _DECODERCONFIGURE_PARAMETER._serialized_start=911
-  _DECODERCONFIGURE_PARAMETER._serialized_end=980
-  _DECODERRUNTIME._serialized_start=1784
-  _DECODERRUNTIME._serialized_end=1935
-  _DECODERRUNTIME_PARAMETER._serialized_start=1413
-  _DECODERRUNTIME_PARAMETER._serialized_end=1500
-  _PARALLEL._serialized_start=1937
-  _PARALLEL._serialized_end=1968
-  _SERIAL._serialized_start=1970
-  _SERIAL._serialized_end=1999
-  _TEST._serialized_start=2002
-  _TEST._serialized_end=2231
-  _TESTSUITE._serialized_start=2233
-  _TESTSUITE._serialized_end=2265
+  _INPUT._serialized_end=378
+  _CONFIGURE._serialized_start=381
+  _CONFIGURE._serialized_end=1389
+  _CONFIGURE_PARAMETER._serialized_start=1094
+  _CONFIGURE_PARAMETER._serialized_end=1163
+  _CONFIGURE_BITRATEMODE._serialized_start=1165
+  _CONFIGURE_BITRATEMODE._serialized_end=1216
+  _CONFIGURE_COLORSTANDARD._serialized_start=1218
+  _CONFIGURE_COLORSTANDARD._serialized_end=1287
+  _CONFIGURE_COLORRANGE._serialized_start=1289
+  _CONFIGURE_COLORRANGE._serialized_end=1324
+  _CONFIGURE_COLORTRANSFER._serialized_start=1326
+  _CONFIGURE_COLORTRANSFER._serialized_end=1389
+  _RUNTIME._serialized_start=1392
+  _RUNTIME._serialized_end=1809
+  _RUNTIME_PARAMETER._serialized_start=1596
+  _RUNTIME_PARAMETER._serialized_end=1683
+  _RUNTIME_VIDEOBITRATEPARAMETER._serialized_start=1685
+  _RUNTIME_VIDEOBITRATEPARAMETER._serialized_end=1743
+  _RUNTIME_DYNAMICFRAMERATEPARAMETER._serialized_start=1745
+  _RUNTIME_DYNAMICFRAMERATEPARAMETER._serialized_end=1809
+  _DECODERCONFIGURE._serialized_start=1812
+  _DECODERCONFIGURE._serialized_end=1964
+  _DECODERCONFIGURE_PARAMETER._serialized_start=1094
+  _DECODERCONFIGURE_PARAMETER._serialized_end=1163
+  _DECODERRUNTIME._serialized_start=1967
+  _DECODERRUNTIME._serialized_end=2118
+  _DECODERRUNTIME_PARAMETER._serialized_start=1596
+  _DECODERRUNTIME_PARAMETER._serialized_end=1683
+  _PARALLEL._serialized_start=2120
+  _PARALLEL._serialized_end=2151
+  _SERIAL._serialized_start=2153
+  _SERIAL._serialized_end=2182
+  _CAPACITYSEARCH._serialized_start=2185
+  _CAPACITYSEARCH._serialized_end=2366
+  _CAPACITYSEARCH_STRATEGY._serialized_start=2334
+  _CAPACITYSEARCH_STRATEGY._serialized_end=2366
+  _STARTUPBENCHMARK._serialized_start=2368
+  _STARTUPBENCHMARK._serialized_end=2448
+  _SWEEP._serialized_start=2450
+  _SWEEP._serialized_end=2539
+  _LADDER._serialized_start=2541
+  _LADDER._serialized_end=2652
+  _LADDER_RENDITION._serialized_start=2589
+  _LADDER_RENDITION._serialized_end=2652
+  _LOOPBACK._serialized_start=2654
+  _LOOPBACK._serialized_end=2716
+  _CHANNEL._serialized_start=2719
+  _CHANNEL._serialized_end=3007
+  _CHANNEL_LOSSUNIT._serialized_start=2974
+  _CHANNEL_LOSSUNIT._serialized_end=3007
+  _BITRATECONTROL._serialized_start=3010
+  _BITRATECONTROL._serialized_end=3271
+  _BITRATECONTROL_ALGORITHM._serialized_start=3225
+  _BITRATECONTROL_ALGORITHM._serialized_end=3271
+  _BITSTREAMANALYSIS._serialized_start=3273
+  _BITSTREAMANALYSIS._serialized_end=3318
+  _FRAMEHASHES._serialized_start=3320
+  _FRAMEHASHES._serialized_end=3399
+  _TEST._serialized_start=3402
+  _TEST._serialized_end=3974
+  _TESTSUITE._serialized_start=3976
+  _TESTSUITE._serialized_end=4008
 # @@protoc_insertion_point(module_scope)